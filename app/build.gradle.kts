@@ -83,6 +83,9 @@ dependencies {
     implementation("jakarta.persistence:jakarta.persistence-api")
     implementation("com.google.guava:guava")
     annotationProcessor("org.springframework.boot:spring-boot-configuration-processor")
+
+    testImplementation("org.assertj:assertj-core")
+    testImplementation("org.junit.jupiter:junit-jupiter")
 }
 
 springBoot {
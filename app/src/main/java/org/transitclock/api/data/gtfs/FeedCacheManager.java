@@ -39,7 +39,10 @@ public class FeedCacheManager {
             feedMessage = vehicleFeedDataCache.get(agencyId);
             if (feedMessage != null) return feedMessage;
 
-            GtfsRtVehicleFeed feed = new GtfsRtVehicleFeed(agencyId, vehiclesService, agencyTimezoneCache);
+            GtfsRtVehicleFeed feed = new GtfsRtVehicleFeed(agencyId,
+                    vehiclesService,
+                    agencyTimezoneCache,
+                    apiProperties.getGtfsRtParallelThreshold());
             feedMessage = feed.createMessage();
             vehicleFeedDataCache.put(agencyId, feedMessage);
         }
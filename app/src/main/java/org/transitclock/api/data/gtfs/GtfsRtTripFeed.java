@@ -130,14 +130,11 @@ public class GtfsRtTripFeed {
         // Add the VehicleDescriptor information
         VehicleDescriptor.Builder vehicleDescriptor = null;
 
-        Collection<IpcVehicleConfig> vehConfigs = vehiclesService.getVehicleConfigs();
-        for (IpcVehicleConfig ipcVehicleConfig : vehConfigs) {
-            if (ipcVehicleConfig.getId().equals(firstPred.getVehicleId())) {
-                vehicleDescriptor = VehicleDescriptor
-                        .newBuilder()
-                        .setId(ipcVehicleConfig.getId());
-                break;
-            }
+        IpcVehicleConfig ipcVehicleConfig = vehiclesService.getVehicleConfigsById().get(firstPred.getVehicleId());
+        if (ipcVehicleConfig != null) {
+            vehicleDescriptor = VehicleDescriptor
+                    .newBuilder()
+                    .setId(ipcVehicleConfig.getId());
         }
 
         if (vehicleDescriptor == null)
@@ -14,10 +14,14 @@ import org.transitclock.service.dto.IpcVehicleConfig;
 import org.transitclock.service.dto.IpcVehicleGtfsRealtime;
 import org.transitclock.utils.Time;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 /**
  * For creating GTFS-realtime Vehicle feed. The data is obtained via RMI.
@@ -27,14 +31,25 @@ import java.util.Date;
 @Slf4j
 public class GtfsRtVehicleFeed {
 
-    // For outputting date in GTFS-realtime format
-    private SimpleDateFormat gtfsRealtimeDateFormatter = new SimpleDateFormat("yyyyMMdd");
-    private SimpleDateFormat gtfsRealtimeTimeFormatter = new SimpleDateFormat("HH:mm:ss");
+    // For outputting date in GTFS-realtime format. Using the thread safe
+    // java.time formatters since entities can be built in parallel.
+    private final DateTimeFormatter gtfsRealtimeDateFormatter;
+    private final DateTimeFormatter gtfsRealtimeTimeFormatter =
+            DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
     private final VehiclesService vehiclesService;
 
-    public GtfsRtVehicleFeed(String agencyId, VehiclesService vehiclesService, AgencyTimezoneCache agencyTimezoneCache) {
+    // If there are at least this many vehicles then the feed entities are
+    // built in parallel chunks.
+    private final int parallelThreshold;
+
+    public GtfsRtVehicleFeed(String agencyId,
+                             VehiclesService vehiclesService,
+                             AgencyTimezoneCache agencyTimezoneCache,
+                             int parallelThreshold) {
         this.vehiclesService = vehiclesService;
-        this.gtfsRealtimeDateFormatter.setTimeZone(agencyTimezoneCache.get(agencyId));
+        this.gtfsRealtimeDateFormatter = DateTimeFormatter.ofPattern("yyyyMMdd")
+                .withZone(agencyTimezoneCache.get(agencyId).toZoneId());
+        this.parallelThreshold = parallelThreshold;
     }
 
     /**
@@ -42,22 +57,21 @@ public class GtfsRtVehicleFeed {
      *
      * @param vehicleData
      * @return the resulting VehiclePosition
-     * @throws ParseException
      */
-    private VehiclePosition createVehiclePosition(IpcVehicleGtfsRealtime vehicleData) throws ParseException {
+    private VehiclePosition createVehiclePosition(IpcVehicleGtfsRealtime vehicleData) {
         // Create the parent VehiclePosition object that is returned.
         VehiclePosition.Builder vehiclePosition = VehiclePosition.newBuilder();
 
         // If there is route information then add it via the TripDescriptor
         if (vehicleData.getRouteId() != null && !vehicleData.getRouteId().isEmpty()) {
-            String tripStartDateStr = gtfsRealtimeDateFormatter.format(new Date(vehicleData.getTripStartEpochTime()));
+            String tripStartDateStr = gtfsRealtimeDateFormatter.format(Instant.ofEpochMilli(vehicleData.getTripStartEpochTime()));
             TripDescriptor.Builder tripDescriptor = TripDescriptor.newBuilder()
                     .setRouteId(vehicleData.getRouteId())
                     .setTripId(vehicleData.getTripId())
                     .setStartDate(tripStartDateStr);
             if (vehicleData.isCanceled()) tripDescriptor.setScheduleRelationship(ScheduleRelationship.CANCELED);
             if (vehicleData.getFreqStartTime() > 0) {
-                String tripStartTimeStr = gtfsRealtimeTimeFormatter.format(new Date(vehicleData.getFreqStartTime()));
+                String tripStartTimeStr = gtfsRealtimeTimeFormatter.format(Instant.ofEpochMilli(vehicleData.getFreqStartTime()));
                 tripDescriptor.setStartTime(tripStartTimeStr);
             }
 
@@ -128,7 +142,7 @@ public class GtfsRtVehicleFeed {
      * @param vehicles the data to be put into the GTFS-realtime message
      * @return the GTFS-realtime FeedMessage
      */
-    private FeedMessage createMessage(Collection<IpcVehicleGtfsRealtime> vehicles) {
+    private FeedMessage createMessage(List<IpcVehicleGtfsRealtime> vehicles) {
         FeedMessage.Builder message = FeedMessage.newBuilder();
 
         FeedHeader.Builder feedheader = FeedHeader.newBuilder()
@@ -137,10 +151,39 @@ public class GtfsRtVehicleFeed {
                 .setTimestamp(System.currentTimeMillis() / Time.MS_PER_SEC);
         message.setHeader(feedheader);
 
-        for (IpcVehicleGtfsRealtime vehicle : vehicles) {
+        // For large fleets build the entities in parallel. The parallel
+        // stream splits the list into chunks while still preserving the
+        // order of the vehicles in the resulting feed.
+        List<FeedEntity> entities;
+        if (vehicles.size() >= parallelThreshold) {
+            entities = vehicles.parallelStream()
+                    .map(this::createFeedEntity)
+                    .filter(Objects::nonNull)
+                    .toList();
+        } else {
+            entities = new ArrayList<>(vehicles.size());
+            for (IpcVehicleGtfsRealtime vehicle : vehicles) {
+                FeedEntity entity = createFeedEntity(vehicle);
+                if (entity != null) entities.add(entity);
+            }
+        }
+        message.addAllEntity(entities);
 
+        return message.build();
+    }
+
+    /**
+     * Creates the FeedEntity for a single vehicle. The vehicle name, if there is one, is used as
+     * the ID of the vehicle in the feed.
+     *
+     * @param vehicle the vehicle to create the entity for
+     * @return the FeedEntity, or null if there was a problem with the vehicle data
+     */
+    private FeedEntity createFeedEntity(IpcVehicleGtfsRealtime vehicle) {
+        try {
+            String vehicleId = vehicle.getVehicleName() == null ? vehicle.getId() : vehicle.getVehicleName();
             IpcAvl newAvl = new IpcAvl(
-                    vehicle.getVehicleName() == null ? vehicle.getId() : vehicle.getVehicleName(),
+                    vehicleId,
                     vehicle.getAvl().getTime(),
                     vehicle.getAvl().getLatitude(),
                     vehicle.getAvl().getLongitude(),
@@ -184,41 +227,37 @@ public class GtfsRtVehicleFeed {
                     vehicle.getPredictedLatitude(),
                     vehicle.getPredictedLongitude(),
                     vehicle.isCanceled());
-            FeedEntity.Builder vehiclePositionEntity = FeedEntity.newBuilder()
-                    .setId(vehicle.getVehicleName() == null ? vehicle.getId() : vehicle.getVehicleName());
-
-            try {
-                // vehicle
-                VehiclePosition vehiclePosition = createVehiclePosition(newVehicle);
-                vehiclePositionEntity.setVehicle(vehiclePosition);
-                message.addEntity(vehiclePositionEntity);
-            } catch (Exception e) {
-                logger.error("Error parsing vehicle data for vehicle={}", vehicle, e);
-            }
-        }
 
-        return message.build();
+            return FeedEntity.newBuilder()
+                    .setId(vehicleId)
+                    .setVehicle(createVehiclePosition(newVehicle))
+                    .build();
+        } catch (Exception e) {
+            logger.error("Error parsing vehicle data for vehicle={}", vehicle, e);
+            return null;
+        }
     }
 
     /**
-     * Returns collection of all vehicles for the project obtained via RMI. Returns null if there
-     * was a problem getting the data via RMI
+     * Returns list of all vehicles for the project, with the vehicle names taken from the vehicle
+     * configs. The configs are obtained once as a map keyed by vehicle ID so that joining them
+     * with the vehicles is a simple lookup per vehicle.
      *
-     * @return Collection of Vehicle objects, or null if not available.
+     * @return List of Vehicle objects
      */
-    private Collection<IpcVehicleGtfsRealtime> getVehicles() {
+    private List<IpcVehicleGtfsRealtime> getVehicles() {
         Collection<IpcVehicleGtfsRealtime> vehicles = vehiclesService.getGtfsRealtime();
+        Map<String, IpcVehicleConfig> vehicleConfigsById = vehiclesService.getVehicleConfigsById();
 
+        List<IpcVehicleGtfsRealtime> result = new ArrayList<>(vehicles.size());
         for (IpcVehicleGtfsRealtime ipc : vehicles) {
-            Collection<IpcVehicleConfig> vehConfigs = vehiclesService.getVehicleConfigs();
-            for (IpcVehicleConfig ipcVehicleConfig : vehConfigs) {
-                if (ipcVehicleConfig.getId().equals(ipc.getId())) {
-                    ipc.setVehicleName(ipcVehicleConfig.getName());
-                    break;
-                }
+            IpcVehicleConfig ipcVehicleConfig = vehicleConfigsById.get(ipc.getId());
+            if (ipcVehicleConfig != null) {
+                ipc.setVehicleName(ipcVehicleConfig.getName());
             }
+            result.add(ipc);
         }
-        return vehicles;
+        return result;
     }
 
     /**
@@ -227,7 +266,7 @@ public class GtfsRtVehicleFeed {
      * @return GTFS-RT FeedMessage for vehicle positions
      */
     public FeedMessage createMessage() {
-        Collection<IpcVehicleGtfsRealtime> vehicles = getVehicles();
+        List<IpcVehicleGtfsRealtime> vehicles = getVehicles();
         return createMessage(vehicles);
     }
 }
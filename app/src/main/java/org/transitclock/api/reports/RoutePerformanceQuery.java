@@ -8,6 +8,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
+import org.transitclock.domain.hibernate.DbWorkload;
 import org.transitclock.domain.hibernate.HibernateUtils;
 import org.transitclock.domain.structs.PredictionAccuracy;
 import org.transitclock.domain.structs.QPredictionAccuracy;
@@ -50,7 +51,7 @@ public class RoutePerformanceQuery {
         // for route. This cannot be done with pure Criteria API. This could be
         // moved to a separate class or XML file.
         try {
-            session = HibernateUtils.getSession(agencyId);
+            session = HibernateUtils.getSession(DbWorkload.REPORTS);
 
             JPAQuery<PredictionAccuracy> query = new JPAQuery<>(session);
             var qentity = QPredictionAccuracy.predictionAccuracy;
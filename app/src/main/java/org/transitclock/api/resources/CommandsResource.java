@@ -292,7 +292,7 @@ public class CommandsResource extends BaseApiResource implements CommandsApi {
             StandardParameters stdParameters,
             String avlDate) {
         try {
-            ExportTable exportTable = new ExportTable(new SimpleDateFormat("MM-dd-yyyy").parse(avlDate), 1, "avl_" + avlDate + ".csv");
+            ExportTable exportTable = new ExportTable(new SimpleDateFormat("MM-dd-yyyy").parse(avlDate), ExportTable.TYPE_AVL, "avl_" + avlDate + ".csv");
             dataDbLogger.add(exportTable);
 
         } catch (Exception ex) {
@@ -14,6 +14,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RequestMapping("/api/v1/agency/{agency}")
 public interface ReportsApi {
@@ -44,7 +45,7 @@ public interface ReportsApi {
             tags = {"report", "vehicle"})
     @GetMapping(value = "/reports/avlReport",
             produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
-    ResponseEntity<String> getAvlReport(
+    ResponseEntity<StreamingResponseBody> getAvlReport(
             StandardParameters stdParameters,
             @Parameter(description = "Vehicle id") @RequestParam(value = "v") String vehicleId,
             @Parameter(description = "Begin date(MM-DD-YYYY or YYYY-MM-DD") @RequestParam(value = "beginDate") String beginDate,
@@ -1,6 +1,10 @@
 package org.transitclock.api.resources;
 
 import jakarta.servlet.http.HttpServletRequest;
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -23,9 +27,11 @@ import org.transitclock.core.reports.SqlUtils;
 import org.transitclock.utils.Time;
 
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 public class ReportsResource extends BaseApiResource implements ReportsApi {
@@ -46,17 +52,25 @@ public class ReportsResource extends BaseApiResource implements ReportsApi {
     }
 
     @Override
-    public ResponseEntity<String> getAvlReport(
+    public ResponseEntity<StreamingResponseBody> getAvlReport(
             StandardParameters stdParameters,
             String vehicleId,
             String beginDate,
             int numDays,
             String beginTime,
             String endTime) {
-        String response = Reports.getAvlJson(
-                stdParameters.getAgencyId(),
-                vehicleId, beginDate, String.valueOf(numDays), beginTime, endTime);
-        return ResponseEntity.ok(response);
+        // Streamed since it can be many days of AVL reports. That way they
+        // are sent as they are read from the db instead of first all being
+        // put into a string.
+        String agencyId = stdParameters.getAgencyId();
+        StreamingResponseBody body = outputStream -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            Reports.writeAvlJson(writer, agencyId, vehicleId, beginDate, String.valueOf(numDays), beginTime, endTime);
+            writer.flush();
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
     }
 
 
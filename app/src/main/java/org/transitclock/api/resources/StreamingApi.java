@@ -0,0 +1,83 @@
+package org.transitclock.api.resources;
+
+import java.util.List;
+
+import org.transitclock.api.utils.StandardParameters;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@RequestMapping("/api/v1/agency/{agency}")
+public interface StreamingApi {
+
+    /**
+     * Streams vehicle updates as server-sent events. The first event contains all of the matching
+     * vehicles. Subsequent events only contain the vehicles that changed. If a client can't keep up
+     * then intermediate updates are dropped and the client gets the latest data for the vehicle.
+     *
+     * @param stdParameters        StdParametersBean that gets the standard parameters from the URI, query
+     *                             string, and headers.
+     * @param vehicleIds           Optional way of specifying which vehicles to get data for
+     * @param routesIdOrShortNames Optional way of specifying which routes to get data for
+     *
+     * @return The emitter for the event stream
+     */
+    @Operation(
+            summary = "Streams vehicle updates as server-sent events.",
+            description = "Streams vehicle updates as server-sent events. Each \"vehicles\" event has the same"
+                    + " format as the vehicles command but only contains the vehicles that changed.",
+            tags = {"vehicle", "stream"})
+    @GetMapping(value = "/stream/vehicles", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    SseEmitter streamVehicles(
+            StandardParameters stdParameters,
+
+            @Parameter(description = "Vehicles is list.", required = false)
+            @RequestParam(value = "v", required = false, defaultValue = "")
+            List<String> vehicleIds,
+
+            @Parameter(description = "Specifies which vehicles to get data for.", required = false)
+            @RequestParam(value = "r", required = false, defaultValue = "")
+            List<String> routesIdOrShortNames);
+
+    /**
+     * Streams prediction updates as server-sent events. The first event contains the predictions
+     * for all of the specified route/stops. Subsequent events only contain the route/stops whose
+     * predictions changed. If a client can't keep up then intermediate updates are dropped and the
+     * client gets the latest predictions for the route/stop.
+     *
+     * @param stdParameters     StdParametersBean that gets the standard parameters from the URI, query
+     *                          string, and headers.
+     * @param routeStopStrs     List of route/stops to stream predictions for, separated by the "|"
+     *                          character, for example "rs=43|2029&rs=43|3029"
+     * @param stopStrs          List of stops to stream predictions for all routes of
+     * @param numberPredictions Maximum number of predictions to return. Default value is 3.
+     *
+     * @return The emitter for the event stream
+     */
+    @Operation(
+            summary = "Streams prediction updates as server-sent events.",
+            description = "Streams prediction updates as server-sent events. Each \"predictions\" event has the"
+                    + " same format as the predictions command but only contains the route/stops whose"
+                    + " predictions changed.",
+            tags = {"prediction", "stream"})
+    @GetMapping(value = "/stream/predictions", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    SseEmitter streamPredictions(
+            StandardParameters stdParameters,
+
+            @Parameter(description = "List of route/stops. Each route/stop separated by the \"|\" character.")
+            @RequestParam(value = "rs", required = false, defaultValue = "")
+            List<String> routeStopStrs,
+
+            @Parameter(description = "List of stops to get predictions for all routes of.")
+            @RequestParam(value = "s", required = false, defaultValue = "")
+            List<String> stopStrs,
+
+            @Parameter(description = "Maximum number of predictions per route/stop/destination.")
+            @RequestParam(value = "numPreds", defaultValue = "3")
+            int numberPredictions);
+}
@@ -0,0 +1,40 @@
+/* (C)2023 */
+package org.transitclock.api.resources;
+
+import java.util.List;
+
+import org.transitclock.api.streaming.UpdateStreamer;
+import org.transitclock.api.utils.StandardParameters;
+import org.transitclock.api.utils.WebUtils;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Contains the API commands for streaming real-time vehicle and prediction updates to clients as
+ * server-sent events, so that map clients and signs don't need to poll.
+ */
+@RestController
+@RequiredArgsConstructor
+public class StreamingResource extends BaseApiResource implements StreamingApi {
+    private final UpdateStreamer updateStreamer;
+
+    @Override
+    public SseEmitter streamVehicles(
+            StandardParameters stdParameters, List<String> vehicleIds, List<String> routesIdOrShortNames) {
+        return updateStreamer.subscribeVehicles(routesIdOrShortNames, vehicleIds);
+    }
+
+    @Override
+    public SseEmitter streamPredictions(
+            StandardParameters stdParameters, List<String> routeStopStrs, List<String> stopStrs, int numberPredictions) {
+        if (routeStopStrs.stream().allMatch(String::isBlank) && stopStrs.stream().allMatch(String::isBlank)) {
+            throw WebUtils.badRequestException("Need to specify at least one route/stop or stop");
+        }
+        return updateStreamer.subscribePredictions(
+                routeStopStrs.stream().filter(s -> !s.isBlank()).toList(),
+                stopStrs.stream().filter(s -> !s.isBlank()).toList(),
+                numberPredictions);
+    }
+}
@@ -71,7 +71,7 @@ public interface TransitimeApi {
             tags = {"vehicle", "prediction"})
     @GetMapping(
             value = "/command/vehicles",
-            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE}
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE, MediaType.APPLICATION_PROTOBUF_VALUE}
     )
     ResponseEntity<ApiVehiclesResponse> getVehicles(
             StandardParameters stdParameters,
@@ -160,7 +160,7 @@ public interface TransitimeApi {
      * @return The Response object already configured for the specified media type.
      */
     @GetMapping(value = "/command/vehiclesDetails",
-            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE, MediaType.APPLICATION_PROTOBUF_VALUE})
     @Operation(
             summary = "Returns detailed data for all " + "vehicles or for the vehicles specified via the query string",
             description = "Returns detailed data for all vehicles or for the vehicles specified via the"
@@ -232,7 +232,7 @@ public interface TransitimeApi {
      * @return
      */
     @GetMapping(value = "/command/predictions",
-            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE, MediaType.APPLICATION_PROTOBUF_VALUE})
     @Operation(summary = "Gets predictions from server", tags = {"prediction"})
     ResponseEntity<ApiPredictionsResponse> getPredictions(
             StandardParameters stdParameters,
@@ -271,7 +271,7 @@ public interface TransitimeApi {
      * @return
      */
     @GetMapping(value = "/command/predictionsByLoc",
-            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE, MediaType.APPLICATION_PROTOBUF_VALUE})
     @Operation(
             summary = "Gets predictions from server by location",
             tags = {"prediction"})
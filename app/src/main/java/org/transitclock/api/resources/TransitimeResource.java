@@ -36,6 +36,7 @@ import org.transitclock.api.utils.PredsByLoc;
 import org.transitclock.api.utils.StandardParameters;
 import org.transitclock.api.utils.WebUtils;
 import org.transitclock.core.TemporalDifference;
+import org.transitclock.domain.export.ExportFileResource;
 import org.transitclock.domain.hibernate.HibernateUtils;
 import org.transitclock.domain.repository.ExportTableRepository;
 import org.transitclock.domain.structs.Agency;
@@ -59,6 +60,8 @@ import org.transitclock.service.dto.IpcVehicleConfig;
 
 import lombok.RequiredArgsConstructor;
 import org.hibernate.Session;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
@@ -919,12 +922,20 @@ public class TransitimeResource extends BaseApiResource implements TransitimeApi
             ExportTable result = ExportTableRepository.getExportFile(session, id).get(0);
 
             session.close();
-            // return ApiVehicles response
-            // return stdParameters.createResponse(result);
+            // Files of exports generated before they were stored in chunks are in the row.
+            // Either way the body is a resource so that Range requests are served.
+            Resource file;
+            if (result.isChunked()) {
+                file = new ExportFileResource(result);
+            } else if (result.getFile() != null) {
+                file = new ByteArrayResource(result.getFile());
+            } else {
+                throw new IllegalStateException("Export " + id + " is not ready");
+            }
             return ResponseEntity.ok()
                     .header("Content-Disposition", "attachment; filename=\"" + result.getFileName() + "\"")
                     .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                    .body(result.getFile());
+                    .body(file);
         } catch (Exception e) {
             // If problem getting data then return a Bad Request
             session.close();
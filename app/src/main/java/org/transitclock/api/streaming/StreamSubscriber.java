@@ -0,0 +1,230 @@
+/* (C)2023 */
+package org.transitclock.api.streaming;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * A single client subscribed to a server-sent-events stream. Updates are not queued as complete
+ * messages. Instead only the keys of what changed, such as vehicle IDs or route/stops, are
+ * buffered. When the buffer is drained the current data for the keys is read from the caches and
+ * sent as a single event. This way a slow client only ever gets the latest data and intermediate
+ * updates are simply dropped. If more than maxPendingKeys distinct keys are waiting to be sent then
+ * the oldest ones are dropped.
+ *
+ * <p>Writing an event blocks while the client isn't reading. If a send takes longer than the send
+ * timeout then the subscription is closed, the emitter is completed with an error and the sender
+ * thread is interrupted, so that a stalled client can't hold on to one of the few sender threads.
+ */
+@Slf4j
+class StreamSubscriber {
+    private final SseEmitter emitter;
+    private final String eventName;
+    private final Function<List<String>, Object> eventDataCreator;
+    private final int maxPendingKeys;
+    private final Executor senderExecutor;
+    private final ScheduledExecutorService timeoutExecutor;
+    private final long sendTimeoutMsec;
+    private volatile Runnable onClose = () -> {};
+
+    // Keys for which an update needs to be sent, in order of arrival.
+    // Guarded by this.
+    private final LinkedHashSet<String> pendingKeys = new LinkedHashSet<>();
+
+    // Whether a drain task is scheduled or running. Guarded by this.
+    private boolean draining = false;
+
+    private long droppedKeys = 0;
+
+    // The thread that is sending an event, so that it can be interrupted if the send takes too
+    // long. Guarded by this.
+    private Thread sendingThread;
+
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    /**
+     * @param emitter for sending events to the client
+     * @param eventName name of the events sent to the client
+     * @param eventDataCreator creates the data for an event from the keys that have been updated
+     * @param maxPendingKeys max number of keys buffered while waiting to be sent
+     * @param senderExecutor for sending the events so that the thread making the update is never
+     *     blocked by a client
+     * @param timeoutExecutor for ending sends that take longer than sendTimeoutMsec
+     * @param sendTimeoutMsec how long sending an event may take before the subscription is closed
+     */
+    StreamSubscriber(
+            SseEmitter emitter,
+            String eventName,
+            Function<List<String>, Object> eventDataCreator,
+            int maxPendingKeys,
+            Executor senderExecutor,
+            ScheduledExecutorService timeoutExecutor,
+            long sendTimeoutMsec) {
+        this.emitter = emitter;
+        this.eventName = eventName;
+        this.eventDataCreator = eventDataCreator;
+        this.maxPendingKeys = maxPendingKeys;
+        this.senderExecutor = senderExecutor;
+        this.timeoutExecutor = timeoutExecutor;
+        this.sendTimeoutMsec = sendTimeoutMsec;
+
+        emitter.onCompletion(this::close);
+        emitter.onTimeout(this::close);
+        emitter.onError(e -> close());
+    }
+
+    /**
+     * Sets what to do when the subscription ends, such as removing it from the subscriptions that
+     * get updates. Runs right away if the subscription has already ended.
+     *
+     * @param onClose called when the subscription ends
+     */
+    void onClose(Runnable onClose) {
+        this.onClose = onClose;
+        if (closed.get()) onClose.run();
+    }
+
+    /**
+     * Records that the data for the key has been updated and makes sure that it will be sent.
+     * Never blocks.
+     *
+     * @param key identifies what was updated
+     */
+    void offer(String key) {
+        if (closed.get()) return;
+
+        boolean scheduleDrain;
+        synchronized (this) {
+            if (!pendingKeys.contains(key) && pendingKeys.size() >= maxPendingKeys) {
+                Iterator<String> oldest = pendingKeys.iterator();
+                oldest.next();
+                oldest.remove();
+                ++droppedKeys;
+            }
+            pendingKeys.add(key);
+
+            scheduleDrain = !draining;
+            draining = true;
+        }
+
+        if (scheduleDrain) {
+            scheduleDrain();
+        }
+    }
+
+    private void scheduleDrain() {
+        try {
+            senderExecutor.execute(this::drain);
+        } catch (RuntimeException e) {
+            logger.error("Could not schedule sending of {} event.", eventName, e);
+            synchronized (this) {
+                draining = false;
+            }
+        }
+    }
+
+    /**
+     * Sends the data for the pending keys as a single event. If more keys came in while sending
+     * then another drain is scheduled, instead of looping here, so that a subscriber that keeps
+     * getting updates doesn't hold on to a sender thread and the other subscribers get their turn.
+     * Only one drain is scheduled or running at a time for a subscriber so events are sent in
+     * order.
+     */
+    private void drain() {
+        if (closed.get()) return;
+
+        List<String> keys;
+        synchronized (this) {
+            if (pendingKeys.isEmpty()) {
+                draining = false;
+                return;
+            }
+            keys = new ArrayList<>(pendingKeys);
+            pendingKeys.clear();
+        }
+
+        try {
+            Object data = eventDataCreator.apply(keys);
+            send(SseEmitter.event().name(eventName).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException | RuntimeException e) {
+            // Already completed if the send timed out
+            if (closed.get()) return;
+            logger.debug("Could not send {} event so closing subscription. {}", eventName, e.getMessage());
+            emitter.completeWithError(e);
+            close();
+            return;
+        }
+
+        boolean scheduleDrain;
+        synchronized (this) {
+            scheduleDrain = !pendingKeys.isEmpty() && !closed.get();
+            draining = scheduleDrain;
+        }
+        if (scheduleDrain) {
+            scheduleDrain();
+        }
+    }
+
+    /** Sends the event, giving up after sendTimeoutMsec, see sendTimedOut(). */
+    private void send(SseEmitter.SseEventBuilder event) throws IOException {
+        Thread thread = Thread.currentThread();
+        synchronized (this) {
+            sendingThread = thread;
+        }
+        ScheduledFuture<?> timeout = timeoutExecutor.schedule(this::sendTimedOut, sendTimeoutMsec, TimeUnit.MILLISECONDS);
+        try {
+            emitter.send(event);
+        } finally {
+            timeout.cancel(false);
+            synchronized (this) {
+                // If the send timed out then this thread was interrupted while holding the lock.
+                // Clear that so it doesn't affect the next task of the pool.
+                if (sendingThread == null) Thread.interrupted();
+                sendingThread = null;
+            }
+        }
+    }
+
+    /**
+     * Called when a send takes too long, which happens when the client stopped reading. Closes the
+     * subscription and completes the emitter with an error, which closes the connection, and
+     * interrupts the sender thread so that it stops waiting for the client to read.
+     */
+    private void sendTimedOut() {
+        synchronized (this) {
+            if (sendingThread == null) return;
+            sendingThread.interrupt();
+            sendingThread = null;
+        }
+        logger.info("Sending {} event took longer than {} msec so closing subscription.", eventName, sendTimeoutMsec);
+        close();
+        emitter.completeWithError(new TimeoutException("Sending " + eventName + " event timed out"));
+    }
+
+    /** Ends the subscription. Can be called multiple times. */
+    void close() {
+        if (!closed.compareAndSet(false, true)) return;
+
+        synchronized (this) {
+            pendingKeys.clear();
+            if (droppedKeys > 0) {
+                logger.info("Subscriber for {} events dropped {} updates because it was too slow.", eventName, droppedKeys);
+            }
+        }
+        onClose.run();
+    }
+}
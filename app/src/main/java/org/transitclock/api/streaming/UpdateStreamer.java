@@ -0,0 +1,278 @@
+/* (C)2023 */
+package org.transitclock.api.streaming;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Function;
+
+import org.transitclock.api.data.ApiPredictionsResponse;
+import org.transitclock.api.data.ApiVehiclesResponse;
+import org.transitclock.core.dataCache.PredictionDataCache;
+import org.transitclock.core.dataCache.PredictionDataCacheListener;
+import org.transitclock.core.dataCache.VehicleDataCache;
+import org.transitclock.core.dataCache.VehicleDataCacheListener;
+import org.transitclock.domain.structs.Route;
+import org.transitclock.domain.structs.Stop;
+import org.transitclock.gtfs.DbConfig;
+import org.transitclock.properties.ApiProperties;
+import org.transitclock.service.contract.PredictionsService;
+import org.transitclock.service.contract.PredictionsService.RouteStop;
+import org.transitclock.service.contract.VehiclesService;
+import org.transitclock.service.dto.IpcPrediction;
+import org.transitclock.service.dto.IpcVehicle;
+import org.transitclock.service.dto.IpcVehicleComplete;
+import org.transitclock.utils.threading.NamedThreadFactory;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Pushes vehicle and prediction updates to clients using server-sent events. Instead of clients
+ * polling the vehicles and predictions commands, each change to the VehicleDataCache or the
+ * PredictionDataCache is fanned out to the subscribers whose route/stop filters match it.
+ *
+ * <p>The listeners only record which vehicles or route/stops changed for each matching subscriber.
+ * The actual events are created and written by a small pool of sender threads so that slow clients
+ * never block AVL processing. A client that stops reading is disconnected once sending to it takes
+ * longer than transitclock.api.streamSendTimeoutMsec so it can't tie up a sender thread.
+ */
+@Slf4j
+@Component
+public class UpdateStreamer implements VehicleDataCacheListener, PredictionDataCacheListener {
+    // Separates the route and the stop in prediction keys. Same as for the
+    // "rs" parameter of the predictions command.
+    private static final String ROUTE_STOP_SEPARATOR = "|";
+
+    private final Set<VehicleSubscription> vehicleSubscriptions = ConcurrentHashMap.newKeySet();
+    private final Set<PredictionSubscription> predictionSubscriptions = ConcurrentHashMap.newKeySet();
+
+    private final VehicleDataCache vehicleDataCache;
+    private final PredictionDataCache predictionDataCache;
+    private final VehiclesService vehiclesService;
+    private final PredictionsService predictionsService;
+    private final DbConfig dbConfig;
+    private final ApiProperties apiProperties;
+    private final ExecutorService senderExecutor;
+    private final ScheduledExecutorService sendTimeoutExecutor;
+
+    private record VehicleSubscription(StreamSubscriber subscriber, Set<String> routeShortNames, Set<String> vehicleIds) {
+        boolean matches(IpcVehicle vehicle) {
+            if (routeShortNames.isEmpty() && vehicleIds.isEmpty()) return true;
+            return vehicleIds.contains(vehicle.getId()) || routeShortNames.contains(vehicle.getRouteShortName());
+        }
+    }
+
+    private record PredictionSubscription(StreamSubscriber subscriber, Set<String> routeStopKeys) {}
+
+    public UpdateStreamer(VehicleDataCache vehicleDataCache,
+                          PredictionDataCache predictionDataCache,
+                          VehiclesService vehiclesService,
+                          PredictionsService predictionsService,
+                          DbConfig dbConfig,
+                          ApiProperties apiProperties) {
+        this.vehicleDataCache = vehicleDataCache;
+        this.predictionDataCache = predictionDataCache;
+        this.vehiclesService = vehiclesService;
+        this.predictionsService = predictionsService;
+        this.dbConfig = dbConfig;
+        this.apiProperties = apiProperties;
+        this.senderExecutor = Executors.newFixedThreadPool(
+                apiProperties.getStreamSenderThreads(), new NamedThreadFactory("stream-sender"));
+        this.sendTimeoutExecutor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("stream-send-timeout"));
+
+        vehicleDataCache.addListener(this);
+        predictionDataCache.addListener(this);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        vehicleDataCache.removeListener(this);
+        predictionDataCache.removeListener(this);
+        senderExecutor.shutdownNow();
+        sendTimeoutExecutor.shutdownNow();
+    }
+
+    /**
+     * Subscribes to vehicle updates. If no routes nor vehicles are specified then updates for all
+     * vehicles are sent. Each event has the same content as the vehicles command, but only for the
+     * vehicles that changed since the previous event.
+     *
+     * @param routeIdsOrShortNames routes to get vehicle updates for
+     * @param vehicleIds vehicles to get updates for
+     * @return the emitter for the new subscription
+     */
+    public SseEmitter subscribeVehicles(Collection<String> routeIdsOrShortNames, Collection<String> vehicleIds) {
+        SseEmitter emitter = createEmitter();
+        Set<String> routeShortNames = new HashSet<>();
+        for (String routeIdOrShortName : routeIdsOrShortNames) {
+            if (!routeIdOrShortName.isBlank()) routeShortNames.add(toRouteShortName(routeIdOrShortName));
+        }
+        Set<String> vehicleIdSet = new HashSet<>();
+        for (String vehicleId : vehicleIds) {
+            if (!vehicleId.isBlank()) vehicleIdSet.add(vehicleId);
+        }
+
+        StreamSubscriber subscriber = createSubscriber(
+                emitter, "vehicles", keys -> new ApiVehiclesResponse(vehiclesService.get(keys)));
+        VehicleSubscription subscription = new VehicleSubscription(subscriber, routeShortNames, vehicleIdSet);
+        subscriber.onClose(() -> vehicleSubscriptions.remove(subscription));
+        vehicleSubscriptions.add(subscription);
+
+        // Start off by sending the current state of the matching vehicles
+        for (IpcVehicle vehicle : vehicleDataCache.getVehicles()) {
+            if (subscription.matches(vehicle)) subscriber.offer(vehicle.getId());
+        }
+
+        return emitter;
+    }
+
+    /**
+     * Subscribes to prediction updates for route/stops. Each event has the same content as the
+     * predictions command, but only for the route/stops whose predictions changed since the
+     * previous event.
+     *
+     * @param routeStopStrs route/stops specified as "route|stop". If only a stop is specified then
+     *     updates are sent for all routes of the stop.
+     * @param stopStrs stops to get updates for all routes of
+     * @param numberPredictions max number of predictions per route/stop/destination
+     * @return the emitter for the new subscription
+     */
+    public SseEmitter subscribePredictions(
+            Collection<String> routeStopStrs, Collection<String> stopStrs, int numberPredictions) {
+        SseEmitter emitter = createEmitter();
+        Set<String> routeStopKeys = new HashSet<>();
+        for (String routeStopStr : routeStopStrs) {
+            String[] routeStopParams = routeStopStr.split("\\|");
+            if (routeStopParams.length == 1) {
+                routeStopKeys.add(routeStopKey(null, toStopId(routeStopParams[0])));
+            } else {
+                routeStopKeys.add(routeStopKey(toRouteShortName(routeStopParams[0]), toStopId(routeStopParams[1])));
+            }
+        }
+        for (String stopStr : stopStrs) {
+            routeStopKeys.add(routeStopKey(null, toStopId(stopStr)));
+        }
+
+        StreamSubscriber subscriber = createSubscriber(
+                emitter,
+                "predictions",
+                keys -> new ApiPredictionsResponse(predictionsService.get(toRouteStops(keys), numberPredictions)));
+        PredictionSubscription subscription = new PredictionSubscription(subscriber, routeStopKeys);
+        subscriber.onClose(() -> predictionSubscriptions.remove(subscription));
+        predictionSubscriptions.add(subscription);
+
+        // Start off by sending the current predictions
+        for (String key : routeStopKeys) {
+            subscriber.offer(key);
+        }
+
+        return emitter;
+    }
+
+    @Override
+    public void vehicleUpdated(IpcVehicleComplete vehicle) {
+        for (VehicleSubscription subscription : vehicleSubscriptions) {
+            if (subscription.matches(vehicle)) subscription.subscriber().offer(vehicle.getId());
+        }
+    }
+
+    @Override
+    public void predictionsUpdated(
+            List<IpcPrediction> oldPredictionsForVehicle, List<IpcPrediction> newPredictionsForVehicle) {
+        if (predictionSubscriptions.isEmpty()) return;
+
+        // Determine the route/stops that changed. Old predictions are
+        // included so that clients find out about removed predictions.
+        Set<String> changedRouteStops = new HashSet<>();
+        addRouteStops(oldPredictionsForVehicle, changedRouteStops);
+        addRouteStops(newPredictionsForVehicle, changedRouteStops);
+
+        for (PredictionSubscription subscription : predictionSubscriptions) {
+            Set<String> routeStopKeys = subscription.routeStopKeys();
+            for (String changedRouteStop : changedRouteStops) {
+                if (routeStopKeys.contains(changedRouteStop)) {
+                    subscription.subscriber().offer(changedRouteStop);
+                }
+                // Subscriptions for all routes of a stop use a key without a route
+                String stopOnlyKey = stopOnlyKey(changedRouteStop);
+                if (routeStopKeys.contains(stopOnlyKey)) {
+                    subscription.subscriber().offer(stopOnlyKey);
+                }
+            }
+        }
+    }
+
+    private SseEmitter createEmitter() {
+        return new SseEmitter(apiProperties.getStreamTimeoutSecs() * 1000L);
+    }
+
+    private StreamSubscriber createSubscriber(
+            SseEmitter emitter, String eventName, Function<List<String>, Object> eventDataCreator) {
+        return new StreamSubscriber(
+                emitter,
+                eventName,
+                eventDataCreator,
+                apiProperties.getStreamMaxPendingUpdates(),
+                senderExecutor,
+                sendTimeoutExecutor,
+                apiProperties.getStreamSendTimeoutMsec());
+    }
+
+    private static void addRouteStops(List<IpcPrediction> predictions, Set<String> routeStops) {
+        if (predictions == null) return;
+        for (IpcPrediction prediction : predictions) {
+            routeStops.add(routeStopKey(prediction.getRouteShortName(), prediction.getStopId()));
+        }
+    }
+
+    private static String routeStopKey(String routeShortName, String stopId) {
+        return (routeShortName == null ? "" : routeShortName) + ROUTE_STOP_SEPARATOR + stopId;
+    }
+
+    private static String stopOnlyKey(String routeStopKey) {
+        return routeStopKey.substring(routeStopKey.indexOf(ROUTE_STOP_SEPARATOR));
+    }
+
+    private static List<RouteStop> toRouteStops(List<String> keys) {
+        List<RouteStop> routeStops = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            int separator = key.indexOf(ROUTE_STOP_SEPARATOR);
+            String route = key.substring(0, separator);
+            routeStops.add(new RouteStop(route.isEmpty() ? null : route, key.substring(separator + 1)));
+        }
+        return routeStops;
+    }
+
+    /**
+     * Returns the route short name for a route ID or route short name so that it can be matched
+     * against the route short names of vehicles and predictions.
+     */
+    private String toRouteShortName(String routeIdOrShortName) {
+        Route route = dbConfig.getRouteById(routeIdOrShortName);
+        return route != null ? route.getShortName() : routeIdOrShortName;
+    }
+
+    /**
+     * Returns the stop ID for a stop ID or stop code so that it can be matched against the stop
+     * IDs of predictions.
+     */
+    private String toStopId(String stopIdOrCode) {
+        if (dbConfig.getStop(stopIdOrCode) != null) return stopIdOrCode;
+        try {
+            Stop stop = dbConfig.getStop(Integer.valueOf(stopIdOrCode));
+            if (stop != null) return stop.getId();
+        } catch (NumberFormatException e) {
+            // Not a stop code so just use it as is
+        }
+        return stopIdOrCode;
+    }
+}
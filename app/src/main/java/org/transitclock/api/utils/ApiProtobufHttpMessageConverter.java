@@ -0,0 +1,84 @@
+/* (C)2023 */
+package org.transitclock.api.utils;
+
+import java.io.IOException;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Message;
+
+/**
+ * Writes the vehicles, vehiclesDetails and predictions API responses as application/x-protobuf
+ * when a client asks for it via the Accept header. The responses are first converted into the
+ * messages of transitclock-api.proto by ApiProtobufMapper.
+ *
+ * <p>Since the serialized size of a protobuf message is known up front each message is encoded
+ * into a per thread buffer that is reused for subsequent responses, and then written to the
+ * response in a single call. Buffers that had to grow for an unusually large response are not
+ * kept so that a single large response doesn't hold on to memory for each servlet thread.
+ */
+public class ApiProtobufHttpMessageConverter extends AbstractHttpMessageConverter<Object> {
+
+    // Large enough for the vehicles or predictions of a typical agency
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    // Buffers larger than this are not reused
+    private static final int MAX_RETAINED_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    private static final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[INITIAL_BUFFER_SIZE]);
+
+    public ApiProtobufHttpMessageConverter() {
+        super(MediaType.APPLICATION_PROTOBUF);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return ApiProtobufMapper.supports(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        // Only used for writing responses
+        return false;
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage)
+            throws IOException, HttpMessageNotReadableException {
+        throw new HttpMessageNotReadableException("Reading protobuf API objects is not supported", inputMessage);
+    }
+
+    @Override
+    protected Long getContentLength(Object object, MediaType contentType) {
+        // Determined when writing since the message is only created then
+        return null;
+    }
+
+    @Override
+    protected void writeInternal(Object object, HttpOutputMessage outputMessage)
+            throws IOException, HttpMessageNotWritableException {
+        Message message = ApiProtobufMapper.toMessage(object);
+        int size = message.getSerializedSize();
+
+        byte[] buffer = buffers.get();
+        if (buffer.length < size) {
+            buffer = new byte[Math.max(size, buffer.length * 2)];
+            if (buffer.length <= MAX_RETAINED_BUFFER_SIZE) {
+                buffers.set(buffer);
+            }
+        }
+
+        CodedOutputStream codedOutput = CodedOutputStream.newInstance(buffer, 0, size);
+        message.writeTo(codedOutput);
+        codedOutput.checkNoSpaceLeft();
+
+        outputMessage.getHeaders().setContentLength(size);
+        outputMessage.getBody().write(buffer, 0, size);
+    }
+}
@@ -0,0 +1,225 @@
+/* (C)2023 */
+package org.transitclock.api.utils;
+
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.transitclock.api.data.ApiGpsLocation;
+import org.transitclock.api.data.ApiHoldingTime;
+import org.transitclock.api.data.ApiPrediction;
+import org.transitclock.api.data.ApiPredictionDestination;
+import org.transitclock.api.data.ApiPredictionRouteStop;
+import org.transitclock.api.data.ApiPredictionsResponse;
+import org.transitclock.api.data.ApiVehicleAbstract;
+import org.transitclock.api.data.ApiVehicleDetails;
+import org.transitclock.api.data.ApiVehiclesDetailsResponse;
+import org.transitclock.api.data.ApiVehiclesResponse;
+import org.transitclock.api.proto.TransitclockApi;
+
+import com.google.protobuf.Message;
+
+/**
+ * Converts the API response objects for the vehicles, vehiclesDetails and predictions commands into
+ * the protobuf messages defined in transitclock-api.proto. The messages contain the same data as
+ * the JSON output, but are much smaller and much cheaper for clients to parse.
+ *
+ * <p>Protobuf builders don't accept nulls, so null members of the API objects are simply not set,
+ * the same way that Jackson doesn't output them.
+ */
+public class ApiProtobufMapper {
+
+    private ApiProtobufMapper() {}
+
+    /**
+     * Returns whether the API object can be converted into a protobuf message.
+     *
+     * @param clazz class of the API object
+     * @return true if toMessage() supports the class
+     */
+    public static boolean supports(Class<?> clazz) {
+        return ApiVehiclesResponse.class.isAssignableFrom(clazz)
+                || ApiVehiclesDetailsResponse.class.isAssignableFrom(clazz)
+                || ApiPredictionsResponse.class.isAssignableFrom(clazz);
+    }
+
+    /**
+     * Converts an API response object into the corresponding protobuf message.
+     *
+     * @param apiObject an ApiVehiclesResponse, ApiVehiclesDetailsResponse or ApiPredictionsResponse
+     * @return the protobuf message
+     * @throws IllegalArgumentException if the object is not of a supported class
+     */
+    public static Message toMessage(Object apiObject) {
+        if (apiObject instanceof ApiVehiclesResponse vehicles) return toMessage(vehicles);
+        if (apiObject instanceof ApiVehiclesDetailsResponse vehiclesDetails) return toMessage(vehiclesDetails);
+        if (apiObject instanceof ApiPredictionsResponse predictions) return toMessage(predictions);
+        throw new IllegalArgumentException("Cannot convert " + apiObject.getClass().getName() + " to protobuf");
+    }
+
+    public static TransitclockApi.VehiclesResponse toMessage(ApiVehiclesResponse response) {
+        TransitclockApi.VehiclesResponse.Builder builder = TransitclockApi.VehiclesResponse.newBuilder();
+        if (response.getData() != null) {
+            for (ApiVehicleAbstract vehicle : response.getData()) {
+                builder.addData(toVehicle(vehicle));
+            }
+        }
+        return builder.build();
+    }
+
+    public static TransitclockApi.VehiclesDetailsResponse toMessage(ApiVehiclesDetailsResponse response) {
+        TransitclockApi.VehiclesDetailsResponse.Builder builder =
+                TransitclockApi.VehiclesDetailsResponse.newBuilder();
+        if (response.getData() != null) {
+            for (ApiVehicleDetails vehicle : response.getData()) {
+                builder.addData(toVehicleDetails(vehicle));
+            }
+        }
+        return builder.build();
+    }
+
+    public static TransitclockApi.PredictionsResponse toMessage(ApiPredictionsResponse response) {
+        TransitclockApi.PredictionsResponse.Builder builder = TransitclockApi.PredictionsResponse.newBuilder();
+        setIfNotNull(response.getAgencyId(), builder::setAgencyId);
+        setIfNotNull(response.getAgencyName(), builder::setAgencyName);
+        if (response.getData() != null) {
+            for (ApiPredictionRouteStop routeStop : response.getData()) {
+                builder.addData(toPredictionRouteStop(routeStop));
+            }
+        }
+        return builder.build();
+    }
+
+    private static TransitclockApi.Vehicle toVehicle(ApiVehicleAbstract vehicle) {
+        TransitclockApi.Vehicle.Builder builder = TransitclockApi.Vehicle.newBuilder();
+        builder.setId(vehicle.getId() != null ? vehicle.getId() : "");
+        ApiGpsLocation loc = vehicle.getLoc();
+        if (loc != null) {
+            TransitclockApi.GpsLocation.Builder locBuilder = TransitclockApi.GpsLocation.newBuilder()
+                    .setLat(loc.getLat())
+                    .setLon(loc.getLon())
+                    .setTime(loc.getTime());
+            setIfNotNull(loc.getSpeed(), locBuilder::setSpeed);
+            setIfNotNull(loc.getHeading(), locBuilder::setHeading);
+            builder.setLoc(locBuilder);
+        }
+        setIfNotNull(vehicle.getRouteId(), builder::setRouteId);
+        setIfNotNull(vehicle.getRouteShortName(), builder::setRouteShortName);
+        setIfNotNull(vehicle.getHeadsign(), builder::setHeadsign);
+        setIfNotNull(vehicle.getDirectionId(), builder::setDirection);
+        setIfNotNull(vehicle.getVehicleType(), builder::setVehicleType);
+        setIfNotNull(vehicle.getUiType(), builder::setUiType);
+        setIfNotNull(vehicle.getSchedBasedPreds(), builder::setScheduleBased);
+        return builder.build();
+    }
+
+    private static TransitclockApi.VehicleDetails toVehicleDetails(ApiVehicleDetails vehicle) {
+        TransitclockApi.VehicleDetails.Builder builder =
+                TransitclockApi.VehicleDetails.newBuilder().setVehicle(toVehicle(vehicle));
+        setIfNotNull(vehicle.getRouteName(), builder::setRouteName);
+        setIfNotNull(vehicle.getVehicleName(), builder::setVehicleName);
+        setIfNotNull(vehicle.getScheduleAdherence(), builder::setSchAdh);
+        setIfNotNull(vehicle.getScheduleAdherenceStr(), builder::setSchAdhStr);
+        setIfNotNull(vehicle.getBlockId(), builder::setBlock);
+        if (vehicle.getBlockAssignmentMethod() != null) {
+            builder.setBlockMthd(vehicle.getBlockAssignmentMethod().name());
+        }
+        setIfNotNull(vehicle.getTripId(), builder::setTrip);
+        setIfNotNull(vehicle.getTripPatternId(), builder::setTripPattern);
+        setIfNotNull(vehicle.getIsDelayed(), builder::setDelayed);
+        setIfNotNull(vehicle.getIsLayover(), builder::setLayover);
+        setIfNotNull(vehicle.getLayoverDepTime(), builder::setLayoverDepTime);
+        setIfNotNull(vehicle.getLayoverDepTimeStr(), builder::setLayoverDepTimeStr);
+        setIfNotNull(vehicle.getNextStopId(), builder::setNextStopId);
+        setIfNotNull(vehicle.getNextStopName(), builder::setNextStopName);
+        setIfNotNull(vehicle.getDriverId(), builder::setDriver);
+        setIfNotNull(vehicle.getIsScheduledService(), builder::setIsScheduledService);
+        setIfNotNull(vehicle.getFreqStartTime(), builder::setFreqStartTime);
+        setIfNotNull(vehicle.getIsAtStop(), builder::setIsAtStop);
+        if (vehicle.getHoldingTime() != null) {
+            builder.setHoldingTime(toHoldingTime(vehicle.getHoldingTime()));
+        }
+        builder.setDistanceAlongTrip(vehicle.getDistanceAlongTrip());
+        setIfNotNull(vehicle.getLicensePlate(), builder::setLicensePlate);
+        builder.setIsCanceled(vehicle.isCanceled());
+        builder.setHeadway(vehicle.getHeadway());
+        return builder.build();
+    }
+
+    private static TransitclockApi.HoldingTime toHoldingTime(ApiHoldingTime holdingTime) {
+        TransitclockApi.HoldingTime.Builder builder = TransitclockApi.HoldingTime.newBuilder();
+        setIfNotNull(toMsec(holdingTime.getHoldingTime()), builder::setHoldingTimeMsec);
+        setIfNotNull(toMsec(holdingTime.getCreationTime()), builder::setCreationTimeMsec);
+        setIfNotNull(toMsec(holdingTime.getCurrentTime()), builder::setCurrentTimeMsec);
+        setIfNotNull(toMsec(holdingTime.getArrivalTime()), builder::setArrivalTimeMsec);
+        setIfNotNull(holdingTime.getVehicleId(), builder::setVehicleId);
+        setIfNotNull(holdingTime.getStopId(), builder::setStopId);
+        setIfNotNull(holdingTime.getTripId(), builder::setTripId);
+        setIfNotNull(holdingTime.getRouteId(), builder::setRouteId);
+        return builder.setArrivalPredictionUsed(holdingTime.isArrivalPredictionUsed())
+                .setArrivalUsed(holdingTime.isArrivalUsed())
+                .setHasN1(holdingTime.isHasN1())
+                .setHasN2(holdingTime.isHasN2())
+                .setHasD1(holdingTime.isHasD1())
+                .setNumberPredictionsUsed(holdingTime.getNumberPredictionsUsed())
+                .build();
+    }
+
+    private static TransitclockApi.PredictionRouteStop toPredictionRouteStop(ApiPredictionRouteStop routeStop) {
+        TransitclockApi.PredictionRouteStop.Builder builder = TransitclockApi.PredictionRouteStop.newBuilder();
+        setIfNotNull(routeStop.getRouteShortName(), builder::setRouteShortName);
+        setIfNotNull(routeStop.getRouteName(), builder::setRouteName);
+        setIfNotNull(routeStop.getRouteId(), builder::setRouteId);
+        setIfNotNull(routeStop.getStopId(), builder::setStopId);
+        setIfNotNull(routeStop.getStopName(), builder::setStopName);
+        setIfNotNull(routeStop.getStopCode(), builder::setStopCode);
+        setIfNotNull(routeStop.getDistanceToStop(), builder::setDistanceToStop);
+        List<ApiPredictionDestination> destinations = routeStop.getDestinations();
+        if (destinations != null) {
+            for (ApiPredictionDestination destination : destinations) {
+                TransitclockApi.PredictionDestination.Builder destinationBuilder =
+                        TransitclockApi.PredictionDestination.newBuilder();
+                setIfNotNull(destination.getDirectionId(), destinationBuilder::setDirectionId);
+                setIfNotNull(destination.getHeadsign(), destinationBuilder::setHeadsign);
+                for (ApiPrediction prediction : destination.getPredictions()) {
+                    destinationBuilder.addPredictions(toPrediction(prediction));
+                }
+                builder.addDestinations(destinationBuilder);
+            }
+        }
+        return builder.build();
+    }
+
+    private static TransitclockApi.Prediction toPrediction(ApiPrediction prediction) {
+        TransitclockApi.Prediction.Builder builder = TransitclockApi.Prediction.newBuilder()
+                .setTime(prediction.getTime())
+                .setSec(prediction.getSeconds())
+                .setMin(prediction.getMinutes());
+        setIfNotNull(prediction.getSchedBasedPreds(), builder::setScheduleBased);
+        setIfNotNull(prediction.getIsDeparture(), builder::setDeparture);
+        setIfNotNull(prediction.getTripId(), builder::setTrip);
+        setIfNotNull(prediction.getBlockId(), builder::setBlockId);
+        setIfNotNull(prediction.getTripPatternId(), builder::setTripPattern);
+        setIfNotNull(prediction.getVehicleId(), builder::setVehicle);
+        setIfNotNull(prediction.getIsAtEndOfTrip(), builder::setAtEndOfTrip);
+        setIfNotNull(prediction.getIsDelayed(), builder::setDelayed);
+        setIfNotNull(
+                prediction.getIsLateAndSubsequentTripSoMarkAsUncertain(),
+                builder::setLateAndSubsequentTripSoMarkAsUncertain);
+        setIfNotNull(prediction.getBasedOnScheduledDeparture(), builder::setNotYetDeparted);
+        // Passenger count is a String in the API object so that it is only
+        // output when valid
+        if (prediction.getPassengerCount() != null) {
+            builder.setPassengerCount(Integer.parseInt(prediction.getPassengerCount()));
+        }
+        return builder.build();
+    }
+
+    private static Long toMsec(Date date) {
+        return date != null ? date.getTime() : null;
+    }
+
+    private static <T> void setIfNotNull(T value, Consumer<T> setter) {
+        if (value != null) setter.accept(value);
+    }
+}
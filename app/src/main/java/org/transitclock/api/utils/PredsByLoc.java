@@ -53,6 +53,7 @@ public class PredsByLoc {
                 agencyExtentsCache.put(webAgency.getAgencyId(), agency.getExtent());
             }
         }
+        cacheUpdatedTime = System.currentTimeMillis();
 
         // Return the update cache
         return agencyExtentsCache;
@@ -0,0 +1,208 @@
+/* (C)2023 */
+package org.transitclock.api.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+import org.transitclock.gtfs.DbConfig;
+import org.transitclock.properties.ApiProperties;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+/**
+ * Caches the serialized responses of the commands that only return schedule data, such as routes,
+ * stops, blocks, trips, schedules and calendars. That data only changes when a new config revision
+ * is put into service, so the responses are cached per config revision and the whole cache is
+ * flushed when the revision changes.
+ *
+ * <p>The cache key is the path plus the sorted query parameters, along with the Accept and Origin
+ * headers since those determine the format of the response and the CORS headers. Both the plain
+ * and the gzipped bytes are stored. Responses get an ETag based on the config revision and the
+ * content so that clients can revalidate with If-None-Match and get a 304 back.
+ */
+@Slf4j
+@Component
+public class ScheduleResponseCacheFilter extends OncePerRequestFilter {
+
+    private static final Pattern CACHED_COMMANDS = Pattern.compile(
+            "/api/v1/agency/[^/]+/command/(routes|routesDetails|stops|blocks|blocksTerse|trip|tripPatterns"
+                    + "|scheduleVertStops|scheduleHorizStops|allCalendars)");
+
+    // Don't bother compressing tiny responses
+    private static final int MIN_GZIP_SIZE = 512;
+
+    private final DbConfig dbConfig;
+    private final ApiProperties apiProperties;
+
+    private volatile RevisionCache revisionCache = new RevisionCache(-1, new ConcurrentHashMap<>());
+
+    private record RevisionCache(int configRev, Map<String, CachedResponse> responses) {}
+
+    private record CachedResponse(
+            byte[] body, byte[] gzippedBody, String contentType, String etag, Map<String, String> corsHeaders) {}
+
+    public ScheduleResponseCacheFilter(DbConfig dbConfig, ApiProperties apiProperties) {
+        this.dbConfig = dbConfig;
+        this.apiProperties = apiProperties;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (!"GET".equals(request.getMethod())) return true;
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !CACHED_COMMANDS.matcher(path).matches();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        RevisionCache cache = getRevisionCache();
+        String key = cacheKey(request);
+
+        CachedResponse cached = cache.responses().get(key);
+        if (cached != null) {
+            writeCachedResponse(cached, request, response);
+            return;
+        }
+
+        ContentCachingResponseWrapper responseWrapper = new ContentCachingResponseWrapper(response);
+        filterChain.doFilter(request, responseWrapper);
+
+        if (responseWrapper.getStatus() != HttpServletResponse.SC_OK
+                || cache.responses().size() >= apiProperties.getScheduleCacheMaxEntries()) {
+            responseWrapper.copyBodyToResponse();
+            return;
+        }
+
+        byte[] body = responseWrapper.getContentAsByteArray();
+        cached = new CachedResponse(
+                body,
+                body.length >= MIN_GZIP_SIZE ? gzip(body) : null,
+                responseWrapper.getContentType(),
+                etag(cache.configRev(), body),
+                corsHeaders(response));
+        cache.responses().put(key, cached);
+
+        // Write the response the same way as for a cache hit so that it gets
+        // the caching headers and is gzipped if the client supports it
+        responseWrapper.resetBuffer();
+        writeCachedResponse(cached, request, response);
+    }
+
+    /**
+     * Returns the cache for the current config revision. If the revision changed then the old
+     * responses are dropped.
+     */
+    private RevisionCache getRevisionCache() {
+        int configRev = dbConfig.getConfigRev();
+        RevisionCache cache = revisionCache;
+        if (cache.configRev() != configRev) {
+            synchronized (this) {
+                cache = revisionCache;
+                if (cache.configRev() != configRev) {
+                    logger.info("Config revision changed to {} so flushing {} cached schedule responses.",
+                            configRev, cache.responses().size());
+                    cache = new RevisionCache(configRev, new ConcurrentHashMap<>());
+                    revisionCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    private void writeCachedResponse(CachedResponse cached, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        cached.corsHeaders().forEach(response::setHeader);
+        response.setHeader(HttpHeaders.ETAG, cached.etag());
+        response.setHeader(HttpHeaders.CACHE_CONTROL,
+                "public, max-age=" + apiProperties.getScheduleCacheMaxAgeSecs() + ", immutable");
+        response.setHeader(HttpHeaders.VARY, "Accept, Accept-Encoding, Origin");
+
+        if (etagMatches(request.getHeader(HttpHeaders.IF_NONE_MATCH), cached.etag())) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        byte[] body = cached.body();
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (cached.gzippedBody() != null && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            body = cached.gzippedBody();
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        if (cached.contentType() != null) response.setContentType(cached.contentType());
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    /**
+     * The key is the path, the query parameters sorted by name, and the headers that affect the
+     * response. Sorting the parameters means that the same request with the parameters in a
+     * different order is still a hit.
+     */
+    private static String cacheKey(HttpServletRequest request) {
+        StringBuilder key = new StringBuilder(request.getRequestURI());
+        for (Map.Entry<String, String[]> param : new TreeMap<>(request.getParameterMap()).entrySet()) {
+            key.append('&').append(param.getKey()).append('=').append(String.join(",", param.getValue()));
+        }
+        key.append('|').append(request.getHeader(HttpHeaders.ACCEPT));
+        key.append('|').append(request.getHeader(HttpHeaders.ORIGIN));
+        return key.toString();
+    }
+
+    /**
+     * The CORS headers depend only on the Origin of the request, which is part of the key, so they
+     * can be replayed for cache hits which never reach the DispatcherServlet.
+     */
+    private static Map<String, String> corsHeaders(HttpServletResponse response) {
+        Map<String, String> headers = new TreeMap<>();
+        for (String name : response.getHeaderNames()) {
+            if (name.regionMatches(true, 0, "Access-Control-", 0, "Access-Control-".length())) {
+                headers.put(name, response.getHeader(name));
+            }
+        }
+        return headers;
+    }
+
+    private static String etag(int configRev, byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return "W/\"" + configRev + "-" + Long.toHexString(crc.getValue()) + "\"";
+    }
+
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        // Weak comparison so the W/ prefix is ignored
+        String opaqueTag = etag.substring(2);
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) candidate = candidate.substring(2);
+            if (candidate.equals("*") || candidate.equals(opaqueTag)) return true;
+        }
+        return false;
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+            gzipOut.write(body);
+        }
+        byte[] gzipped = out.toByteArray();
+        return gzipped.length < body.length ? gzipped : null;
+    }
+}
@@ -5,12 +5,15 @@ import jakarta.annotation.PostConstruct;
 import java.net.URL;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.List;
 
 import org.transitclock.core.dataCache.DwellTimeModelCacheInterface;
 import org.transitclock.core.dataCache.StopArrivalDepartureCacheInterface;
 import org.transitclock.core.dataCache.TripDataHistoryCacheInterface;
 import org.transitclock.core.dataCache.frequency.FrequencyBasedHistoricalAverageCache;
 import org.transitclock.core.dataCache.scheduled.ScheduleBasedHistoricalAverageCache;
+import org.transitclock.core.dataCache.snapshot.ModelSnapshotManager;
+import org.transitclock.domain.hibernate.DbWorkload;
 import org.transitclock.domain.hibernate.HibernateUtils;
 import org.transitclock.properties.CoreProperties;
 import org.transitclock.utils.Time;
@@ -20,9 +23,12 @@ import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.time.DateUtils;
 import org.ehcache.CacheManager;
-import org.ehcache.config.builders.CacheManagerBuilder;
+import org.ehcache.core.EhcacheManager;
+import org.ehcache.core.spi.service.StatisticsService;
+import org.ehcache.core.internal.statistics.DefaultStatisticsService;
+import org.ehcache.spi.service.Service;
 import org.ehcache.xml.XmlConfiguration;
-import org.hibernate.Session;
+import org.hibernate.StatelessSession;
 import org.springframework.boot.context.event.ApplicationStartedEvent;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Bean;
@@ -39,7 +45,7 @@ public class CachingConfiguration {
         addShutdownHook("close-cache", () -> {
             try {
                 logger.info("Closing cache.");
-                cacheManager().close();
+                cacheManager(cacheStatisticsService()).close();
                 logger.info("Cache closed.");
             } catch (Exception e) {
                 logger.error("Cache close failed...", e);
@@ -47,8 +53,14 @@ public class CachingConfiguration {
         });
     }
 
+    /** Statistics of the Ehcache caches, such as how many entries are in each tier */
     @Bean
-    public CacheManager cacheManager() {
+    public StatisticsService cacheStatisticsService() {
+        return new DefaultStatisticsService();
+    }
+
+    @Bean
+    public CacheManager cacheManager(StatisticsService cacheStatisticsService) {
         URL xmlConfigUrl = CachingConfiguration.class
             .getClassLoader()
             .getResource("ehcache.xml");
@@ -57,7 +69,7 @@ public class CachingConfiguration {
         }
         XmlConfiguration xmlConfig = new XmlConfiguration(xmlConfigUrl);
 
-        CacheManager cm = CacheManagerBuilder.newCacheManager(xmlConfig);
+        CacheManager cm = new EhcacheManager(xmlConfig, List.<Service>of(cacheStatisticsService));
         cm.init();
 
         return cm;
@@ -69,10 +81,11 @@ public class CachingConfiguration {
                                              TripDataHistoryCacheInterface tripDataHistoryCacheInterface,
                                              StopArrivalDepartureCacheInterface stopArrivalDepartureCacheInterface,
                                              DwellTimeModelCacheInterface dwellTimeModelCacheInterface,
+                                             ModelSnapshotManager modelSnapshotManager,
                                              CoreProperties coreProperties) {
         return new CacheInitializer(frequencyBasedHistoricalAverageCache,
             scheduleBasedHistoricalAverageCache, tripDataHistoryCacheInterface,
-            stopArrivalDepartureCacheInterface, dwellTimeModelCacheInterface, coreProperties);
+            stopArrivalDepartureCacheInterface, dwellTimeModelCacheInterface, modelSnapshotManager, coreProperties);
     }
 
     @RequiredArgsConstructor
@@ -82,12 +95,24 @@ public class CachingConfiguration {
         private final TripDataHistoryCacheInterface tripDataHistoryCacheInterface;
         private final StopArrivalDepartureCacheInterface stopArrivalDepartureCacheInterface;
         private final DwellTimeModelCacheInterface dwellTimeModelCacheInterface;
+        private final ModelSnapshotManager modelSnapshotManager;
         private final CoreProperties coreProperties;
 
         @SneakyThrows
         @Override
         public void onApplicationEvent(ApplicationStartedEvent event) {
-            Session session = HibernateUtils.getSession();
+            // Warming up the caches reads a lot of history so it uses the
+            // batch connection pool instead of the one the API uses. The
+            // session is stateless so that the history is streamed through
+            // instead of being kept by the session.
+            try (StatelessSession session = HibernateUtils.getStatelessSession(DbWorkload.BATCH)) {
+                populateCaches(session);
+            }
+
+            modelSnapshotManager.cachesPopulated();
+        }
+
+        private void populateCaches(StatelessSession session) throws Exception {
             Date endDate = Calendar.getInstance().getTime();
 
             String cacheReloadStartTimeStr = coreProperties.getCacheReloadStartTimeStr();
@@ -149,6 +174,11 @@ public class CachingConfiguration {
             }
             */
             } else {
+                // With a snapshot the models only need the arrivals/departures since it was taken.
+                // A snapshot from before the period that is populated anyway isn't used.
+                Date watermark = modelSnapshotManager.loadSnapshot(
+                        DateUtils.addDays(endDate, -coreProperties.getCache().getDaysPopulateHistoricalCache()));
+
                 for (int i = 0; i < coreProperties.getCache().getDaysPopulateHistoricalCache(); i++) {
                     Date startDate = DateUtils.addDays(endDate, -1);
 
@@ -157,7 +187,7 @@ public class CachingConfiguration {
                         tripDataHistoryCacheInterface.populateCacheFromDb(session, startDate, endDate);
                     }
 
-                    if (frequencyBasedHistoricalAverageCache != null) {
+                    if (frequencyBasedHistoricalAverageCache != null && watermark == null) {
                         logger.debug(
                             "Populating FrequencyBasedHistoricalAverageCache cache for period {} to" + " {}",
                             startDate,
@@ -185,7 +215,7 @@ public class CachingConfiguration {
                 for (int i = 0; i < coreProperties.getCache().getDaysPopulateHistoricalCache(); i++) {
                     Date startDate = DateUtils.addDays(endDate, -1);
 
-                    if (scheduleBasedHistoricalAverageCache != null) {
+                    if (scheduleBasedHistoricalAverageCache != null && watermark == null) {
                         logger.debug(
                             "Populating ScheduleBasedHistoricalAverageCache cache for period {} to" + " {}",
                             startDate,
@@ -195,6 +225,38 @@ public class CachingConfiguration {
 
                     endDate = startDate;
                 }
+
+                if (watermark != null) {
+                    replaySinceSnapshot(session, watermark);
+                }
+            }
+        }
+
+        /**
+         * Replays the arrivals/departures since the snapshot was taken into the models, a day at a
+         * time. The watermark is within daysPopulateHistoricalCache, see loadSnapshot(), so the trip
+         * and stop histories that the models use to find the previous event are already populated.
+         */
+        private void replaySinceSnapshot(StatelessSession session, Date watermark) throws Exception {
+            Date now = Calendar.getInstance().getTime();
+
+            Date startDate = watermark;
+            while (startDate.before(now)) {
+                Date endDate = DateUtils.addDays(startDate, 1);
+                if (endDate.after(now)) endDate = now;
+
+                logger.debug("Replaying period {} to {} into the prediction models", startDate, endDate);
+                if (frequencyBasedHistoricalAverageCache != null) {
+                    frequencyBasedHistoricalAverageCache.populateCacheFromDb(session, startDate, endDate);
+                }
+                if (scheduleBasedHistoricalAverageCache != null) {
+                    scheduleBasedHistoricalAverageCache.populateCacheFromDb(session, startDate, endDate);
+                }
+                if (dwellTimeModelCacheInterface != null) {
+                    dwellTimeModelCacheInterface.populateCacheFromDb(session, startDate, endDate);
+                }
+
+                startDate = endDate;
             }
         }
     }
@@ -1,6 +1,7 @@
 package org.transitclock.config;
 
 import jakarta.annotation.PostConstruct;
+import java.util.Set;
 import java.util.TimeZone;
 
 import org.transitclock.core.ServiceUtils;
@@ -14,6 +15,7 @@ import org.transitclock.properties.CoreProperties;
 import org.transitclock.properties.ServiceProperties;
 import org.transitclock.utils.Time;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.flywaydb.core.Flyway;
 import org.springframework.beans.factory.annotation.Value;
@@ -26,9 +28,13 @@ import org.springframework.context.annotation.Configuration;
 public class DatabaseConfiguration {
     private final DataSourceProperties dataSourceProperties;
 
-    public DatabaseConfiguration(DataSourceProperties dataSourceProperties) {
+    public DatabaseConfiguration(DataSourceProperties dataSourceProperties,
+                                 CoreProperties coreProperties,
+                                 MeterRegistry meterRegistry) {
         this.dataSourceProperties = dataSourceProperties;
         HibernateUtils.registerDatasourceProperties(dataSourceProperties);
+        HibernateUtils.registerDbPools(coreProperties.getDbPools(), meterRegistry);
+        HibernateUtils.registerSecondLevelCache(coreProperties.getCache().isSecondLevelCacheEnabled());
     }
 
 
@@ -103,6 +109,14 @@ public class DatabaseConfiguration {
         // This is strange since setting TimeZone.setDefault() is supposed
         // to work across all threads it appears that sometimes it wouldn't
         // work if Db logger started first.
-        return new DataDbLogger(agencyId, storeDataInDatabase, pauseIfDbQueueFilling, batchSize);
+        return new DataDbLogger(agencyId,
+                storeDataInDatabase,
+                pauseIfDbQueueFilling,
+                batchSize,
+                coreProperties.getDbWriterThreads(),
+                coreProperties.getDbQueueMaxWriters(),
+                coreProperties.getDbQueueTargetCommitMsec(),
+                Set.copyOf(coreProperties.getDbDurability().getGroupCommitTypes()),
+                coreProperties.getDbDurability().getGroupCommitWindowMsec());
     }
 }
@@ -1,6 +1,11 @@
 package org.transitclock.config;
 
+import java.util.List;
+
+import org.transitclock.api.utils.ApiProtobufHttpMessageConverter;
+
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
@@ -17,4 +22,10 @@ public class WebConfiguration implements WebMvcConfigurer {
                 .allowedHeaders("*")
                 .allowCredentials(true);
     }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        // So that the high volume commands can also be requested as application/x-protobuf
+        converters.add(new ApiProtobufHttpMessageConverter());
+    }
 }
\ No newline at end of file
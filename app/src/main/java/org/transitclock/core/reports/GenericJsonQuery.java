@@ -1,6 +1,10 @@
 /* (C)2023 */
 package org.transitclock.core.reports;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
@@ -12,13 +16,13 @@ import org.transitclock.domain.GenericQuery;
 @Slf4j
 public class GenericJsonQuery extends GenericQuery {
 
-    private final StringBuilder strBuilder;
+    private final Writer writer;
     private final List<String> columnNames;
     private boolean firstRow;
 
-    private GenericJsonQuery(String agencyId) throws SQLException {
+    private GenericJsonQuery(String agencyId, Writer writer) throws SQLException {
         super(agencyId);
-        strBuilder = new StringBuilder();
+        this.writer = writer;
         columnNames = new ArrayList<>();
         firstRow = true;
     }
@@ -29,30 +33,39 @@ public class GenericJsonQuery extends GenericQuery {
         columnNames.add(columnName);
     }
 
-    private void addRowElement(int i, double value) {
-        strBuilder.append(value);
+    private void addRowElement(int i, double value) throws IOException {
+        writer.append(String.valueOf(value));
     }
 
-    private void addRowElement(int i, long value) {
-        strBuilder.append(value);
+    private void addRowElement(int i, long value) throws IOException {
+        writer.append(String.valueOf(value));
     }
 
-    private void addRowElement(int i, String value) {
-        strBuilder.append("\"").append(value).append("\"");
+    private void addRowElement(int i, String value) throws IOException {
+        writer.append("\"").append(value).append("\"");
     }
 
-    private void addRowElement(int i, Timestamp value) {
-        strBuilder.append("\"").append(value).append("\"");
+    private void addRowElement(int i, Timestamp value) throws IOException {
+        writer.append("\"").append(String.valueOf(value)).append("\"");
     }
 
     @Override
     protected void addRow(List<Object> values) {
+        try {
+            writeRow(values);
+        } catch (IOException e) {
+            // Such as when the client went away while the rows were being written
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeRow(List<Object> values) throws IOException {
         if (!firstRow) {
-            strBuilder.append(",\n");
+            writer.append(",\n");
         }
         firstRow = false;
 
-        strBuilder.append('{');
+        writer.append('{');
 
         // Add each cell in the row
         boolean firstElementInRow = true;
@@ -61,11 +74,11 @@ public class GenericJsonQuery extends GenericQuery {
             // Can't output null attributes
             if (o == null) continue;
 
-            if (!firstElementInRow) strBuilder.append(",");
+            if (!firstElementInRow) writer.append(",");
             firstElementInRow = false;
 
             // Output name of attribute
-            strBuilder.append("\"").append(columnNames.get(i)).append("\":");
+            writer.append("\"").append(columnNames.get(i)).append("\":");
 
             // Output value of attribute
             if (o instanceof Double || o instanceof Float) {
@@ -79,28 +92,45 @@ public class GenericJsonQuery extends GenericQuery {
             }
         }
 
-        strBuilder.append('}');
+        writer.append('}');
     }
 
     /**
-     * Does SQL query and returns JSON formatted results.
+     * Does SQL query and writes JSON formatted results to the writer. The rows are written as they
+     * are read from the db, so the results are never all in memory and the first ones can be sent
+     * to the client while the rest are still being read.
      */
-    public static String getJsonString(String agencyId, String sql, Object... parameters) {
-        // Add the rows from the query to the JSON string
-        try {
-            GenericJsonQuery query = new GenericJsonQuery(agencyId);
+    public static void writeJson(Writer writer, String agencyId, String sql, Object... parameters)
+            throws SQLException, IOException {
+        GenericJsonQuery query = new GenericJsonQuery(agencyId, writer);
 
-            // Start the JSON
-            query.strBuilder.append("{\"data\": [\n");
+        // Start the JSON
+        writer.append("{\"data\": [\n");
 
+        try {
             query.doQuery(sql, parameters);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
 
-            // Finish up the JSON
-            query.strBuilder.append("]}");
+        // Finish up the JSON
+        writer.append("]}");
+    }
 
-            return query.strBuilder.toString();
+    /**
+     * Does SQL query and returns JSON formatted results.
+     */
+    public static String getJsonString(String agencyId, String sql, Object... parameters) {
+        // Add the rows from the query to the JSON string
+        StringWriter writer = new StringWriter();
+        try {
+            writeJson(writer, agencyId, sql, parameters);
+            return writer.toString();
         } catch (SQLException e) {
             return e.getMessage();
+        } catch (IOException e) {
+            // Can't happen when writing to a StringWriter
+            throw new UncheckedIOException(e);
         }
     }
 }
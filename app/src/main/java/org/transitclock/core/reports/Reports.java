@@ -1,6 +1,11 @@
 /* (C)2023 */
 package org.transitclock.core.reports;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.sql.SQLException;
 import java.text.ParseException;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -28,6 +33,28 @@ public class Reports {
      */
     public static String getAvlJson(
             String agencyId, String vehicleId, String beginDate, String numdays, String beginTime, String endTime) {
+        StringWriter writer = new StringWriter();
+        try {
+            writeAvlJson(writer, agencyId, vehicleId, beginDate, numdays, beginTime, endTime);
+        } catch (IOException e) {
+            // Can't happen when writing to a StringWriter
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Same as getAvlJson() but writes the JSON to the writer as the AVL reports are read from the
+     * db, so that they don't all have to be in memory and the first ones can be sent right away.
+     */
+    public static void writeAvlJson(
+            Writer writer,
+            String agencyId,
+            String vehicleId,
+            String beginDate,
+            String numdays,
+            String beginTime,
+            String endTime) throws IOException {
         // Determine the time portion of the SQL
         String timeSql = "";
         WebAgency agency = WebAgency.getCachedWebAgency(agencyId);
@@ -76,17 +103,19 @@ public class Reports {
 
         sql += "ORDER BY vehicle_id, time LIMIT " + MAX_ROWS;
 
-        String json = null;
+        java.util.Date startdate;
         try {
-            java.util.Date startdate = Time.parseDate(beginDate);
-
-            json = GenericJsonQuery.getJsonString(agencyId, sql, startdate, startdate);
-
+            startdate = Time.parseDate(beginDate);
         } catch (ParseException e) {
-            json = e.getMessage();
+            writer.write(e.getMessage());
+            return;
         }
 
-        return json;
+        try {
+            GenericJsonQuery.writeJson(writer, agencyId, sql, startdate, startdate);
+        } catch (SQLException e) {
+            writer.write(e.getMessage());
+        }
     }
 
     public static String getTripsFromArrivalAndDeparturesByDate(String agencyId, String date) {
@@ -94,7 +123,9 @@ public class Reports {
         String sql = "SELECT "
                 + "	arrivals_departures.trip_id as tripId "
                 + "FROM arrivals_departures "
-                + "WHERE Date(arrivals_departures.time) = DATE('" + date + "') "
+                // A range on time rather than Date(time) so that only the partition for the day is read
+                + "WHERE arrivals_departures.time >= DATE('" + date + "') "
+                + "AND arrivals_departures.time < DATE('" + date + "') + 1 "
                 + "GROUP BY arrivals_departures.trip_id";
 
         String json = null;
@@ -0,0 +1,14 @@
+ALTER TABLE export_table ADD COLUMN IF NOT EXISTS file_size BIGINT;
+ALTER TABLE export_table ADD COLUMN IF NOT EXISTS chunk_size INTEGER;
+
+CREATE TABLE IF NOT EXISTS export_chunks
+(
+    export_id   BIGINT  NOT NULL,
+    chunk_index INTEGER NOT NULL,
+    data        BYTEA   NOT NULL,
+    CONSTRAINT pk_export_chunks PRIMARY KEY (export_id, chunk_index),
+    CONSTRAINT fk_export_chunks_export_table FOREIGN KEY (export_id) REFERENCES export_table (id) ON DELETE CASCADE
+);
+
+-- The chunks are already gzipped so don't have them compressed again when stored out of line
+ALTER TABLE export_chunks ALTER COLUMN data SET STORAGE EXTERNAL;
@@ -0,0 +1,151 @@
+package org.transitclock.api.streaming;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StreamSubscriberTest {
+    private static final int SENDER_THREADS = 2;
+    private static final long SEND_MSEC = 5;
+    private static final long SEND_TIMEOUT_MSEC = 100;
+
+    private final ExecutorService senderExecutor = Executors.newFixedThreadPool(SENDER_THREADS);
+    private final ScheduledExecutorService timeoutExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicBoolean updating = new AtomicBoolean(true);
+
+    @AfterEach
+    void shutdown() {
+        updating.set(false);
+        senderExecutor.shutdownNow();
+        timeoutExecutor.shutdownNow();
+    }
+
+    @Test
+    void busySubscribersDontStarveOthers() throws Exception {
+        // Twice as many subscribers that always have another update by the time an event is sent
+        // as there are sender threads
+        for (int i = 0; i < 2 * SENDER_THREADS; ++i) {
+            CountingEmitter emitter = new CountingEmitter();
+            emitter.subscriber = subscriber(emitter);
+            emitter.subscriber.offer("busy");
+        }
+        Thread.sleep(50);
+
+        List<CountingEmitter> quietEmitters = new ArrayList<>();
+        for (int i = 0; i < 2 * SENDER_THREADS; ++i) {
+            CountingEmitter emitter = new CountingEmitter();
+            quietEmitters.add(emitter);
+            subscriber(emitter).offer("quiet");
+        }
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (quietEmitters.stream().anyMatch(e -> e.sent.get() == 0) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThat(quietEmitters).allSatisfy(e -> assertThat(e.sent.get()).isEqualTo(1));
+    }
+
+    @Test
+    void stalledSubscribersAreDisconnected() throws Exception {
+        // As many clients that stopped reading as there are sender threads
+        List<StalledEmitter> stalledEmitters = new ArrayList<>();
+        AtomicInteger closed = new AtomicInteger();
+        for (int i = 0; i < SENDER_THREADS; ++i) {
+            StalledEmitter emitter = new StalledEmitter();
+            stalledEmitters.add(emitter);
+            StreamSubscriber subscriber = subscriber(emitter);
+            subscriber.onClose(closed::incrementAndGet);
+            subscriber.offer("stalled");
+        }
+        Thread.sleep(20);
+
+        CountingEmitter quietEmitter = new CountingEmitter();
+        subscriber(quietEmitter).offer("quiet");
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (quietEmitter.sent.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThat(quietEmitter.sent.get()).isEqualTo(1);
+        // The sender thread it ran on was interrupted to end the stalled send, which must not carry over
+        assertThat(quietEmitter.interrupted).isFalse();
+        assertThat(closed.get()).isEqualTo(SENDER_THREADS);
+        assertThat(stalledEmitters).allSatisfy(e -> assertThat(e.completedWith).isInstanceOf(TimeoutException.class));
+    }
+
+    @Test
+    void onCloseRunsRightAwayForClosedSubscription() {
+        StreamSubscriber subscriber = subscriber(new CountingEmitter());
+        subscriber.close();
+
+        AtomicBoolean ran = new AtomicBoolean();
+        subscriber.onClose(() -> ran.set(true));
+
+        assertThat(ran).isTrue();
+    }
+
+    private StreamSubscriber subscriber(SseEmitter emitter) {
+        return new StreamSubscriber(
+                emitter, "test", keys -> keys, 1000, senderExecutor, timeoutExecutor, SEND_TIMEOUT_MSEC);
+    }
+
+    /**
+     * Counts the events sent, taking SEND_MSEC for each like a slow client. If it has a subscriber
+     * then that gets another update during each send.
+     */
+    private class CountingEmitter extends SseEmitter {
+        private final AtomicInteger sent = new AtomicInteger();
+        private StreamSubscriber subscriber;
+        private volatile boolean interrupted = false;
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            if (subscriber != null && updating.get()) {
+                subscriber.offer("busy");
+            }
+            try {
+                Thread.sleep(SEND_MSEC);
+            } catch (InterruptedException e) {
+                interrupted = true;
+                Thread.currentThread().interrupt();
+            }
+            sent.incrementAndGet();
+        }
+    }
+
+    /** A client that doesn't read, so sending blocks until the sender thread is interrupted. */
+    private static class StalledEmitter extends SseEmitter {
+        private final CountDownLatch neverReleased = new CountDownLatch(1);
+        private volatile Throwable completedWith;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            try {
+                neverReleased.await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+        }
+
+        @Override
+        public void completeWithError(Throwable ex) {
+            completedWith = ex;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package org.transitclock.api.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.transitclock.api.data.ApiVehiclesResponse;
+import org.transitclock.api.proto.TransitclockApi;
+import org.transitclock.core.avl.assigner.BlockAssignmentMethod;
+import org.transitclock.domain.structs.AssignmentType;
+import org.transitclock.service.dto.IpcAvl;
+import org.transitclock.service.dto.IpcVehicle;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the protobuf output of the vehicles command with the JSON output for the same data. The
+ * timings are only logged since they depend on the machine running the test.
+ */
+class ApiProtobufMapperTest {
+    private static final Logger logger = LoggerFactory.getLogger(ApiProtobufMapperTest.class);
+
+    private static final int VEHICLES = 500;
+    private static final int ITERATIONS = 200;
+
+    // Configured like the application's object mapper in JacksonConfiguration
+    private final ObjectMapper objectMapper = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    @Test
+    void protobufHasTheSameVehicles() throws Exception {
+        ApiVehiclesResponse response = new ApiVehiclesResponse(vehicles(VEHICLES));
+
+        TransitclockApi.VehiclesResponse parsed =
+                TransitclockApi.VehiclesResponse.parseFrom(ApiProtobufMapper.toMessage(response).toByteArray());
+
+        assertThat(parsed.getDataCount()).isEqualTo(VEHICLES);
+        TransitclockApi.Vehicle first = parsed.getData(0);
+        assertThat(first.getId()).isEqualTo("vehicle0");
+        assertThat(first.getRouteId()).isEqualTo("route0");
+        assertThat(first.getHeadsign()).isEqualTo("Downtown via Main St");
+        assertThat(first.getLoc().getLat()).isEqualTo(response.getData().get(0).getLoc().getLat());
+        assertThat(first.getLoc().getTime()).isEqualTo(1_717_000_000L);
+        assertThat(first.hasUiType()).isFalse();
+        assertThat(parsed.getData(VEHICLES - 1).getId()).isEqualTo("vehicle" + (VEHICLES - 1));
+    }
+
+    @Test
+    void protobufIsSmallerAndFasterThanJson() throws Exception {
+        ApiVehiclesResponse response = new ApiVehiclesResponse(vehicles(VEHICLES));
+        byte[] json = objectMapper.writeValueAsBytes(response);
+        byte[] protobuf = ApiProtobufMapper.toMessage(response).toByteArray();
+
+        assertThat(protobuf.length).isLessThan(json.length / 2);
+
+        // Warm up both encodings before timing them
+        long checksum = encodeJson(response, ITERATIONS) + encodeProtobuf(response, ITERATIONS);
+        long start = System.nanoTime();
+        checksum += encodeJson(response, ITERATIONS);
+        long jsonNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        checksum += encodeProtobuf(response, ITERATIONS);
+        long protobufNanos = System.nanoTime() - start;
+
+        assertThat(checksum).isPositive();
+        logger.info(
+                "{} vehicles: JSON {} bytes in {} usec, protobuf {} bytes in {} usec",
+                VEHICLES,
+                json.length,
+                jsonNanos / ITERATIONS / 1000,
+                protobuf.length,
+                protobufNanos / ITERATIONS / 1000);
+    }
+
+    private long encodeJson(ApiVehiclesResponse response, int iterations) throws Exception {
+        long bytes = 0;
+        for (int i = 0; i < iterations; ++i) {
+            bytes += objectMapper.writeValueAsBytes(response).length;
+        }
+        return bytes;
+    }
+
+    private static long encodeProtobuf(ApiVehiclesResponse response, int iterations) {
+        long bytes = 0;
+        for (int i = 0; i < iterations; ++i) {
+            bytes += ApiProtobufMapper.toMessage(response).toByteArray().length;
+        }
+        return bytes;
+    }
+
+    private static List<IpcVehicle> vehicles(int count) {
+        List<IpcVehicle> vehicles = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            vehicles.add(new TestVehicle(i));
+        }
+        return vehicles;
+    }
+
+    /** IpcVehicle is normally created from a VehicleStatus, which needs the db config. */
+    private static class TestVehicle extends IpcVehicle {
+        TestVehicle(int i) {
+            super(
+                    "block" + i,
+                    BlockAssignmentMethod.AVL_FEED_BLOCK_ASSIGNMENT,
+                    new IpcAvl(
+                            "vehicle" + i,
+                            1_717_000_000_000L + i,
+                            37.7749f + i * 0.0001f,
+                            -122.4194f - i * 0.0001f,
+                            8.25f,
+                            270.5f,
+                            "GTFS-rt",
+                            "block" + i,
+                            AssignmentType.BLOCK_ID,
+                            null,
+                            null,
+                            0),
+                    270.5f,
+                    "route" + (i % 20),
+                    String.valueOf(i % 20),
+                    "Route " + (i % 20),
+                    "trip" + i,
+                    "pattern" + (i % 40),
+                    String.valueOf(i % 2),
+                    "Downtown via Main St",
+                    true,
+                    false,
+                    null,
+                    false,
+                    false,
+                    0,
+                    "stop" + i,
+                    "Main St & " + i + "th Ave",
+                    "3",
+                    0,
+                    false,
+                    null,
+                    Double.NaN,
+                    Double.NaN);
+        }
+    }
+}
@@ -42,7 +42,6 @@ dependencies {
     }
 
     implementation("com.esotericsoftware:kryo:4.0.0")
-    implementation("com.github.haifengl:smile-core:1.5.1")
     implementation("org.glassfish.jaxb:jaxb-core")
     implementation("org.apache.httpcomponents:httpcore")
     implementation("commons-codec:commons-codec")
@@ -52,6 +51,8 @@ dependencies {
 
     testImplementation("org.assertj:assertj-core")
     testImplementation("org.junit.jupiter:junit-jupiter")
+    // Reference implementation for RecursiveLeastSquaresTest
+    testImplementation("com.github.haifengl:smile-core:1.5.1")
 }
 
 protobuf {
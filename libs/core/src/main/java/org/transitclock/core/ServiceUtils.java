@@ -5,17 +5,17 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.GregorianCalendar;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.transitclock.domain.structs.Agency;
 import org.transitclock.domain.structs.Calendar;
 import org.transitclock.domain.structs.CalendarDate;
 import org.transitclock.gtfs.DbConfig;
 import org.transitclock.properties.ServiceProperties;
+import org.transitclock.utils.BoundedCache;
 import org.transitclock.utils.Time;
 
 import lombok.extern.slf4j.Slf4j;
@@ -31,6 +31,9 @@ public class ServiceUtils {
     private final ServiceProperties properties;
     private final GregorianCalendar calendar;
     private final DbConfig dbConfig;
+    // Keyed on epoch day
+    private final BoundedCache<Integer, List<String>> serviceIdsForDay;
+
     /**
      * ServiceUtils constructor. Creates reusable GregorianCalendar and sets the timezone so that
      * the calendar can be reused.
@@ -40,6 +43,10 @@ public class ServiceUtils {
         Agency agency = dbConfig.getFirstAgency();
         this.calendar = agency != null ? new GregorianCalendar(agency.getTimeZone()) : new GregorianCalendar();
         this.dbConfig = dbConfig;
+        this.serviceIdsForDay = new BoundedCache<>("serviceIdsForDay",
+                properties.getServiceIdsCacheMaxDays(),
+                properties.getLookupCacheExpiryMins(),
+                TimeUnit.MINUTES);
     }
 
     /**
@@ -128,32 +135,17 @@ public class ServiceUtils {
         return activeCalendarList;
     }
 
-    Map<Date, List<String>> serviceIdsForDate = new HashMap<Date, List<String>>();
-
     /**
      * Caching version fo getServiceIdsForDay. Assumes epochTime can be distilled to a serviceDate.
      * Note that boundary conditions may exist where serviceDate guess is wrong.
-     *
-     * <p>TODO as is this cache will grow without bounds, but the data should be small
      */
     public List<String> getServiceIdsForDay(Date epochTime) {
-        Date serviceDate = getStartOfDay(epochTime);
-        if (serviceIdsForDate.containsKey(serviceDate)) {
-            return serviceIdsForDate.get(serviceDate);
-        }
-        List<String> serviceIds = getServiceIdsForDayNoCache(serviceDate);
-        serviceIdsForDate.put(serviceDate, serviceIds);
-        return serviceIds;
+        return serviceIdsForDay.get(Time.getEpochDay(epochTime.getTime()),
+                day -> getServiceIdsForDayNoCache(new Date(Time.getStartOfEpochDay(day))));
     }
 
-    private Date getStartOfDay(Date epochTime) {
-        java.util.Calendar c = java.util.Calendar.getInstance();
-        c.setTime(epochTime);
-        c.set(java.util.Calendar.HOUR, 0);
-        c.set(java.util.Calendar.MINUTE, 0);
-        c.set(java.util.Calendar.SECOND, 0);
-        c.set(java.util.Calendar.MILLISECOND, 0);
-        return c.getTime();
+    public BoundedCache.Stats getServiceIdsCacheStats() {
+        return serviceIdsForDay.stats();
     }
 
     /**
@@ -0,0 +1,48 @@
+/* (C)2023 */
+package org.transitclock.core;
+
+/**
+ * Start times of the most recent trips of a vehicle, keyed by trip counter, for frequency based
+ * trips. Used to be a HashMap that gained an entry for every trip the vehicle ever made. Only the
+ * recent trips are looked up so a small fixed number of them are kept in primitive arrays and the
+ * oldest is overwritten.
+ */
+class TripStartTimes {
+    private final int[] tripCounters;
+    private final long[] startTimes;
+    // Where the next one is put
+    private int next = 0;
+    private int size = 0;
+
+    TripStartTimes(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Invalid capacity " + capacity);
+        tripCounters = new int[capacity];
+        startTimes = new long[capacity];
+    }
+
+    /**
+     * @return the start time of the trip in epoch msec, or null if it isn't known
+     */
+    Long get(Integer tripCounter) {
+        if (tripCounter == null) return null;
+        int counter = tripCounter;
+        for (int i = 0; i < size; ++i) {
+            if (tripCounters[i] == counter) return startTimes[i];
+        }
+        return null;
+    }
+
+    /** Sets the start time of the trip. If full the oldest trip is dropped. */
+    void put(int tripCounter, long startTime) {
+        for (int i = 0; i < size; ++i) {
+            if (tripCounters[i] == tripCounter) {
+                startTimes[i] = startTime;
+                return;
+            }
+        }
+        tripCounters[next] = tripCounter;
+        startTimes[next] = startTime;
+        next = (next + 1) % tripCounters.length;
+        if (size < tripCounters.length) ++size;
+    }
+}
@@ -1,13 +1,8 @@
 /* (C)2023 */
 package org.transitclock.core;
 
-import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.NoSuchElementException;
 import java.util.Objects;
 
 import org.transitclock.core.avl.assigner.BlockAssigner;
@@ -29,6 +24,7 @@ import org.transitclock.domain.structs.VectorWithHeading;
 import org.transitclock.gtfs.DbConfig;
 import org.transitclock.properties.CoreProperties;
 import org.transitclock.service.dto.IpcPrediction;
+import org.transitclock.utils.HistoryBuffer;
 import org.transitclock.utils.StringUtils;
 import org.transitclock.utils.Time;
 
@@ -44,10 +40,12 @@ import lombok.extern.slf4j.Slf4j;
 public class VehicleStatus {
     private final CoreProperties coreProperties;
     private final String vehicleId;
-    private final LinkedList<TemporalMatch> temporalMatchHistory = new LinkedList<>(); // first is most recent
-    private final LinkedList<AvlReport> avlReportHistory = new LinkedList<>(); // first is most recent
-    // create a hashmap to store the trip start times.  TODO change to LinkedList doesn't grow
-    private final Map<Integer, Long> tripStartTimesMap = new HashMap<>();
+    // Fixed size histories so that processing an AVL report doesn't allocate list nodes.
+    // Index 0 is the most recent.
+    private final HistoryBuffer<TemporalMatch> temporalMatchHistory;
+    private final HistoryBuffer<AvlReport> avlReportHistory;
+    // Start times of the recent trips for frequency based trips, keyed by trip counter
+    private final TripStartTimes tripStartTimes;
 
     private String vehicleName;
     private Block block;
@@ -90,6 +88,9 @@ public class VehicleStatus {
     public VehicleStatus(String vehicleId, CoreProperties properties) {
         this.vehicleId = vehicleId;
         this.coreProperties = properties;
+        this.temporalMatchHistory = new HistoryBuffer<>(properties.getMatchHistoryMaxSize());
+        this.avlReportHistory = new HistoryBuffer<>(properties.getAvlHistoryMaxSize());
+        this.tripStartTimes = new TripStartTimes(properties.getTripStartTimeHistoryMaxSize());
     }
 
 
@@ -203,8 +204,8 @@ public class VehicleStatus {
                         || lastMatch.getTrip().getId().compareTo(match.getTrip().getId()) != 0)) {
             this.isCanceled = false;
         }
-        // Add match to history
-        temporalMatchHistory.addFirst(match);
+        // Add match to history. If the history is full the oldest one is dropped.
+        temporalMatchHistory.add(match, match != null ? match.getAvlTime() : HistoryBuffer.NO_TIME);
 
         // Set predictability
         if (match == null) {
@@ -218,11 +219,6 @@ public class VehicleStatus {
 
         // Reset numberOfBadMatches
         numberOfBadMatches = 0;
-
-        // Truncate list if it has gotten too long
-        while (temporalMatchHistory.size() > coreProperties.getMatchHistoryMaxSize()) {
-            temporalMatchHistory.removeLast();
-        }
     }
 
     /**
@@ -231,11 +227,7 @@ public class VehicleStatus {
      * @return
      */
     public TemporalMatch getMatch() {
-        try {
-            return temporalMatchHistory.getFirst();
-        } catch (NoSuchElementException ignored) {
-        }
-        return null;
+        return temporalMatchHistory.newest();
     }
 
     /**
@@ -254,17 +246,19 @@ public class VehicleStatus {
         }
 
         // Go through math history to find one that is old enough
-        for (TemporalMatch match : temporalMatchHistory) {
+        long maxTime = currentAvlReport.getTime() - minimumAgeMsec;
+        for (int i = 0; i < temporalMatchHistory.size(); ++i) {
             // If the previous match was null then don't keep on
             // looking because vehicle was not predictable at some
             // point. Simply return null.
-            if (match == null) {
+            long matchTime = temporalMatchHistory.getTime(i);
+            if (matchTime == HistoryBuffer.NO_TIME) {
                 return null;
             }
 
             // If found match in history that is old enough then use it
-            if (match.getAvlTime() < currentAvlReport.getTime() - minimumAgeMsec) {
-                return match;
+            if (matchTime < maxTime) {
+                return temporalMatchHistory.get(i);
             }
         }
 
@@ -273,7 +267,7 @@ public class VehicleStatus {
         // But if history was full then it shows that the GPS reporting is so
         // high that need to store more matches in order to get one as old as
         // desired.
-        if (temporalMatchHistory.size() >= coreProperties.getMatchHistoryMaxSize()) {
+        if (temporalMatchHistory.isFull()) {
             TemporalMatch oldestMatch = temporalMatchHistory.get(temporalMatchHistory.size() - 1);
             logger.error(
                     "For vehicleId={} tried to retrieve match "
@@ -338,29 +332,24 @@ public class VehicleStatus {
      * @param avlReport
      */
     public void setAvlReport(AvlReport avlReport) {
-        // Add AVL report to history
-        avlReportHistory.addFirst(avlReport);
-
-        // Truncate list if it is too long or data in it is too old
-        while (avlReportHistory.size() > coreProperties.getAvlHistoryMaxSize()) {
-            avlReportHistory.removeLast();
-        }
+        // Add AVL report to history. If the history is full the oldest one is dropped.
+        avlReportHistory.add(avlReport, avlReport.getTime());
     }
 
     public void putTripStartTime(Integer tripCounter, Long date) {
         /* only add time once, as it is used as part of the GTFS trip descriptor for frequency based trips as is required to stay the same. */
-        if (this.tripStartTimesMap.get(tripCounter) == null && date > 0) {
+        if (tripStartTimes.get(tripCounter) == null && date > 0) {
             logger.debug(
                     "Setting start time for vehicle {} for trip counter {} to {}.",
                     this.getVehicleId(),
                     tripCounter,
                     new Date(date));
-            this.tripStartTimesMap.put(tripCounter, date);
+            tripStartTimes.put(tripCounter, date);
         }
     }
 
     public Long getTripStartTime(Integer tripCounter) {
-        return this.tripStartTimesMap.get(tripCounter);
+        return tripStartTimes.get(tripCounter);
     }
 
     /**
@@ -483,11 +472,7 @@ public class VehicleStatus {
      * @return
      */
     public AvlReport getAvlReport() {
-        try {
-            return avlReportHistory.getFirst();
-        } catch (NoSuchElementException ignored) {
-        }
-        return null;
+        return avlReportHistory.newest();
     }
 
     /**
@@ -506,12 +491,13 @@ public class VehicleStatus {
         final long currentTime = avlReport.getTime();
         final Location currentLoc = avlReport.getLocation();
 
-        for (AvlReport previousAvlReport : avlReportHistory) {
+        for (int i = 0; i < avlReportHistory.size(); ++i) {
             // If the previous report is too old then return null
-            if (currentTime - previousAvlReport.getTime() > 20 * Time.MS_PER_MIN) return null;
+            if (currentTime - avlReportHistory.getTime(i) > 20 * Time.MS_PER_MIN) return null;
 
             // If previous location far enough away from current location
             // then return the previous AVL report.
+            AvlReport previousAvlReport = avlReportHistory.get(i);
             Location previousLoc = previousAvlReport.getLocation();
             if (previousLoc.distance(currentLoc) > minDistanceFromCurrentReport) {
                 return previousAvlReport;
@@ -532,10 +518,9 @@ public class VehicleStatus {
      *     enough AVL report in the history.
      */
     public AvlReport getPreviousAvlReport(int minimumAgeMsec) {
-        for (AvlReport avlReport : avlReportHistory) {
-            if (avlReport.getTime() < getAvlReport().getTime() - minimumAgeMsec) {
-                return avlReport;
-            }
+        int index = avlReportHistory.indexOlderThan(getAvlReport().getTime() - minimumAgeMsec);
+        if (index >= 0) {
+            return avlReportHistory.get(index);
         }
 
         // Went through all AVL reports in history and didn't find one old enough.
@@ -543,7 +528,7 @@ public class VehicleStatus {
         // But if history was full then it shows that the GPS reporting is so
         // high that need to store more matches in order to get one as old as
         // desired.
-        if (avlReportHistory.size() >= coreProperties.getAvlHistoryMaxSize()) {
+        if (avlReportHistory.isFull()) {
             logger.error(
                     "For vehicleId={} tried to retrieve AVL "
                             + "at least {} msec old but AVL history in VehicleState "
@@ -673,7 +658,7 @@ public class VehicleStatus {
      * @return the match history
      */
     public List<TemporalMatch> getMatches() {
-        return Collections.unmodifiableList(temporalMatchHistory);
+        return temporalMatchHistory.asList();
     }
 
     /**
@@ -866,13 +851,14 @@ public class VehicleStatus {
     private float recentValidHeading() {
         long maxAge = System.currentTimeMillis() - 2 * Time.MS_PER_MIN;
 
-        for (AvlReport avlReport : avlReportHistory) {
+        for (int i = 0; i < avlReportHistory.size(); ++i) {
             // If report is too old then don't use it
-            if (avlReport.getTime() < maxAge) {
+            if (avlReportHistory.getTime(i) < maxAge) {
                 return Float.NaN;
             }
 
             // If AVL has valid heading then use it
+            AvlReport avlReport = avlReportHistory.get(i);
             if (!Float.isNaN(avlReport.getHeading())) {
                 return avlReport.getHeading();
             }
@@ -26,6 +26,7 @@ import org.transitclock.core.dataCache.PredictionDataCache;
 import org.transitclock.core.dataCache.VehicleDataCache;
 import org.transitclock.core.dataCache.VehicleStatusManager;
 import org.transitclock.domain.hibernate.DataDbLogger;
+import org.transitclock.domain.hibernate.DbWorkload;
 import org.transitclock.domain.hibernate.HibernateUtils;
 import org.transitclock.domain.repository.VehicleToBlockConfigRepository;
 import org.transitclock.domain.structs.AssignmentType;
@@ -97,6 +98,9 @@ public class AvlProcessor {
     @Autowired
     private DataDbLogger dataDbLogger;
 
+    @Autowired
+    private StatePersistencePolicy statePersistencePolicy;
+
     @Autowired
     private CoreProperties coreProperties;
 
@@ -185,6 +189,7 @@ public class AvlProcessor {
      */
     public void removeFromVehicleDataCache(String vehicleId) {
         vehicleDataCache.removeVehicle(vehicleId);
+        statePersistencePolicy.removeVehicle(vehicleId);
     }
 
     /**
@@ -1383,9 +1388,12 @@ public class AvlProcessor {
             vehicleDataCache.updateVehicle(vehicleStatus);
 
             // Write out current vehicle state to db so can join it with AVL
-            // data from db and get historical context of AVL report.
+            // data from db and get historical context of AVL report. If
+            // coalescing then only if it differs enough from the last one.
             var dbVehicleState = new VehicleState(vehicleStatus, dbConfig);
-            dataDbLogger.add(dbVehicleState);
+            if (statePersistencePolicy.shouldStore(dbVehicleState, vehicleStatus.getAvlReport().getLocation())) {
+                dataDbLogger.add(dbVehicleState);
+            }
         }
     }
 
@@ -1465,6 +1473,17 @@ public class AvlProcessor {
      * @param avlReport The new AVL report to be processed
      */
     public void processAvlReport(AvlReport avlReport) {
+        // The db reads of the AVL path, including the lazy loading of blocks and trips and the
+        // vehicle configs, use the ingest pool instead of competing with the API for connections
+        DbWorkload previousWorkload = HibernateUtils.setThreadWorkload(DbWorkload.INGEST);
+        try {
+            processAvlReportAsIngest(avlReport);
+        } finally {
+            HibernateUtils.setThreadWorkload(previousWorkload);
+        }
+    }
+
+    private void processAvlReportAsIngest(AvlReport avlReport) {
         IntervalTimer timer = new IntervalTimer();
 
         // Handle special case where want to not use assignment from AVL
@@ -36,6 +36,7 @@ public class MatchProcessor {
     private final ArrivalDepartureGenerator arrivalDepartureGenerator;
     private final PredictionGenerator predictionGenerator;
     private final CoreProperties coreProperties;
+    private final StatePersistencePolicy statePersistencePolicy;
 
     public MatchProcessor(DataDbLogger dbLogger,
                           DbConfig dbConfig,
@@ -43,7 +44,8 @@ public class MatchProcessor {
                           HeadwayGenerator headwayGenerator,
                           ArrivalDepartureGenerator arrivalDepartureGenerator,
                           PredictionGenerator predictionGenerator,
-                          CoreProperties coreProperties) {
+                          CoreProperties coreProperties,
+                          StatePersistencePolicy statePersistencePolicy) {
         this.dbLogger = dbLogger;
         this.dbConfig = dbConfig;
         this.predictionDataCache = predictionDataCache;
@@ -51,6 +53,7 @@ public class MatchProcessor {
         this.arrivalDepartureGenerator = arrivalDepartureGenerator;
         this.predictionGenerator = predictionGenerator;
         this.coreProperties = coreProperties;
+        this.statePersistencePolicy = statePersistencePolicy;
     }
 
     /**
@@ -132,8 +135,11 @@ public class MatchProcessor {
         // matches at stops only confuse things since they will be before
         // the departure time or after the arrival time. Plus not storing
         // the matches at the stops means there is less data to store.
-        if (!match.isAtStop()) {
-            dbLogger.add(match);
+        // The policy takes care of that, and if coalescing also only
+        // stores the matches that are needed for determining travel times.
+        double stopPathLength = vehicleStatus.getMatch().getStopPath().getLength();
+        for (Match matchToStore : statePersistencePolicy.matchesToStore(match, stopPathLength)) {
+            dbLogger.add(matchToStore);
         }
     }
 
@@ -0,0 +1,173 @@
+/* (C)2023 */
+package org.transitclock.core.avl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.transitclock.domain.structs.Location;
+import org.transitclock.domain.structs.Match;
+import org.transitclock.domain.structs.VehicleState;
+import org.transitclock.properties.CoreProperties;
+import org.transitclock.properties.TravelTimesProperties;
+import org.transitclock.utils.Geo;
+import org.transitclock.utils.Time;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Decides which vehicle states and matches are stored in the db. A vehicle state and a match are
+ * created for every AVL report, but most consecutive ones only differ by their time. When
+ * transitclock.core.statePersistence.coalesce is set only the ones that carry new information are
+ * stored, otherwise all of them are.
+ *
+ * <p>A vehicle state is stored when the assignment, whether predictable, whether at a layover, or
+ * the delay bucket changes, when heartbeatSecs have passed since the last stored one, or when the
+ * vehicle has moved minDistanceMeters since then.
+ *
+ * <p>Matches are used for determining travel times. Those are determined by interpolating between
+ * consecutive matches of a trip when they are in different travel time segments of a stop path,
+ * and consecutive matches in the same travel time segment don't contribute anything. So a match is
+ * stored when it is the first one in a travel time segment, and the match before it is then stored
+ * too since it is the last one of the previous segment. Dropping the others doesn't change the
+ * travel times that are determined. The grid of travel time segments is the same as the one of
+ * TravelTimesProcessor, based on transitclock.traveltimes.maxTravelTimeSegmentLength.
+ */
+@Component
+public class StatePersistencePolicy {
+    private final CoreProperties.StatePersistence properties;
+    private final TravelTimesProperties travelTimesProperties;
+
+    /** The last stored vehicle state of a vehicle, and where the vehicle was then */
+    private record StoredState(VehicleState state, Location location) {}
+
+    /** The travel time segment of the last match of a vehicle, and whether the match was stored */
+    private static class MatchHistory {
+        private String tripId;
+        private int stopPathIndex;
+        private int travelTimeSegmentIndex;
+        private long lastStoredTime;
+        private Match pendingMatch;
+    }
+
+    private final Map<String, StoredState> storedStates = new ConcurrentHashMap<>();
+    private final Map<String, MatchHistory> matchHistories = new ConcurrentHashMap<>();
+
+    public StatePersistencePolicy(CoreProperties coreProperties, TravelTimesProperties travelTimesProperties) {
+        this.properties = coreProperties.getStatePersistence();
+        this.travelTimesProperties = travelTimesProperties;
+    }
+
+    /**
+     * Returns whether the vehicle state should be stored. If it should then it becomes the last
+     * stored state of the vehicle.
+     *
+     * @param state the new state of the vehicle
+     * @param location where the vehicle is, can be null
+     */
+    public boolean shouldStore(VehicleState state, Location location) {
+        if (!properties.isCoalesce()) return true;
+
+        StoredState stored = storedStates.get(state.getVehicleId());
+        if (stored != null && !isSignificantChange(stored, state, location)) return false;
+
+        storedStates.put(state.getVehicleId(), new StoredState(state, location));
+        return true;
+    }
+
+    private boolean isSignificantChange(StoredState stored, VehicleState state, Location location) {
+        VehicleState previous = stored.state();
+        if (!Objects.equals(previous.getBlockId(), state.getBlockId())
+                || !Objects.equals(previous.getTripId(), state.getTripId())
+                || !Objects.equals(previous.getIsPredictable(), state.getIsPredictable())
+                || !Objects.equals(previous.getIsLayover(), state.getIsLayover())
+                || !Objects.equals(previous.getIsDelayed(), state.getIsDelayed())
+                || !Objects.equals(delayBucket(previous), delayBucket(state))) {
+            return true;
+        }
+        if (previous.getAvlTime() == null
+                || state.getAvlTime() == null
+                || state.getAvlTime().getTime() - previous.getAvlTime().getTime()
+                        >= properties.getHeartbeatSecs() * Time.MS_PER_SEC) {
+            return true;
+        }
+        return location != null
+                && stored.location() != null
+                && Geo.distance(stored.location(), location) >= properties.getMinDistanceMeters();
+    }
+
+    private Integer delayBucket(VehicleState state) {
+        if (state.getSchedAdhMsec() == null) return null;
+        return Math.floorDiv(state.getSchedAdhMsec(), (int) (properties.getDelayBucketSecs() * Time.MS_PER_SEC));
+    }
+
+    /**
+     * Returns the matches that should be stored now that there is a new match for the vehicle. Can
+     * be none, the new match, or the previous match that wasn't stored followed by the new match.
+     * Matches at a stop are never stored since travel times use the arrival and departure times
+     * there instead, but arriving at the stop means the previous match was the last one of the stop
+     * path so it is returned if it wasn't stored.
+     *
+     * @param match the new match of the vehicle
+     * @param stopPathLength length of the stop path of the match
+     */
+    public List<Match> matchesToStore(Match match, double stopPathLength) {
+        if (!properties.isCoalesce()) return match.isAtStop() ? List.of() : List.of(match);
+
+        if (match.isAtStop()) {
+            MatchHistory history = matchHistories.get(match.getVehicleId());
+            if (history == null) return List.of();
+            synchronized (history) {
+                Match pendingMatch = history.pendingMatch;
+                history.pendingMatch = null;
+                return pendingMatch != null ? List.of(pendingMatch) : List.of();
+            }
+        }
+
+        int travelTimeSegmentIndex = getTravelTimeSegmentIndex(match.getDistanceAlongStopPath(), stopPathLength);
+        MatchHistory history = matchHistories.computeIfAbsent(match.getVehicleId(), vehicleId -> new MatchHistory());
+        synchronized (history) {
+            boolean newSegment = history.tripId == null
+                    || !history.tripId.equals(match.getTripId())
+                    || history.stopPathIndex != match.getStopPathIndex()
+                    || history.travelTimeSegmentIndex != travelTimeSegmentIndex;
+
+            List<Match> matches = new ArrayList<>(2);
+            if (newSegment) {
+                if (history.pendingMatch != null) {
+                    matches.add(history.pendingMatch);
+                }
+                matches.add(match);
+            } else if (match.getTime() - history.lastStoredTime >= properties.getHeartbeatSecs() * Time.MS_PER_SEC) {
+                matches.add(match);
+            }
+
+            history.tripId = match.getTripId();
+            history.stopPathIndex = match.getStopPathIndex();
+            history.travelTimeSegmentIndex = travelTimeSegmentIndex;
+            if (matches.isEmpty()) {
+                history.pendingMatch = match;
+            } else {
+                history.pendingMatch = null;
+                history.lastStoredTime = match.getTime();
+            }
+            return matches;
+        }
+    }
+
+    /** Same division of a stop path into travel time segments as TravelTimesProcessor */
+    private int getTravelTimeSegmentIndex(float distanceAlongStopPath, double stopPathLength) {
+        int numberTravelTimeSegments =
+                (int) (stopPathLength / travelTimesProperties.getMaxTravelTimeSegmentLength() + 1.0);
+        double travelTimeSegmentLength = stopPathLength / numberTravelTimeSegments;
+        return (int) (distanceAlongStopPath / travelTimeSegmentLength);
+    }
+
+    /** Forgets what was stored for the vehicle, such as when it is removed */
+    public void removeVehicle(String vehicleId) {
+        storedStates.remove(vehicleId);
+        matchHistories.remove(vehicleId);
+    }
+}
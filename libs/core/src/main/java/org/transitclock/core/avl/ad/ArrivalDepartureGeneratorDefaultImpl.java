@@ -3,6 +3,7 @@ package org.transitclock.core.avl.ad;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
 
 import org.transitclock.core.Indices;
 import org.transitclock.core.TemporalDifference;
@@ -447,8 +448,9 @@ public class ArrivalDepartureGeneratorDefaultImpl implements ArrivalDepartureGen
             if (arrivalDeparture.getStopPathIndex() == trip.getNumberStopPaths() - 1) return;
         }
 
-        // Queue to store object into db
-        dataDbLogger.add(arrivalDeparture);
+        // Queue to store object into db. When arrivals/departures are group committed the commit is
+        // reported on once it is done instead of holding up the AVL thread.
+        onCommitted(dataDbLogger.addDurably(arrivalDeparture), arrivalDeparture);
 
         /* add event to vehicle state. Will increment tripCounter if the last arrival in a trip */
         VehicleStatus vehicleStatus = vehicleStatusManager.getStatus(arrivalDeparture.getVehicleId());
@@ -459,6 +461,27 @@ public class ArrivalDepartureGeneratorDefaultImpl implements ArrivalDepartureGen
         predictionAccuracyModule.handleArrivalDeparture(dbConfig, dataDbLogger, arrivalDeparture);
     }
 
+    /**
+     * Logs when the arrival/departure could not be stored, or when it took longer than
+     * transitclock.core.dbDurability.slowCommitMsec to be committed. Unless ArrivalDeparture is
+     * group committed the future is already completed when queued. The callback is run by the
+     * writer that committed it, so it only logs.
+     */
+    private void onCommitted(CompletableFuture<Void> committed, ArrivalDeparture arrivalDeparture) {
+        long queuedTime = System.currentTimeMillis();
+        committed.whenComplete((result, e) -> {
+            if (e != null) {
+                logger.error("Could not store arrival/departure {}", arrivalDeparture, e);
+                return;
+            }
+            long commitMsec = System.currentTimeMillis() - queuedTime;
+            if (commitMsec > coreProperties.getDbDurability().getSlowCommitMsec()) {
+                logger.warn("Arrival/departure was only committed {} msec after it was queued. {}",
+                        commitMsec, arrivalDeparture);
+            }
+        });
+    }
+
     /**
      * If vehicle departs terminal too early or too late then log an event so that the problem is
      * made more obvious.
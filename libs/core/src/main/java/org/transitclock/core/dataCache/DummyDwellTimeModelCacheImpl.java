@@ -1,10 +1,12 @@
 package org.transitclock.core.dataCache;
 
-import org.hibernate.Session;
+import org.hibernate.StatelessSession;
+import org.transitclock.core.prediction.scheduled.dwell.DwellModel;
 import org.transitclock.domain.structs.ArrivalDeparture;
 import org.transitclock.domain.structs.Headway;
 
 import java.util.Date;
+import java.util.List;
 
 public class DummyDwellTimeModelCacheImpl implements DwellTimeModelCacheInterface {
     @Override
@@ -23,7 +25,22 @@ public class DummyDwellTimeModelCacheImpl implements DwellTimeModelCacheInterfac
     }
 
     @Override
-    public void populateCacheFromDb(Session session, Date startDate, Date endDate) {
+    public void populateCacheFromDb(StatelessSession session, Date startDate, Date endDate) {
+        // do nothing
+    }
+
+    @Override
+    public List<StopPathCacheKey> getKeys() {
+        return List.of();
+    }
+
+    @Override
+    public DwellModel getModel(StopPathCacheKey key) {
+        return null;
+    }
+
+    @Override
+    public void putModel(StopPathCacheKey key, DwellModel model) {
         // do nothing
     }
 }
@@ -1,11 +1,13 @@
 /* (C)2023 */
 package org.transitclock.core.dataCache;
 
-import org.hibernate.Session;
+import org.hibernate.StatelessSession;
+import org.transitclock.core.prediction.scheduled.dwell.DwellModel;
 import org.transitclock.domain.structs.ArrivalDeparture;
 import org.transitclock.domain.structs.Headway;
 
 import java.util.Date;
+import java.util.List;
 
 public interface DwellTimeModelCacheInterface {
 
@@ -15,5 +17,13 @@ public interface DwellTimeModelCacheInterface {
 
     Long predictDwellTime(StopPathCacheKey cacheKey, Headway headway);
 
-    void populateCacheFromDb(Session session, Date startDate, Date endDate);
+    void populateCacheFromDb(StatelessSession session, Date startDate, Date endDate);
+
+    /** Keys of all of the models, used when writing a snapshot of the models. */
+    List<StopPathCacheKey> getKeys();
+
+    DwellModel getModel(StopPathCacheKey key);
+
+    /** Puts a model restored from a snapshot. */
+    void putModel(StopPathCacheKey key, DwellModel model);
 }
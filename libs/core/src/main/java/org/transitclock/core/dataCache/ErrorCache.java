@@ -14,5 +14,8 @@ public interface ErrorCache {
 
     void putErrorValue(KalmanErrorCacheKey key, Double value);
 
+    /** Puts an error restored from a snapshot, keeping its number of updates. */
+    void putError(KalmanErrorCacheKey key, KalmanError error);
+
     List<KalmanErrorCacheKey> getKeys();
 }
@@ -9,11 +9,7 @@ public class IpcArrivalDepartureComparator implements Comparator<IpcArrivalDepar
     @Override
     public int compare(IpcArrivalDeparture ad1, IpcArrivalDeparture ad2) {
 
-        if (ad1.getTime().getTime() < ad2.getTime().getTime()) {
-            return 1;
-        } else if (ad1.getTime().getTime() > ad2.getTime().getTime()) {
-            return -1;
-        }
-        return 0;
+        // Newest first
+        return Long.compare(ad2.getTimeMillis(), ad1.getTimeMillis());
     }
 }
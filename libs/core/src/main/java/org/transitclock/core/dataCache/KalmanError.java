@@ -14,6 +14,12 @@ public class KalmanError implements Serializable {
         setError(error);
     }
 
+    /** For restoring an error from a snapshot without counting it as an update. */
+    public KalmanError(Double error, Integer updates) {
+        this.error = error;
+        this.updates = updates;
+    }
+
     public KalmanError() {
         // TODO Auto-generated constructor stub
     }
@@ -8,6 +8,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.transitclock.core.VehicleStatus;
 import org.transitclock.domain.structs.Route;
@@ -70,6 +71,9 @@ public class PredictionDataCache {
     private final Map<MapKey, List<IpcPredictionsForRouteStopDest>> predictionsMap =
             new ConcurrentHashMap<>(1000);
 
+    // Notified every time the predictions for a vehicle are updated
+    private final List<PredictionDataCacheListener> listeners = new CopyOnWriteArrayList<>();
+
     public PredictionDataCache(VehicleStatusManager vehicleStatusManager, DbConfig dbConfig, PredictionProperties predictionProperties, CoreProperties coreProperties) {
         this.vehicleStatusManager = vehicleStatusManager;
         this.dbConfig = dbConfig;
@@ -439,6 +443,60 @@ public class PredictionDataCache {
                 }
             }
         }
+
+        notifyListeners(oldPredictionsForVehicle, newPredictionsForVehicle);
+    }
+
+    /** Number of route/stops that predictions are cached for */
+    public int size() {
+        return predictionsMap.size();
+    }
+
+    /**
+     * Returns copies of the predictions for up to max route/stops, for estimating how much memory
+     * the cache uses.
+     */
+    public List<List<IpcPredictionsForRouteStopDest>> sample(int max) {
+        List<List<IpcPredictionsForRouteStopDest>> sample = new ArrayList<>(max);
+        for (List<IpcPredictionsForRouteStopDest> predictionsForRouteStop : predictionsMap.values()) {
+            if (sample.size() >= max) break;
+            synchronized (predictionsForRouteStop) {
+                sample.add(new ArrayList<>(predictionsForRouteStop));
+            }
+        }
+        return sample;
+    }
+
+    /**
+     * Adds a listener that is called every time the predictions for a vehicle are updated.
+     *
+     * @param listener the listener to add
+     */
+    public void addListener(PredictionDataCacheListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener that was added with addListener().
+     *
+     * @param listener the listener to remove
+     */
+    public void removeListener(PredictionDataCacheListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Tells the listeners about the updated predictions. A problem with a listener is logged but
+     * doesn't affect processing of the AVL report.
+     */
+    private void notifyListeners(List<IpcPrediction> oldPredictionsForVehicle, List<IpcPrediction> newPredictionsForVehicle) {
+        for (PredictionDataCacheListener listener : listeners) {
+            try {
+                listener.predictionsUpdated(oldPredictionsForVehicle, newPredictionsForVehicle);
+            } catch (Exception e) {
+                logger.error("Exception notifying listener {} of updated predictions", listener, e);
+            }
+        }
     }
 
     /**
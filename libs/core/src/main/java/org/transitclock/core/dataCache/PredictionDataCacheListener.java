@@ -0,0 +1,24 @@
+/* (C)2023 */
+package org.transitclock.core.dataCache;
+
+import java.util.List;
+
+import org.transitclock.service.dto.IpcPrediction;
+
+/**
+ * For being notified when the predictions for a vehicle in the PredictionDataCache are updated.
+ * Listeners are called on the AVL processing thread that made the change so they need to return
+ * quickly and must not block.
+ */
+@FunctionalInterface
+public interface PredictionDataCacheListener {
+
+    /**
+     * Called after the predictions for a vehicle have been updated in the cache.
+     *
+     * @param oldPredictionsForVehicle The old predictions for the vehicle. Can be null.
+     * @param newPredictionsForVehicle The new predictions for the vehicle. Empty if the predictions
+     *     were only removed.
+     */
+    void predictionsUpdated(List<IpcPrediction> oldPredictionsForVehicle, List<IpcPrediction> newPredictionsForVehicle);
+}
@@ -1,7 +1,7 @@
 /* (C)2023 */
 package org.transitclock.core.dataCache;
 
-import org.hibernate.Session;
+import org.hibernate.StatelessSession;
 import org.transitclock.domain.structs.ArrivalDeparture;
 import org.transitclock.service.dto.IpcArrivalDeparture;
 
@@ -14,5 +14,5 @@ public interface StopArrivalDepartureCacheInterface {
 
     StopArrivalDepartureCacheKey putArrivalDeparture(ArrivalDeparture arrivalDeparture);
 
-    void populateCacheFromDb(Session session, Date startDate, Date endDate);
+    void populateCacheFromDb(StatelessSession session, Date startDate, Date endDate);
 }
@@ -2,69 +2,82 @@
 package org.transitclock.core.dataCache;
 
 import java.io.Serializable;
-import java.util.Calendar;
+import java.time.LocalDate;
 import java.util.Date;
+import org.transitclock.utils.IdInterner;
+import org.transitclock.utils.Time;
 
 /**
+ * Key of the stop arrival/departure cache. The day is held as an epoch day, the number of days
+ * since 1970-01-01 in the default timezone, so that a key is built without truncating a date with
+ * a Calendar. The stop ID is interned and the hash code is computed once.
+ *
  * @author Sean Og Crudden
  */
-public class StopArrivalDepartureCacheKey implements Serializable {
+public final class StopArrivalDepartureCacheKey implements Serializable {
 
-    private static final long serialVersionUID = 2466653739981305005L;
+    private static final long serialVersionUID = -3822961207245516014L;
     private final String stopid;
-    private Date date;
+    private final int serviceDay;
+    private final int hash;
 
+    /**
+     * @param stopid the stop
+     * @param serviceDay epoch day, see Time.getEpochDay()
+     */
+    public StopArrivalDepartureCacheKey(String stopid, int serviceDay) {
+        this.stopid = IdInterner.intern(stopid);
+        this.serviceDay = serviceDay;
+        this.hash = 31 * (stopid == null ? 0 : stopid.hashCode()) + serviceDay;
+    }
+
+    /**
+     * @param stopid the stop
+     * @param date any time during the day
+     */
     public StopArrivalDepartureCacheKey(String stopid, Date date) {
-        this.stopid = stopid;
-        setDate(date);
+        this(stopid, Time.getEpochDay(date.getTime()));
     }
 
     public String getStopid() {
         return stopid;
     }
 
-    public Date getDate() {
-        return date;
+    /**
+     * @return epoch day of the key
+     */
+    public int getServiceDay() {
+        return serviceDay;
     }
 
-    public void setDate(Date date) {
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTime(date);
-
-        calendar.set(Calendar.HOUR_OF_DAY, 0);
-        calendar.set(Calendar.MINUTE, 0);
-        calendar.set(Calendar.SECOND, 0);
-        calendar.set(Calendar.MILLISECOND, 0);
+    /**
+     * @return the start of the day of the key
+     */
+    public Date getDate() {
+        return new Date(Time.getStartOfEpochDay(serviceDay));
+    }
 
-        this.date = calendar.getTime();
+    /** The stop ID isn't interned when read by Java serialization */
+    private Object readResolve() {
+        return new StopArrivalDepartureCacheKey(stopid, serviceDay);
     }
 
     @Override
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + ((date == null) ? 0 : date.hashCode());
-        result = prime * result + ((stopid == null) ? 0 : stopid.hashCode());
-        return result;
+        return hash;
     }
 
     @Override
     public boolean equals(Object obj) {
         if (this == obj) return true;
-        if (obj == null) return false;
-        if (getClass() != obj.getClass()) return false;
-        StopArrivalDepartureCacheKey other = (StopArrivalDepartureCacheKey) obj;
-        if (date == null) {
-            if (other.date != null) return false;
-        } else if (!date.equals(other.date)) return false;
-        if (stopid == null) {
-            if (other.stopid != null) return false;
-        } else if (!stopid.equals(other.stopid)) return false;
-        return true;
+        if (!(obj instanceof StopArrivalDepartureCacheKey other)) return false;
+        if (hash != other.hash || serviceDay != other.serviceDay) return false;
+        // Usually the same interned instance
+        return stopid == other.stopid || (stopid != null && stopid.equals(other.stopid));
     }
 
     @Override
     public String toString() {
-        return "StopArrivalDepartureCacheKey [stopid=" + stopid + ", date=" + date + "]";
+        return "StopArrivalDepartureCacheKey [stopid=" + stopid + ", serviceDay=" + LocalDate.ofEpochDay(serviceDay) + "]";
     }
 }
@@ -6,6 +6,7 @@ import org.ehcache.Cache;
 import org.ehcache.CacheManager;
 import org.springframework.stereotype.Component;
 import org.transitclock.domain.structs.PredictionForStopPath;
+import org.transitclock.utils.threading.StripedLocks;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -14,16 +15,23 @@ import java.util.List;
 @Component
 public class StopPathPredictionCache {
     private final Cache<StopPathCacheKey, StopPredictions> cache;
+    // Lists of different stop paths are updated independently
+    private final StripedLocks locks = new StripedLocks();
 
     public StopPathPredictionCache(CacheManager cm) {
         cache = cm.getCache("StopPathPredictionCache", StopPathCacheKey.class, StopPredictions.class);
     }
 
-    @SuppressWarnings("unchecked")
-    public synchronized List<PredictionForStopPath> getPredictions(StopPathCacheKey key) {
-        StopPredictions result = cache.get(key);
-        if (result == null) return null;
-        else return result.getPredictions();
+    /**
+     * Returns a copy of the predictions for the stop path so that callers can iterate over it
+     * while other threads add predictions.
+     */
+    public List<PredictionForStopPath> getPredictions(StopPathCacheKey key) {
+        synchronized (locks.lockFor(key)) {
+            StopPredictions result = cache.get(key);
+            if (result == null || result.getPredictions() == null) return null;
+            else return new ArrayList<>(result.getPredictions());
+        }
     }
 
     public void putPrediction(PredictionForStopPath prediction) {
@@ -31,22 +39,15 @@ public class StopPathPredictionCache {
         putPrediction(key, prediction);
     }
 
-    @SuppressWarnings("unchecked")
-    public synchronized void putPrediction(StopPathCacheKey key, PredictionForStopPath prediction) {
-
-        List<PredictionForStopPath> list;
-        StopPredictions element = cache.get(key);
+    public void putPrediction(StopPathCacheKey key, PredictionForStopPath prediction) {
+        synchronized (locks.lockFor(key)) {
+            StopPredictions element = cache.get(key);
+            if (element == null) {
+                element = new StopPredictions();
+            }
+            element.addPrediction(prediction);
 
-        if (element != null && element.getPredictions() != null) {
-            list = element.getPredictions();
-            cache.remove(key);
-        } else {
-            list = new ArrayList<>();
+            cache.put(key, element);
         }
-        list.add(prediction);
-
-        element.setPredictions(list);
-
-        cache.put(key, element);
     }
 }
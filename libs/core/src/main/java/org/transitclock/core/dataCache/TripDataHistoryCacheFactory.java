@@ -1,6 +1,7 @@
 /* (C)2023 */
 package org.transitclock.core.dataCache;
 
+import org.transitclock.core.dataCache.mapped.MappedTripDataHistoryCache;
 import org.transitclock.gtfs.DbConfig;
 import org.transitclock.gtfs.GtfsFilter;
 import org.transitclock.properties.CoreProperties;
@@ -30,6 +31,8 @@ public class TripDataHistoryCacheFactory {
         var gtfsFilter = new GtfsFilter(gtfsProperties.getRouteIdFilterRegEx(), gtfsProperties.getTripIdFilterRegEx());
         if (className == org.transitclock.core.dataCache.ehcache.frequency.TripDataHistoryCache.class) {
             return new org.transitclock.core.dataCache.ehcache.frequency.TripDataHistoryCache(cacheManager, gtfsFilter, dbConfig, coreProperties);
+        } else if (className == MappedTripDataHistoryCache.class) {
+            return new MappedTripDataHistoryCache(gtfsFilter, dbConfig, coreProperties);
         } else {
             return new org.transitclock.core.dataCache.ehcache.scheduled.TripDataHistoryCache(cacheManager, gtfsFilter, dbConfig);
         }
@@ -3,7 +3,7 @@ package org.transitclock.core.dataCache;
 
 import java.util.Date;
 import java.util.List;
-import org.hibernate.Session;
+import org.hibernate.StatelessSession;
 import org.transitclock.domain.structs.ArrivalDeparture;
 import org.transitclock.service.dto.IpcArrivalDeparture;
 
@@ -13,7 +13,7 @@ public interface TripDataHistoryCacheInterface {
 
     TripKey putArrivalDeparture(ArrivalDeparture arrivalDeparture);
 
-    void populateCacheFromDb(Session session, Date startDate, Date endDate);
+    void populateCacheFromDb(StatelessSession session, Date startDate, Date endDate);
 
     IpcArrivalDeparture findPreviousArrivalEvent(
             List<IpcArrivalDeparture> arrivalDepartures, IpcArrivalDeparture current);
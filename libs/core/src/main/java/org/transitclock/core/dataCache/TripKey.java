@@ -2,23 +2,57 @@
 package org.transitclock.core.dataCache;
 
 import java.io.Serializable;
+import java.time.LocalDate;
 import java.util.Date;
+import org.transitclock.utils.IdInterner;
+import org.transitclock.utils.Time;
 
 /**
+ * Key of the trip data history cache. The service day is held as an epoch day, the number of days
+ * since 1970-01-01 in the default timezone, so that building a key doesn't need a Calendar and
+ * the previous day of a key is just serviceDay - 1. The trip ID is interned and the hash code is
+ * computed once since keys are built and looked up for every prediction.
+ *
  * @author Sean Og Crudden
  */
-public class TripKey implements Serializable {
+public final class TripKey implements Serializable {
     /** Needs to be serializable to add to cache */
-    private static final long serialVersionUID = 5029823633051153715L;
+    private static final long serialVersionUID = 6137512968542095187L;
+
+    // startTime is an int so that keys don't hold an Integer. This marks a null start time.
+    private static final int NO_START_TIME = Integer.MIN_VALUE;
+
     private final String tripId;
-    private final Date tripStartDate;
-    private Integer startTime;
+    private final int serviceDay;
+    private final int startTime;
+    private final int hash;
 
+    /**
+     * @param tripId the trip
+     * @param serviceDay epoch day of the trip, see Time.getEpochDay()
+     * @param startTime start time of the trip in seconds into the day, can be null
+     */
+    public TripKey(String tripId, int serviceDay, Integer startTime) {
+        this.tripId = IdInterner.intern(tripId);
+        this.serviceDay = serviceDay;
+        this.startTime = startTime != null ? startTime : NO_START_TIME;
+        this.hash = computeHash();
+    }
+
+    /**
+     * @param tripId the trip
+     * @param tripStartDate any time during the day of the trip
+     * @param startTime start time of the trip in seconds into the day, can be null
+     */
     public TripKey(String tripId, Date tripStartDate, Integer startTime) {
-        this.tripId = tripId;
+        this(tripId, Time.getEpochDay(tripStartDate.getTime()), startTime);
+    }
 
-        this.tripStartDate = tripStartDate;
-        this.startTime = startTime;
+    private int computeHash() {
+        int result = tripId == null ? 0 : tripId.hashCode();
+        result = 31 * result + serviceDay;
+        result = 31 * result + startTime;
+        return result;
     }
 
     /**
@@ -29,56 +63,48 @@ public class TripKey implements Serializable {
     }
 
     /**
-     * @return the tripStartDate
+     * @return epoch day of the trip
+     */
+    public int getServiceDay() {
+        return serviceDay;
+    }
+
+    /**
+     * @return the start of the day of the trip
      */
     public Date getTripStartDate() {
-        return tripStartDate;
+        return new Date(Time.getStartOfEpochDay(serviceDay));
     }
 
     /**
      * @return the startTime
      */
     public Integer getStartTime() {
-        return startTime;
+        return startTime != NO_START_TIME ? startTime : null;
     }
 
-
-    public void setStartTime(Integer time) {
-        // TODO Auto-generated method stub
-        this.startTime = time;
+    /** The trip ID isn't interned when read by Java serialization */
+    private Object readResolve() {
+        return new TripKey(tripId, serviceDay, getStartTime());
     }
 
-
     @Override
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + ((startTime == null) ? 0 : startTime.hashCode());
-        result = prime * result + ((tripId == null) ? 0 : tripId.hashCode());
-        result = prime * result + ((tripStartDate == null) ? 0 : tripStartDate.hashCode());
-        return result;
+        return hash;
     }
 
     @Override
     public boolean equals(Object obj) {
         if (this == obj) return true;
-        if (obj == null) return false;
-        if (getClass() != obj.getClass()) return false;
-        TripKey other = (TripKey) obj;
-        if (startTime == null) {
-            if (other.startTime != null) return false;
-        } else if (!startTime.equals(other.startTime)) return false;
-        if (tripId == null) {
-            if (other.tripId != null) return false;
-        } else if (!tripId.equals(other.tripId)) return false;
-        if (tripStartDate == null) {
-            return other.tripStartDate == null;
-        } else return tripStartDate.equals(other.tripStartDate);
+        if (!(obj instanceof TripKey other)) return false;
+        if (hash != other.hash || serviceDay != other.serviceDay || startTime != other.startTime) return false;
+        // Usually the same interned instance
+        return tripId == other.tripId || (tripId != null && tripId.equals(other.tripId));
     }
 
     @Override
     public String toString() {
-        return "TripKey [tripId=" + tripId + ", tripStartDate=" + tripStartDate + ", startTime=" + startTime + "]";
+        return "TripKey [tripId=" + tripId + ", serviceDay=" + LocalDate.ofEpochDay(serviceDay)
+                + ", startTime=" + getStartTime() + "]";
     }
-
 }
@@ -9,6 +9,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import lombok.extern.slf4j.Slf4j;
 import org.hibernate.HibernateException;
@@ -67,6 +69,11 @@ public class VehicleDataCache {
     // So can quickly look up vehicle config using tracker ID
     private final Map<String, VehicleConfig> vehicleConfigByTrackerIdMap = new HashMap<>();
 
+    // Incremented every time the vehicle configs change so that consumers,
+    // such as the GTFS-realtime feeds, can cache lookup maps built from
+    // the configs and only rebuild them when needed.
+    private final AtomicInteger vehicleConfigsRevision = new AtomicInteger();
+
     // So can determine how long since data was read from db
     private long dbReadTime;
 
@@ -74,6 +81,9 @@ public class VehicleDataCache {
     // is obsolete and shouldn't be displayed.
     private static final int MAX_AGE_MSEC = 15 * Time.MS_PER_MIN;
 
+    // Notified every time a vehicle is updated
+    private final List<VehicleDataCacheListener> listeners = new CopyOnWriteArrayList<>();
+
     private final PredictionDataCache predictionDataCache;
 
     private final DataDbLogger dataDbLogger;
@@ -102,6 +112,7 @@ public class VehicleDataCache {
                 vehicleConfigByTrackerIdMap.put(vehicleConfig.getTrackerId(), vehicleConfig);
                 dbReadTime = System.currentTimeMillis();
             }
+            vehicleConfigsRevision.incrementAndGet();
         } catch (HibernateException e) {
             logger.error("Exception reading in VehicleConfig data. {}", e.getMessage(), e);
         }
@@ -152,6 +163,8 @@ public class VehicleDataCache {
                             + "updating vehicle cache and writing the "
                             + "VehicleConfig to database.",
                     vehicleId);
+            vehicleConfigsRevision.incrementAndGet();
+
             // Write the vehicle to the database
             dataDbLogger.add(vehicleConfig);
         } else {
@@ -165,6 +178,8 @@ public class VehicleDataCache {
                         tx.commit();
                     } catch (Exception ex) {
                         tx.rollback();
+                    } finally {
+                        vehicleConfigsRevision.incrementAndGet();
                     }
                 }
             }
@@ -205,6 +220,29 @@ public class VehicleDataCache {
         return Collections.unmodifiableCollection(vehicleConfigsMap.values());
     }
 
+    /**
+     * Returns an unmodifiable map of the static vehicle configurations keyed by vehicle ID. Allows
+     * callers to look up the config for a vehicle directly instead of iterating over all of the
+     * configs.
+     *
+     * @return Unmodifiable map of VehicleConfig objects keyed by vehicle ID
+     */
+    public Map<String, VehicleConfig> getVehicleConfigsById() {
+        readVehicleConfigFromDbIfNeedTo();
+        return Collections.unmodifiableMap(vehicleConfigsMap);
+    }
+
+    /**
+     * Returns the current revision of the vehicle configurations. The revision is incremented
+     * every time the configs are read from the db, a new vehicle is encountered, or a vehicle name
+     * changes. Allows callers to cache data derived from the configs until the revision changes.
+     *
+     * @return revision of the vehicle configs
+     */
+    public int getVehicleConfigsRevision() {
+        return vehicleConfigsRevision.get();
+    }
+
     /**
      * Filters out vehicle info if last GPS report is too old. Doesn't filter out vehicles at
      * layovers though because for those won't get another report for a long time. This includes
@@ -480,6 +518,42 @@ public class VehicleDataCache {
         updateVehiclesByRouteMap(originalVehicle, vehicle);
         updateVehicleIdsByBlockMap(originalVehicle, vehicle);
         updateVehiclesMap(vehicle);
+
+        notifyListeners(vehicle);
+    }
+
+    /**
+     * Adds a listener that is called every time a vehicle is updated.
+     *
+     * @param listener the listener to add
+     */
+    public void addListener(VehicleDataCacheListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener that was added with addListener().
+     *
+     * @param listener the listener to remove
+     */
+    public void removeListener(VehicleDataCacheListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Tells the listeners about the updated vehicle. A problem with a listener is logged but
+     * doesn't affect processing of the AVL report.
+     *
+     * @param vehicle the updated vehicle
+     */
+    private void notifyListeners(IpcVehicleComplete vehicle) {
+        for (VehicleDataCacheListener listener : listeners) {
+            try {
+                listener.vehicleUpdated(vehicle);
+            } catch (Exception e) {
+                logger.error("Exception notifying listener {} of update to vehicleId={}", listener, vehicle.getId(), e);
+            }
+        }
     }
 
     /**
@@ -0,0 +1,19 @@
+/* (C)2023 */
+package org.transitclock.core.dataCache;
+
+import org.transitclock.service.dto.IpcVehicleComplete;
+
+/**
+ * For being notified when the VehicleDataCache is updated. Listeners are called on the AVL
+ * processing thread that made the change so they need to return quickly and must not block.
+ */
+@FunctionalInterface
+public interface VehicleDataCacheListener {
+
+    /**
+     * Called after the vehicle info in the cache has been updated.
+     *
+     * @param vehicle the new info for the vehicle
+     */
+    void vehicleUpdated(IpcVehicleComplete vehicle);
+}
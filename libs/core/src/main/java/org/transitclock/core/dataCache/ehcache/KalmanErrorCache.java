@@ -7,7 +7,9 @@ import org.transitclock.core.Indices;
 import org.transitclock.core.dataCache.ErrorCache;
 import org.transitclock.core.dataCache.KalmanError;
 import org.transitclock.core.dataCache.KalmanErrorCacheKey;
+import org.transitclock.utils.threading.StripedLocks;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -16,13 +18,16 @@ import java.util.List;
 public class KalmanErrorCache implements ErrorCache {
     private static final String cacheName = "KalmanErrorCache";
     private final Cache<KalmanErrorCacheKey, KalmanError> cache;
+    // Errors for different stop paths are updated by different AVL threads
+    // so only lock the key being updated
+    private final StripedLocks locks = new StripedLocks();
 
     public KalmanErrorCache(CacheManager cm) {
         cache = cm.getCache(cacheName, KalmanErrorCacheKey.class, KalmanError.class);
     }
 
     @Override
-    public synchronized KalmanError getErrorValue(Indices indices) {
+    public KalmanError getErrorValue(Indices indices) {
         KalmanErrorCacheKey key = new KalmanErrorCacheKey(indices);
         return cache.get(key);
     }
@@ -31,7 +36,7 @@ public class KalmanErrorCache implements ErrorCache {
      * @see org.transitime.core.dataCache.ErrorCache#getErrorValue(org.transitime.core.dataCache.KalmanErrorCacheKey)
      */
     @Override
-    public synchronized KalmanError getErrorValue(KalmanErrorCacheKey key) {
+    public KalmanError getErrorValue(KalmanErrorCacheKey key) {
         return cache.get(key);
     }
 
@@ -39,27 +44,37 @@ public class KalmanErrorCache implements ErrorCache {
      * @see org.transitime.core.dataCache.ErrorCache#putErrorValue(org.transitime.core.Indices, java.lang.Double)
      */
     @Override
-    public synchronized void putErrorValue(Indices indices, Double value) {
+    public void putErrorValue(Indices indices, Double value) {
         KalmanErrorCacheKey key = new KalmanErrorCacheKey(indices);
         putErrorValue(key, value);
     }
 
     @Override
     public void putErrorValue(KalmanErrorCacheKey key, Double value) {
+        synchronized (locks.lockFor(key)) {
+            KalmanError error = cache.get(key);
 
-        KalmanError error = cache.get(key);
+            if (error == null) {
+                error = new KalmanError(value);
+            } else {
+                error.setError(value);
+            }
 
-        if (error == null) {
-            error = new KalmanError(value);
-        } else {
-            error.setError(value);
+            cache.put(key, error);
         }
+    }
 
+    @Override
+    public void putError(KalmanErrorCacheKey key, KalmanError error) {
         cache.put(key, error);
     }
 
     @Override
     public List<KalmanErrorCacheKey> getKeys() {
-        return List.of();
+        List<KalmanErrorCacheKey> keys = new ArrayList<>();
+        for (Cache.Entry<KalmanErrorCacheKey, KalmanError> entry : cache) {
+            keys.add(entry.getKey());
+        }
+        return keys;
     }
 }
@@ -1,19 +1,18 @@
 /* (C)2023 */
 package org.transitclock.core.dataCache.ehcache;
 
-import com.querydsl.jpa.impl.JPAQuery;
 import lombok.extern.slf4j.Slf4j;
 import org.ehcache.Cache;
 import org.ehcache.CacheManager;
-import org.hibernate.Session;
+import org.hibernate.StatelessSession;
 import org.transitclock.core.dataCache.StopArrivalDepartureCacheInterface;
 import org.transitclock.core.dataCache.StopArrivalDepartureCacheKey;
 import org.transitclock.core.dataCache.StopEvents;
+import org.transitclock.domain.repository.ArrivalDepartureRepository;
 import org.transitclock.domain.structs.ArrivalDeparture;
-import org.transitclock.domain.structs.QArrivalDeparture;
 import org.transitclock.service.dto.IpcArrivalDeparture;
+import org.transitclock.utils.Time;
 
-import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -36,14 +35,6 @@ public class StopArrivalDepartureCache implements StopArrivalDepartureCacheInter
 
 
     public synchronized List<IpcArrivalDeparture> getStopHistory(StopArrivalDepartureCacheKey key) {
-        Calendar date = Calendar.getInstance();
-        date.setTime(key.getDate());
-
-        date.set(Calendar.HOUR_OF_DAY, 0);
-        date.set(Calendar.MINUTE, 0);
-        date.set(Calendar.SECOND, 0);
-        date.set(Calendar.MILLISECOND, 0);
-        key.setDate(date.getTime());
         StopEvents result = cache.get(key);
 
         if (result != null) {
@@ -58,17 +49,10 @@ public class StopArrivalDepartureCache implements StopArrivalDepartureCacheInter
 
         logger.debug("Putting :{} in StopArrivalDepartureCache cache.", arrivalDeparture.toString());
 
-        Calendar date = Calendar.getInstance();
-        date.setTime(arrivalDeparture.getDate());
-
-        date.set(Calendar.HOUR_OF_DAY, 0);
-        date.set(Calendar.MINUTE, 0);
-        date.set(Calendar.SECOND, 0);
-        date.set(Calendar.MILLISECOND, 0);
         if (arrivalDeparture.getStopId() != null) {
 
-            StopArrivalDepartureCacheKey key =
-                    new StopArrivalDepartureCacheKey(arrivalDeparture.getStopId(), date.getTime());
+            StopArrivalDepartureCacheKey key = new StopArrivalDepartureCacheKey(
+                    arrivalDeparture.getStopId(), Time.getEpochDay(arrivalDeparture.getTime()));
 
             StopEvents element = cache.get(key);
 
@@ -90,16 +74,8 @@ public class StopArrivalDepartureCache implements StopArrivalDepartureCacheInter
         }
     }
 
-    public void populateCacheFromDb(Session session, Date startDate, Date endDate) {
-        JPAQuery<ArrivalDeparture> query = new JPAQuery<>(session);
-        var qentity = QArrivalDeparture.arrivalDeparture;
-        List<ArrivalDeparture> results = query.from(qentity)
-                .where(qentity.time.between(startDate,endDate))
-                .orderBy(qentity.time.asc())
-                .fetch();
-
-        for (ArrivalDeparture result : results) {
-            putArrivalDeparture(result);
-        }
+    public void populateCacheFromDb(StatelessSession session, Date startDate, Date endDate) {
+        ArrivalDepartureRepository.streamArrivalsDeparturesFromDb(
+                session, startDate, endDate, null, "ORDER BY time", this::putArrivalDeparture);
     }
 }
@@ -1,26 +1,26 @@
 /* (C)2023 */
 package org.transitclock.core.dataCache.ehcache.frequency;
 
-import com.querydsl.jpa.impl.JPAQuery;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.time.DateUtils;
 import org.ehcache.Cache;
 import org.ehcache.CacheManager;
-import org.hibernate.Session;
+import org.hibernate.StatelessSession;
 import org.transitclock.core.dataCache.IpcArrivalDepartureComparator;
 import org.transitclock.core.dataCache.TripDataHistoryCacheInterface;
 import org.transitclock.core.dataCache.TripEvents;
 import org.transitclock.core.dataCache.TripKey;
 import org.transitclock.core.dataCache.frequency.FrequencyBasedHistoricalAverageCache;
+import org.transitclock.domain.repository.ArrivalDepartureRepository;
 import org.transitclock.domain.structs.ArrivalDeparture;
 import org.transitclock.domain.structs.Block;
-import org.transitclock.domain.structs.QArrivalDeparture;
 import org.transitclock.domain.structs.Trip;
 import org.transitclock.gtfs.DbConfig;
 import org.transitclock.gtfs.GtfsData;
 import org.transitclock.gtfs.GtfsFilter;
 import org.transitclock.properties.CoreProperties;
 import org.transitclock.service.dto.IpcArrivalDeparture;
+import org.transitclock.utils.Time;
+import org.transitclock.utils.threading.StripedLocks;
 
 import java.util.*;
 
@@ -41,6 +41,8 @@ public class TripDataHistoryCache implements TripDataHistoryCacheInterface {
     private final GtfsFilter gtfsFilter;
     protected final DbConfig dbConfig;
     protected final CoreProperties coreProperties;
+    // Events of different trips are added independently
+    private final StripedLocks locks = new StripedLocks();
 
     public TripDataHistoryCache(CacheManager cm, GtfsFilter filter, DbConfig dbConfig, CoreProperties coreProperties) {
         cache = cm.getCache(cacheByTrip, TripKey.class, TripEvents.class);
@@ -55,18 +57,21 @@ public class TripDataHistoryCache implements TripDataHistoryCacheInterface {
         // logger.debug(cache.toString());
         logger.debug("Looking for TripDataHistoryCache cache element using key {}.", tripKey);
 
-        TripEvents result = cache.get(tripKey);
+        // Return a copy since callers sort the list while other threads add events to it
+        synchronized (locks.lockFor(tripKey)) {
+            TripEvents result = cache.get(tripKey);
 
-        if (result != null) {
-            logger.debug("Found TripDataHistoryCache cache element using key {}.", tripKey);
-            return result.getEvents();
-        } else {
-            return null;
+            if (result != null && result.getEvents() != null) {
+                logger.debug("Found TripDataHistoryCache cache element using key {}.", tripKey);
+                return new ArrayList<>(result.getEvents());
+            } else {
+                return null;
+            }
         }
     }
 
     @Override
-    public synchronized TripKey putArrivalDeparture(ArrivalDeparture arrivalDeparture) {
+    public TripKey putArrivalDeparture(ArrivalDeparture arrivalDeparture) {
 
         Block block = null;
         if (arrivalDeparture.getBlock() == null) {
@@ -81,9 +86,7 @@ public class TripDataHistoryCache implements TripDataHistoryCacheInterface {
         TripKey tripKey = null;
 
         for (int i = 0; i < days_back; i++) {
-            Date nearestDay = DateUtils.truncate(new Date(arrivalDeparture.getTime()), Calendar.DAY_OF_MONTH);
-
-            nearestDay = DateUtils.addDays(nearestDay, i * -1);
+            int nearestDay = Time.getEpochDay(arrivalDeparture.getTime()) - i;
 
             Trip trip = dbConfig.getTrip(arrivalDeparture.getTripId());
 
@@ -100,26 +103,11 @@ public class TripDataHistoryCache implements TripDataHistoryCacheInterface {
 
                     logger.debug("Putting :{} in TripDataHistoryCache cache using key {}.", arrivalDeparture, tripKey);
 
-                    List<IpcArrivalDeparture> list;
-
-                    TripEvents element = cache.get(tripKey);
-
-                    if (element != null && element.getEvents() != null) {
-                        list = element.getEvents();
-                        cache.remove(tripKey);
-                    } else {
-                        list = new ArrayList<>();
-                    }
-
                     try {
-                        list.add(new IpcArrivalDeparture(arrivalDeparture));
+                        put(tripKey, new IpcArrivalDeparture(arrivalDeparture));
                     } catch (Exception e) {
-                        // TODO Auto-generated catch block
-                        e.printStackTrace();
+                        logger.error("Error adding {} event to TripDataHistoryCache.", arrivalDeparture, e);
                     }
-                    element.setEvents(list);
-
-                    cache.put(tripKey, element);
                 }
             } else {
                 logger.error(
@@ -130,24 +118,31 @@ public class TripDataHistoryCache implements TripDataHistoryCacheInterface {
         return tripKey;
     }
 
+    /** Adds the event to the events of the trip, under the stripe of the trip key. */
+    void put(TripKey tripKey, IpcArrivalDeparture event) {
+        synchronized (locks.lockFor(tripKey)) {
+            TripEvents element = cache.get(tripKey);
+            if (element == null) {
+                element = new TripEvents();
+            }
+            element.addEvent(event);
+            cache.put(tripKey, element);
+        }
+    }
+
     /* (non-Javadoc)
-     * @see org.transitclock.core.dataCache.TripDataHistoryCacheInterface#populateCacheFromDb(org.hibernate.Session, java.util.Date, java.util.Date)
+     * @see org.transitclock.core.dataCache.TripDataHistoryCacheInterface#populateCacheFromDb(org.hibernate.StatelessSession, java.util.Date, java.util.Date)
      */
 
     @Override
-    public void populateCacheFromDb(Session session, Date startDate, Date endDate) {
-        JPAQuery<ArrivalDeparture> query = new JPAQuery<>(session);
-        var qentity = QArrivalDeparture.arrivalDeparture;
-        List<ArrivalDeparture> results = query.from(qentity)
-                .where(qentity.time.between(startDate,endDate))
-                .fetch();
-
-        for (ArrivalDeparture result : results) {
-            // TODO this might be better done in the database.
-            if (gtfsFilter.routeNotFiltered(result.getRouteId())) {
-                putArrivalDeparture(result);
-            }
-        }
+    public void populateCacheFromDb(StatelessSession session, Date startDate, Date endDate) {
+        ArrivalDepartureRepository.streamArrivalsDeparturesFromDb(
+                session, startDate, endDate, null, null, result -> {
+                    // TODO this might be better done in the database.
+                    if (gtfsFilter.routeNotFiltered(result.getRouteId())) {
+                        putArrivalDeparture(result);
+                    }
+                });
     }
 
     /* (non-Javadoc)
@@ -1,11 +1,10 @@
 /* (C)2023 */
 package org.transitclock.core.dataCache.ehcache.scheduled;
 
-import com.querydsl.jpa.impl.JPAQuery;
 import lombok.extern.slf4j.Slf4j;
 import org.ehcache.Cache;
 import org.ehcache.CacheManager;
-import org.hibernate.Session;
+import org.hibernate.StatelessSession;
 
 import org.transitclock.core.TemporalDifference;
 import org.transitclock.core.dataCache.DwellTimeModelCacheInterface;
@@ -13,12 +12,13 @@ import org.transitclock.core.dataCache.StopArrivalDepartureCacheInterface;
 import org.transitclock.core.dataCache.StopArrivalDepartureCacheKey;
 import org.transitclock.core.dataCache.StopPathCacheKey;
 import org.transitclock.core.prediction.scheduled.dwell.DwellModel;
+import org.transitclock.domain.repository.ArrivalDepartureRepository;
 import org.transitclock.domain.structs.ArrivalDeparture;
 import org.transitclock.domain.structs.Headway;
-import org.transitclock.domain.structs.QArrivalDeparture;
 import org.transitclock.properties.PredictionProperties;
 import org.transitclock.service.dto.IpcArrivalDeparture;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
@@ -182,20 +182,33 @@ public class DwellTimeModelCache implements DwellTimeModelCacheInterface {
     }
 
     @Override
-    public void populateCacheFromDb(Session session, Date startDate, Date endDate) {
-        JPAQuery<ArrivalDeparture> query = new JPAQuery<>(session);
-        var qentity = QArrivalDeparture.arrivalDeparture;
-        List<ArrivalDeparture> results = query.from(qentity)
-                .where(qentity.time.between(startDate,endDate))
-                .orderBy(qentity.time.asc())
-                .fetch();
-
-        for (ArrivalDeparture result : results) {
-            try {
-                addSample(result);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+    public List<StopPathCacheKey> getKeys() {
+        List<StopPathCacheKey> keys = new ArrayList<>();
+        for (Cache.Entry<StopPathCacheKey, DwellModel> entry : cache) {
+            keys.add(entry.getKey());
         }
+        return keys;
+    }
+
+    @Override
+    public DwellModel getModel(StopPathCacheKey key) {
+        return cache.get(key);
+    }
+
+    @Override
+    public void putModel(StopPathCacheKey key, DwellModel model) {
+        cache.put(key, model);
+    }
+
+    @Override
+    public void populateCacheFromDb(StatelessSession session, Date startDate, Date endDate) {
+        ArrivalDepartureRepository.streamArrivalsDeparturesFromDb(
+                session, startDate, endDate, null, "ORDER BY time", result -> {
+                    try {
+                        addSample(result);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                });
     }
 }
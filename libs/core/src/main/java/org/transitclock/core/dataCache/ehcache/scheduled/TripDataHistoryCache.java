@@ -1,22 +1,22 @@
 /* (C)2023 */
 package org.transitclock.core.dataCache.ehcache.scheduled;
 
-import com.querydsl.jpa.impl.JPAQuery;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.time.DateUtils;
 import org.ehcache.Cache;
 import org.ehcache.CacheManager;
-import org.hibernate.Session;
+import org.hibernate.StatelessSession;
 import org.transitclock.core.dataCache.*;
+import org.transitclock.domain.repository.ArrivalDepartureRepository;
 import org.transitclock.domain.structs.ArrivalDeparture;
-import org.transitclock.domain.structs.QArrivalDeparture;
 import org.transitclock.domain.structs.Trip;
 import org.transitclock.gtfs.DbConfig;
 import org.transitclock.gtfs.GtfsData;
 import org.transitclock.gtfs.GtfsFilter;
 import org.transitclock.service.dto.IpcArrivalDeparture;
+import org.transitclock.utils.Time;
+import org.transitclock.utils.threading.StripedLocks;
 
-import java.util.Calendar;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -33,6 +33,8 @@ public class TripDataHistoryCache implements TripDataHistoryCacheInterface {
     private final Cache<TripKey, TripEvents> cache;
     private final GtfsFilter gtfsFilter;
     private final DbConfig dbConfig;
+    // Events of different trips are added independently
+    private final StripedLocks locks = new StripedLocks();
 
     public TripDataHistoryCache(CacheManager cm, GtfsFilter gtfsFilter, DbConfig dbConfig) {
         cache = cm.getCache(cacheByTrip, TripKey.class, TripEvents.class);
@@ -42,9 +44,12 @@ public class TripDataHistoryCache implements TripDataHistoryCacheInterface {
 
     @Override
     public List<IpcArrivalDeparture> getTripHistory(TripKey tripKey) {
-        TripEvents result = cache.get(tripKey);
-        if (result != null) {
-            return result.getEvents();
+        // Return a copy since callers sort the list while other threads add events to it
+        synchronized (locks.lockFor(tripKey)) {
+            TripEvents result = cache.get(tripKey);
+            if (result != null && result.getEvents() != null) {
+                return new ArrayList<>(result.getEvents());
+            }
         }
 
         return null;
@@ -54,7 +59,7 @@ public class TripDataHistoryCache implements TripDataHistoryCacheInterface {
      * @see org.transitclock.core.dataCache.TripDataHistoryCacheInterface#putArrivalDeparture(org.transitclock.db.structs.ArrivalDeparture)
      */
     @Override
-    public synchronized TripKey putArrivalDeparture(ArrivalDeparture arrivalDeparture) {
+    public TripKey putArrivalDeparture(ArrivalDeparture arrivalDeparture) {
 
         logger.debug("Putting :{} in TripDataHistoryCache cache.", arrivalDeparture.toString());
         /* just put todays time in for last three days to aid development. This means it will kick in in 1 days rather than 3. Perhaps be a good way to start rather than using default transiTime method but I doubt it. */
@@ -63,9 +68,7 @@ public class TripDataHistoryCache implements TripDataHistoryCacheInterface {
         TripKey tripKey = null;
 
         for (int i = 0; i < days_back; i++) {
-            Date nearestDay = DateUtils.truncate(new Date(arrivalDeparture.getTime()), Calendar.DAY_OF_MONTH);
-
-            nearestDay = DateUtils.addDays(nearestDay, i * -1);
+            int nearestDay = Time.getEpochDay(arrivalDeparture.getTime()) - i;
 
             Trip trip = dbConfig.getTrip(arrivalDeparture.getTripId());
 
@@ -73,42 +76,41 @@ public class TripDataHistoryCache implements TripDataHistoryCacheInterface {
 
                 tripKey = new TripKey(arrivalDeparture.getTripId(), nearestDay, trip.getStartTime());
 
-                TripEvents result = cache.get(tripKey);
-                if (result == null) {
-                    result = new TripEvents();
-                }
-
                 try {
-                    result.addEvent(new IpcArrivalDeparture(arrivalDeparture));
-
+                    put(tripKey, new IpcArrivalDeparture(arrivalDeparture));
                 } catch (Exception e) {
                     logger.error("Error adding {} event to TripDataHistoryCache.", arrivalDeparture, e);
                 }
-
-                cache.put(tripKey, result);
             }
         }
         return tripKey;
     }
 
+    /** Adds the event to the events of the trip, under the stripe of the trip key. */
+    void put(TripKey tripKey, IpcArrivalDeparture event) {
+        synchronized (locks.lockFor(tripKey)) {
+            TripEvents result = cache.get(tripKey);
+            if (result == null) {
+                result = new TripEvents();
+            }
+            result.addEvent(event);
+            cache.put(tripKey, result);
+        }
+    }
+
     /* (non-Javadoc)
-     * @see org.transitclock.core.dataCache.TripDataHistoryCacheInterface#populateCacheFromDb(org.hibernate.Session, java.util.Date, java.util.Date)
+     * @see org.transitclock.core.dataCache.TripDataHistoryCacheInterface#populateCacheFromDb(org.hibernate.StatelessSession, java.util.Date, java.util.Date)
      */
 
     @Override
-    public void populateCacheFromDb(Session session, Date startDate, Date endDate) {
-        JPAQuery<ArrivalDeparture> query = new JPAQuery<>(session);
-        var qentity = QArrivalDeparture.arrivalDeparture;
-        List<ArrivalDeparture> results = query.from(qentity)
-                .where(qentity.time.between(startDate,endDate))
-                .fetch();
-
-        for (ArrivalDeparture result : results) {
-            // TODO this might be better done in the database.
-            if (gtfsFilter.routeNotFiltered(result.getRouteId())) {
-                putArrivalDeparture(result);
-            }
-        }
+    public void populateCacheFromDb(StatelessSession session, Date startDate, Date endDate) {
+        ArrivalDepartureRepository.streamArrivalsDeparturesFromDb(
+                session, startDate, endDate, null, null, result -> {
+                    // TODO this might be better done in the database.
+                    if (gtfsFilter.routeNotFiltered(result.getRouteId())) {
+                        putArrivalDeparture(result);
+                    }
+                });
     }
 
     /* (non-Javadoc)
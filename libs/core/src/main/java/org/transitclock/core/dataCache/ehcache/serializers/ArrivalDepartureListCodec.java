@@ -0,0 +1,132 @@
+/* (C)2023 */
+package org.transitclock.core.dataCache.ehcache.serializers;
+
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.transitclock.service.dto.IpcArrivalDeparture;
+
+/**
+ * Compact binary form of the list of arrival/departures held by the trip and stop event caches.
+ * The events of a trip or stop mostly share the same few IDs, so each distinct ID is written once
+ * to a string table at the start of the value and the events refer to it by index. Times are
+ * written as epoch msec. Only the fields that FieldSerializer used to write are written, the
+ * transient ones are not persisted.
+ *
+ * <p>The value starts with a magic number so that values written in the old FieldSerializer
+ * format to a persistent disk tier are recognized. Those are read as an empty list and so are
+ * repopulated from the database like any other cache miss.
+ */
+@Slf4j
+class ArrivalDepartureListCodec {
+    // "TCAD"
+    private static final int MAGIC = 0x54434144;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private static final int NULL_STRING = 0;
+
+    private ArrivalDepartureListCodec() {}
+
+    static void write(Output output, List<IpcArrivalDeparture> events) {
+        output.writeInt(MAGIC);
+        output.writeInt(FORMAT_VERSION);
+        if (events == null) {
+            output.writeInt(-1, true);
+            return;
+        }
+
+        // String table. Index 0 is null, so the indexes written are 1 based.
+        Map<String, Integer> indexes = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        for (IpcArrivalDeparture event : events) {
+            addString(event.getVehicleId(), indexes, strings);
+            addString(event.getStopId(), indexes, strings);
+            addString(event.getTripId(), indexes, strings);
+            addString(event.getBlockId(), indexes, strings);
+            addString(event.getDirectionId(), indexes, strings);
+        }
+        output.writeInt(strings.size(), true);
+        for (String string : strings) {
+            output.writeString(string);
+        }
+
+        output.writeInt(events.size(), true);
+        for (IpcArrivalDeparture event : events) {
+            writeString(output, event.getVehicleId(), indexes);
+            writeString(output, event.getStopId(), indexes);
+            writeString(output, event.getTripId(), indexes);
+            writeString(output, event.getBlockId(), indexes);
+            writeString(output, event.getDirectionId(), indexes);
+            output.writeLong(event.getTimeMillis());
+            Date freqStartTime = event.getFreqStartTime();
+            output.writeLong(freqStartTime != null ? freqStartTime.getTime() : NO_TIME);
+            output.writeInt(event.getGtfsStopSeq(), true);
+            output.writeInt(event.getStopPathIndex(), true);
+            output.writeBoolean(event.isArrival());
+        }
+    }
+
+    /**
+     * @return the events, an empty list if the value is in an old format, or null if null was
+     *     written
+     */
+    static List<IpcArrivalDeparture> read(Input input) {
+        if (!readHeader(input)) {
+            logger.debug("Ignoring arrival/departure cache value in an old format");
+            return new ArrayList<>();
+        }
+        int numStrings = input.readInt(true);
+        if (numStrings < 0) return null;
+        String[] strings = new String[numStrings + 1];
+        for (int i = 1; i <= numStrings; ++i) {
+            strings[i] = input.readString();
+        }
+
+        int numEvents = input.readInt(true);
+        List<IpcArrivalDeparture> events = new ArrayList<>(numEvents);
+        for (int i = 0; i < numEvents; ++i) {
+            IpcArrivalDeparture event = new IpcArrivalDeparture();
+            // The setters intern the IDs
+            event.setVehicleId(strings[input.readInt(true)]);
+            event.setStopId(strings[input.readInt(true)]);
+            event.setTripId(strings[input.readInt(true)]);
+            event.setBlockId(strings[input.readInt(true)]);
+            event.setDirectionId(strings[input.readInt(true)]);
+            event.setTimeMillis(input.readLong());
+            long freqStartTime = input.readLong();
+            event.setFreqStartTime(freqStartTime != NO_TIME ? new Date(freqStartTime) : null);
+            event.setGtfsStopSeq(input.readInt(true));
+            event.setStopPathIndex(input.readInt(true));
+            event.setArrival(input.readBoolean());
+            events.add(event);
+        }
+        return events;
+    }
+
+    private static boolean readHeader(Input input) {
+        try {
+            return input.readInt() == MAGIC && input.readInt() == FORMAT_VERSION;
+        } catch (KryoException e) {
+            // Old values can be shorter than the header
+            return false;
+        }
+    }
+
+    private static void addString(String string, Map<String, Integer> indexes, List<String> strings) {
+        if (string != null && !indexes.containsKey(string)) {
+            strings.add(string);
+            indexes.put(string, strings.size());
+        }
+    }
+
+    private static void writeString(Output output, String string, Map<String, Integer> indexes) {
+        output.writeInt(string != null ? indexes.get(string) : NULL_STRING, true);
+    }
+}
@@ -0,0 +1,56 @@
+/* (C)2023 */
+package org.transitclock.core.dataCache.ehcache.serializers;
+
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.ByteBufferInputStream;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import java.nio.ByteBuffer;
+import org.ehcache.spi.serialization.Serializer;
+import org.ehcache.spi.serialization.SerializerException;
+import org.transitclock.core.dataCache.StopArrivalDepartureCacheKey;
+
+/**
+ * Writes a StopArrivalDepartureCacheKey as a format byte, the stop ID and the service day as a
+ * varint. Keys written by Java serialization to a persistent disk tier are read as a key that no
+ * lookup matches, so the old entries are never found and expire.
+ */
+public class StopArrivalDepartureCacheKeyKyroSerializer implements Serializer<StopArrivalDepartureCacheKey> {
+    private static final byte FORMAT_VERSION = 1;
+
+    // Returned for keys in an old format
+    private static final StopArrivalDepartureCacheKey OLD_FORMAT_KEY =
+            new StopArrivalDepartureCacheKey("", Integer.MIN_VALUE);
+
+    public StopArrivalDepartureCacheKeyKyroSerializer(ClassLoader loader) {
+        // no-op
+    }
+
+    @Override
+    public ByteBuffer serialize(final StopArrivalDepartureCacheKey key) throws SerializerException {
+        Output output = new Output(16, -1);
+        output.writeByte(FORMAT_VERSION);
+        output.writeString(key.getStopid());
+        output.writeInt(key.getServiceDay(), false);
+        return ByteBuffer.wrap(output.toBytes());
+    }
+
+    @Override
+    public StopArrivalDepartureCacheKey read(final ByteBuffer binary)
+            throws ClassNotFoundException, SerializerException {
+        Input input = new Input(new ByteBufferInputStream(binary), 64);
+        try {
+            if (input.readByte() != FORMAT_VERSION) return OLD_FORMAT_KEY;
+            String stopId = input.readString();
+            return new StopArrivalDepartureCacheKey(stopId, input.readInt(false));
+        } catch (KryoException e) {
+            return OLD_FORMAT_KEY;
+        }
+    }
+
+    @Override
+    public boolean equals(final StopArrivalDepartureCacheKey key, final ByteBuffer binary)
+            throws ClassNotFoundException, SerializerException {
+        return key.equals(read(binary));
+    }
+}
@@ -1,12 +1,11 @@
 /* (C)2023 */
 package org.transitclock.core.dataCache.ehcache.serializers;
 
-import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.ByteBufferInputStream;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
-import com.esotericsoftware.kryo.serializers.FieldSerializer;
 import java.nio.ByteBuffer;
+import java.util.List;
 import org.ehcache.spi.serialization.Serializer;
 import org.ehcache.spi.serialization.SerializerException;
 import org.transitclock.core.dataCache.TripEvents;
@@ -14,28 +13,24 @@ import org.transitclock.service.dto.IpcArrivalDeparture;
 
 public class TripEventsKyroSerializer implements Serializer<TripEvents> {
 
-    private static final Kryo kryo = new Kryo();
-
     public TripEventsKyroSerializer(ClassLoader loader) {
         // no-op
-        kryo.register(IpcArrivalDeparture.class);
-
-        FieldSerializer<IpcArrivalDeparture> serializer = new FieldSerializer<>(kryo, IpcArrivalDeparture.class);
-        serializer.setCopyTransient(false);
-        kryo.register(IpcArrivalDeparture.class, serializer);
     }
 
     @Override
     public ByteBuffer serialize(final TripEvents object) throws SerializerException {
         Output output = new Output(4096, -1);
-        kryo.writeObject(output, object);
-        return ByteBuffer.wrap(output.getBuffer());
+        ArrivalDepartureListCodec.write(output, object.getEvents());
+        return ByteBuffer.wrap(output.toBytes());
     }
 
     @Override
     public TripEvents read(final ByteBuffer binary) throws ClassNotFoundException, SerializerException {
         Input input = new Input(new ByteBufferInputStream(binary));
-        return kryo.readObject(input, TripEvents.class);
+        TripEvents events = new TripEvents();
+        List<IpcArrivalDeparture> list = ArrivalDepartureListCodec.read(input);
+        if (list != null) events.setEvents(list);
+        return events;
     }
 
     @Override
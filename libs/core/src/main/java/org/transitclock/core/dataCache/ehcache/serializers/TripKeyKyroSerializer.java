@@ -0,0 +1,62 @@
+/* (C)2023 */
+package org.transitclock.core.dataCache.ehcache.serializers;
+
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.ByteBufferInputStream;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import java.nio.ByteBuffer;
+import org.ehcache.spi.serialization.Serializer;
+import org.ehcache.spi.serialization.SerializerException;
+import org.transitclock.core.dataCache.TripKey;
+
+/**
+ * Writes a TripKey as a format byte, the trip ID, and the service day and start time as varints,
+ * which is a few bytes plus the trip ID instead of the couple of hundred bytes of Java
+ * serialization.
+ *
+ * <p>Keys written by Java serialization to a persistent disk tier start with a different byte.
+ * Those are read as a key that no lookup matches, so the old entries are never found and expire.
+ */
+public class TripKeyKyroSerializer implements Serializer<TripKey> {
+    private static final byte FORMAT_VERSION = 1;
+    private static final int NO_START_TIME = Integer.MIN_VALUE;
+
+    // Returned for keys in an old format
+    private static final TripKey OLD_FORMAT_KEY = new TripKey("", Integer.MIN_VALUE, null);
+
+    public TripKeyKyroSerializer(ClassLoader loader) {
+        // no-op
+    }
+
+    @Override
+    public ByteBuffer serialize(final TripKey key) throws SerializerException {
+        Output output = new Output(32, -1);
+        output.writeByte(FORMAT_VERSION);
+        output.writeString(key.getTripId());
+        output.writeInt(key.getServiceDay(), false);
+        Integer startTime = key.getStartTime();
+        output.writeInt(startTime != null ? startTime : NO_START_TIME, false);
+        return ByteBuffer.wrap(output.toBytes());
+    }
+
+    @Override
+    public TripKey read(final ByteBuffer binary) throws ClassNotFoundException, SerializerException {
+        Input input = new Input(new ByteBufferInputStream(binary), 64);
+        try {
+            if (input.readByte() != FORMAT_VERSION) return OLD_FORMAT_KEY;
+            String tripId = input.readString();
+            int serviceDay = input.readInt(false);
+            int startTime = input.readInt(false);
+            return new TripKey(tripId, serviceDay, startTime != NO_START_TIME ? startTime : null);
+        } catch (KryoException e) {
+            return OLD_FORMAT_KEY;
+        }
+    }
+
+    @Override
+    public boolean equals(final TripKey key, final ByteBuffer binary)
+            throws ClassNotFoundException, SerializerException {
+        return key.equals(read(binary));
+    }
+}
@@ -0,0 +1,110 @@
+/* (C)2023 */
+package org.transitclock.core.dataCache.frequency;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongConsumer;
+
+import org.transitclock.core.dataCache.HistoricalAverage;
+
+/**
+ * The historical averages of one stop path for each time of day bucket. Instead of a sorted map of
+ * HistoricalAverage objects keyed by the bucket start time the count and the average of each
+ * bucket are stored in arrays indexed by bucket, so a lookup is an array read without any boxing.
+ *
+ * <p>Bucket start times are seconds from the start hour of the day and so can be negative for
+ * times just after midnight. The arrays cover a day either side of the start hour, which covers
+ * every time secondsFromMidnight() can return.
+ *
+ * <p>Reads don't lock. Updates of a bucket must be serialized by the caller. The average is
+ * published before the count so a reader can at most see the average including one more sample
+ * than the count it read.
+ */
+class AverageBuckets {
+    private static final int RANGE_SECS = 24 * 60 * 60;
+    private static final int EMPTY = -1;
+
+    private final int increment;
+    // Index of the bucket starting at time 0
+    private final int offset;
+    private final AtomicIntegerArray counts;
+    // Double bits of the averages
+    private final AtomicLongArray averages;
+
+    AverageBuckets(int increment) {
+        this.increment = increment;
+        this.offset = (RANGE_SECS + increment - 1) / increment;
+        int buckets = 2 * offset;
+        this.counts = new AtomicIntegerArray(buckets);
+        this.averages = new AtomicLongArray(buckets);
+        for (int i = 0; i < buckets; ++i) {
+            counts.set(i, EMPTY);
+        }
+    }
+
+    /**
+     * Returns the average of the first bucket that starts at or after the start time and before the
+     * start time plus the increment. For a start time that is the start of a bucket that is that
+     * bucket.
+     *
+     * @param startTime seconds from the start hour
+     * @return a copy of the average, or null if there is no data for the bucket
+     */
+    HistoricalAverage get(long startTime) {
+        int index = index(-Math.floorDiv(-startTime, increment));
+        if (index == EMPTY) return null;
+
+        int count = counts.get(index);
+        if (count == EMPTY) return null;
+
+        HistoricalAverage average = new HistoricalAverage();
+        average.setCount(count);
+        average.setAverage(Double.longBitsToDouble(averages.get(index)));
+        return average;
+    }
+
+    /**
+     * Sets the average of the bucket containing the start time.
+     *
+     * @return false if the start time is outside of the range of the buckets
+     */
+    boolean set(long startTime, HistoricalAverage average) {
+        int index = index(Math.floorDiv(startTime, increment));
+        if (index == EMPTY) return false;
+
+        averages.set(index, Double.doubleToRawLongBits(average.getAverage()));
+        counts.set(index, average.getCount());
+        return true;
+    }
+
+    /**
+     * Adds a sample to the bucket containing the start time, computing the new average the same way
+     * as HistoricalAverage.update().
+     *
+     * @return false if the start time is outside of the range of the buckets
+     */
+    boolean update(long startTime, double element) {
+        int index = index(Math.floorDiv(startTime, increment));
+        if (index == EMPTY) return false;
+
+        int count = Math.max(counts.get(index), 0);
+        double average = count == 0 ? 0 : Double.longBitsToDouble(averages.get(index));
+        averages.set(index, Double.doubleToRawLongBits(((count * average) + element) / (count + 1)));
+        counts.set(index, count + 1);
+        return true;
+    }
+
+    /** Passes the start time of each bucket that has an average to the consumer. */
+    void forEachStartTime(LongConsumer consumer) {
+        for (int i = 0; i < counts.length(); ++i) {
+            if (counts.get(i) != EMPTY) {
+                consumer.accept((long) (i - offset) * increment);
+            }
+        }
+    }
+
+    private int index(long bucket) {
+        long index = bucket + offset;
+        return index >= 0 && index < counts.length() ? (int) index : EMPTY;
+    }
+}
@@ -1,35 +1,33 @@
 /* (C)2023 */
 package org.transitclock.core.dataCache.frequency;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
-import org.transitclock.core.dataCache.ArrivalDepartureComparator;
 import org.transitclock.core.dataCache.HistoricalAverage;
 import org.transitclock.core.dataCache.IpcArrivalDepartureComparator;
 import org.transitclock.core.dataCache.StopPathCacheKey;
 import org.transitclock.core.dataCache.TripDataHistoryCacheInterface;
 import org.transitclock.core.dataCache.TripKey;
+import org.transitclock.domain.repository.ArrivalDepartureRepository;
 import org.transitclock.domain.structs.ArrivalDeparture;
-import org.transitclock.domain.structs.QArrivalDeparture;
 import org.transitclock.domain.structs.Trip;
 import org.transitclock.gtfs.DbConfig;
 import org.transitclock.gtfs.GtfsFilter;
 import org.transitclock.properties.CoreProperties;
 import org.transitclock.properties.GtfsProperties;
 import org.transitclock.service.dto.IpcArrivalDeparture;
+import org.transitclock.utils.Time;
+import org.transitclock.utils.threading.StripedLocks;
 
-import com.querydsl.jpa.impl.JPAQuery;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.time.DateUtils;
-import org.hibernate.Session;
+import org.hibernate.StatelessSession;
 import org.springframework.stereotype.Component;
 
 /**
@@ -41,7 +39,11 @@ import org.springframework.stereotype.Component;
 @Component
 public class FrequencyBasedHistoricalAverageCache {
 
-    private final Map<StopPathKey, TreeMap<Long, HistoricalAverage>> m = new ConcurrentHashMap<>();
+    // The buckets are arrays indexed by time of day so that averages can be
+    // read with an array read while other threads add to them
+    private final Map<StopPathKey, AverageBuckets> m = new ConcurrentHashMap<>();
+    // Only updates of the same stop path and bucket need to be serialized
+    private final StripedLocks locks = new StripedLocks();
     private final TripDataHistoryCacheInterface tripDataHistoryCacheInterface;
     private final GtfsFilter gtfsFilter;
     private final DbConfig dbConfig;
@@ -60,13 +62,10 @@ public class FrequencyBasedHistoricalAverageCache {
     public String toString() {
         String totalsString = "";
         for (StopPathKey key : m.keySet()) {
-            Map<Long, HistoricalAverage> values = new TreeMap<>();
-            Map<Long, HistoricalAverage> map = m.get(key);
-
-            Set<Long> times = map.keySet();
-            for (Long time : times) {
-                values.put(time, map.get(time));
+            Map<Long, HistoricalAverage> map = new TreeMap<>();
+            m.get(key).forEachStartTime(time -> map.put(time, m.get(key).get(time)));
 
+            for (Long time : map.keySet()) {
                 totalsString = totalsString
                         + "\n"
                         + key.tripId
@@ -86,23 +85,22 @@ public class FrequencyBasedHistoricalAverageCache {
         return totalsString + "\nDetails\n" + m;
     }
 
-    public synchronized HistoricalAverage getAverage(StopPathCacheKey key) {
+    public HistoricalAverage getAverage(StopPathCacheKey key) {
 
         logger.debug("Looking for average for : {} in FrequencyBasedHistoricalAverageCache cache.", key);
-        TreeMap<Long, HistoricalAverage> result = m.get(new StopPathKey(key));
+        AverageBuckets result = m.get(new StopPathKey(key));
         if (result != null) {
             logger.debug("Found average buckets for {}. ", key);
             if (key.getStartTime() != null) {
-                SortedMap<Long, HistoricalAverage> subresult =
-                        result.subMap(key.getStartTime(), key.getStartTime() + coreProperties.getFrequency().getCacheIncrementsForFrequencyService());
+                HistoricalAverage average = result.get(key.getStartTime());
 
-                if (subresult.size() == 1) {
+                if (average != null) {
                     logger.debug(
                             "Found average for : {} in FrequencyBasedHistoricalAverageCache cache"
                                     + " with a value : {}",
                             key,
-                            subresult.get(subresult.lastKey()));
-                    return subresult.get(subresult.lastKey());
+                            average);
+                    return average;
                 } else {
                     logger.debug(
                             "No historical data within time range ({} to {}) for this trip {} in"
@@ -117,12 +115,27 @@ public class FrequencyBasedHistoricalAverageCache {
         return null;
     }
 
-    private synchronized void putAverage(StopPathCacheKey key, HistoricalAverage average) {
-        m.computeIfAbsent(new StopPathKey(key), k -> new TreeMap<>());
-        m.get(new StopPathKey(key)).put(key.getStartTime(), average);
+    public void putAverage(StopPathCacheKey key, HistoricalAverage average) {
+        if (!getBuckets(key).set(key.getStartTime(), average)) {
+            logger.warn("Start time of {} is outside of the FrequencyBasedHistoricalAverageCache buckets.", key);
+        }
+    }
+
+    /** Adds a value to the average for the key, under the stripe of the key. */
+    void updateAverage(StopPathCacheKey key, double value) {
+        synchronized (locks.lockFor(key)) {
+            if (!getBuckets(key).update(key.getStartTime(), value)) {
+                logger.warn("Start time of {} is outside of the FrequencyBasedHistoricalAverageCache buckets.", key);
+            }
+        }
     }
 
-    public synchronized void putArrivalDeparture(ArrivalDeparture arrivalDeparture) throws Exception {
+    private AverageBuckets getBuckets(StopPathCacheKey key) {
+        return m.computeIfAbsent(new StopPathKey(key),
+                k -> new AverageBuckets(coreProperties.getFrequency().getCacheIncrementsForFrequencyService()));
+    }
+
+    public void putArrivalDeparture(ArrivalDeparture arrivalDeparture) throws Exception {
         Trip trip = dbConfig.getTrip(arrivalDeparture.getTripId());
 
         if (trip != null && trip.isNoSchedule()) {
@@ -140,20 +153,13 @@ public class FrequencyBasedHistoricalAverageCache {
                     StopPathCacheKey historicalAverageCacheKey = new StopPathCacheKey(
                             trip.getId(), pathDuration.getArrival().getStopPathIndex(), true, (long) time);
 
-                    HistoricalAverage average = getAverage(historicalAverageCacheKey);
-
-                    if (average == null) average = new HistoricalAverage();
-
-                    average.update(pathDuration.getDuration());
+                    updateAverage(historicalAverageCacheKey, pathDuration.getDuration());
 
                     logger.debug(
                             "Putting : {} in FrequencyBasedHistoricalAverageCache cache for key :"
-                                    + " {} which results in : {}.",
+                                    + " {}.",
                             pathDuration,
-                            historicalAverageCacheKey,
-                            average);
-
-                    putAverage(historicalAverageCacheKey, average);
+                            historicalAverageCacheKey);
                 }
             }
             DwellTimeResult stopDuration = getLastStopDuration(new IpcArrivalDeparture(arrivalDeparture), trip);
@@ -163,20 +169,12 @@ public class FrequencyBasedHistoricalAverageCache {
                 StopPathCacheKey historicalAverageCacheKey = new StopPathCacheKey(
                         trip.getId(), stopDuration.getDeparture().getStopPathIndex(), false, (long) time);
 
-                HistoricalAverage average = getAverage(historicalAverageCacheKey);
-
-                if (average == null) average = new HistoricalAverage();
-
-                average.update(stopDuration.getDuration());
+                updateAverage(historicalAverageCacheKey, stopDuration.getDuration());
 
                 logger.debug(
-                        "Putting : {} in FrequencyBasedHistoricalAverageCache cache for key : {}"
-                                + " which results in : {}.",
+                        "Putting : {} in FrequencyBasedHistoricalAverageCache cache for key : {}.",
                         stopDuration,
-                        historicalAverageCacheKey,
-                        average);
-
-                putAverage(historicalAverageCacheKey, average);
+                        historicalAverageCacheKey);
             }
             if (stopDuration == null && pathDuration == null) {
                 logger.debug(
@@ -244,7 +242,7 @@ public class FrequencyBasedHistoricalAverageCache {
     }
 
     private TravelTimeResult getLastPathDuration(IpcArrivalDeparture arrivalDeparture, Trip trip) {
-        Date nearestDay = DateUtils.truncate(new Date(arrivalDeparture.getTime().getTime()), Calendar.DAY_OF_MONTH);
+        int nearestDay = Time.getEpochDay(arrivalDeparture.getTime().getTime());
         TripKey tripKey = new TripKey(arrivalDeparture.getTripId(), nearestDay, trip.getStartTime());
 
         List<IpcArrivalDeparture> arrivalDepartures = tripDataHistoryCacheInterface.getTripHistory(tripKey);
@@ -261,7 +259,7 @@ public class FrequencyBasedHistoricalAverageCache {
     }
 
     private DwellTimeResult getLastStopDuration(IpcArrivalDeparture arrivalDeparture, Trip trip) {
-        Date nearestDay = DateUtils.truncate(new Date(arrivalDeparture.getTime().getTime()), Calendar.DAY_OF_MONTH);
+        int nearestDay = Time.getEpochDay(arrivalDeparture.getTime().getTime());
         TripKey tripKey = new TripKey(arrivalDeparture.getTripId(), nearestDay, trip.getStartTime());
 
         List<IpcArrivalDeparture> arrivalDepartures = tripDataHistoryCacheInterface.getTripHistory(tripKey);
@@ -276,20 +274,33 @@ public class FrequencyBasedHistoricalAverageCache {
         return null;
     }
 
-    public void populateCacheFromDb(Session session, Date startDate, Date endDate) throws Exception {
-        JPAQuery<ArrivalDeparture> query = new JPAQuery<>(session);
-        var qentity = QArrivalDeparture.arrivalDeparture;
-        List<ArrivalDeparture> results = query.from(qentity)
-                .where(qentity.time.between(startDate,endDate))
-                .fetch();
-
-        results.sort(new ArrivalDepartureComparator());
-        for (ArrivalDeparture result : results) {
-            // TODO this might be better done in the database.
-            if (gtfsFilter.routeNotFiltered(result.getRouteId())) {
-                putArrivalDeparture(result);
-            }
+    public void populateCacheFromDb(StatelessSession session, Date startDate, Date endDate) throws Exception {
+        // Newest first, as ArrivalDepartureComparator sorts them
+        ArrivalDepartureRepository.streamArrivalsDeparturesFromDb(
+                session, startDate, endDate, null, "ORDER BY time DESC", result -> {
+                    // TODO this might be better done in the database.
+                    if (gtfsFilter.routeNotFiltered(result.getRouteId())) {
+                        try {
+                            putArrivalDeparture(result);
+                        } catch (Exception e) {
+                            throw new IllegalStateException("Could not put " + result + " in the cache", e);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Returns a key, including the start time of the bucket, for each of the averages. Used when
+     * writing a snapshot of the averages.
+     */
+    public List<StopPathCacheKey> getKeys() {
+        List<StopPathCacheKey> keys = new ArrayList<>();
+        for (Map.Entry<StopPathKey, AverageBuckets> entry : m.entrySet()) {
+            StopPathKey key = entry.getKey();
+            entry.getValue().forEachStartTime(startTime ->
+                    keys.add(new StopPathCacheKey(key.tripId, key.stopPathIndex, key.travelTime, startTime)));
         }
+        return keys;
     }
 
     public static int round(double i, int v) {
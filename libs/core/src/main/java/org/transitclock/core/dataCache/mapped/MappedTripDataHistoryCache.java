@@ -0,0 +1,230 @@
+/* (C)2023 */
+package org.transitclock.core.dataCache.mapped;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.transitclock.core.dataCache.IpcArrivalDepartureComparator;
+import org.transitclock.core.dataCache.TripDataHistoryCacheInterface;
+import org.transitclock.core.dataCache.TripKey;
+import org.transitclock.core.dataCache.frequency.FrequencyBasedHistoricalAverageCache;
+import org.transitclock.domain.repository.ArrivalDepartureRepository;
+import org.transitclock.domain.structs.ArrivalDeparture;
+import org.transitclock.domain.structs.Trip;
+import org.transitclock.gtfs.DbConfig;
+import org.transitclock.gtfs.GtfsFilter;
+import org.transitclock.properties.CoreProperties;
+import org.transitclock.service.dto.IpcArrivalDeparture;
+import org.transitclock.utils.Time;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.StatelessSession;
+
+/**
+ * A TripDataHistoryCacheInterface that keeps the arrivals/departures off of the Java heap. Instead
+ * of an Ehcache of lists of IpcArrivalDeparture objects, which have to be deserialized as a whole
+ * for each read from the disk tier, the events are stored as fixed width records in memory mapped
+ * files. There is one file per trip start date so that old days can simply be dropped once they
+ * are older than transitclock.core.cache.tripDataHistoryRetentionDays.
+ *
+ * <p>Trips are keyed the same way as by the Ehcache implementations: by the frequency start time
+ * rounded to the cache increment for frequency based trips, and by the scheduled start time of the
+ * trip otherwise.
+ *
+ * <p>The files are only a way of getting the data off of the heap. They are deleted on start up
+ * since the cache is populated from the database, as for the other implementations.
+ */
+@Slf4j
+public class MappedTripDataHistoryCache implements TripDataHistoryCacheInterface {
+    private static final String FILE_PREFIX = "tripHistory-";
+    private static final String FILE_SUFFIX = ".dat";
+
+    private final GtfsFilter gtfsFilter;
+    private final DbConfig dbConfig;
+    private final CoreProperties coreProperties;
+    private final Path directory;
+
+    private final StringTable strings = new StringTable();
+
+    // Keyed on the epoch day of the trip start date
+    private final ConcurrentNavigableMap<Long, TripEventSegment> segments = new ConcurrentSkipListMap<>();
+
+    public MappedTripDataHistoryCache(GtfsFilter gtfsFilter, DbConfig dbConfig, CoreProperties coreProperties) {
+        this.gtfsFilter = gtfsFilter;
+        this.dbConfig = dbConfig;
+        this.coreProperties = coreProperties;
+        this.directory = Path.of(coreProperties.getCache().getTripDataHistoryDirectory());
+
+        try {
+            Files.createDirectories(directory);
+            deleteSegmentFiles();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not set up trip data history directory " + directory, e);
+        }
+    }
+
+    @Override
+    public List<IpcArrivalDeparture> getTripHistory(TripKey tripKey) {
+        TripEventSegment segment = segments.get((long) tripKey.getServiceDay());
+        return segment != null ? segment.read(tripKey) : null;
+    }
+
+    @Override
+    public TripKey putArrivalDeparture(ArrivalDeparture arrivalDeparture) {
+        Trip trip = dbConfig.getTrip(arrivalDeparture.getTripId());
+        if (trip == null) return null;
+
+        int nearestDay = Time.getEpochDay(arrivalDeparture.getTime());
+        Integer startTime = trip.getStartTime();
+        if (arrivalDeparture.getFreqStartTime() != null) {
+            int time = FrequencyBasedHistoricalAverageCache.secondsFromMidnight(arrivalDeparture.getFreqStartTime(), 2);
+            startTime = FrequencyBasedHistoricalAverageCache.round(
+                    time, coreProperties.getFrequency().getCacheIncrementsForFrequencyService());
+        }
+        TripKey tripKey = new TripKey(arrivalDeparture.getTripId(), nearestDay, startTime);
+
+        try {
+            put(tripKey, new IpcArrivalDeparture(arrivalDeparture));
+        } catch (Exception e) {
+            logger.error("Error adding {} event to TripDataHistoryCache.", arrivalDeparture, e);
+        }
+        return tripKey;
+    }
+
+    /**
+     * Appends the event to the segment of the service day of the trip key, creating the segment if
+     * needed. The event is dropped if the day is already outside of the retention period.
+     */
+    void put(TripKey tripKey, IpcArrivalDeparture event) throws IOException {
+        TripEventSegment segment = getOrCreateSegment(tripKey.getServiceDay());
+        if (segment == null) {
+            logger.debug("Not putting {} in TripDataHistoryCache since it is older than the retention period.",
+                    event);
+            return;
+        }
+
+        segment.append(tripKey, event);
+        logger.debug("Put {} in TripDataHistoryCache using key {}.", event, tripKey);
+    }
+
+    @Override
+    public void populateCacheFromDb(StatelessSession session, Date startDate, Date endDate) {
+        ArrivalDepartureRepository.streamArrivalsDeparturesFromDb(
+                session, startDate, endDate, null, null, result -> {
+                    if (gtfsFilter.routeNotFiltered(result.getRouteId())) {
+                        putArrivalDeparture(result);
+                    }
+                });
+    }
+
+    @Override
+    public IpcArrivalDeparture findPreviousArrivalEvent(
+            List<IpcArrivalDeparture> arrivalDepartures, IpcArrivalDeparture current) {
+        if (arrivalDepartures == null) return null;
+        arrivalDepartures.sort(new IpcArrivalDepartureComparator());
+        for (IpcArrivalDeparture tocheck : arrivalDepartures) {
+            if (tocheck.getStopId().equals(current.getStopId()) && (current.isDeparture() && tocheck.isArrival())) {
+                return tocheck;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public IpcArrivalDeparture findPreviousDepartureEvent(
+            List<IpcArrivalDeparture> arrivalDepartures, IpcArrivalDeparture current) {
+        if (arrivalDepartures == null) return null;
+        arrivalDepartures.sort(new IpcArrivalDepartureComparator());
+        for (IpcArrivalDeparture tocheck : arrivalDepartures) {
+            // For schedule based trips both frequency start times are null
+            if (tocheck.getStopPathIndex() == (current.getStopPathIndex() - 1)
+                    && (current.isArrival() && tocheck.isDeparture())
+                    && Objects.equals(current.getFreqStartTime(), tocheck.getFreqStartTime())) {
+                return tocheck;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<TripKey> getKeys() {
+        List<TripKey> keys = new ArrayList<>();
+        for (TripEventSegment segment : segments.values()) {
+            keys.addAll(segment.getKeys());
+        }
+        return keys;
+    }
+
+    /** Closes and deletes all of the segment files. Called when the application shuts down. */
+    public synchronized void close() {
+        for (TripEventSegment segment : segments.values()) {
+            closeSegment(segment);
+        }
+        segments.clear();
+    }
+
+    /**
+     * Returns the segment for the day, creating it if needed. Creating a segment for a new day
+     * drops the segments that are now outside of the retention period.
+     *
+     * @return the segment, or null if the day is already outside of the retention period
+     */
+    private TripEventSegment getOrCreateSegment(long epochDay) {
+        TripEventSegment segment = segments.get(epochDay);
+        return segment != null ? segment : createSegment(epochDay);
+    }
+
+    private synchronized TripEventSegment createSegment(long epochDay) {
+        TripEventSegment segment = segments.get(epochDay);
+        if (segment != null) return segment;
+
+        int retentionDays = coreProperties.getCache().getTripDataHistoryRetentionDays();
+        if (!segments.isEmpty() && epochDay <= segments.lastKey() - retentionDays) return null;
+
+        try {
+            segment = new TripEventSegment(
+                    directory.resolve(FILE_PREFIX + LocalDate.ofEpochDay(epochDay) + FILE_SUFFIX), strings);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not create trip data history segment in " + directory, e);
+        }
+        segments.put(epochDay, segment);
+
+        // Drop the days that are now too old
+        Map<Long, TripEventSegment> expired = segments.headMap(segments.lastKey() - retentionDays, true);
+        for (TripEventSegment expiredSegment : new ArrayList<>(expired.values())) {
+            logger.info("Dropping trip data history segment with {} events since it is older than {} days.",
+                    expiredSegment.getRecordCount(), retentionDays);
+            closeSegment(expiredSegment);
+        }
+        expired.clear();
+
+        return segment;
+    }
+
+    private static void closeSegment(TripEventSegment segment) {
+        try {
+            segment.close();
+        } catch (IOException e) {
+            logger.error("Error closing trip data history segment.", e);
+        }
+    }
+
+    /** The files are only valid while the process that wrote them is running */
+    private void deleteSegmentFiles() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/* (C)2023 */
+package org.transitclock.core.dataCache.mapped;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns a small integer ID to each distinct string so that the fixed width records of a
+ * TripEventSegment can refer to IDs such as vehicle, stop and trip IDs. There are only a few
+ * thousand distinct values of these even though there are millions of records.
+ *
+ * <p>Lookups by ID don't need to lock. The array is republished via a volatile write after each
+ * new string is stored so that readers always see the string for any ID they got from a record.
+ */
+class StringTable {
+    static final int NULL_ID = -1;
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+    private volatile String[] strings = new String[1024];
+    private int size = 0;
+
+    /**
+     * Returns the ID for the string, adding it to the table if it is not there yet.
+     *
+     * @param str the string, can be null
+     * @return the ID, or NULL_ID if the string is null
+     */
+    int id(String str) {
+        if (str == null) return NULL_ID;
+        Integer id = ids.get(str);
+        return id != null ? id : add(str);
+    }
+
+    /**
+     * Returns the string for an ID obtained from id().
+     *
+     * @param id the ID
+     * @return the string, or null for NULL_ID
+     */
+    String get(int id) {
+        return id == NULL_ID ? null : strings[id];
+    }
+
+    int size() {
+        return ids.size();
+    }
+
+    private synchronized int add(String str) {
+        Integer existing = ids.get(str);
+        if (existing != null) return existing;
+
+        String[] current = strings;
+        if (size == current.length) current = Arrays.copyOf(current, current.length * 2);
+        current[size] = str;
+        strings = current;
+        ids.put(str, size);
+        return size++;
+    }
+}
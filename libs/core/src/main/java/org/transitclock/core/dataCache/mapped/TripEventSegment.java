@@ -0,0 +1,182 @@
+/* (C)2023 */
+package org.transitclock.core.dataCache.mapped;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.transitclock.core.dataCache.IpcArrivalDepartureComparator;
+import org.transitclock.core.dataCache.TripKey;
+import org.transitclock.service.dto.IpcArrivalDeparture;
+
+/**
+ * The arrivals/departures of all trips that started on one day. Events are appended as fixed width
+ * records to a memory mapped file, so they are not on the Java heap. The events of a trip are
+ * chained together by each record pointing to the previous record of the same trip, which means
+ * that the only heap data is the index entry with the last record and the number of records for
+ * each trip.
+ *
+ * <p>Appends are serialized but reads don't lock. Reads use absolute gets on the mapped buffers
+ * and the index entry for a trip is only replaced after its record has been written.
+ */
+class TripEventSegment implements Closeable {
+
+    // Record layout
+    private static final int TIME = 0;
+    private static final int FREQ_START_TIME = 8;
+    private static final int STOP_PATH_INDEX = 16;
+    private static final int GTFS_STOP_SEQ = 20;
+    private static final int VEHICLE_ID = 24;
+    private static final int STOP_ID = 28;
+    private static final int TRIP_ID = 32;
+    private static final int BLOCK_ID = 36;
+    private static final int DIRECTION_ID = 40;
+    private static final int ROUTE_ID = 44;
+    private static final int SERVICE_ID = 48;
+    private static final int PREVIOUS_RECORD = 52;
+    private static final int FLAGS = 56;
+    static final int RECORD_SIZE = 64;
+
+    private static final byte FLAG_ARRIVAL = 1;
+    private static final long NULL_TIME = Long.MIN_VALUE;
+    private static final int NO_RECORD = -1;
+
+    // 4MB per mapped chunk so that a quiet day doesn't use a large file
+    private static final int RECORDS_PER_CHUNK = 64 * 1024;
+    private static final long CHUNK_SIZE = (long) RECORDS_PER_CHUNK * RECORD_SIZE;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final StringTable strings;
+    private final List<MappedByteBuffer> chunks = new CopyOnWriteArrayList<>();
+    private final Map<TripKey, TripIndexEntry> index = new ConcurrentHashMap<>();
+
+    // Guarded by this
+    private int recordCount = 0;
+
+    private record TripIndexEntry(int lastRecord, int count) {}
+
+    TripEventSegment(Path file, StringTable strings) throws IOException {
+        this.file = file;
+        this.strings = strings;
+        this.channel = FileChannel.open(
+                file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Appends an event for the trip.
+     *
+     * @param tripKey the trip
+     * @param event the arrival or departure
+     * @throws IOException if the file could not be extended
+     */
+    synchronized void append(TripKey tripKey, IpcArrivalDeparture event) throws IOException {
+        // Segment was dropped for retention while the event was being added
+        if (!channel.isOpen()) return;
+
+        int recordNumber = recordCount;
+        int chunkIndex = recordNumber / RECORDS_PER_CHUNK;
+        if (chunkIndex == chunks.size()) {
+            // Mapping past the end of the file extends it
+            chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, chunkIndex * CHUNK_SIZE, CHUNK_SIZE));
+        }
+        MappedByteBuffer chunk = chunks.get(chunkIndex);
+        int offset = (recordNumber % RECORDS_PER_CHUNK) * RECORD_SIZE;
+
+        TripIndexEntry previous = index.get(tripKey);
+        chunk.putLong(offset + TIME, event.getTimeMillis());
+        chunk.putLong(offset + FREQ_START_TIME, toTime(event.getFreqStartTime()));
+        chunk.putInt(offset + STOP_PATH_INDEX, event.getStopPathIndex());
+        chunk.putInt(offset + GTFS_STOP_SEQ, event.getGtfsStopSeq());
+        chunk.putInt(offset + VEHICLE_ID, strings.id(event.getVehicleId()));
+        chunk.putInt(offset + STOP_ID, strings.id(event.getStopId()));
+        chunk.putInt(offset + TRIP_ID, strings.id(event.getTripId()));
+        chunk.putInt(offset + BLOCK_ID, strings.id(event.getBlockId()));
+        chunk.putInt(offset + DIRECTION_ID, strings.id(event.getDirectionId()));
+        chunk.putInt(offset + ROUTE_ID, strings.id(event.getRouteId()));
+        chunk.putInt(offset + SERVICE_ID, strings.id(event.getServiceId()));
+        chunk.putInt(offset + PREVIOUS_RECORD, previous != null ? previous.lastRecord() : NO_RECORD);
+        chunk.put(offset + FLAGS, event.isArrival() ? FLAG_ARRIVAL : 0);
+
+        recordCount++;
+        index.put(tripKey, new TripIndexEntry(recordNumber, previous != null ? previous.count() + 1 : 1));
+    }
+
+    /**
+     * Returns the events of the trip sorted by time, or null if there aren't any. The list is
+     * newly created so callers are free to modify it.
+     *
+     * @param tripKey the trip
+     * @return the events or null
+     */
+    List<IpcArrivalDeparture> read(TripKey tripKey) {
+        TripIndexEntry entry = index.get(tripKey);
+        if (entry == null) return null;
+
+        List<IpcArrivalDeparture> events = new ArrayList<>(entry.count());
+        int recordNumber = entry.lastRecord();
+        for (int i = 0; i < entry.count() && recordNumber != NO_RECORD; ++i) {
+            MappedByteBuffer chunk = chunks.get(recordNumber / RECORDS_PER_CHUNK);
+            int offset = (recordNumber % RECORDS_PER_CHUNK) * RECORD_SIZE;
+
+            IpcArrivalDeparture event = new IpcArrivalDeparture();
+            event.setTimeMillis(chunk.getLong(offset + TIME));
+            event.setFreqStartTime(toDate(chunk.getLong(offset + FREQ_START_TIME)));
+            event.setStopPathIndex(chunk.getInt(offset + STOP_PATH_INDEX));
+            event.setGtfsStopSeq(chunk.getInt(offset + GTFS_STOP_SEQ));
+            event.setVehicleId(strings.get(chunk.getInt(offset + VEHICLE_ID)));
+            event.setStopId(strings.get(chunk.getInt(offset + STOP_ID)));
+            event.setTripId(strings.get(chunk.getInt(offset + TRIP_ID)));
+            event.setBlockId(strings.get(chunk.getInt(offset + BLOCK_ID)));
+            event.setDirectionId(strings.get(chunk.getInt(offset + DIRECTION_ID)));
+            event.setRouteId(strings.get(chunk.getInt(offset + ROUTE_ID)));
+            event.setServiceId(strings.get(chunk.getInt(offset + SERVICE_ID)));
+            event.setArrival((chunk.get(offset + FLAGS) & FLAG_ARRIVAL) != 0);
+            events.add(event);
+
+            recordNumber = chunk.getInt(offset + PREVIOUS_RECORD);
+        }
+
+        events.sort(new IpcArrivalDepartureComparator());
+        return events;
+    }
+
+    Set<TripKey> getKeys() {
+        return index.keySet();
+    }
+
+    synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    /** Closes the file and deletes it. The mapped memory is released once it is garbage collected. */
+    @Override
+    public synchronized void close() throws IOException {
+        index.clear();
+        channel.close();
+        Files.deleteIfExists(file);
+    }
+
+    private static long toTime(Date date) {
+        return date != null ? date.getTime() : NULL_TIME;
+    }
+
+    private static Date toDate(long time) {
+        return time != NULL_TIME ? new Date(time) : null;
+    }
+}
@@ -1,31 +1,30 @@
 /* (C)2023 */
 package org.transitclock.core.dataCache.scheduled;
 
-import java.util.Calendar;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
 import org.transitclock.core.DwellTimeDetails;
 import org.transitclock.core.TravelTimeDetails;
-import org.transitclock.core.dataCache.ArrivalDepartureComparator;
 import org.transitclock.core.dataCache.HistoricalAverage;
 import org.transitclock.core.dataCache.StopPathCacheKey;
 import org.transitclock.core.dataCache.TripDataHistoryCacheInterface;
 import org.transitclock.core.dataCache.TripKey;
 import org.transitclock.core.prediction.datafilter.TravelTimeDataFilter;
+import org.transitclock.domain.repository.ArrivalDepartureRepository;
 import org.transitclock.domain.structs.ArrivalDeparture;
-import org.transitclock.domain.structs.QArrivalDeparture;
 import org.transitclock.domain.structs.Trip;
 import org.transitclock.gtfs.DbConfig;
 import org.transitclock.properties.CoreProperties;
 import org.transitclock.service.dto.IpcArrivalDeparture;
+import org.transitclock.utils.Time;
+import org.transitclock.utils.threading.StripedLocks;
 
-import com.querydsl.jpa.impl.JPAQuery;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.time.DateUtils;
 import org.ehcache.Cache;
 import org.ehcache.CacheManager;
-import org.hibernate.Session;
+import org.hibernate.StatelessSession;
 import org.springframework.stereotype.Component;
 
 /**
@@ -40,6 +39,9 @@ public class ScheduleBasedHistoricalAverageCache {
     private final DbConfig dbConfig;
     private final TravelTimeDataFilter travelTimeDataFilter;
     private final CoreProperties coreProperties;
+    // So that AVL threads only wait for each other when updating the same
+    // stop path instead of for every arrival/departure
+    private final StripedLocks locks = new StripedLocks();
 
     public ScheduleBasedHistoricalAverageCache(CacheManager cm,
                                                TripDataHistoryCacheInterface tripDataHistoryCache,
@@ -52,17 +54,17 @@ public class ScheduleBasedHistoricalAverageCache {
         this.coreProperties = coreProperties;
     }
 
-    public synchronized HistoricalAverage getAverage(StopPathCacheKey key) {
+    public HistoricalAverage getAverage(StopPathCacheKey key) {
         return cache.get(key);
     }
 
-    public synchronized void putAverage(StopPathCacheKey key, HistoricalAverage average) {
+    public void putAverage(StopPathCacheKey key, HistoricalAverage average) {
         logger.debug("Putting: {} in cache with values : {}", key.toString(), average);
 
         cache.put(key, average);
     }
 
-    public synchronized void putArrivalDeparture(ArrivalDeparture arrivalDeparture) throws Exception {
+    public void putArrivalDeparture(ArrivalDeparture arrivalDeparture) throws Exception {
         Trip trip = dbConfig.getTrip(arrivalDeparture.getTripId());
 
         if (trip != null && !trip.isNoSchedule()) {
@@ -76,15 +78,11 @@ public class ScheduleBasedHistoricalAverageCache {
                     StopPathCacheKey historicalAverageCacheKey =
                             new StopPathCacheKey(trip.getId(), arrivalDeparture.getStopPathIndex(), true);
 
-                    HistoricalAverage average = getAverage(historicalAverageCacheKey);
-
-                    if (average == null) average = new HistoricalAverage();
                     logger.debug(
                             "Updating historical averege for : {} with {}",
                             historicalAverageCacheKey,
                             travelTimeDetails);
-                    average.update(travelTimeDetails.getTravelTime());
-                    putAverage(historicalAverageCacheKey, average);
+                    updateAverage(historicalAverageCacheKey, travelTimeDetails.getTravelTime());
                 }
             }
 
@@ -94,20 +92,26 @@ public class ScheduleBasedHistoricalAverageCache {
                 StopPathCacheKey historicalAverageCacheKey =
                         new StopPathCacheKey(trip.getId(), arrivalDeparture.getStopPathIndex(), false);
 
-                HistoricalAverage average = getAverage(historicalAverageCacheKey);
-
-                if (average == null) average = new HistoricalAverage();
-
                 logger.debug(
                         "Updating historical averege for : {} with {}", historicalAverageCacheKey, dwellTimeDetails);
-                average.update(dwellTimeDetails.getDwellTime());
-                putAverage(historicalAverageCacheKey, average);
+                updateAverage(historicalAverageCacheKey, dwellTimeDetails.getDwellTime());
             }
         }
     }
 
+    /** Adds a value to the average for the key, under the stripe of the key. */
+    void updateAverage(StopPathCacheKey key, double value) {
+        synchronized (locks.lockFor(key)) {
+            HistoricalAverage average = getAverage(key);
+
+            if (average == null) average = new HistoricalAverage();
+            average.update(value);
+            putAverage(key, average);
+        }
+    }
+
     private TravelTimeDetails getLastTravelTimeDetails(IpcArrivalDeparture arrivalDeparture, Trip trip) {
-        Date nearestDay = DateUtils.truncate(new Date(arrivalDeparture.getTime().getTime()), Calendar.DAY_OF_MONTH);
+        int nearestDay = Time.getEpochDay(arrivalDeparture.getTime().getTime());
         TripKey tripKey = new TripKey(arrivalDeparture.getTripId(), nearestDay, trip.getStartTime());
 
         List<IpcArrivalDeparture> arrivalDepartures = tripDataHistoryCache.getTripHistory(tripKey);
@@ -125,7 +129,7 @@ public class ScheduleBasedHistoricalAverageCache {
     }
 
     private DwellTimeDetails getLastDwellTimeDetails(IpcArrivalDeparture arrivalDeparture, Trip trip) {
-        Date nearestDay = DateUtils.truncate(new Date(arrivalDeparture.getTime().getTime()), Calendar.DAY_OF_MONTH);
+        int nearestDay = Time.getEpochDay(arrivalDeparture.getTime().getTime());
         TripKey tripKey = new TripKey(arrivalDeparture.getTripId(), nearestDay, trip.getStartTime());
 
         List<IpcArrivalDeparture> arrivalDepartures = tripDataHistoryCache.getTripHistory(tripKey);
@@ -141,22 +145,23 @@ public class ScheduleBasedHistoricalAverageCache {
         return null;
     }
 
-    public void populateCacheFromDb(Session session, Date startDate, Date endDate) throws Exception {
-        JPAQuery<ArrivalDeparture> query = new JPAQuery<>(session);
-        var qentity = QArrivalDeparture.arrivalDeparture;
-        List<ArrivalDeparture> results = query.from(qentity)
-                .where(qentity.time.between(startDate,endDate))
-                .fetch();
-
-        results.sort(new ArrivalDepartureComparator());
-
-        for (ArrivalDeparture result : results) {
-            putArrivalDeparture(result);
-        }
+    public void populateCacheFromDb(StatelessSession session, Date startDate, Date endDate) throws Exception {
+        // Newest first, as ArrivalDepartureComparator sorts them
+        ArrivalDepartureRepository.streamArrivalsDeparturesFromDb(
+                session, startDate, endDate, null, "ORDER BY time DESC", result -> {
+                    try {
+                        putArrivalDeparture(result);
+                    } catch (Exception e) {
+                        throw new IllegalStateException("Could not put " + result + " in the cache", e);
+                    }
+                });
     }
 
     public List<StopPathCacheKey> getKeys() {
-        // TODO Auto-generated method stub
-        return null;
+        List<StopPathCacheKey> keys = new ArrayList<>();
+        for (Cache.Entry<StopPathCacheKey, HistoricalAverage> entry : cache) {
+            keys.add(entry.getKey());
+        }
+        return keys;
     }
 }
@@ -0,0 +1,401 @@
+/* (C)2023 */
+package org.transitclock.core.dataCache.snapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import org.transitclock.core.dataCache.DwellTimeModelCacheInterface;
+import org.transitclock.core.dataCache.ErrorCache;
+import org.transitclock.core.dataCache.HistoricalAverage;
+import org.transitclock.core.dataCache.KalmanError;
+import org.transitclock.core.dataCache.KalmanErrorCacheKey;
+import org.transitclock.core.dataCache.StopPathCacheKey;
+import org.transitclock.core.dataCache.frequency.FrequencyBasedHistoricalAverageCache;
+import org.transitclock.core.dataCache.scheduled.ScheduleBasedHistoricalAverageCache;
+import org.transitclock.core.prediction.scheduled.dwell.DwellModel;
+import org.transitclock.properties.CoreProperties;
+import org.transitclock.utils.SystemTime;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes the learned prediction models, meaning the schedule and frequency based historical
+ * averages, the Kalman errors and the dwell time models, to a snapshot file so that on start up
+ * they don't have to be rebuilt by reading days of arrivals/departures from the database. The
+ * snapshot has a watermark, the time it was taken, and only arrivals/departures after the
+ * watermark need to be replayed into the models after loading it.
+ *
+ * <p>The file is a magic number and format version, the watermark, a section per model with the
+ * number of entries followed by the entries, and a CRC32 of everything before it. Keys and averages
+ * are written field by field. Dwell models are written with Java serialization since there are
+ * different implementations of them. A snapshot is written to a temporary file which then replaces
+ * the previous snapshot, so a crash while writing never leaves a partial snapshot behind. Any
+ * problem reading a snapshot, such as a bad checksum or an old format version, means it is ignored
+ * and the caches are populated from the database as if there wasn't a snapshot.
+ *
+ * <p>Since the watermark is the time the snapshot was started, an arrival/departure that was being
+ * processed while the snapshot was written can be counted again when replaying. That is only one
+ * extra sample for an average.
+ *
+ * <p>Only the models are in the snapshot. The trip and stop arrival/departure histories are still
+ * populated from the database on start up, so a snapshot only shortens part of a cold start.
+ */
+@Slf4j
+@Component
+public class ModelSnapshotManager {
+    private static final int MAGIC = 0x54434d53; // "TCMS"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte SECTION_END = 0;
+    private static final byte SECTION_SCHEDULE_AVERAGES = 1;
+    private static final byte SECTION_FREQUENCY_AVERAGES = 2;
+    private static final byte SECTION_KALMAN_ERRORS = 3;
+    private static final byte SECTION_DWELL_MODELS = 4;
+
+    // Dwell models only contain our own classes and JDK classes
+    private static final ObjectInputFilter DWELL_MODEL_FILTER =
+            ObjectInputFilter.Config.createFilter("org.transitclock.**;java.**;!*");
+
+    private final ScheduleBasedHistoricalAverageCache scheduleBasedHistoricalAverageCache;
+    private final FrequencyBasedHistoricalAverageCache frequencyBasedHistoricalAverageCache;
+    private final ErrorCache errorCache;
+    private final DwellTimeModelCacheInterface dwellTimeModelCacheInterface;
+    private final CoreProperties.Cache cacheProperties;
+
+    // Snapshots are only written once the caches have been populated on start up
+    // so that a partially populated cache never replaces a good snapshot
+    private volatile boolean cachesPopulated = false;
+
+    public ModelSnapshotManager(ScheduleBasedHistoricalAverageCache scheduleBasedHistoricalAverageCache,
+                                FrequencyBasedHistoricalAverageCache frequencyBasedHistoricalAverageCache,
+                                ErrorCache errorCache,
+                                DwellTimeModelCacheInterface dwellTimeModelCacheInterface,
+                                CoreProperties coreProperties) {
+        this.scheduleBasedHistoricalAverageCache = scheduleBasedHistoricalAverageCache;
+        this.frequencyBasedHistoricalAverageCache = frequencyBasedHistoricalAverageCache;
+        this.errorCache = errorCache;
+        this.dwellTimeModelCacheInterface = dwellTimeModelCacheInterface;
+        this.cacheProperties = coreProperties.getCache();
+    }
+
+    public boolean isEnabled() {
+        return cacheProperties.isModelSnapshotEnabled();
+    }
+
+    /**
+     * Loads the snapshot into the caches. A snapshot with a watermark before oldestWatermark is
+     * discarded, since replaying everything after it would take longer than populating the caches
+     * from scratch.
+     *
+     * @param oldestWatermark the oldest watermark of a snapshot that is still used
+     * @return the watermark of the snapshot, or null if snapshots are disabled or there is no
+     *     usable snapshot. Only arrivals/departures after the watermark need to be replayed.
+     */
+    public Date loadSnapshot(Date oldestWatermark) {
+        if (!isEnabled()) return null;
+
+        Path file = Path.of(cacheProperties.getModelSnapshotFile());
+        if (!Files.exists(file)) {
+            logger.info("No prediction model snapshot {} so populating the caches from the database.", file);
+            return null;
+        }
+
+        try {
+            long startMillis = System.currentTimeMillis();
+            Snapshot snapshot = read(Files.readAllBytes(file));
+            if (snapshot.watermark.before(oldestWatermark)) {
+                logger.info("Prediction model snapshot {} with watermark {} is older than {} so populating the "
+                        + "caches from the database.", file, snapshot.watermark, oldestWatermark);
+                return null;
+            }
+            snapshot.restore();
+            logger.info("Loaded prediction model snapshot {} with watermark {} in {} msec. {}",
+                    file, snapshot.watermark, System.currentTimeMillis() - startMillis, snapshot);
+            return snapshot.watermark;
+        } catch (Exception e) {
+            logger.error("Could not load prediction model snapshot {} so populating the caches from the database.",
+                    file, e);
+            return null;
+        }
+    }
+
+    /** Called once the caches have been populated on start up so that snapshots can be written. */
+    public void cachesPopulated() {
+        cachesPopulated = true;
+    }
+
+    @Scheduled(fixedRateString = "${transitclock.core.cache.modelSnapshotIntervalSecs:900}",
+            initialDelayString = "${transitclock.core.cache.modelSnapshotIntervalSecs:900}",
+            timeUnit = TimeUnit.SECONDS)
+    public void run() {
+        writeSnapshot();
+    }
+
+    @PreDestroy
+    public void close() {
+        writeSnapshot();
+    }
+
+    /** Writes a snapshot of the models if snapshots are enabled and the caches have been populated. */
+    public synchronized void writeSnapshot() {
+        if (!isEnabled() || !cachesPopulated) return;
+
+        Path file = Path.of(cacheProperties.getModelSnapshotFile());
+        Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            long startMillis = System.currentTimeMillis();
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            int entries = write(tmpFile, new Date(SystemTime.getMillis()));
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Wrote prediction model snapshot {} with {} entries in {} msec.",
+                    file, entries, System.currentTimeMillis() - startMillis);
+        } catch (Exception e) {
+            // Can happen if the caches are closed while shutting down
+            logger.error("Could not write prediction model snapshot {}.", file, e);
+        }
+    }
+
+    private int write(Path tmpFile, Date watermark) throws IOException {
+        CRC32 crc = new CRC32();
+        int entries = 0;
+        try (FileOutputStream fileOut = new FileOutputStream(tmpFile.toFile());
+                DataOutputStream out = new DataOutputStream(
+                        new CheckedOutputStream(new BufferedOutputStream(fileOut), crc))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(watermark.getTime());
+
+            entries += writeAverages(out, SECTION_SCHEDULE_AVERAGES, scheduleBasedHistoricalAverageCache.getKeys(),
+                    scheduleBasedHistoricalAverageCache::getAverage);
+            entries += writeAverages(out, SECTION_FREQUENCY_AVERAGES, frequencyBasedHistoricalAverageCache.getKeys(),
+                    frequencyBasedHistoricalAverageCache::getAverage);
+            entries += writeKalmanErrors(out);
+            entries += writeDwellModels(out);
+            out.writeByte(SECTION_END);
+
+            // The checksum is of everything before it
+            out.writeLong(crc.getValue());
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        return entries;
+    }
+
+    private interface AverageLookup {
+        HistoricalAverage getAverage(StopPathCacheKey key);
+    }
+
+    private static int writeAverages(DataOutputStream out, byte section, List<StopPathCacheKey> keys,
+                                     AverageLookup lookup) throws IOException {
+        List<StopPathCacheKey> present = new ArrayList<>(keys.size());
+        List<HistoricalAverage> averages = new ArrayList<>(keys.size());
+        for (StopPathCacheKey key : keys) {
+            // Can have expired since getting the keys
+            HistoricalAverage average = lookup.getAverage(key);
+            if (average != null) {
+                present.add(key);
+                averages.add(average);
+            }
+        }
+
+        out.writeByte(section);
+        out.writeInt(present.size());
+        for (int i = 0; i < present.size(); ++i) {
+            writeKey(out, present.get(i));
+            out.writeInt(averages.get(i).getCount());
+            out.writeDouble(averages.get(i).getAverage());
+        }
+        return present.size();
+    }
+
+    private int writeKalmanErrors(DataOutputStream out) throws IOException {
+        List<KalmanErrorCacheKey> keys = new ArrayList<>();
+        List<KalmanError> errors = new ArrayList<>();
+        for (KalmanErrorCacheKey key : errorCache.getKeys()) {
+            KalmanError error = errorCache.getErrorValue(key);
+            if (error != null && error.getError() != null) {
+                keys.add(key);
+                errors.add(error);
+            }
+        }
+
+        out.writeByte(SECTION_KALMAN_ERRORS);
+        out.writeInt(keys.size());
+        for (int i = 0; i < keys.size(); ++i) {
+            out.writeUTF(keys.get(i).getTripId());
+            out.writeInt(keys.get(i).getStopPathIndex());
+            out.writeDouble(errors.get(i).getError());
+            out.writeInt(errors.get(i).getUpdates() != null ? errors.get(i).getUpdates() : -1);
+        }
+        return keys.size();
+    }
+
+    private int writeDwellModels(DataOutputStream out) throws IOException {
+        List<StopPathCacheKey> keys = new ArrayList<>();
+        List<byte[]> models = new ArrayList<>();
+        for (StopPathCacheKey key : dwellTimeModelCacheInterface.getKeys()) {
+            DwellModel model = dwellTimeModelCacheInterface.getModel(key);
+            if (model == null) continue;
+            try {
+                models.add(serialize(model));
+                keys.add(key);
+            } catch (IOException e) {
+                logger.warn("Not including dwell time model for {} in snapshot. {}", key, e.getMessage());
+            }
+        }
+
+        out.writeByte(SECTION_DWELL_MODELS);
+        out.writeInt(keys.size());
+        for (int i = 0; i < keys.size(); ++i) {
+            writeKey(out, keys.get(i));
+            out.writeInt(models.get(i).length);
+            out.write(models.get(i));
+        }
+        return keys.size();
+    }
+
+    private static void writeKey(DataOutputStream out, StopPathCacheKey key) throws IOException {
+        out.writeUTF(key.getTripId());
+        out.writeInt(key.getStopPathIndex());
+        out.writeBoolean(key.isTravelTime());
+        out.writeBoolean(key.getStartTime() != null);
+        if (key.getStartTime() != null) out.writeLong(key.getStartTime());
+    }
+
+    private static StopPathCacheKey readKey(DataInputStream in) throws IOException {
+        String tripId = in.readUTF();
+        int stopPathIndex = in.readInt();
+        boolean travelTime = in.readBoolean();
+        Long startTime = in.readBoolean() ? in.readLong() : null;
+        return new StopPathCacheKey(tripId, stopPathIndex, travelTime, startTime);
+    }
+
+    private static byte[] serialize(DwellModel model) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(model);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static DwellModel deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            in.setObjectInputFilter(DWELL_MODEL_FILTER);
+            return (DwellModel) in.readObject();
+        }
+    }
+
+    /**
+     * Reads the whole snapshot before anything is put into the caches so that a snapshot that turns
+     * out to be unusable part way through doesn't leave the caches partially loaded.
+     */
+    private Snapshot read(byte[] bytes) throws IOException, ClassNotFoundException {
+        if (bytes.length < Long.BYTES) throw new IOException("Snapshot is truncated");
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - Long.BYTES);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        in.skipNBytes(bytes.length - Long.BYTES);
+        if (in.readLong() != crc.getValue()) throw new IOException("Snapshot checksum does not match");
+
+        in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - Long.BYTES));
+        if (in.readInt() != MAGIC) throw new IOException("Not a prediction model snapshot");
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) throw new IOException("Unsupported snapshot version " + version);
+
+        Snapshot snapshot = new Snapshot(new Date(in.readLong()));
+        for (byte section = in.readByte(); section != SECTION_END; section = in.readByte()) {
+            int count = in.readInt();
+            for (int i = 0; i < count; ++i) {
+                switch (section) {
+                    case SECTION_SCHEDULE_AVERAGES, SECTION_FREQUENCY_AVERAGES -> {
+                        StopPathCacheKey key = readKey(in);
+                        HistoricalAverage average = new HistoricalAverage();
+                        average.setCount(in.readInt());
+                        average.setAverage(in.readDouble());
+                        if (section == SECTION_SCHEDULE_AVERAGES) {
+                            snapshot.scheduleAverageKeys.add(key);
+                            snapshot.scheduleAverages.add(average);
+                        } else {
+                            snapshot.frequencyAverageKeys.add(key);
+                            snapshot.frequencyAverages.add(average);
+                        }
+                    }
+                    case SECTION_KALMAN_ERRORS -> {
+                        snapshot.kalmanErrorKeys.add(new KalmanErrorCacheKey(in.readUTF(), in.readInt()));
+                        double error = in.readDouble();
+                        int updates = in.readInt();
+                        snapshot.kalmanErrors.add(new KalmanError(error, updates >= 0 ? updates : null));
+                    }
+                    case SECTION_DWELL_MODELS -> {
+                        snapshot.dwellModelKeys.add(readKey(in));
+                        byte[] model = new byte[in.readInt()];
+                        in.readFully(model);
+                        snapshot.dwellModels.add(deserialize(model));
+                    }
+                    default -> throw new IOException("Unknown snapshot section " + section);
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    private class Snapshot {
+        private final Date watermark;
+        private final List<StopPathCacheKey> scheduleAverageKeys = new ArrayList<>();
+        private final List<HistoricalAverage> scheduleAverages = new ArrayList<>();
+        private final List<StopPathCacheKey> frequencyAverageKeys = new ArrayList<>();
+        private final List<HistoricalAverage> frequencyAverages = new ArrayList<>();
+        private final List<KalmanErrorCacheKey> kalmanErrorKeys = new ArrayList<>();
+        private final List<KalmanError> kalmanErrors = new ArrayList<>();
+        private final List<StopPathCacheKey> dwellModelKeys = new ArrayList<>();
+        private final List<DwellModel> dwellModels = new ArrayList<>();
+
+        private Snapshot(Date watermark) {
+            this.watermark = watermark;
+        }
+
+        private void restore() {
+            for (int i = 0; i < scheduleAverageKeys.size(); ++i) {
+                scheduleBasedHistoricalAverageCache.putAverage(scheduleAverageKeys.get(i), scheduleAverages.get(i));
+            }
+            for (int i = 0; i < frequencyAverageKeys.size(); ++i) {
+                frequencyBasedHistoricalAverageCache.putAverage(frequencyAverageKeys.get(i), frequencyAverages.get(i));
+            }
+            for (int i = 0; i < kalmanErrorKeys.size(); ++i) {
+                errorCache.putError(kalmanErrorKeys.get(i), kalmanErrors.get(i));
+            }
+            for (int i = 0; i < dwellModelKeys.size(); ++i) {
+                dwellTimeModelCacheInterface.putModel(dwellModelKeys.get(i), dwellModels.get(i));
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "scheduleAverages=" + scheduleAverages.size()
+                    + ", frequencyAverages=" + frequencyAverages.size()
+                    + ", kalmanErrors=" + kalmanErrors.size()
+                    + ", dwellModels=" + dwellModels.size();
+        }
+    }
+}
@@ -12,6 +12,7 @@ import org.transitclock.gtfs.DbConfig;
 import org.transitclock.properties.CoreProperties;
 import org.transitclock.service.dto.IpcArrivalDeparture;
 import org.transitclock.service.dto.IpcVehicleComplete;
+import org.transitclock.utils.Time;
 
 import java.util.ArrayList;
 import java.util.Date;
@@ -58,7 +59,7 @@ class LastArrivalsHeadwayGenerator implements HeadwayGenerator {
 
             String vehicleId = vehicleStatus.getVehicleId();
 
-            StopArrivalDepartureCacheKey key = new StopArrivalDepartureCacheKey(stopId, new Date(date));
+            StopArrivalDepartureCacheKey key = new StopArrivalDepartureCacheKey(stopId, Time.getEpochDay(date));
 
             List<IpcArrivalDeparture> stopList = stopArrivalDepartureCacheInterface.getStopHistory(key);
             int lastStopArrivalIndex = -1;
@@ -11,6 +11,7 @@ import org.transitclock.gtfs.DbConfig;
 import org.transitclock.properties.CoreProperties;
 import org.transitclock.service.dto.IpcArrivalDeparture;
 import org.transitclock.service.dto.IpcVehicleComplete;
+import org.transitclock.utils.Time;
 
 import java.util.ArrayList;
 import java.util.Date;
@@ -51,7 +52,7 @@ class LastDepartureHeadwayGenerator implements HeadwayGenerator {
                             .getMatchAtPreviousStop(coreProperties).getAtStop().getStopId();
             long date = vehicleStatus.getMatch().getAvlTime();
             String vehicleId = vehicleStatus.getVehicleId();
-            StopArrivalDepartureCacheKey key = new StopArrivalDepartureCacheKey(stopId, new Date(date));
+            StopArrivalDepartureCacheKey key = new StopArrivalDepartureCacheKey(stopId, Time.getEpochDay(date));
 
             List<IpcArrivalDeparture> stopList = stopArrivalDepartureCacheInterface.getStopHistory(key);
             int lastStopArrivalIndex = -1;
@@ -1,7 +1,6 @@
 /* (C)2023 */
 package org.transitclock.core.prediction;
 
-import org.apache.commons.lang3.time.DateUtils;
 
 import org.transitclock.core.Indices;
 import org.transitclock.core.TravelTimeDetails;
@@ -17,6 +16,7 @@ import org.transitclock.gtfs.DbConfig;
 import org.transitclock.properties.PredictionProperties;
 import org.transitclock.service.dto.IpcArrivalDeparture;
 import org.transitclock.service.dto.IpcPrediction;
+import org.transitclock.utils.Time;
 
 import java.util.*;
 
@@ -62,14 +62,14 @@ public abstract class AbstractPredictionGenerator implements PredictionGenerator
 
         StopArrivalDepartureCacheKey nextStopKey = new StopArrivalDepartureCacheKey(
             indices.getStopPath().getStopId(),
-            new Date(currentVehicleStatus.getMatch().getAvlTime()));
+            Time.getEpochDay(currentVehicleStatus.getMatch().getAvlTime()));
 
         /* TODO how do we handle the the first stop path. Where do we get the first stop id. */
         if (!indices.atBeginningOfTrip()) {
             String currentStopId = indices.getPreviousStopPath().getStopId();
 
             StopArrivalDepartureCacheKey currentStopKey = new StopArrivalDepartureCacheKey(
-                currentStopId, new Date(currentVehicleStatus.getMatch().getAvlTime()));
+                currentStopId, Time.getEpochDay(currentVehicleStatus.getMatch().getAvlTime()));
 
             List<IpcArrivalDeparture> currentStopList =
                 stopArrivalDepartureCacheInterface.getStopHistory(currentStopKey);
@@ -124,14 +124,14 @@ public abstract class AbstractPredictionGenerator implements PredictionGenerator
 
         StopArrivalDepartureCacheKey nextStopKey = new StopArrivalDepartureCacheKey(
             indices.getStopPath().getStopId(),
-            new Date(currentVehicleStatus.getMatch().getAvlTime()));
+            Time.getEpochDay(currentVehicleStatus.getMatch().getAvlTime()));
 
         /* TODO how do we handle the the first stop path. Where do we get the first stop id. */
         if (!indices.atBeginningOfTrip()) {
             String currentStopId = indices.getPreviousStopPath().getStopId();
 
             StopArrivalDepartureCacheKey currentStopKey = new StopArrivalDepartureCacheKey(
-                currentStopId, new Date(currentVehicleStatus.getMatch().getAvlTime()));
+                currentStopId, Time.getEpochDay(currentVehicleStatus.getMatch().getAvlTime()));
 
             List<IpcArrivalDeparture> currentStopList =
                 stopArrivalDepartureCacheInterface.getStopHistory(currentStopKey);
@@ -245,7 +245,7 @@ public abstract class AbstractPredictionGenerator implements PredictionGenerator
         String tripId,
         String direction,
         int stopPathIndex,
-        Date startDate,
+        int serviceDay,
         Integer startTime,
         int num_days_look_back,
         int num_days) {
@@ -259,9 +259,7 @@ public abstract class AbstractPredictionGenerator implements PredictionGenerator
          * running
          */
         for (int i = 0; i < num_days_look_back && num_found < num_days; i++) {
-            Date nearestDay = DateUtils.truncate(DateUtils.addDays(startDate, (i + 1) * -1), Calendar.DAY_OF_MONTH);
-
-            TripKey tripKey = new TripKey(tripId, nearestDay, startTime);
+            TripKey tripKey = new TripKey(tripId, serviceDay - (i + 1), startTime);
 
             results = cache.getTripHistory(tripKey);
 
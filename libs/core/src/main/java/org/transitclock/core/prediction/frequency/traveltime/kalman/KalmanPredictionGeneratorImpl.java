@@ -1,8 +1,6 @@
 /* (C)2023 */
 package org.transitclock.core.prediction.frequency.traveltime.kalman;
 
-import java.util.Calendar;
-import java.util.Date;
 import java.util.List;
 
 import org.transitclock.core.Indices;
@@ -40,9 +38,9 @@ import org.transitclock.gtfs.DbConfig;
 import org.transitclock.properties.CoreProperties;
 import org.transitclock.properties.PredictionProperties;
 import org.transitclock.utils.SystemTime;
+import org.transitclock.utils.Time;
 
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.time.DateUtils;
 
 /**
  * @author Sean Óg Crudden This is a prediction generator that uses a Kalman filter to provide
@@ -107,7 +105,7 @@ public class KalmanPredictionGeneratorImpl extends HistoricalAveragePredictionGe
 
                 logger.debug("Kalman has last vehicle info for : {} : {}", indices, travelTimeDetails);
 
-                Date nearestDay = DateUtils.truncate(avlReport.getDate(), Calendar.DAY_OF_MONTH);
+                int nearestDay = Time.getEpochDay(avlReport.getTime());
 
                 List<TravelTimeDetails> lastDaysTimes = lastDaysTimes(
                         tripDataHistoryCacheInterface,
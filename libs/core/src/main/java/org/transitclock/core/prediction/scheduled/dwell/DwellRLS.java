@@ -24,9 +24,7 @@ public class DwellRLS implements DwellModel {
 
     @Override
     public Integer predict(Integer headway, Integer demand) {
-        double[] arg0 = new double[1];
-        arg0[0] = headway;
-        if (rls.getRls() != null) return (int) Math.pow(10, rls.getRls().predict(arg0));
+        if (rls.getRls() != null) return (int) Math.pow(10, rls.getRls().predict(headway));
         else return null;
     }
 
@@ -0,0 +1,299 @@
+/* (C)2023 */
+package org.transitclock.core.prediction.scheduled.dwell.rls;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Recursive least squares linear regression with an intercept and a forgetting factor, for a
+ * small number of features. Gives the same results as smile.regression.RLS, which was used before,
+ * but the state is updated in place so that learning from a sample or predicting doesn't allocate
+ * anything. There is one of these per stop for the RLS dwell time model and they are updated for
+ * every departure.
+ *
+ * <p>The model is first fitted with ordinary least squares to more samples than there are features
+ * and then updated one sample at a time. Learning is not thread safe, callers need to serialize it.
+ * Predicting only reads the weights.
+ *
+ * <p>The state can be written to a fixed size binary form with writeTo() and read back with
+ * readFrom().
+ */
+public class RecursiveLeastSquares {
+    // Number of features
+    private final int p;
+    // Number of weights, the features plus the intercept
+    private final int n;
+    private final double lambda;
+    private boolean fitted = false;
+
+    // The intercept is the last weight
+    private final double[] w;
+    // Inverse of the weighted covariance matrix, n x n in row major order
+    private final double[] v;
+
+    // Buffers for learn()
+    private final double[] x1;
+    private final double[] vx;
+
+    /**
+     * @param p the number of features
+     * @param lambda the forgetting factor, in (0, 1]. 1 means old samples are never forgotten.
+     */
+    public RecursiveLeastSquares(int p, double lambda) {
+        if (p < 1) throw new IllegalArgumentException("Invalid number of features: " + p);
+        if (lambda <= 0 || lambda > 1) {
+            throw new IllegalArgumentException("The forgetting factor must be in (0, 1]: " + lambda);
+        }
+        this.p = p;
+        this.n = p + 1;
+        this.lambda = lambda;
+        this.w = new double[n];
+        this.v = new double[n * n];
+        this.x1 = new double[n];
+        this.vx = new double[n];
+    }
+
+    /**
+     * Fits the model with ordinary least squares. This allocates a work matrix so is only meant for
+     * the initial fit.
+     *
+     * @param x the samples, there need to be more than p of them
+     * @param y the response of each sample
+     * @return false if the samples don't determine the weights, for example because the features
+     *     of all of the samples are the same. The model is then left unchanged.
+     */
+    public boolean fit(double[][] x, double[] y) {
+        if (x.length != y.length) {
+            throw new IllegalArgumentException("Different number of samples and responses");
+        }
+        if (x.length <= p) {
+            throw new IllegalArgumentException("Need more than " + p + " samples but got " + x.length);
+        }
+
+        // Normal equations, A = X'X and b = X'y
+        double[] a = new double[n * n];
+        double[] b = new double[n];
+        for (int k = 0; k < x.length; ++k) {
+            for (int i = 0; i < n; ++i) {
+                double xi = i < p ? x[k][i] : 1.0;
+                b[i] += xi * y[k];
+                for (int j = 0; j < n; ++j) {
+                    a[i * n + j] += xi * (j < p ? x[k][j] : 1.0);
+                }
+            }
+        }
+
+        double[] gram = a.clone();
+
+        // Invert A into inverse with Gauss-Jordan elimination with partial pivoting
+        double[] inverse = new double[n * n];
+        for (int i = 0; i < n; ++i) {
+            inverse[i * n + i] = 1.0;
+        }
+        // The features can have very different scales, such as a headway in msec and the
+        // intercept, so whether a pivot is zero is relative to its own column
+        double[] scale = new double[n];
+        for (int i = 0; i < n; ++i) {
+            scale[i] = Math.abs(a[i * n + i]);
+        }
+        for (int col = 0; col < n; ++col) {
+            int pivot = col;
+            for (int row = col + 1; row < n; ++row) {
+                if (Math.abs(a[row * n + col]) > Math.abs(a[pivot * n + col])) pivot = row;
+            }
+            if (Math.abs(a[pivot * n + col]) <= 1e-12 * scale[col]) return false;
+            swapRows(a, col, pivot);
+            swapRows(inverse, col, pivot);
+
+            double d = a[col * n + col];
+            for (int j = 0; j < n; ++j) {
+                a[col * n + j] /= d;
+                inverse[col * n + j] /= d;
+            }
+            for (int row = 0; row < n; ++row) {
+                double f = a[row * n + col];
+                if (row == col || f == 0) continue;
+                for (int j = 0; j < n; ++j) {
+                    a[row * n + j] -= f * a[col * n + j];
+                    inverse[row * n + j] -= f * inverse[col * n + j];
+                }
+            }
+        }
+
+        for (int i = 0; i < n; ++i) {
+            double sum = 0;
+            for (int j = 0; j < n; ++j) {
+                sum += inverse[i * n + j] * b[j];
+            }
+            w[i] = sum;
+        }
+        initialV(gram);
+        fitted = true;
+        return true;
+    }
+
+    /**
+     * Sets V the way smile's RLS does. smile hands X'X to its Cholesky class where a Cholesky factor
+     * is expected, so V starts as the inverse of L L' where L is the lower triangle of X'X, not as
+     * the inverse of X'X. The dwell time models learned with that V, so it is kept to not change
+     * their predictions.
+     */
+    private void initialV(double[] gram) {
+        // Solve L L' V = I one column at a time, forward substitution and then back substitution
+        for (int col = 0; col < n; ++col) {
+            for (int k = 0; k < n; ++k) {
+                double value = k == col ? 1.0 : 0.0;
+                for (int i = 0; i < k; ++i) {
+                    value -= v[i * n + col] * gram[k * n + i];
+                }
+                v[k * n + col] = value / gram[k * n + k];
+            }
+            for (int k = n - 1; k >= 0; --k) {
+                double value = v[k * n + col];
+                for (int i = k + 1; i < n; ++i) {
+                    value -= v[i * n + col] * gram[i * n + k];
+                }
+                v[k * n + col] = value / gram[k * n + k];
+            }
+        }
+    }
+
+    /**
+     * Updates the model with a sample.
+     *
+     * @param x the features of the sample
+     * @param y the response
+     */
+    public void learn(double[] x, double y) {
+        if (x.length != p) throw new IllegalArgumentException("Expected " + p + " features but got " + x.length);
+        System.arraycopy(x, 0, x1, 0, p);
+        update(y);
+    }
+
+    /** Updates a model with a single feature with a sample. */
+    public void learn(double x, double y) {
+        if (p != 1) throw new IllegalArgumentException("Expected " + p + " features but got 1");
+        x1[0] = x;
+        update(y);
+    }
+
+    private void update(double y) {
+        if (!fitted) throw new IllegalStateException("The model has not been fitted yet");
+        x1[p] = 1.0;
+
+        // This follows smile's update step for step, including the order of the sums. V is badly
+        // conditioned when a feature is a headway in msec, so doing the same algebra differently
+        // gives noticeably different weights after a few hundred samples.
+
+        // gamma = 1 + x'V x
+        double xvx = 0;
+        for (int i = 0; i < n; ++i) {
+            for (int j = 0; j < n; ++j) {
+                xvx += v[j * n + i] * x1[j] * x1[i];
+            }
+        }
+        double gamma = 1.0 + xvx;
+
+        // V = (V - V x x'V / gamma) / lambda
+        multiplyByV(x1, vx);
+        for (int i = 0; i < n; ++i) {
+            for (int j = 0; j < n; ++j) {
+                v[j * n + i] = (v[j * n + i] - vx[j] * vx[i] / gamma) / lambda;
+            }
+        }
+
+        // w = w + V x (y - w'x), with the updated V
+        multiplyByV(x1, vx);
+        double error = y - predicted(x1);
+        for (int i = 0; i < n; ++i) {
+            w[i] += vx[i] * error;
+        }
+    }
+
+    // result = V x
+    private void multiplyByV(double[] x, double[] result) {
+        for (int i = 0; i < n; ++i) {
+            double sum = 0;
+            for (int j = 0; j < n; ++j) {
+                sum += v[i * n + j] * x[j];
+            }
+            result[i] = sum;
+        }
+    }
+
+    // w'x for x with the intercept term, summed the same way as predict()
+    private double predicted(double[] x) {
+        double y = w[p];
+        for (int i = 0; i < p; ++i) {
+            y += x[i] * w[i];
+        }
+        return y;
+    }
+
+    public double predict(double[] x) {
+        if (x.length != p) throw new IllegalArgumentException("Expected " + p + " features but got " + x.length);
+        double y = w[p];
+        for (int i = 0; i < p; ++i) {
+            y += w[i] * x[i];
+        }
+        return y;
+    }
+
+    /** Predicts for a model with a single feature. */
+    public double predict(double x) {
+        if (p != 1) throw new IllegalArgumentException("Expected " + p + " features but got 1");
+        return w[1] + w[0] * x;
+    }
+
+    public boolean isFitted() {
+        return fitted;
+    }
+
+    public int getNumFeatures() {
+        return p;
+    }
+
+    public double getLambda() {
+        return lambda;
+    }
+
+    /** Size in bytes written by writeTo() for a model with p features. */
+    public static int serializedSize(int p) {
+        int n = p + 1;
+        return Integer.BYTES + Double.BYTES + 1 + (n + n * n) * Double.BYTES;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(p);
+        out.writeDouble(lambda);
+        out.writeBoolean(fitted);
+        for (double weight : w) {
+            out.writeDouble(weight);
+        }
+        for (double value : v) {
+            out.writeDouble(value);
+        }
+    }
+
+    public static RecursiveLeastSquares readFrom(DataInput in) throws IOException {
+        RecursiveLeastSquares rls = new RecursiveLeastSquares(in.readInt(), in.readDouble());
+        rls.fitted = in.readBoolean();
+        for (int i = 0; i < rls.w.length; ++i) {
+            rls.w[i] = in.readDouble();
+        }
+        for (int i = 0; i < rls.v.length; ++i) {
+            rls.v[i] = in.readDouble();
+        }
+        return rls;
+    }
+
+    private void swapRows(double[] m, int row1, int row2) {
+        if (row1 == row2) return;
+        for (int j = 0; j < n; ++j) {
+            double tmp = m[row1 * n + j];
+            m[row1 * n + j] = m[row2 * n + j];
+            m[row2 * n + j] = tmp;
+        }
+    }
+}
@@ -1,58 +1,62 @@
 /* (C)2023 */
 package org.transitclock.core.prediction.scheduled.dwell.rls;
 
-import java.io.Serializable;
-import smile.regression.RLS;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 
-public class TransitClockRLS implements Serializable {
+/**
+ * RLS model with a single feature. The model can only be fitted once there are two samples so the
+ * first sample is kept until then.
+ *
+ * <p>Serialized as a fixed size record instead of the default object graph since one of these is
+ * stored in the dwell time model cache for each stop.
+ */
+public class TransitClockRLS implements Externalizable {
+
+    private static final long serialVersionUID = -5863984357400905561L;
+
+    private double lambda;
+    private double firstx = Double.NaN;
+    private double firsty = Double.NaN;
+    private int samples = 0;
+    private RecursiveLeastSquares rls = null;
+
+    /** Only for deserialization */
+    public TransitClockRLS() {}
 
     /**
-     * @param lambda
+     * @param lambda the forgetting factor
      */
     public TransitClockRLS(double lambda) {
         super();
         this.lambda = lambda;
     }
 
-    public RLS getRls() {
-        return rls;
+    /**
+     * @return the model, or null if it can't be fitted yet
+     */
+    public RecursiveLeastSquares getRls() {
+        return rls != null && rls.isFitted() ? rls : null;
     }
 
-    private final double lambda;
-    Double firstx = null;
-    Double firsty = null;
-    private Integer samples = 0;
-    RLS rls = null;
-
-    private static final long serialVersionUID = -5863984357400905560L;
-
     public void addSample(double d, double e) {
 
         samples++;
 
-        if (firstx == null && firsty == null) {
+        if (Double.isNaN(firstx) && Double.isNaN(firsty)) {
             this.firstx = d;
             this.firsty = e;
         } else {
 
-            if (rls == null) {
-                double[][] samplex = new double[2][1];
-                double[] sampley = new double[2];
-
-                samplex[0][0] = firstx;
-                sampley[0] = firsty;
-
-                samplex[1][0] = d;
-                sampley[1] = e;
-                rls = new RLS(samplex, sampley, lambda);
+            if (rls == null || !rls.isFitted()) {
+                if (rls == null) rls = new RecursiveLeastSquares(1, lambda);
+                // If the headways are the same the model can't be fitted
+                // yet. Keep the first sample and try again with the next one.
+                rls.fit(new double[][] {{firstx}, {d}}, new double[] {firsty, e});
             } else {
-                double[][] samplex = new double[1][1];
-                double[] sampley = new double[1];
-
-                samplex[0][0] = d;
-                sampley[0] = e;
-
-                rls.learn(samplex, sampley);
+                rls.learn(d, e);
             }
         }
     }
@@ -60,4 +64,22 @@ public class TransitClockRLS implements Serializable {
     public Integer numSamples() {
         return samples;
     }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeDouble(lambda);
+        out.writeDouble(firstx);
+        out.writeDouble(firsty);
+        out.writeInt(samples);
+        (rls != null ? rls : new RecursiveLeastSquares(1, lambda)).writeTo(out);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        lambda = in.readDouble();
+        firstx = in.readDouble();
+        firsty = in.readDouble();
+        samples = in.readInt();
+        rls = RecursiveLeastSquares.readFrom(in);
+    }
 }
@@ -1,6 +1,7 @@
 /* (C)2023 */
 package org.transitclock.core.travelTimes;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.GregorianCalendar;
@@ -9,6 +10,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
 
+import org.transitclock.domain.archive.HistoryArchive;
 import org.transitclock.domain.repository.AgencyRepository;
 import org.transitclock.domain.repository.ArrivalDepartureRepository;
 import org.transitclock.domain.repository.MatchRepository;
@@ -17,6 +19,7 @@ import org.transitclock.domain.structs.Agency;
 import org.transitclock.domain.structs.ArrivalDeparture;
 import org.transitclock.domain.structs.Match;
 import org.transitclock.properties.UpdatesProperties;
+import org.transitclock.utils.IntervalTimer;
 import org.transitclock.utils.MapKey;
 import org.transitclock.utils.Time;
 
@@ -196,75 +199,29 @@ public class DataFetcher {
     public Map<DbDataMapKey, List<ArrivalDeparture>> readArrivalsDepartures(String dbName, Date beginTime, Date endTime) {
         Map<DbDataMapKey, List<ArrivalDeparture>> resultsMap = new HashMap<>();
 
-        // For keeping track of which rows should be returned by the batch.
-        int firstResult = 0;
-        // Batch size of 50k found to be significantly faster than 10k,
-        // by about a factor of 2. Since sometimes using really large
-        // batches of data using 500k
-        final int batchSize = updatesProperties.getPageSize();
-        final boolean pageDbReads = updatesProperties.getPageDbReads();
-
-        long count = ArrivalDepartureRepository.getArrivalsDeparturesCountFromDb(dbName, beginTime, endTime, null);
-        if (count == 0) {
-            logger.warn("No arrival/departures found");
-            return resultsMap;
+        // Days that are in the history archive don't have to be read from the db
+        if (updatesProperties.getArchiveDirectory() != null) {
+            HistoryArchive archive = new HistoryArchive(Path.of(updatesProperties.getArchiveDirectory()));
+            beginTime = archive.readArrivalsDepartures(
+                    beginTime, endTime, null, arrDep -> addArrivalDepartureToMap(resultsMap, arrDep));
+            logger.info("Read in {} trips of arrival/departures from the history archive up to {}",
+                    resultsMap.size(), beginTime);
+            if (!beginTime.before(endTime)) {
+                return resultsMap;
+            }
         }
 
-        if (!pageDbReads) {
-            Date pageBeginTime = beginTime;
-            Date pageEndTime = new Date(beginTime.getTime() + Time.MS_PER_DAY);
-            int runningCount = 0;
-
-            List<ArrivalDeparture> arrDepBatchList;
-            do {
-                logger.info("querying a/d for between {} and {}", pageBeginTime, pageEndTime);
-                arrDepBatchList = ArrivalDepartureRepository.getArrivalsDeparturesFromDb(
-                        pageBeginTime,
-                        pageEndTime,
-                        // Order results by time so that process them in the same
-                        // way that a vehicle travels.
-                        "ORDER BY time", // SQL clause
-                        null,
-                        null,
-                        null); // arrivalOrDeparture. Null means read in both
-
-                // Add arrivals/departures to map
-                for (ArrivalDeparture arrDep : arrDepBatchList) {
-                    addArrivalDepartureToMap(resultsMap, arrDep);
-                }
-                runningCount += arrDepBatchList.size();
-                logger.info("Read in total of {} a/ds of {} {}%", runningCount, count, (0.0 + runningCount) / count * 100);
-
-                pageBeginTime = pageEndTime;
-                pageEndTime = new Date(Math.min(pageBeginTime.getTime() + Time.MS_PER_DAY, endTime.getTime()));
-
-            } while (pageEndTime.before(endTime));
-        } else {
-            List<ArrivalDeparture> arrDepBatchList;
-            do {
-                arrDepBatchList = ArrivalDepartureRepository.getArrivalsDeparturesFromDb(
-                        beginTime,
-                        endTime,
-                        // Order results by time so that process them in the same
-                        // way that a vehicle travels.
-                        "ORDER BY time", // SQL clause
-                        firstResult,
-                        batchSize,
-                        null); // arrivalOrDeparture. Null means read in both
-
-                // Add arrivals/departures to map
-                for (ArrivalDeparture arrDep : arrDepBatchList) {
-                    addArrivalDepartureToMap(resultsMap, arrDep);
-                }
-
-                logger.info("Read in total of {} arrival/departures of {} {}%",
-                        firstResult + arrDepBatchList.size(),
-                        count,
-                        (0.0 + firstResult + arrDepBatchList.size()) / count * 100);
-
-                // Update firstResult for reading next batch of data
-                firstResult += batchSize;
-            } while (arrDepBatchList.size() == batchSize);
+        // The arrivals/departures are streamed instead of read in a page at
+        // a time so that only the map, and not also a page, is in memory and
+        // the db doesn't have to skip over the previous pages for each one.
+        // Order results by time so that process them in the same way that a
+        // vehicle travels.
+        IntervalTimer timer = new IntervalTimer();
+        long count = ArrivalDepartureRepository.streamArrivalsDeparturesFromDb(
+                beginTime, endTime, null, "ORDER BY time", arrDep -> addArrivalDepartureToMap(resultsMap, arrDep));
+        logger.info("Read in {} arrival/departures from the db in {} msec", count, timer.elapsedMsec());
+        if (resultsMap.isEmpty()) {
+            logger.warn("No arrival/departures found");
         }
 
         return resultsMap;
@@ -226,7 +226,7 @@ public class TravelTimesProcessor {
      * Internal structure for keeping track of matches that are between an departure and an arrival.
      * Needed for when there are multiple travel time segments within a stop path.
      */
-    private static class MatchPoint {
+    static class MatchPoint {
         private final Date time;
         private final float distanceAlongStopPath;
         private final MatchPointReason reason;
@@ -237,7 +237,7 @@ public class TravelTimesProcessor {
             ARRIVAL
         }
 
-        private MatchPoint(Date time, float distance, MatchPointReason reason) {
+        MatchPoint(Date time, float distance, MatchPointReason reason) {
             this.time = time;
             this.distanceAlongStopPath = distance;
             this.reason = reason;
@@ -357,60 +357,17 @@ public class TravelTimesProcessor {
     }
 
     /**
-     * Determines the travel times. If stop path is short enough such that it is only a single
-     * travel time segment then returns single travel time set to the difference between the
-     * departure time for arrDep1 and the arrival time for arrDep2. For when stop path is long
-     * enough such that there are multiple travel time segments, for the particular stop path, as
-     * specified by the arrival stop, looks up the associated Matches in order to determine how the
-     * vehicle travels along the stop path. Determines when the travel time segment vertices are
-     * crossed and uses the vertices, along with the departure time and the arrival times at the
-     * ends of the stop path, to determine the travel time for each travel time segment for this
-     * particular trip.
+     * Determines when the vehicle crossed the travel time segment vertices of a stop path by
+     * interpolating between the match points that are on either side of a vertex.
      *
-     * @param dataFetcher
-     * @param arrDep1 The departure stop
-     * @param arrDep2 The arrival stop. Also defines which stop path working with.
-     * @return List of travel times in msec. There is a separate travel time for each travel time
-     *     segment. If the match points are garbled and go backwards in time then null is returned.
+     * @param departureTime when the vehicle departed the first stop
+     * @param matchPoints the departure, the matches, and the arrival, as from getMatchPoints()
+     * @param travelTimeSegmentLength length of the travel time segments of the stop path
+     * @return the departure time, the vertex crossing times and the arrival time. Null if the match
+     *     points go backwards in time.
      */
-    private List<Integer> determineTravelTimesForStopPath(
-            DataFetcher dataFetcher, ArrivalDeparture arrDep1, ArrivalDeparture arrDep2) {
-        // Determine departure time. If shouldn't use departures times
-        // for terminal departure that are earlier then schedule time
-        // then use the scheduled departure time. This prevents creating
-        // bad predictions due to incorrectly determined travel times.
-        long departureTime = arrDep1.getTime();
-        if (travelTimesProperties.getResetEarlyTerminalDepartures()
-                && arrDep1.getStopPathIndex() == 0
-                && arrDep1.getTime() < arrDep1.getScheduledTime()) {
-            logger.debug(
-                    "Note: for {} using scheduled departure time instead "
-                            + "of the calculated departure time since "
-                            + "transitclock.travelTimes.resetEarlyTerminalDepartures is "
-                            + "true and the departure time was (likely incorrectly) "
-                            + "calculated to be before the scheduled departure time",
-                    arrDep1);
-            departureTime = arrDep1.getScheduledTime();
-        }
-
-        // If this stop path is short enough such that it is just a single
-        // travel times segment then handle specially since don't need
-        // to look at matches.
-        if (arrDep2.getStopPathLength() < travelTimesProperties.getMaxTravelTimeSegmentLength()) {
-            // Determine and return the travel time between the stops
-            int travelTimeBetweenStopsMsec = (int) (arrDep2.getTime() - departureTime);
-            List<Integer> travelTimesForStopPath = new ArrayList<>();
-            travelTimesForStopPath.add(travelTimeBetweenStopsMsec);
-            return travelTimesForStopPath;
-        }
-
-        // Stop path is longer than a single travel time segment so need to
-        // look at matches to determine travel times for each travel time
-        // segment.
-        double travelTimeSegmentLength = getTravelTimeSegmentLength(arrDep2);
-
-        List<MatchPoint> matchPoints = getMatchPoints(dataFetcher, arrDep1, arrDep2);
-
+    static List<Long> determineVertexTimes(
+            long departureTime, List<MatchPoint> matchPoints, double travelTimeSegmentLength) {
         // The times when a travel time segment vertex is crossed.
         // Will include the departure time, the middle vertices, and
         // the arrival time so that all the travel times can be determined.
@@ -431,11 +388,9 @@ public class TravelTimesProcessor {
                 logger.error(
                         "Encountered two match points that go backwards "
                                 + "in time and are therefore incorrect. They are {} "
-                                + "and {} between {} and {}",
+                                + "and {}",
                         pt1,
-                        pt2,
-                        arrDep1,
-                        arrDep2);
+                        pt2);
                 return null;
             }
 
@@ -470,7 +425,69 @@ public class TravelTimesProcessor {
             }
         }
         // Deal with the final travel time segment that goes to the arrival stop
-        vertexTimes.add(arrDep2.getTime());
+        vertexTimes.add(matchPoints.get(matchPoints.size() - 1).getTime());
+        return vertexTimes;
+    }
+
+    /**
+     * Determines the travel times. If stop path is short enough such that it is only a single
+     * travel time segment then returns single travel time set to the difference between the
+     * departure time for arrDep1 and the arrival time for arrDep2. For when stop path is long
+     * enough such that there are multiple travel time segments, for the particular stop path, as
+     * specified by the arrival stop, looks up the associated Matches in order to determine how the
+     * vehicle travels along the stop path. Determines when the travel time segment vertices are
+     * crossed and uses the vertices, along with the departure time and the arrival times at the
+     * ends of the stop path, to determine the travel time for each travel time segment for this
+     * particular trip.
+     *
+     * @param dataFetcher
+     * @param arrDep1 The departure stop
+     * @param arrDep2 The arrival stop. Also defines which stop path working with.
+     * @return List of travel times in msec. There is a separate travel time for each travel time
+     *     segment. If the match points are garbled and go backwards in time then null is returned.
+     */
+    private List<Integer> determineTravelTimesForStopPath(
+            DataFetcher dataFetcher, ArrivalDeparture arrDep1, ArrivalDeparture arrDep2) {
+        // Determine departure time. If shouldn't use departures times
+        // for terminal departure that are earlier then schedule time
+        // then use the scheduled departure time. This prevents creating
+        // bad predictions due to incorrectly determined travel times.
+        long departureTime = arrDep1.getTime();
+        if (travelTimesProperties.getResetEarlyTerminalDepartures()
+                && arrDep1.getStopPathIndex() == 0
+                && arrDep1.getTime() < arrDep1.getScheduledTime()) {
+            logger.debug(
+                    "Note: for {} using scheduled departure time instead "
+                            + "of the calculated departure time since "
+                            + "transitclock.travelTimes.resetEarlyTerminalDepartures is "
+                            + "true and the departure time was (likely incorrectly) "
+                            + "calculated to be before the scheduled departure time",
+                    arrDep1);
+            departureTime = arrDep1.getScheduledTime();
+        }
+
+        // If this stop path is short enough such that it is just a single
+        // travel times segment then handle specially since don't need
+        // to look at matches.
+        if (arrDep2.getStopPathLength() < travelTimesProperties.getMaxTravelTimeSegmentLength()) {
+            // Determine and return the travel time between the stops
+            int travelTimeBetweenStopsMsec = (int) (arrDep2.getTime() - departureTime);
+            List<Integer> travelTimesForStopPath = new ArrayList<>();
+            travelTimesForStopPath.add(travelTimeBetweenStopsMsec);
+            return travelTimesForStopPath;
+        }
+
+        // Stop path is longer than a single travel time segment so need to
+        // look at matches to determine travel times for each travel time
+        // segment.
+        double travelTimeSegmentLength = getTravelTimeSegmentLength(arrDep2);
+
+        List<MatchPoint> matchPoints = getMatchPoints(dataFetcher, arrDep1, arrDep2);
+        List<Long> vertexTimes = determineVertexTimes(departureTime, matchPoints, travelTimeSegmentLength);
+        if (vertexTimes == null) {
+            logger.error("Could not determine travel times between {} and {}", arrDep1, arrDep2);
+            return null;
+        }
 
         // Now that we have all the vertex times for the stop path determine the
         // travel times and add them to the list of times to be returned.
@@ -3,7 +3,7 @@ package org.transitclock.domain;
 
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
-import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.transitclock.domain.hibernate.DbWorkload;
 import org.transitclock.domain.hibernate.HibernateUtils;
 import org.transitclock.utils.IntervalTimer;
 
@@ -25,6 +25,8 @@ import java.util.List;
  */
 @Slf4j
 public class GenericQuery {
+    // Number of rows fetched from the db at a time
+    private static final int FETCH_SIZE = 10000;
 
     @Getter
     private final Connection connection;
@@ -38,68 +40,69 @@ public class GenericQuery {
      * @throws SQLException
      */
     public GenericQuery(String agencyId) throws SQLException {
-        // Get the web agency. If it is really old, older than an hour then
-        // update the cache in case the db was moved.
-
-        connection = HibernateUtils.getSessionFactory(agencyId)
-                .getSessionFactoryOptions()
-                .getServiceRegistry()
-                .getService(ConnectionProvider.class)
-                .getConnection();
+        // Generic queries are used for reports so they use the reports
+        // connection pool if there is a pool per workload
+        connection = HibernateUtils.getConnection(DbWorkload.REPORTS);
     }
 
 
     /**
-     * Performs the specified generic query. A List of GenericResult objects is returned. All number
-     * columns (integer or float) are placed in GenericResult.numbers. A string column is assumed to
-     * be a tooltip and is put in GenericResult.text.
+     * Performs the specified generic query. The columns are passed to addColumn() and then each
+     * row to addRow() as it is read. The rows are fetched FETCH_SIZE at a time instead of all being
+     * read in first, so a subclass that doesn't keep the rows, such as one that writes them out,
+     * only ever has a batch of them in memory.
      *
      * @param sql
-     * @return List of GenericResult. If no data then returns empty list (instead of null)
      * @throws SQLException
      */
     protected void doQuery(String sql, Object... parameters) throws SQLException {
 
         IntervalTimer timer = new IntervalTimer();
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-
-            // TODO Deal with dates for the moment
-            for (int i = 0; i < parameters.length; i++) {
-                if (parameters[i] instanceof java.util.Date) {
-                    statement.setTimestamp(i + 1, new Timestamp(((java.util.Date) parameters[i]).getTime()));
+        try {
+            // PostgreSQL only uses a cursor, instead of reading in the whole
+            // result, when not in auto commit
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setFetchSize(FETCH_SIZE);
+
+                // TODO Deal with dates for the moment
+                for (int i = 0; i < parameters.length; i++) {
+                    if (parameters[i] instanceof java.util.Date) {
+                        statement.setTimestamp(i + 1, new Timestamp(((java.util.Date) parameters[i]).getTime()));
+                    }
                 }
-            }
-
-            ResultSet rs = statement.executeQuery();
-            ResultSetMetaData metaData = rs.getMetaData();
-
-            // Add all the columns by calling subclass addColumn()
-            for (int i = 1; i <= metaData.getColumnCount(); ++i) {
-                addColumn(metaData.getColumnLabel(i), metaData.getColumnType(i));
-            }
-            doneWithColumns();
-
-            // Process each row of data
-            rows = 0;
-            while (rs.next()) {
-                ++rows;
 
-                List<Object> row = new ArrayList<Object>();
-                for (int i = 1; i <= metaData.getColumnCount(); ++i) {
-                    row.add(rs.getObject(i));
+                try (ResultSet rs = statement.executeQuery()) {
+                    ResultSetMetaData metaData = rs.getMetaData();
+
+                    // Add all the columns by calling subclass addColumn()
+                    for (int i = 1; i <= metaData.getColumnCount(); ++i) {
+                        addColumn(metaData.getColumnLabel(i), metaData.getColumnType(i));
+                    }
+                    doneWithColumns();
+
+                    // Process each row of data
+                    rows = 0;
+                    while (rs.next()) {
+                        ++rows;
+
+                        List<Object> row = new ArrayList<Object>();
+                        for (int i = 1; i <= metaData.getColumnCount(); ++i) {
+                            row.add(rs.getObject(i));
+                        }
+                        addRow(row);
+                    }
                 }
-                addRow(row);
             }
-
-            rs.close();
+            connection.commit();
 
             logger.debug("GenericQuery query took {}msec rows={}", timer.elapsedMsec(), rows);
-        } catch (SQLException e) {
-            throw e;
-        }
-
-        if (!connection.isClosed()) {
-            connection.close();
+        } finally {
+            // Also when the query or a subclass failed, so that the
+            // connection is returned to the pool
+            if (!connection.isClosed()) {
+                connection.close();
+            }
         }
     }
 
@@ -112,6 +115,9 @@ public class GenericQuery {
     public void doUpdate(String sql) throws SQLException {
         try (Statement statement = connection.createStatement()) {
             statement.executeUpdate(sql);
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
         } catch (SQLException e) {
             throw e;
         } finally {
@@ -0,0 +1,101 @@
+/* (C)2023 */
+package org.transitclock.domain.archive;
+
+import java.util.List;
+
+/**
+ * The tables that are archived by day into the history archive, with the columns that are kept.
+ * The columns are those of the table in the db. The discriminator column type of
+ * arrivals_departures isn't kept since it is the same as is_arrival.
+ */
+public enum ArchiveTable {
+    ARRIVALS_DEPARTURES(
+            "arrivals_departures",
+            "time",
+            List.of(
+                    new Column("vehicle_id", Type.STRING),
+                    new Column("time", Type.TIME),
+                    new Column("stop_id", Type.STRING),
+                    new Column("gtfs_stop_seq", Type.INT),
+                    new Column("is_arrival", Type.BOOLEAN),
+                    new Column("trip_id", Type.STRING),
+                    new Column("config_rev", Type.INT),
+                    new Column("avl_time", Type.TIME),
+                    new Column("scheduled_time", Type.TIME),
+                    new Column("block_id", Type.STRING),
+                    new Column("route_id", Type.STRING),
+                    new Column("route_short_name", Type.STRING),
+                    new Column("service_id", Type.STRING),
+                    new Column("direction_id", Type.STRING),
+                    new Column("trip_index", Type.INT),
+                    new Column("freq_start_time", Type.TIME),
+                    new Column("stop_path_index", Type.INT),
+                    new Column("stop_order", Type.INT),
+                    new Column("stop_path_length", Type.FLOAT))),
+    AVL_REPORTS(
+            "avl_reports",
+            "time",
+            List.of(
+                    new Column("vehicle_id", Type.STRING),
+                    new Column("time", Type.TIME),
+                    new Column("time_processed", Type.TIME),
+                    new Column("speed", Type.FLOAT),
+                    new Column("heading", Type.FLOAT),
+                    new Column("source", Type.STRING),
+                    new Column("assignment_id", Type.STRING),
+                    new Column("assignment_type", Type.STRING),
+                    new Column("driver_id", Type.STRING),
+                    new Column("license_place", Type.STRING),
+                    new Column("passenger_count", Type.INT),
+                    new Column("passenger_fullness", Type.FLOAT),
+                    new Column("field1_name", Type.STRING),
+                    new Column("field1_value", Type.STRING),
+                    new Column("vehicle_name", Type.STRING),
+                    new Column("lat", Type.DOUBLE),
+                    new Column("lon", Type.DOUBLE)));
+
+    /** How the values of a column are stored */
+    public enum Type {
+        /** Dictionary encoded, each value is the index of the string in the dictionary */
+        STRING,
+        /** Epoch msec, each value is the difference from the previous one */
+        TIME,
+        INT,
+        FLOAT,
+        DOUBLE,
+        BOOLEAN
+    }
+
+    public record Column(String name, Type type) {}
+
+    private final String tableName;
+    private final String timeColumn;
+    private final List<Column> columns;
+
+    ArchiveTable(String tableName, String timeColumn, List<Column> columns) {
+        this.tableName = tableName;
+        this.timeColumn = timeColumn;
+        this.columns = columns;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    /** The column that rows are archived by the day of */
+    public String getTimeColumn() {
+        return timeColumn;
+    }
+
+    public List<Column> getColumns() {
+        return columns;
+    }
+
+    /** Returns the index of the column, or -1 if there is no such column */
+    public int indexOf(String columnName) {
+        for (int i = 0; i < columns.size(); ++i) {
+            if (columns.get(i).name().equals(columnName)) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,245 @@
+/* (C)2023 */
+package org.transitclock.domain.archive;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The archive file of a day of a table, as written by DayArchiveWriter. Opening it only reads the
+ * header. Each column is read and decoded when first asked for so that reading a few columns of a
+ * wide table doesn't cost reading all of them.
+ */
+public class DayArchive {
+    private final Path file;
+    private final String tableName;
+    private final int epochDay;
+    private final int rowCount;
+    private final long minTime;
+    private final long maxTime;
+    private final long dataStart;
+    private final Map<String, BlockInfo> blocks = new HashMap<>();
+    private final Map<String, Column> columns = new HashMap<>();
+
+    private record BlockInfo(ArchiveTable.Type type, long offset, int compressedLength, int rawLength) {}
+
+    private DayArchive(Path file, DataInputStream header, long dataStart) throws IOException {
+        this.file = file;
+        this.dataStart = dataStart;
+        tableName = header.readUTF();
+        epochDay = header.readInt();
+        rowCount = header.readInt();
+        minTime = header.readLong();
+        maxTime = header.readLong();
+        int numColumns = header.readInt();
+        ArchiveTable.Type[] types = ArchiveTable.Type.values();
+        for (int i = 0; i < numColumns; ++i) {
+            String name = header.readUTF();
+            int type = header.readByte();
+            if (type < 0 || type >= types.length) {
+                throw new IOException("Unknown type " + type + " of column " + name + " in " + file);
+            }
+            blocks.put(name, new BlockInfo(types[type], header.readLong(), header.readInt(), header.readInt()));
+        }
+    }
+
+    /**
+     * Opens the archive file, reading its header.
+     *
+     * @throws IOException if the file can't be read or isn't an archive file
+     */
+    public static DayArchive open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer prefix = readFully(channel, 0, 12, file);
+            if (prefix.getInt() != ArchiveCodec.MAGIC) {
+                throw new IOException(file + " is not an archive file");
+            }
+            int version = prefix.getInt();
+            if (version != ArchiveCodec.FORMAT_VERSION) {
+                throw new IOException("Archive file " + file + " has unsupported version " + version);
+            }
+            int headerLength = prefix.getInt();
+            ByteBuffer header = readFully(channel, 12, headerLength, file);
+            return new DayArchive(
+                    file,
+                    new DataInputStream(new ByteArrayInputStream(header.array())),
+                    12L + headerLength);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length, Path file)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Archive file " + file + " is truncated");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public int getEpochDay() {
+        return epochDay;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /** The earliest time of the rows, epoch msec. 0 if there are no rows. */
+    public long getMinTime() {
+        return minTime;
+    }
+
+    /** The latest time of the rows, epoch msec. 0 if there are no rows. */
+    public long getMaxTime() {
+        return maxTime;
+    }
+
+    public boolean hasColumn(String name) {
+        return blocks.containsKey(name);
+    }
+
+    /**
+     * Returns the column, reading and decoding it if it hasn't been yet.
+     *
+     * @throws IOException if the column can't be read
+     * @throws IllegalArgumentException if there is no such column
+     */
+    public synchronized Column getColumn(String name) throws IOException {
+        Column column = columns.get(name);
+        if (column == null) {
+            BlockInfo block = blocks.get(name);
+            if (block == null) {
+                throw new IllegalArgumentException("No column " + name + " in archive file " + file);
+            }
+            byte[] compressed;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                compressed = readFully(channel, dataStart + block.offset(), block.compressedLength(), file)
+                        .array();
+            }
+            column = new Column(block.type(), ByteBuffer.wrap(ArchiveCodec.decompress(compressed, block.rawLength())));
+            columns.put(name, column);
+        }
+        return column;
+    }
+
+    /** The decoded values of a column, by row */
+    public class Column {
+        private final ArchiveTable.Type type;
+        private final BitSet nulls;
+        private long[] longValues;
+        private double[] doubleValues;
+        private String[] stringValues;
+
+        private Column(ArchiveTable.Type type, ByteBuffer in) {
+            this.type = type;
+            byte[] nullBytes = new byte[ArchiveCodec.readVarInt(in)];
+            in.get(nullBytes);
+            nulls = BitSet.valueOf(nullBytes);
+
+            switch (type) {
+                case STRING -> {
+                    String[] dictionary = new String[ArchiveCodec.readVarInt(in)];
+                    for (int i = 0; i < dictionary.length; ++i) {
+                        byte[] utf8 = new byte[ArchiveCodec.readVarInt(in)];
+                        in.get(utf8);
+                        // Interned since the same ids are in every day
+                        dictionary[i] = new String(utf8, StandardCharsets.UTF_8).intern();
+                    }
+                    stringValues = new String[rowCount];
+                    for (int row = 0; row < rowCount; ++row) {
+                        if (!nulls.get(row)) stringValues[row] = dictionary[ArchiveCodec.readVarInt(in)];
+                    }
+                }
+                case TIME -> {
+                    longValues = new long[rowCount];
+                    long time = 0;
+                    for (int row = 0; row < rowCount; ++row) {
+                        if (nulls.get(row)) continue;
+                        time += ArchiveCodec.readSignedVarLong(in);
+                        longValues[row] = time;
+                    }
+                }
+                case INT, BOOLEAN -> {
+                    longValues = new long[rowCount];
+                    for (int row = 0; row < rowCount; ++row) {
+                        if (nulls.get(row)) continue;
+                        longValues[row] = type == ArchiveTable.Type.INT ? ArchiveCodec.readSignedVarLong(in) : in.get();
+                    }
+                }
+                case FLOAT, DOUBLE -> {
+                    doubleValues = new double[rowCount];
+                    for (int row = 0; row < rowCount; ++row) {
+                        if (nulls.get(row)) continue;
+                        doubleValues[row] =
+                                type == ArchiveTable.Type.FLOAT ? Float.intBitsToFloat(in.getInt()) : in.getDouble();
+                    }
+                }
+            }
+        }
+
+        public ArchiveTable.Type getType() {
+            return type;
+        }
+
+        public boolean isNull(int row) {
+            return nulls.get(row);
+        }
+
+        /** Epoch msec of a TIME column, 0 if null */
+        public long getTime(int row) {
+            return longValues[row];
+        }
+
+        public Date getDate(int row) {
+            return isNull(row) ? null : new Date(longValues[row]);
+        }
+
+        /** Value of an INT column, 0 if null */
+        public int getInt(int row) {
+            return (int) longValues[row];
+        }
+
+        public Integer getInteger(int row) {
+            return isNull(row) ? null : (int) longValues[row];
+        }
+
+        /** Value of a FLOAT column, 0 if null */
+        public float getFloat(int row) {
+            return (float) doubleValues[row];
+        }
+
+        public Float getFloatObject(int row) {
+            return isNull(row) ? null : (float) doubleValues[row];
+        }
+
+        /** Value of a DOUBLE column, 0 if null */
+        public double getDouble(int row) {
+            return doubleValues[row];
+        }
+
+        /** Value of a BOOLEAN column, false if null */
+        public boolean getBoolean(int row) {
+            return longValues[row] != 0;
+        }
+
+        public String getString(int row) {
+            return stringValues[row];
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/* (C)2023 */
+package org.transitclock.domain.archive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the archive file of a day of a table. Rows are added one at a time, such as while
+ * streaming them from the db, and each column is encoded as it goes so that the rows themselves
+ * are not kept. Rows should be added in time order since times are stored as the difference from
+ * the previous row.
+ *
+ * <p>The file starts with a header: the magic number and format version, the length of the rest
+ * of the header, the table name, the epoch day, the number of rows, the first and last time, and
+ * for each column its name, type, and where its block is. Then come the column blocks, each
+ * compressed on its own so that a reader only has to read and decompress the columns it needs.
+ * A block is the null bitmap followed by the values of the rows that aren't null. A string column
+ * also has the dictionary of its distinct values before the values.
+ */
+public class DayArchiveWriter {
+    private final ArchiveTable table;
+    private final int epochDay;
+    private final ColumnBuilder[] columns;
+    private final int timeColumnIndex;
+    private int rowCount = 0;
+    private long minTime = Long.MAX_VALUE;
+    private long maxTime = Long.MIN_VALUE;
+
+    /**
+     * @param table the table the rows are from
+     * @param epochDay the day of the rows, see Time.getEpochDay()
+     */
+    public DayArchiveWriter(ArchiveTable table, int epochDay) {
+        this.table = table;
+        this.epochDay = epochDay;
+        this.columns = table.getColumns().stream().map(column -> new ColumnBuilder(column.type())).toArray(ColumnBuilder[]::new);
+        this.timeColumnIndex = table.indexOf(table.getTimeColumn());
+    }
+
+    /**
+     * Adds a row.
+     *
+     * @param values a value for each column of the table, in order. A Date for a TIME column, a
+     *     String, Integer, Float, Double or Boolean for the others. Can be null.
+     */
+    public void addRow(Object... values) {
+        if (values.length != columns.length) {
+            throw new IllegalArgumentException("Expected " + columns.length + " values but got " + values.length);
+        }
+        for (int i = 0; i < columns.length; ++i) {
+            columns[i].add(rowCount, values[i]);
+        }
+        Object time = values[timeColumnIndex];
+        if (time != null) {
+            long msec = ((Date) time).getTime();
+            minTime = Math.min(minTime, msec);
+            maxTime = Math.max(maxTime, msec);
+        }
+        ++rowCount;
+    }
+
+    /**
+     * Adds the current row of the result set, which has to have the columns of the table in order.
+     */
+    public void addRow(ResultSet rs) throws SQLException {
+        Object[] values = new Object[columns.length];
+        for (int i = 0; i < columns.length; ++i) {
+            int index = i + 1;
+            values[i] = switch (columns[i].type) {
+                case STRING -> rs.getString(index);
+                case TIME -> {
+                    Timestamp timestamp = rs.getTimestamp(index);
+                    yield timestamp != null ? new Date(timestamp.getTime()) : null;
+                }
+                case INT -> {
+                    int value = rs.getInt(index);
+                    yield rs.wasNull() ? null : value;
+                }
+                case FLOAT -> {
+                    float value = rs.getFloat(index);
+                    yield rs.wasNull() ? null : value;
+                }
+                case DOUBLE -> {
+                    double value = rs.getDouble(index);
+                    yield rs.wasNull() ? null : value;
+                }
+                case BOOLEAN -> {
+                    boolean value = rs.getBoolean(index);
+                    yield rs.wasNull() ? null : value;
+                }
+            };
+        }
+        addRow(values);
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Writes the file. It is first written to a temporary file that then replaces the file, so the
+     * file is never partially written.
+     */
+    public void write(Path file) throws IOException {
+        List<byte[]> rawBlocks = new ArrayList<>(columns.length);
+        List<byte[]> blocks = new ArrayList<>(columns.length);
+        for (ColumnBuilder column : columns) {
+            byte[] raw = column.toBytes(rowCount);
+            rawBlocks.add(raw);
+            blocks.add(ArchiveCodec.compress(raw));
+        }
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        header.writeUTF(table.getTableName());
+        header.writeInt(epochDay);
+        header.writeInt(rowCount);
+        header.writeLong(rowCount > 0 ? minTime : 0);
+        header.writeLong(rowCount > 0 ? maxTime : 0);
+        header.writeInt(columns.length);
+        long offset = 0;
+        for (int i = 0; i < columns.length; ++i) {
+            ArchiveTable.Column column = table.getColumns().get(i);
+            header.writeUTF(column.name());
+            header.writeByte(column.type().ordinal());
+            // Offset from the end of the header
+            header.writeLong(offset);
+            header.writeInt(blocks.get(i).length);
+            header.writeInt(rawBlocks.get(i).length);
+            offset += blocks.get(i).length;
+        }
+        header.flush();
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream fileOut = Files.newOutputStream(tmpFile);
+                DataOutputStream out = new DataOutputStream(fileOut)) {
+            out.writeInt(ArchiveCodec.MAGIC);
+            out.writeInt(ArchiveCodec.FORMAT_VERSION);
+            out.writeInt(headerBytes.size());
+            headerBytes.writeTo(out);
+            for (byte[] block : blocks) {
+                out.write(block);
+            }
+        }
+        Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Encodes the values of a column as they are added */
+    private static class ColumnBuilder {
+        private final ArchiveTable.Type type;
+        private final BitSet nulls = new BitSet();
+        private final ByteArrayOutputStream values = new ByteArrayOutputStream();
+        // For STRING columns
+        private final Map<String, Integer> dictionary = new HashMap<>();
+        private final List<String> dictionaryValues = new ArrayList<>();
+        // For TIME columns
+        private long previousTime = 0;
+
+        private ColumnBuilder(ArchiveTable.Type type) {
+            this.type = type;
+        }
+
+        private void add(int row, Object value) {
+            if (value == null) {
+                nulls.set(row);
+                return;
+            }
+            switch (type) {
+                case STRING -> {
+                    Integer index = dictionary.get((String) value);
+                    if (index == null) {
+                        index = dictionaryValues.size();
+                        dictionary.put((String) value, index);
+                        dictionaryValues.add((String) value);
+                    }
+                    ArchiveCodec.writeVarInt(values, index);
+                }
+                case TIME -> {
+                    long time = ((Date) value).getTime();
+                    ArchiveCodec.writeSignedVarLong(values, time - previousTime);
+                    previousTime = time;
+                }
+                case INT -> ArchiveCodec.writeSignedVarLong(values, (Integer) value);
+                case FLOAT -> writeInt(Float.floatToIntBits((Float) value));
+                case DOUBLE -> {
+                    long bits = Double.doubleToLongBits((Double) value);
+                    writeInt((int) (bits >>> 32));
+                    writeInt((int) bits);
+                }
+                case BOOLEAN -> values.write((Boolean) value ? 1 : 0);
+            }
+        }
+
+        private void writeInt(int value) {
+            values.write(value >>> 24);
+            values.write(value >>> 16);
+            values.write(value >>> 8);
+            values.write(value);
+        }
+
+        private byte[] toBytes(int rowCount) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(values.size() + rowCount / 8 + 16);
+            byte[] nullBytes = nulls.toByteArray();
+            ArchiveCodec.writeVarInt(out, nullBytes.length);
+            out.writeBytes(nullBytes);
+            if (type == ArchiveTable.Type.STRING) {
+                ArchiveCodec.writeVarInt(out, dictionaryValues.size());
+                for (String value : dictionaryValues) {
+                    byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+                    ArchiveCodec.writeVarInt(out, utf8.length);
+                    out.writeBytes(utf8);
+                }
+            }
+            out.writeBytes(values.toByteArray());
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/* (C)2023 */
+package org.transitclock.domain.archive;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.transitclock.domain.structs.ArrivalDeparture;
+import org.transitclock.domain.structs.ArrivalDeparture.ArrivalsOrDepartures;
+import org.transitclock.domain.structs.AssignmentType;
+import org.transitclock.domain.structs.AvlReport;
+import org.transitclock.domain.structs.Location;
+import org.transitclock.utils.Time;
+
+/**
+ * The directory of archive files written by HistoryArchiver, one per day and table at
+ * {@code <directory>/<table>/<yyyy-MM-dd>.tca}. Days are in the agency timezone, the default
+ * timezone of the JVM.
+ *
+ * <p>The read methods read the days that are archived and return the time from which the rest
+ * has to be read from the db. That way a caller such as the travel times processor can use the
+ * archive for the closed days and the db only for the days that aren't archived yet, and doesn't
+ * need to know which days those are.
+ *
+ * <p>A file has the rows that were in the db when the day was last archived. HistoryArchiver
+ * archives the most recent days again when rows are added to them later, but not older days.
+ */
+@Slf4j
+public class HistoryArchive {
+    public static final String FILE_SUFFIX = ".tca";
+
+    private final Path directory;
+
+    public HistoryArchive(Path directory) {
+        this.directory = directory;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public Path getFile(ArchiveTable table, int epochDay) {
+        return directory.resolve(table.getTableName()).resolve(LocalDate.ofEpochDay(epochDay) + FILE_SUFFIX);
+    }
+
+    public boolean contains(ArchiveTable table, int epochDay) {
+        return Files.isRegularFile(getFile(table, epochDay));
+    }
+
+    public DayArchive open(ArchiveTable table, int epochDay) throws IOException {
+        return DayArchive.open(getFile(table, epochDay));
+    }
+
+    /**
+     * Reads the arrivals/departures in the archived days starting with the day of beginTime, until
+     * endTime or the first day that isn't archived.
+     *
+     * @param beginTime inclusive
+     * @param endTime exclusive
+     * @param arrivalOrDeparture which to read, or null for both
+     * @param consumer gets the arrivals/departures in time order
+     * @return the time from which the arrivals/departures still need to be read from the db. Is
+     *     endTime if all of them were in the archive.
+     */
+    public Date readArrivalsDepartures(
+            Date beginTime,
+            Date endTime,
+            ArrivalsOrDepartures arrivalOrDeparture,
+            Consumer<ArrivalDeparture> consumer) {
+        return readDays(ArchiveTable.ARRIVALS_DEPARTURES, beginTime, endTime, (archive, begin, end) -> {
+            DayArchive.Column vehicleIds = archive.getColumn("vehicle_id");
+            DayArchive.Column times = archive.getColumn("time");
+            DayArchive.Column stopIds = archive.getColumn("stop_id");
+            DayArchive.Column gtfsStopSeqs = archive.getColumn("gtfs_stop_seq");
+            DayArchive.Column isArrivals = archive.getColumn("is_arrival");
+            DayArchive.Column tripIds = archive.getColumn("trip_id");
+            DayArchive.Column configRevs = archive.getColumn("config_rev");
+            DayArchive.Column avlTimes = archive.getColumn("avl_time");
+            DayArchive.Column scheduledTimes = archive.getColumn("scheduled_time");
+            DayArchive.Column blockIds = archive.getColumn("block_id");
+            DayArchive.Column routeIds = archive.getColumn("route_id");
+            DayArchive.Column routeShortNames = archive.getColumn("route_short_name");
+            DayArchive.Column serviceIds = archive.getColumn("service_id");
+            DayArchive.Column directionIds = archive.getColumn("direction_id");
+            DayArchive.Column tripIndexes = archive.getColumn("trip_index");
+            DayArchive.Column freqStartTimes = archive.getColumn("freq_start_time");
+            DayArchive.Column stopPathIndexes = archive.getColumn("stop_path_index");
+            DayArchive.Column stopOrders = archive.getColumn("stop_order");
+            DayArchive.Column stopPathLengths = archive.getColumn("stop_path_length");
+
+            List<ArrivalDeparture> arrivalsDepartures = new ArrayList<>();
+            for (int row = 0; row < archive.getRowCount(); ++row) {
+                long time = times.getTime(row);
+                if (time < begin || time >= end) continue;
+                boolean isArrival = isArrivals.getBoolean(row);
+                if (arrivalOrDeparture != null
+                        && isArrival != (arrivalOrDeparture == ArrivalsOrDepartures.ARRIVALS)) continue;
+                arrivalsDepartures.add(ArrivalDeparture.create(
+                        isArrival,
+                        vehicleIds.getString(row),
+                        new Date(time),
+                        stopIds.getString(row),
+                        gtfsStopSeqs.getInt(row),
+                        tripIds.getString(row),
+                        configRevs.getInt(row),
+                        avlTimes.getDate(row),
+                        scheduledTimes.getDate(row),
+                        blockIds.getString(row),
+                        routeIds.getString(row),
+                        routeShortNames.getString(row),
+                        serviceIds.getString(row),
+                        directionIds.getString(row),
+                        tripIndexes.getInt(row),
+                        freqStartTimes.getDate(row),
+                        stopPathIndexes.getInt(row),
+                        stopOrders.getInteger(row),
+                        stopPathLengths.getFloat(row)));
+            }
+            return arrivalsDepartures;
+        }, consumer);
+    }
+
+    /**
+     * Reads the AVL reports in the archived days starting with the day of beginTime, until endTime
+     * or the first day that isn't archived.
+     *
+     * @param beginTime inclusive
+     * @param endTime exclusive
+     * @param consumer gets the AVL reports in time order
+     * @return the time from which the AVL reports still need to be read from the db. Is endTime
+     *     if all of them were in the archive.
+     */
+    public Date readAvlReports(Date beginTime, Date endTime, Consumer<AvlReport> consumer) {
+        return readDays(ArchiveTable.AVL_REPORTS, beginTime, endTime, (archive, begin, end) -> {
+            DayArchive.Column vehicleIds = archive.getColumn("vehicle_id");
+            DayArchive.Column times = archive.getColumn("time");
+            DayArchive.Column timesProcessed = archive.getColumn("time_processed");
+            DayArchive.Column speeds = archive.getColumn("speed");
+            DayArchive.Column headings = archive.getColumn("heading");
+            DayArchive.Column sources = archive.getColumn("source");
+            DayArchive.Column assignmentIds = archive.getColumn("assignment_id");
+            DayArchive.Column assignmentTypes = archive.getColumn("assignment_type");
+            DayArchive.Column driverIds = archive.getColumn("driver_id");
+            DayArchive.Column licensePlates = archive.getColumn("license_place");
+            DayArchive.Column passengerCounts = archive.getColumn("passenger_count");
+            DayArchive.Column passengerFullnesses = archive.getColumn("passenger_fullness");
+            DayArchive.Column field1Names = archive.getColumn("field1_name");
+            DayArchive.Column field1Values = archive.getColumn("field1_value");
+            DayArchive.Column vehicleNames = archive.getColumn("vehicle_name");
+            DayArchive.Column lats = archive.getColumn("lat");
+            DayArchive.Column lons = archive.getColumn("lon");
+
+            List<AvlReport> avlReports = new ArrayList<>();
+            for (int row = 0; row < archive.getRowCount(); ++row) {
+                long time = times.getTime(row);
+                if (time < begin || time >= end) continue;
+                String assignmentType = assignmentTypes.getString(row);
+                avlReports.add(new AvlReport(
+                        vehicleIds.getString(row),
+                        new Date(time),
+                        timesProcessed.getDate(row),
+                        new Location(lats.getDouble(row), lons.getDouble(row)),
+                        speeds.getFloatObject(row),
+                        headings.getFloatObject(row),
+                        sources.getString(row),
+                        assignmentIds.getString(row),
+                        assignmentType != null ? AssignmentType.valueOf(assignmentType) : null,
+                        null,
+                        driverIds.getString(row),
+                        licensePlates.getString(row),
+                        passengerCounts.getInteger(row),
+                        passengerFullnesses.getFloatObject(row),
+                        field1Names.getString(row),
+                        field1Values.getString(row),
+                        vehicleNames.getString(row)));
+            }
+            return avlReports;
+        }, consumer);
+    }
+
+    @FunctionalInterface
+    private interface DayReader<T> {
+        List<T> read(DayArchive archive, long beginTime, long endTime) throws IOException;
+    }
+
+    /**
+     * Reads the consecutive archived days from the day of beginTime. A day is decoded completely
+     * before any of its rows are handed to the consumer so that if it can't be read the caller can
+     * read the whole day from the db instead without getting rows twice.
+     */
+    private <T> Date readDays(
+            ArchiveTable table, Date beginTime, Date endTime, DayReader<T> dayReader, Consumer<T> consumer) {
+        long begin = beginTime.getTime();
+        long end = endTime.getTime();
+        while (begin < end) {
+            int epochDay = Time.getEpochDay(begin);
+            if (!contains(table, epochDay)) break;
+
+            long endOfDay = Time.getStartOfEpochDay(epochDay + 1);
+            List<T> rows;
+            try {
+                rows = dayReader.read(open(table, epochDay), begin, Math.min(end, endOfDay));
+            } catch (IOException | RuntimeException e) {
+                logger.error("Could not read archive file {}, reading the day from the db instead",
+                        getFile(table, epochDay), e);
+                break;
+            }
+            rows.forEach(consumer);
+            begin = endOfDay;
+        }
+        return new Date(Math.min(begin, end));
+    }
+}
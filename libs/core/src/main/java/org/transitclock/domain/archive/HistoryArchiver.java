@@ -0,0 +1,155 @@
+/* (C)2023 */
+package org.transitclock.domain.archive;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.transitclock.domain.hibernate.DbWorkload;
+import org.transitclock.domain.hibernate.HibernateUtils;
+import org.transitclock.properties.CoreProperties;
+import org.transitclock.utils.Time;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes the closed days of the arrivals_departures and avl_reports tables to the history archive
+ * so that processing historic data, such as updating travel times, doesn't have to query the large
+ * tables. A day is closed closedDayDelayHours after it ends. Each day is streamed from the db in
+ * time order with a cursor so that a whole day is never in memory as entities.
+ *
+ * <p>Days that are already archived are skipped, so after a restart only the missing days of the
+ * last backfillDays are written. A day without any rows still gets a file so that readers know it
+ * doesn't have to be read from the db.
+ *
+ * <p>Rows can still be written to a day after it was archived, such as arrivals/departures that are
+ * determined late. So the last recheckDays archived days are compared with the db on every run by
+ * the number of rows, and a day is archived again if they differ. A rewrite replaces the file
+ * atomically. Days before that are frozen: rows written to them later are only in the db.
+ */
+@Slf4j
+@Component
+public class HistoryArchiver {
+    private static final int FETCH_SIZE = 10000;
+
+    private final CoreProperties.Archive properties;
+
+    public HistoryArchiver(CoreProperties coreProperties) {
+        this.properties = coreProperties.getArchive();
+    }
+
+    @Scheduled(fixedRateString = "${transitclock.core.archive.intervalMins:60}", timeUnit = TimeUnit.MINUTES)
+    public void run() {
+        if (!properties.isEnabled()) return;
+
+        run(new HistoryArchive(Path.of(properties.getDirectory())), System.currentTimeMillis());
+    }
+
+    void run(HistoryArchive archive, long now) {
+        long closedTime = now - properties.getClosedDayDelayHours() * Time.MS_PER_HOUR;
+        int lastClosedDay = Time.getEpochDay(closedTime) - 1;
+        for (ArchiveTable table : ArchiveTable.values()) {
+            for (int epochDay = lastClosedDay - properties.getBackfillDays() + 1; epochDay <= lastClosedDay; ++epochDay) {
+                try {
+                    if (needsArchiving(archive, table, epochDay, lastClosedDay)) {
+                        archiveDay(archive, table, epochDay);
+                    }
+                } catch (Exception e) {
+                    logger.error("Could not archive day {} of {}.", epochDay, table.getTableName(), e);
+                    // Later days are tried again on the next run
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether the day isn't archived yet or, if it is one of the last recheckDays closed days, the
+     * number of rows in the db changed since it was archived.
+     */
+    private boolean needsArchiving(HistoryArchive archive, ArchiveTable table, int epochDay, int lastClosedDay) {
+        if (!archive.contains(table, epochDay)) return true;
+        if (epochDay <= lastClosedDay - properties.getRecheckDays()) return false;
+
+        int archivedRows;
+        try {
+            archivedRows = archive.open(table, epochDay).getRowCount();
+        } catch (IOException e) {
+            logger.warn("Could not read archive file {}, archiving the day again.", archive.getFile(table, epochDay), e);
+            return true;
+        }
+        long dbRows = countRows(table, epochDay);
+        if (dbRows == archivedRows) return false;
+
+        logger.info("Day {} of {} has {} rows in the db but {} in the archive, archiving it again.",
+                epochDay, table.getTableName(), dbRows, archivedRows);
+        return true;
+    }
+
+    long countRows(ArchiveTable table, int epochDay) {
+        String sql = "SELECT count(*) FROM " + table.getTableName()
+                + " WHERE " + table.getTimeColumn() + " >= ? AND " + table.getTimeColumn() + " < ?";
+        try (Session session = HibernateUtils.getSession(DbWorkload.BATCH)) {
+            return session.doReturningWork(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    statement.setTimestamp(1, new Timestamp(Time.getStartOfEpochDay(epochDay)));
+                    statement.setTimestamp(2, new Timestamp(Time.getStartOfEpochDay(epochDay + 1)));
+                    try (ResultSet rs = statement.executeQuery()) {
+                        rs.next();
+                        return rs.getLong(1);
+                    }
+                }
+            });
+        }
+    }
+
+    void archiveDay(HistoryArchive archive, ArchiveTable table, int epochDay) throws IOException {
+        long startTime = System.currentTimeMillis();
+        DayArchiveWriter writer = new DayArchiveWriter(table, epochDay);
+        String sql = "SELECT "
+                + table.getColumns().stream().map(ArchiveTable.Column::name).collect(Collectors.joining(", "))
+                + " FROM " + table.getTableName()
+                + " WHERE " + table.getTimeColumn() + " >= ? AND " + table.getTimeColumn() + " < ?"
+                + " ORDER BY " + table.getTimeColumn();
+        try (Session session = HibernateUtils.getSession(DbWorkload.BATCH)) {
+            session.doWork(connection -> readDay(connection, sql, epochDay, writer));
+        }
+
+        Path file = archive.getFile(table, epochDay);
+        writer.write(file);
+        logger.info("Archived {} rows of {} for day {} to {} in {} msec.",
+                writer.getRowCount(), table.getTableName(), epochDay, file, System.currentTimeMillis() - startTime);
+    }
+
+    private static void readDay(Connection connection, String sql, int epochDay, DayArchiveWriter writer)
+            throws SQLException {
+        // PostgreSQL only uses a cursor, instead of reading the whole result, when not in auto commit
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setFetchSize(FETCH_SIZE);
+            statement.setTimestamp(1, new Timestamp(Time.getStartOfEpochDay(epochDay)));
+            statement.setTimestamp(2, new Timestamp(Time.getStartOfEpochDay(epochDay + 1)));
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    writer.addRow(rs);
+                }
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/* (C)2023 */
+package org.transitclock.domain.export;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import org.transitclock.domain.hibernate.DbWorkload;
+import org.transitclock.domain.hibernate.HibernateUtils;
+
+/**
+ * Stores the files of exports in the export_chunks table as consecutive chunks of chunkSize bytes,
+ * only the last chunk being shorter. Writing and reading only ever has one chunk in memory so the
+ * size of an export doesn't matter, and a range of a file can be read without reading the chunks
+ * before it.
+ */
+public final class ExportChunkStore {
+    private ExportChunkStore() {}
+
+    /**
+     * Writes a file in chunks using the connection, as part of the transaction of the connection.
+     * Closing the stream writes the last chunk but doesn't close the connection.
+     */
+    public static class ChunkOutputStream extends OutputStream {
+        private final Connection connection;
+        private final long exportId;
+        private final byte[] buffer;
+        private int count;
+        private int chunkIndex;
+        private long size;
+        private boolean closed;
+
+        public ChunkOutputStream(Connection connection, long exportId, int chunkSize) throws SQLException {
+            this.connection = connection;
+            this.exportId = exportId;
+            this.buffer = new byte[chunkSize];
+
+            // In case a previous attempt to generate the export left chunks behind
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM export_chunks WHERE export_id = ?")) {
+                statement.setLong(1, exportId);
+                statement.executeUpdate();
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) writeChunk();
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) writeChunk();
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void writeChunk() throws IOException {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO export_chunks (export_id, chunk_index, data) VALUES (?, ?, ?)")) {
+                statement.setLong(1, exportId);
+                statement.setInt(2, chunkIndex);
+                statement.setBytes(3, count == buffer.length ? buffer : Arrays.copyOf(buffer, count));
+                statement.executeUpdate();
+            } catch (SQLException e) {
+                throw new IOException("Could not write chunk " + chunkIndex + " of export " + exportId, e);
+            }
+            size += count;
+            count = 0;
+            ++chunkIndex;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            if (count > 0) writeChunk();
+        }
+
+        /** Number of bytes written */
+        public long getSize() {
+            return size + count;
+        }
+    }
+
+    /**
+     * Returns a stream of the file of the export. The chunks are read when they are needed, each
+     * with its own connection, so the stream doesn't hold a connection while the caller is slow to
+     * consume it. Skipping doesn't read the skipped chunks.
+     *
+     * @param exportId id of the export
+     * @param fileSize size of the file
+     * @param chunkSize size of the chunks the file was written in
+     */
+    public static InputStream openInputStream(long exportId, long fileSize, int chunkSize) {
+        return new ChunkInputStream(exportId, fileSize, chunkSize);
+    }
+
+    static class ChunkInputStream extends InputStream {
+        private final long exportId;
+        private final long fileSize;
+        private final int chunkSize;
+        private long position;
+        private byte[] chunk;
+        private int loadedChunkIndex = -1;
+
+        ChunkInputStream(long exportId, long fileSize, int chunkSize) {
+            this.exportId = exportId;
+            this.fileSize = fileSize;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position >= fileSize) return -1;
+            int b = loadChunk()[(int) (position % chunkSize)] & 0xFF;
+            ++position;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (position >= fileSize) return -1;
+            byte[] data = loadChunk();
+            int offsetInChunk = (int) (position % chunkSize);
+            int n = (int) Math.min(len, Math.min(data.length - offsetInChunk, fileSize - position));
+            System.arraycopy(data, offsetInChunk, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, fileSize - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            if (loadedChunkIndex != position / chunkSize) return 0;
+            return (int) Math.min(chunk.length - position % chunkSize, fileSize - position);
+        }
+
+        private byte[] loadChunk() throws IOException {
+            int chunkIndex = (int) (position / chunkSize);
+            if (chunkIndex == loadedChunkIndex) return chunk;
+
+            chunk = readChunk(chunkIndex);
+            loadedChunkIndex = chunkIndex;
+            return chunk;
+        }
+
+        /** Reads a chunk from the db with a connection of its own */
+        byte[] readChunk(int chunkIndex) throws IOException {
+            try (Connection connection = HibernateUtils.getConnection(DbWorkload.REPORTS);
+                    PreparedStatement statement = connection.prepareStatement(
+                            "SELECT data FROM export_chunks WHERE export_id = ? AND chunk_index = ?")) {
+                statement.setLong(1, exportId);
+                statement.setInt(2, chunkIndex);
+                try (ResultSet rs = statement.executeQuery()) {
+                    if (!rs.next()) {
+                        throw new IOException("Chunk " + chunkIndex + " of export " + exportId + " is missing");
+                    }
+                    return rs.getBytes(1);
+                }
+            } catch (SQLException e) {
+                throw new IOException("Could not read chunk " + chunkIndex + " of export " + exportId, e);
+            }
+        }
+    }
+}
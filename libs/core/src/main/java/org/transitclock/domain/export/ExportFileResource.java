@@ -0,0 +1,53 @@
+/* (C)2023 */
+package org.transitclock.domain.export;
+
+import java.io.InputStream;
+
+import org.transitclock.domain.structs.ExportTable;
+
+import org.springframework.core.io.AbstractResource;
+
+/**
+ * The file of an export that is stored in chunks, see {@link ExportChunkStore}. When a resource is
+ * the body of a response Spring serves Range requests by skipping to the start of the range, and
+ * skipping doesn't read the chunks before it, so downloads can be resumed without reading the whole
+ * file again.
+ */
+public class ExportFileResource extends AbstractResource {
+    private final long exportId;
+    private final String fileName;
+    private final long fileSize;
+    private final int chunkSize;
+
+    public ExportFileResource(ExportTable export) {
+        this.exportId = export.getId();
+        this.fileName = export.getFileName();
+        this.fileSize = export.getFileSize();
+        this.chunkSize = export.getChunkSize();
+    }
+
+    @Override
+    public String getDescription() {
+        return "export " + exportId;
+    }
+
+    @Override
+    public String getFilename() {
+        return fileName;
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public long contentLength() {
+        return fileSize;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return ExportChunkStore.openInputStream(exportId, fileSize, chunkSize);
+    }
+}
@@ -0,0 +1,172 @@
+/* (C)2023 */
+package org.transitclock.domain.export;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.transitclock.domain.hibernate.DbWorkload;
+import org.transitclock.domain.hibernate.HibernateUtils;
+import org.transitclock.domain.structs.ExportTable;
+import org.transitclock.properties.CoreProperties;
+import org.transitclock.utils.Time;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.hibernate.Session;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Generates the files of requested exports. The rows are streamed from the db with a forward only
+ * cursor, written as gzipped CSV, and stored in chunks with {@link ExportChunkStore}, so neither
+ * the rows nor the file are ever in memory as a whole.
+ *
+ * <p>An export is claimed with SELECT ... FOR UPDATE SKIP LOCKED and its chunks are written in the
+ * same transaction as its new status. So if there are several generators they don't generate the
+ * same export, and if generating fails nothing of it is left behind.
+ */
+@Slf4j
+@Component
+public class ExportGenerator {
+    private static final int FETCH_SIZE = 10000;
+
+    private final CoreProperties.Exports properties;
+
+    public ExportGenerator(CoreProperties coreProperties) {
+        this.properties = coreProperties.getExports();
+    }
+
+    @Scheduled(fixedDelayString = "${transitclock.core.exports.intervalSecs:30}", timeUnit = TimeUnit.SECONDS)
+    public void run() {
+        if (!properties.isEnabled()) return;
+
+        try {
+            while (generateNext()) {
+                // Keep going until there are no more requested exports
+            }
+        } catch (Exception e) {
+            logger.error("Could not generate exports.", e);
+        }
+    }
+
+    /** Generates the oldest requested export. Returns false if there was none. */
+    private boolean generateNext() {
+        try (Session session = HibernateUtils.getSession(DbWorkload.BATCH)) {
+            return session.doReturningWork(this::generateNext);
+        }
+    }
+
+    private boolean generateNext(Connection connection) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            return claimAndGenerate(connection);
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private boolean claimAndGenerate(Connection connection) throws SQLException {
+        long exportId;
+        int exportType;
+        Date dataDate;
+        String fileName;
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT id, export_type, data_date, file_name FROM export_table WHERE export_status = ?"
+                        + " ORDER BY export_date LIMIT 1 FOR UPDATE SKIP LOCKED")) {
+            statement.setInt(1, ExportTable.STATUS_REQUESTED);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (!rs.next()) {
+                    connection.commit();
+                    return false;
+                }
+                exportId = rs.getLong(1);
+                exportType = rs.getInt(2);
+                dataDate = rs.getDate(3);
+                fileName = rs.getString(4);
+            }
+        }
+
+        long startTime = System.currentTimeMillis();
+        try {
+            int chunkSize = properties.getChunkSizeKb() * 1024;
+            ExportChunkStore.ChunkOutputStream chunks = new ExportChunkStore.ChunkOutputStream(connection, exportId, chunkSize);
+            long rows = writeRows(connection, exportType, dataDate, chunks);
+            markReady(connection, exportId, fileName + ".gz", chunks.getSize(), chunkSize);
+            connection.commit();
+            logger.info("Generated export {} with {} rows into {} bytes in {} msec.",
+                    exportId, rows, chunks.getSize(), System.currentTimeMillis() - startTime);
+        } catch (SQLException | IOException | RuntimeException e) {
+            logger.error("Could not generate export {}.", exportId, e);
+            connection.rollback();
+            // So that it isn't tried again and again
+            markFailed(connection, exportId);
+            connection.commit();
+        }
+        return true;
+    }
+
+    private static long writeRows(
+            Connection connection, int exportType, Date dataDate, ExportChunkStore.ChunkOutputStream chunks)
+            throws SQLException, IOException {
+        String sql = switch (exportType) {
+            case ExportTable.TYPE_AVL -> "SELECT * FROM avl_reports WHERE time >= ? AND time < ? ORDER BY time";
+            default -> throw new IllegalArgumentException("Unknown export type " + exportType);
+        };
+
+        int epochDay = Time.getEpochDay(dataDate.getTime());
+        long rows = 0;
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            // PostgreSQL only uses a cursor, instead of reading the whole result, when not in auto commit
+            statement.setFetchSize(FETCH_SIZE);
+            statement.setTimestamp(1, new Timestamp(Time.getStartOfEpochDay(epochDay)));
+            statement.setTimestamp(2, new Timestamp(Time.getStartOfEpochDay(epochDay + 1)));
+            try (ResultSet rs = statement.executeQuery();
+                    CSVPrinter printer = new CSVPrinter(
+                            new OutputStreamWriter(new GZIPOutputStream(chunks, 64 * 1024), StandardCharsets.UTF_8),
+                            CSVFormat.DEFAULT.builder().setHeader(rs).build())) {
+                int columnCount = rs.getMetaData().getColumnCount();
+                while (rs.next()) {
+                    for (int column = 1; column <= columnCount; ++column) {
+                        printer.print(rs.getObject(column));
+                    }
+                    printer.println();
+                    ++rows;
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static void markReady(Connection connection, long exportId, String fileName, long fileSize, int chunkSize)
+            throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "UPDATE export_table SET export_status = ?, file_name = ?, file_size = ?, chunk_size = ? WHERE id = ?")) {
+            statement.setInt(1, ExportTable.STATUS_READY);
+            statement.setString(2, fileName);
+            statement.setLong(3, fileSize);
+            statement.setInt(4, chunkSize);
+            statement.setLong(5, exportId);
+            statement.executeUpdate();
+        }
+    }
+
+    private static void markFailed(Connection connection, long exportId) throws SQLException {
+        try (PreparedStatement statement =
+                connection.prepareStatement("UPDATE export_table SET export_status = ? WHERE id = ?")) {
+            statement.setInt(1, ExportTable.STATUS_FAILED);
+            statement.setLong(2, exportId);
+            statement.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+/* (C)2023 */
+package org.transitclock.domain.hibernate;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an entity whose rows are only ever inserted, never updated once written. DbQueue writes
+ * such entities with a StatelessSession using plain JDBC batched inserts instead of merging them,
+ * which avoids a select per row and the persistence context. Writing a row that is already in the
+ * database is treated as having been written.
+ *
+ * <p>Inherited so that subclasses in a single table hierarchy, such as Arrival and Departure, are
+ * append only too.
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface AppendOnly {}
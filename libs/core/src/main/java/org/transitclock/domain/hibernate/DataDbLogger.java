@@ -2,7 +2,9 @@
 package org.transitclock.domain.hibernate;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.*;
 
 import lombok.extern.slf4j.Slf4j;
@@ -29,15 +31,22 @@ import org.transitclock.utils.threading.NamedThreadFactory;
  * to database issues. The application simply calls add(Object o) to add the object to be stored to
  * the queue.
  *
- * <p>A separate thread is used to read from the queue and write the data to the database. If the
- * queue starts filling up then error messages are e-mailed to users alerting them that there is a
- * problem. E-mail messages are also sent out when the queue level is going down again.
+ * <p>Separate threads are used to read from the queues and write the data to the database. The
+ * queues of objects that are only inserted can be written by several writers at once when they
+ * fall behind, see DbQueue. The queues of objects that can update previously written rows are
+ * written by a single writer so that the last update wins. If a queue starts filling up then error
+ * messages are e-mailed to users alerting them that there is a problem. E-mail messages are also
+ * sent out when the queue level is going down again.
  *
  * <p>A goal with this class was to make the writing to the database is efficient as possible.
  * Therefore the objects are written in batches. This reduces network traffic as well as database
  * load. But this did make handling exceptions more complicated. If there is an exception with a
  * batch then each item is individually written so that don't lose any data.
  *
+ * <p>Objects that are added are lost if the process dies before they are written. For the types
+ * configured as group committed, addDurably() returns a future that is completed once the object
+ * has actually been committed, see {@link DbDurability#GROUP_COMMIT}.
+ *
  * <p>When in playback mode then don't want to store the data because it would interfere with data
  * stored when the application was run in real time. Therefore when running in playback mode set
  * shouldStoreToDb to true when calling getDataDbLogger().
@@ -67,35 +76,52 @@ public class DataDbLogger {
      * @param shouldPauseToReduceQueue Specifies if should pause the thread calling add() if the
      *     queue is filling up. Useful for when in batch mode and dumping a whole bunch of data to
      *     the db really quickly.
+     * @param batchSize maximum number of objects written in a transaction
+     * @param writerThreads number of threads writing to the db, shared by all the queues
+     * @param maxWritersPerQueue maximum number of concurrent writers for a queue
+     * @param targetCommitMsec writers are only added to a queue while its batches are committed
+     *     faster than this
+     * @param groupCommitTypes simple class names of the types that are group committed instead of
+     *     fire and forget
+     * @param groupCommitWindowMsec how long a writer of a group committed type waits for more
+     *     objects before committing a batch that isn't full
      */
-    public DataDbLogger(String agencyId, boolean shouldStoreToDb, boolean shouldPauseToReduceQueue, int batchSize) {
+    public DataDbLogger(String agencyId,
+                        boolean shouldStoreToDb,
+                        boolean shouldPauseToReduceQueue,
+                        int batchSize,
+                        int writerThreads,
+                        int maxWritersPerQueue,
+                        long targetCommitMsec,
+                        Set<String> groupCommitTypes,
+                        long groupCommitWindowMsec) {
         NamedThreadFactory threadFactory = new NamedThreadFactory("DataWriter");
-        ExtendedScheduledThreadPoolExecutor executor = new ExtendedScheduledThreadPoolExecutor(5, threadFactory, new RejectedExecutionHandler() {
+        ExtendedScheduledThreadPoolExecutor executor = new ExtendedScheduledThreadPoolExecutor(2, threadFactory, new RejectedExecutionHandler() {
             @Override
             public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
                 logger.error("Execution of {} was rejected by {}", r, executor);
             }
         });
+        ExecutorService writerExecutor = Executors.newFixedThreadPool(writerThreads, threadFactory);
+        int unordered = maxWritersPerQueue;
+        int ordered = 1;
+
+        // VehicleConfigs update existing rows, and the generic queue can be anything, so those are
+        // written in order.
+        arrivalDepartureQueue = new DbQueue<>(executor, writerExecutor, agencyId, shouldStoreToDb, shouldPauseToReduceQueue, ArrivalDeparture.class, batchSize, unordered, targetCommitMsec, durability(groupCommitTypes, ArrivalDeparture.class), groupCommitWindowMsec);
+        avlReportQueue = new DbQueue<>(executor, writerExecutor, agencyId, shouldStoreToDb, shouldPauseToReduceQueue, AvlReport.class, batchSize, unordered, targetCommitMsec, durability(groupCommitTypes, AvlReport.class), groupCommitWindowMsec);
+        vehicleConfigQueue = new DbQueue<>(executor, writerExecutor, agencyId, shouldStoreToDb, shouldPauseToReduceQueue, VehicleConfig.class, batchSize, ordered, targetCommitMsec, durability(groupCommitTypes, VehicleConfig.class), groupCommitWindowMsec);
+        predictionQueue = new DbQueue<>(executor, writerExecutor, agencyId, shouldStoreToDb, shouldPauseToReduceQueue, Prediction.class, batchSize, unordered, targetCommitMsec, durability(groupCommitTypes, Prediction.class), groupCommitWindowMsec);
+        matchQueue = new DbQueue<>(executor, writerExecutor, agencyId, shouldStoreToDb, shouldPauseToReduceQueue, Match.class, batchSize, unordered, targetCommitMsec, durability(groupCommitTypes, Match.class), groupCommitWindowMsec);
+        predictionAccuracyQueue = new DbQueue<>(executor, writerExecutor, agencyId, shouldStoreToDb, shouldPauseToReduceQueue, PredictionAccuracy.class, batchSize, unordered, targetCommitMsec, durability(groupCommitTypes, PredictionAccuracy.class), groupCommitWindowMsec);
+        monitoringEventQueue = new DbQueue<>(executor, writerExecutor, agencyId, shouldStoreToDb, shouldPauseToReduceQueue, MonitoringEvent.class, batchSize, unordered, targetCommitMsec, durability(groupCommitTypes, MonitoringEvent.class), groupCommitWindowMsec);
+        vehicleEventQueue = new DbQueue<>(executor, writerExecutor, agencyId, shouldStoreToDb, shouldPauseToReduceQueue, VehicleEvent.class, batchSize, unordered, targetCommitMsec, durability(groupCommitTypes, VehicleEvent.class), groupCommitWindowMsec);
+        vehicleStateQueue = new DbQueue<>(executor, writerExecutor, agencyId, shouldStoreToDb, shouldPauseToReduceQueue, VehicleState.class, batchSize, unordered, targetCommitMsec, durability(groupCommitTypes, VehicleState.class), groupCommitWindowMsec);
+        genericQueue = new DbQueue<>(executor, writerExecutor, agencyId, shouldStoreToDb, shouldPauseToReduceQueue, Object.class, batchSize, ordered, targetCommitMsec, durability(groupCommitTypes, Object.class), groupCommitWindowMsec);
+    }
 
-        // So can access agencyId for logging messages
-        // When running in playback mode where getting AVLReports from database
-        // instead of from an AVL feed, then debugging and don't want to store
-        // derived data into the database because that would interfere with the
-        // derived data that was already stored in real time. For that situation
-        // shouldStoreToDb should be set to false.
-        // Used by add(). If queue filling up to 25% and shouldPauseToReduceQueue is
-        // true then will pause the calling thread for a few seconds so that more
-        // objects can be written out and not have the queue fill up.
-        arrivalDepartureQueue = new DbQueue<>(executor, agencyId, shouldStoreToDb, shouldPauseToReduceQueue, ArrivalDeparture.class, batchSize);
-        avlReportQueue = new DbQueue<>(executor, agencyId, shouldStoreToDb, shouldPauseToReduceQueue, AvlReport.class, batchSize);
-        vehicleConfigQueue = new DbQueue<>(executor, agencyId, shouldStoreToDb, shouldPauseToReduceQueue, VehicleConfig.class, batchSize);
-        predictionQueue = new DbQueue<>(executor, agencyId, shouldStoreToDb, shouldPauseToReduceQueue, Prediction.class, batchSize);
-        matchQueue = new DbQueue<>(executor, agencyId, shouldStoreToDb, shouldPauseToReduceQueue, Match.class, batchSize);
-        predictionAccuracyQueue = new DbQueue<>(executor, agencyId, shouldStoreToDb, shouldPauseToReduceQueue, PredictionAccuracy.class, batchSize);
-        monitoringEventQueue = new DbQueue<>(executor, agencyId, shouldStoreToDb, shouldPauseToReduceQueue, MonitoringEvent.class, batchSize);
-        vehicleEventQueue = new DbQueue<>(executor, agencyId, shouldStoreToDb, shouldPauseToReduceQueue, VehicleEvent.class, batchSize);
-        vehicleStateQueue = new DbQueue<>(executor, agencyId, shouldStoreToDb, shouldPauseToReduceQueue, VehicleState.class, batchSize);
-        genericQueue = new DbQueue<>(executor, agencyId, shouldStoreToDb, shouldPauseToReduceQueue, Object.class, batchSize);
+    private static DbDurability durability(Set<String> groupCommitTypes, Class<?> type) {
+        return groupCommitTypes.contains(type.getSimpleName()) ? DbDurability.GROUP_COMMIT : DbDurability.ASYNC;
     }
 
     public boolean add(ArrivalDeparture ad) {
@@ -148,6 +174,65 @@ public class DataDbLogger {
         return genericQueue.add(o);
     }
 
+    /**
+     * Adds the arrival/departure and returns a future that is completed once it is committed when
+     * ArrivalDeparture is group committed, see {@link DbQueue#addDurably}.
+     */
+    public CompletableFuture<Void> addDurably(ArrivalDeparture ad) {
+        return arrivalDepartureQueue.addDurably(ad);
+    }
+
+    public CompletableFuture<Void> addDurably(AvlReport ar) {
+        return avlReportQueue.addDurably(ar);
+    }
+
+    public CompletableFuture<Void> addDurably(VehicleConfig vc) {
+        return vehicleConfigQueue.addDurably(vc);
+    }
+
+    public CompletableFuture<Void> addDurably(Prediction p) {
+        return predictionQueue.addDurably(p);
+    }
+
+    public CompletableFuture<Void> addDurably(Match m) {
+        return matchQueue.addDurably(m);
+    }
+
+    public CompletableFuture<Void> addDurably(PredictionAccuracy pa) {
+        return predictionAccuracyQueue.addDurably(pa);
+    }
+
+    public CompletableFuture<Void> addDurably(MonitoringEvent me) {
+        return monitoringEventQueue.addDurably(me);
+    }
+
+    public CompletableFuture<Void> addDurably(VehicleEvent ve) {
+        return vehicleEventQueue.addDurably(ve);
+    }
+
+    public CompletableFuture<Void> addDurably(VehicleState vs) {
+        return vehicleStateQueue.addDurably(vs);
+    }
+
+    public CompletableFuture<Void> addDurably(Object o) {
+        return genericQueue.addDurably(o);
+    }
+
+    /** The queues, for monitoring how much memory they use */
+    public List<DbQueue<?>> getQueues() {
+        return List.of(
+                arrivalDepartureQueue,
+                avlReportQueue,
+                vehicleConfigQueue,
+                predictionQueue,
+                matchQueue,
+                predictionAccuracyQueue,
+                monitoringEventQueue,
+                vehicleEventQueue,
+                vehicleStateQueue,
+                genericQueue);
+    }
+
     // the predictionQueue is the largest queue, so report on it for now
     public double queueLevel() {
         // TODO split this out into separate queues
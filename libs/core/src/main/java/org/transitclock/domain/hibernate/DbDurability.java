@@ -0,0 +1,21 @@
+/* (C)2023 */
+package org.transitclock.domain.hibernate;
+
+/**
+ * How a {@link DbQueue} lets the producers of its objects know that they are stored, set per type of
+ * object with transitclock.core.dbDurability.groupCommitTypes.
+ */
+public enum DbDurability {
+    /**
+     * Fire and forget. An object counts as stored once it is in the queue, so objects still waiting
+     * in the queue are lost if the process dies.
+     */
+    ASYNC,
+    /**
+     * The future returned by {@link DbQueue#addDurably} is completed once the batch with the object
+     * has been committed. A writer waits up to groupCommitWindowMsec for more objects before
+     * committing a batch that isn't full, so the objects of producers adding at about the same time
+     * share one commit instead of each paying for its own.
+     */
+    GROUP_COMMIT
+}
@@ -4,6 +4,7 @@ package org.transitclock.domain.hibernate;
 import lombok.extern.slf4j.Slf4j;
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
+import org.hibernate.StatelessSession;
 import org.hibernate.Transaction;
 import org.hibernate.exception.ConstraintViolationException;
 import org.hibernate.exception.GenericJDBCException;
@@ -17,15 +18,45 @@ import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Encapsulate the queuing operations of the database. Make generic so db-side batching is more
  * effective.
+ *
+ * <p>The queue is written by between zero and maxWriters writers, each draining batches with its
+ * own session until the queue is empty. Every TIME_BETWEEN_RETRIES msec the number of writers is
+ * adjusted. A writer is added while more than a batch per writer is waiting and the average commit
+ * is faster than targetCommitMsec, so more writers are only added while the database keeps up.
+ * Writers are removed when the backlog is down to a batch or when commits take more than twice
+ * targetCommitMsec, since then the database is the bottleneck and more concurrent commits would
+ * only slow each other down. A queue whose objects must be written in order, because later objects
+ * update earlier ones, has a maxWriters of 1.
+ *
+ * <p>Objects of a type marked {@link AppendOnly} are inserted with a StatelessSession instead of
+ * being merged, since they are never updated. Other objects are merged so that a later object can
+ * update the row of an earlier one.
+ *
+ * <p>With {@link DbDurability#GROUP_COMMIT} a producer can use addDurably() to get a future that is
+ * completed once its object is committed, or completed exceptionally if the object was dropped.
+ * Adding an object then starts a writer right away instead of at the next adjustment, and a writer
+ * that drained less than a full batch waits up to groupCommitWindowMsec for more objects before
+ * committing, so that concurrent producers share commits.
  */
 @Slf4j
 public class DbQueue<T> {
@@ -34,11 +65,42 @@ public class DbQueue<T> {
 
     private static final int QUEUE_CAPACITY = 500000;
 
+    // SQLState of a unique constraint violation for Postgres, HSQLDB and H2. MySQL doesn't have its
+    // own SQLState for it, only an error code.
+    private static final String UNIQUE_VIOLATION_SQL_STATE = "23505";
+    private static final int MYSQL_DUPLICATE_ENTRY_ERROR_CODE = 1062;
+
+    // An object waiting in the queue, and for a group committed object the future to complete
+    // once it is committed
+    private record Pending<T>(T object, CompletableFuture<Void> committed) {}
+
     // The queue that objects to be stored are placed in
-    private final BlockingQueue<T> queue = new LinkedBlockingQueue<>(500000);
+    private final BlockingQueue<Pending<T>> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
 
     private final int batchSize;
 
+    // Writes a batch of objects to the db and returns the ones that couldn't be written. Replaced
+    // by tests.
+    private final Function<List<T>, List<T>> batchWriter;
+
+    private final DbDurability durability;
+    private final long groupCommitWindowMsec;
+
+    // True if the objects are inserted instead of merged, see AppendOnly
+    private final boolean appendOnly;
+
+    // For running the writers. Shared by the queues so it bounds the number of db connections used.
+    private final Executor writerExecutor;
+    private final int maxWriters;
+    private final long targetCommitMsec;
+    private final AtomicInteger activeWriters = new AtomicInteger();
+    private volatile int targetWriters = 1;
+    // Exponentially weighted average of how long writing a batch takes
+    private volatile double averageCommitMsec = 0.0;
+    // Writers are only added once each current writer has committed since the last change, so that
+    // the effect of the last change is known
+    private final AtomicInteger commitsSinceScaling = new AtomicInteger();
+
     // When running in playback mode where getting AVLReports from database
     // instead of from an AVL feed, then debugging and don't want to store
     // derived data into the database because that would interfere with the
@@ -57,31 +119,103 @@ public class DbQueue<T> {
 
     // For keeping track of index into levels, which level of capacity of
     // queue being used. When level changes then an e-mail is sent out warning
-    // the operators.
-    private double indexOfLevelWhenMessageLogged = 0;
+    // the operators. Atomic since producers and writers change it concurrently.
+    private final AtomicInteger indexOfLevelWhenMessageLogged = new AtomicInteger();
 
     // For keeping track of maximum capacity of queue that was used.
-    // Used for logging when queue use is going down.
-    private double maxQueueLevel = 0.0;
+    // Used for logging when queue use is going down. Holds the bits of a double.
+    private final AtomicLong maxQueueLevel = new AtomicLong(Double.doubleToLongBits(0.0));
 
     // So can access projectId for logging messages
     private final String projectId;
 
     // collect some statistics on how the db is performing
-    private long throughputCount = 0;
+    private final LongAdder throughputCount = new LongAdder();
+    // Append only objects that were skipped because they were already in the db
+    private final LongAdder duplicateCount = new LongAdder();
     private long throughputTimestamp = System.currentTimeMillis();
     private final Class<?> shortType;
 
-    public DbQueue(ScheduledExecutorService executor, String projectId, boolean shouldStoreToDb, boolean shouldPauseToReduceQueue, Class<?> shortType, int batchSize) {
+    /**
+     * @param executor for adjusting the number of writers and logging throughput
+     * @param writerExecutor runs the writers
+     * @param projectId for logging
+     * @param shouldStoreToDb false if nothing should be written, such as in playback mode
+     * @param shouldPauseToReduceQueue pause threads calling add() when the queue is filling up
+     * @param shortType the type of objects in the queue
+     * @param batchSize maximum number of objects written in a transaction
+     * @param maxWriters maximum number of concurrent writers. 1 if the objects need to be written
+     *     in the order they were added.
+     * @param targetCommitMsec writers are only added while batches are committed faster than this
+     * @param durability whether producers are told when their objects are committed
+     * @param groupCommitWindowMsec with GROUP_COMMIT, how long a writer waits for more objects
+     *     before committing a batch that isn't full
+     */
+    public DbQueue(ScheduledExecutorService executor,
+                   Executor writerExecutor,
+                   String projectId,
+                   boolean shouldStoreToDb,
+                   boolean shouldPauseToReduceQueue,
+                   Class<?> shortType,
+                   int batchSize,
+                   int maxWriters,
+                   long targetCommitMsec,
+                   DbDurability durability,
+                   long groupCommitWindowMsec) {
+        this(executor, writerExecutor, projectId, shouldStoreToDb, shouldPauseToReduceQueue, shortType, batchSize,
+                maxWriters, targetCommitMsec, durability, groupCommitWindowMsec, null);
+    }
+
+    // For tests, with a batchWriter that doesn't need a db and always succeeds
+    DbQueue(ScheduledExecutorService executor,
+            Executor writerExecutor,
+            String projectId,
+            boolean shouldStoreToDb,
+            boolean shouldPauseToReduceQueue,
+            Class<?> shortType,
+            int batchSize,
+            int maxWriters,
+            long targetCommitMsec,
+            Consumer<List<T>> batchWriter) {
+        this(executor, writerExecutor, projectId, shouldStoreToDb, shouldPauseToReduceQueue, shortType, batchSize,
+                maxWriters, targetCommitMsec, DbDurability.ASYNC, 0, batch -> {
+                    batchWriter.accept(batch);
+                    return List.of();
+                });
+    }
+
+    // For tests, with a batchWriter that doesn't need a db
+    DbQueue(ScheduledExecutorService executor,
+            Executor writerExecutor,
+            String projectId,
+            boolean shouldStoreToDb,
+            boolean shouldPauseToReduceQueue,
+            Class<?> shortType,
+            int batchSize,
+            int maxWriters,
+            long targetCommitMsec,
+            DbDurability durability,
+            long groupCommitWindowMsec,
+            Function<List<T>, List<T>> batchWriter) {
         this.projectId = projectId;
         this.shouldStoreToDb = shouldStoreToDb;
         this.batchSize = batchSize;
         this.shouldPauseToReduceQueue = shouldPauseToReduceQueue;
         this.shortType = shortType;
+        this.writerExecutor = writerExecutor;
+        this.maxWriters = Math.max(1, maxWriters);
+        this.targetCommitMsec = targetCommitMsec;
+        this.appendOnly = shortType.isAnnotationPresent(AppendOnly.class);
+        this.durability = durability;
+        this.groupCommitWindowMsec = groupCommitWindowMsec;
+        if (batchWriter != null) {
+            this.batchWriter = batchWriter;
+        } else {
+            this.batchWriter = appendOnly ? this::insertBatchOfData : this::processBatchOfData;
+        }
 
-        // Start up separate thread that reads from the queue and
-        // actually stores the data
-        executor.scheduleAtFixedRate(this::processBatchOfData, 0, TIME_BETWEEN_RETRIES, TimeUnit.MILLISECONDS);
+        // Periodically start writers for what has been added to the queue
+        executor.scheduleAtFixedRate(this::adjustWriters, 0, TIME_BETWEEN_RETRIES, TimeUnit.MILLISECONDS);
         executor.scheduleAtFixedRate(this::logThroughputInfo, 1, 1, TimeUnit.MINUTES);
     }
 
@@ -91,14 +225,46 @@ public class DbQueue<T> {
         // derived data already stored when was running in real time.
         if (!shouldStoreToDb) return true;
 
+        return enqueue(new Pending<>(t, null));
+    }
+
+    /**
+     * Adds the object and returns a future that is completed once the object is committed, or
+     * completed exceptionally if the queue is full or the object couldn't be written. With
+     * DbDurability.ASYNC the object isn't tracked, so the future is completed once it is queued.
+     */
+    public CompletableFuture<Void> addDurably(T t) {
+        if (!shouldStoreToDb) return CompletableFuture.completedFuture(null);
+
+        if (durability == DbDurability.ASYNC) {
+            return add(t) ? CompletableFuture.completedFuture(null) : CompletableFuture.failedFuture(queueFull());
+        }
+
+        CompletableFuture<Void> committed = new CompletableFuture<>();
+        if (!enqueue(new Pending<>(t, committed))) {
+            committed.completeExceptionally(queueFull());
+        }
+        return committed;
+    }
+
+    private IllegalStateException queueFull() {
+        return new IllegalStateException("DataDbLogger queue for " + shortType.getSimpleName() + " is full");
+    }
+
+    private boolean enqueue(Pending<T> pending) {
         // Add the object to the queue
-        boolean success = queue.offer(t);
+        boolean success = queue.offer(pending);
+
+        // Group committed objects are written right away instead of at the next adjustment
+        if (success && durability == DbDurability.GROUP_COMMIT && activeWriters.get() == 0) {
+            startWriters(targetWriters);
+        }
 
         double level = queueLevel();
         int levelIndex = indexOfLevel(level);
         // If reached a new level then output message e-mail to warn users
-        if (levelIndex > indexOfLevelWhenMessageLogged) {
-            indexOfLevelWhenMessageLogged = levelIndex;
+        int loggedLevelIndex = indexOfLevelWhenMessageLogged.get();
+        if (levelIndex > loggedLevelIndex && indexOfLevelWhenMessageLogged.compareAndSet(loggedLevelIndex, levelIndex)) {
             String message = success
                     ? "DataDbLogger queue filling up "
                             + " for projectId="
@@ -116,12 +282,15 @@ public class DbQueue<T> {
 
         // If losing data then log such
         if (!success) {
-            logger.error("DataDbLogger queue is now completely full for projectId={}and type {}. LOSING DATA!!! Failed to store object=[{}]", projectId, shortType, t);
+            logger.error("DataDbLogger queue is now completely full for projectId={}and type {}. LOSING DATA!!! Failed to store object=[{}]", projectId, shortType, pending.object());
         }
 
         // Keep track of max queue level so can log it when queue level
         // is decreasing again.
-        if (level > maxQueueLevel) maxQueueLevel = level;
+        if (level > Double.longBitsToDouble(maxQueueLevel.get())) {
+            maxQueueLevel.accumulateAndGet(Double.doubleToLongBits(level),
+                    (max, bits) -> Double.longBitsToDouble(bits) > Double.longBitsToDouble(max) ? bits : max);
+        }
 
         // If shouldPauseToReduceQueue (because in batch mode or such) and
         // if queue is starting to get more full then pause the calling
@@ -137,15 +306,18 @@ public class DbQueue<T> {
         return success;
     }
 
-    private List<T> drain() {
+    private List<Pending<T>> drain() {
         // Get the next object from the head of the queue
-        final List<T> buff = new ArrayList<>(batchSize);
-        final int count  = queue.drainTo(buff, batchSize);
+        final List<Pending<T>> buff = new ArrayList<>(batchSize);
+        int count  = queue.drainTo(buff, batchSize);
         if (count == 0) {
             return new ArrayList<>();
         }
+        if (durability == DbDurability.GROUP_COMMIT && count < batchSize) {
+            count += awaitMore(buff);
+        }
 
-        throughputCount += count;
+        throughputCount.add(count);
         logger.debug("drained {} elements", count);
         // Log if went below a capacity level
         // See if queue dropped to 10% less than the previously logged level.
@@ -153,18 +325,228 @@ public class DbQueue<T> {
         // oscillating around a level.
         double level = queueLevel();
         int levelIndexIncludingMargin = indexOfLevel(level + 0.10);
-        if (levelIndexIncludingMargin < indexOfLevelWhenMessageLogged) {
-            logger.error("DataDbLogger queue emptying out somewhat  for projectId={} and type {}. It is now at {}% capacity with {} elements already in the queue. The maximum capacity was {}%.", projectId, shortType, String.format("%.1f", level * 100), queue.size(), String.format("%.1f", maxQueueLevel * 100));
-            indexOfLevelWhenMessageLogged = levelIndexIncludingMargin;
-
+        int loggedLevelIndex = indexOfLevelWhenMessageLogged.get();
+        if (levelIndexIncludingMargin < loggedLevelIndex
+                && indexOfLevelWhenMessageLogged.compareAndSet(loggedLevelIndex, levelIndexIncludingMargin)) {
             // Reset the maxQueueLevel so can determine what next peak is
-            maxQueueLevel = level;
+            double maxLevel = Double.longBitsToDouble(maxQueueLevel.getAndSet(Double.doubleToLongBits(level)));
+            logger.error("DataDbLogger queue emptying out somewhat  for projectId={} and type {}. It is now at {}% capacity with {} elements already in the queue. The maximum capacity was {}%.", projectId, shortType, String.format("%.1f", level * 100), queue.size(), String.format("%.1f", maxLevel * 100));
         }
 
         // Return the result
         return buff;
     }
 
+    /**
+     * Waits up to groupCommitWindowMsec for more objects to fill up the batch, so that the objects
+     * of producers adding at about the same time are committed together.
+     *
+     * @return number of objects added to the batch
+     */
+    private int awaitMore(List<Pending<T>> buff) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(groupCommitWindowMsec);
+        int added = 0;
+        try {
+            while (buff.size() < batchSize) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) break;
+                Pending<T> pending = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (pending == null) break;
+                buff.add(pending);
+                added += 1 + queue.drainTo(buff, batchSize - buff.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return added;
+    }
+
+    /**
+     * Changes the number of writers depending on the backlog and how long commits take, and starts
+     * writers if there are fewer than wanted.
+     */
+    void adjustWriters() {
+        int backlog = queue.size();
+        int target = targetWriters;
+        double commitMsec = averageCommitMsec;
+        if (target > 1 && (backlog <= batchSize || commitMsec > 2 * targetCommitMsec)) {
+            --target;
+            commitsSinceScaling.set(0);
+        } else if (target < maxWriters
+                && backlog > (long) batchSize * target
+                && commitMsec <= targetCommitMsec
+                && commitsSinceScaling.get() >= target) {
+            ++target;
+            commitsSinceScaling.set(0);
+        }
+        if (target != targetWriters) {
+            logger.debug("Changing number of writers for {} from {} to {}. backlog={} averageCommitMsec={}",
+                    shortType.getSimpleName(), targetWriters, target, backlog, String.format("%.1f", commitMsec));
+            targetWriters = target;
+        }
+        if (backlog == 0) return;
+
+        startWriters(target);
+    }
+
+    /** Starts writers until there are target of them */
+    private void startWriters(int target) {
+        for (int active = activeWriters.get(); active < target; active = activeWriters.get()) {
+            if (activeWriters.compareAndSet(active, active + 1)) {
+                try {
+                    writerExecutor.execute(this::runWriter);
+                } catch (RejectedExecutionException e) {
+                    activeWriters.decrementAndGet();
+                    logger.error("Could not start writer for {}", shortType.getSimpleName(), e);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes batches until the queue is empty or until there are more writers than wanted.
+     */
+    private void runWriter() {
+        try {
+            while (true) {
+                // Stop if there are too many writers
+                int active = activeWriters.get();
+                if (active > targetWriters && activeWriters.compareAndSet(active, active - 1)) return;
+
+                List<Pending<T>> batch = drain();
+                if (batch.isEmpty()) break;
+
+                List<T> objects = new ArrayList<>(batch.size());
+                for (Pending<T> pending : batch) {
+                    objects.add(pending.object());
+                }
+
+                long start = System.nanoTime();
+                List<T> failed;
+                try {
+                    failed = batchWriter.apply(objects);
+                } catch (RuntimeException e) {
+                    completeCommitted(batch, objects, e);
+                    throw e;
+                }
+                completeCommitted(batch, failed, null);
+                double msec = (System.nanoTime() - start) / 1_000_000.0;
+                double average = averageCommitMsec;
+                averageCommitMsec = average == 0.0 ? msec : 0.8 * average + 0.2 * msec;
+                commitsSinceScaling.incrementAndGet();
+            }
+        } catch (RuntimeException e) {
+            logger.error("Error writing {} objects", shortType.getSimpleName(), e);
+        }
+        activeWriters.decrementAndGet();
+
+        // In case an object was added after the queue was found empty but before this writer was
+        // no longer counted as active
+        if (durability == DbDurability.GROUP_COMMIT && !queue.isEmpty() && activeWriters.get() == 0) {
+            startWriters(targetWriters);
+        }
+    }
+
+    /**
+     * Completes the futures of the group committed objects of the batch, exceptionally for the ones
+     * that failed.
+     */
+    private void completeCommitted(List<Pending<T>> batch, List<T> failed, RuntimeException cause) {
+        if (durability != DbDurability.GROUP_COMMIT) return;
+
+        Set<T> failedObjects = Collections.newSetFromMap(new IdentityHashMap<>());
+        failedObjects.addAll(failed);
+        for (Pending<T> pending : batch) {
+            if (pending.committed() == null) continue;
+            if (failedObjects.contains(pending.object())) {
+                pending.committed().completeExceptionally(cause != null
+                        ? cause
+                        : new IllegalStateException("Could not write " + shortType.getSimpleName() + " to the db"));
+            } else {
+                pending.committed().complete(null);
+            }
+        }
+    }
+
+    /**
+     * Inserts a batch of append only objects using a StatelessSession, so that there is no select
+     * per object as with merge(), no persistence context and no dirty checking. The inserts are sent
+     * using JDBC batching.
+     *
+     * <p>An object that is already in the db, such as when a batch is written again after its
+     * commit timed out, is skipped since the row can't have changed. When a batch has such a
+     * duplicate it is split in half and each half is inserted again, so that the duplicates are
+     * found with a few transactions instead of writing every object individually. For any other
+     * problem the batch is written by processBatchOfData(), which deals with connection problems
+     * and bad objects.
+     *
+     * @return the objects that couldn't be written
+     */
+    List<T> insertBatchOfData(List<T> objectsToBeStored) {
+        try {
+            insertObjects(objectsToBeStored);
+            return List.of();
+        } catch (ConstraintViolationException e) {
+            if (!isDuplicateKey(e)) {
+                logger.warn("{} when inserting {} objects of type {}. Will write them with merge. msg={}",
+                        e.getClass().getSimpleName(), objectsToBeStored.size(), shortType.getSimpleName(),
+                        ExceptionUtils.getRootCause(e).getMessage());
+                return processBatchOfData(objectsToBeStored);
+            } else if (objectsToBeStored.size() == 1) {
+                duplicateCount.increment();
+                logger.debug("Skipping object already in db {}", objectsToBeStored.get(0));
+                return List.of();
+            } else {
+                int half = objectsToBeStored.size() / 2;
+                List<T> failed = new ArrayList<>(insertBatchOfData(objectsToBeStored.subList(0, half)));
+                failed.addAll(insertBatchOfData(objectsToBeStored.subList(half, objectsToBeStored.size())));
+                return failed;
+            }
+        } catch (HibernateException e) {
+            logger.warn("{} when inserting {} objects of type {}. Will write them with merge. msg={}",
+                    e.getClass().getSimpleName(), objectsToBeStored.size(), shortType.getSimpleName(),
+                    ExceptionUtils.getRootCause(e).getMessage());
+            return processBatchOfData(objectsToBeStored);
+        }
+    }
+
+    /**
+     * Inserts the objects in a single transaction, which is rolled back if there is an exception.
+     * Package private so that tests can simulate the db.
+     */
+    void insertObjects(List<T> objectsToBeStored) {
+        StatelessSession session = HibernateUtils.getStatelessSession(DbWorkload.INGEST);
+        Transaction tx = null;
+        try {
+            session.setJdbcBatchSize(batchSize);
+            tx = session.beginTransaction();
+            for (T objectToBeStored : objectsToBeStored) {
+                logger.trace("DataDbLogger batch inserting object={}", objectToBeStored);
+                session.insert(objectToBeStored);
+            }
+
+            logger.debug("Committing {} inserts. {} objects still in queue.", objectsToBeStored.size(), queueSize());
+            IntervalTimer timer = new IntervalTimer();
+            tx.commit();
+            logger.debug("Done committing. Took {} msec", timer.elapsedMsec());
+        } catch (RuntimeException e) {
+            try {
+                if (tx != null && tx.isActive()) tx.rollback();
+            } catch (HibernateException e2) {
+                logger.error("Error rolling back transaction after inserting batch of data via DataDbLogger.", e2);
+            }
+            throw e;
+        } finally {
+            session.close();
+        }
+    }
+
+    static boolean isDuplicateKey(ConstraintViolationException e) {
+        return UNIQUE_VIOLATION_SQL_STATE.equals(e.getSQLState())
+                || e.getErrorCode() == MYSQL_DUPLICATE_ENTRY_ERROR_CODE;
+    }
+
     /**
      * Process a batch of data, as specified by BATCH_SIZE member. The goal is to batch a few db
      * writes together to reduce load on network and on db machines. There this method will try to
@@ -178,27 +560,26 @@ public class DbQueue<T> {
      * doesn't commit the data to the db until the transaction commit is done. Therefore the need
      * here isn't true Hibernate batch processing. Instead, need to use a transaction for each
      * batch.
+     *
+     * @return the objects that couldn't be written
      */
-    public void processBatchOfData() {
+    List<T> processBatchOfData(List<T> objectsToBeStored) {
         // Create an array for holding what is being written to db. If there
         // is an exception with one of the objects, such as a constraint violation,
         // then can try to write the objects one at a time to make sure that the
         // the good ones are written. This way don't lose any good data even if
         // an exception occurs while batching data.
-        List<Object> objectsForThisBatch = new ArrayList<>(batchSize);
+        List<T> objectsForThisBatch = new ArrayList<>(objectsToBeStored);
+        List<T> failed = new ArrayList<>();
 
         Transaction tx = null;
         Session session = null;
 
         try {
-            session = HibernateUtils.getSession();
+            session = HibernateUtils.getSession(DbWorkload.INGEST);
             tx = session.beginTransaction();
 
-            // Get the objects to be stored from the queue
-            List<T> objectsToBeStored = drain();
-
-            objectsForThisBatch.addAll(objectsToBeStored);
-            for (Object objectToBeStored : objectsForThisBatch) {
+            for (T objectToBeStored : objectsForThisBatch) {
                 // Write the data to the session. This doesn't yet
                 // actually write the data to the db though. That is only
                 // done when the session is flushed or committed.
@@ -268,11 +649,11 @@ public class DbQueue<T> {
 
             // Write each object individually so that the valid ones will be
             // successfully written.
-            for (Object o : objectsForThisBatch) {
+            for (T o : objectsForThisBatch) {
                 boolean shouldKeepTrying = false;
                 do {
                     try {
-                        processSingleObject(o);
+                        if (!processSingleObject(o)) failed.add(o);
                         shouldKeepTrying = false;
                     } catch (HibernateException e2) {
                         if (e instanceof ConstraintViolationException && e2 instanceof GenericJDBCException) {
@@ -298,10 +679,12 @@ public class DbQueue<T> {
                         // Output message on what is going on
                         Throwable cause2 = ExceptionUtils.getRootCause(e2);
                         logger.error("{} when individually writing object {}. {}msg={}", e2.getClass().getSimpleName(), o, shouldKeepTrying ? "Will keep trying. " : "", cause2.getMessage(), e2);
+                        if (!shouldKeepTrying) failed.add(o);
                     }
                 } while (shouldKeepTrying);
             }
         }
+        return failed;
     }
 
     /**
@@ -324,6 +707,29 @@ public class DbQueue<T> {
         return queue.size();
     }
 
+    /**
+     * Returns up to max of the items waiting in the queue, for estimating how much memory the queue
+     * uses.
+     */
+    public List<T> sample(int max) {
+        return queue.stream().limit(max).map(Pending::object).toList();
+    }
+
+    public Class<?> getShortType() {
+        return shortType;
+    }
+
+    /**
+     * Returns how many writers are currently writing the queue to the db.
+     */
+    public int getActiveWriters() {
+        return activeWriters.get();
+    }
+
+    public double getAverageCommitMsec() {
+        return averageCommitMsec;
+    }
+
     /**
      * Returns the index into levels that the queue capacity is at. For determining if should send
      * e-mail warning message.
@@ -393,29 +799,33 @@ public class DbQueue<T> {
      * from a batch.
      *
      * @param objectToBeStored
+     * @return true if the object was written
      */
-    private void processSingleObject(Object objectToBeStored) {
-        try (Session session = HibernateUtils.getSession()) {
+    private boolean processSingleObject(Object objectToBeStored) {
+        try (Session session = HibernateUtils.getSession(DbWorkload.INGEST)) {
             Transaction tx = session.beginTransaction();
             logger.debug("Individually saving object {}", objectToBeStored);
             session.merge(objectToBeStored);
             tx.commit();
+            return true;
         } catch (Exception e) {
             logger.error("Something happened while processing {}", objectToBeStored, e);
+            return false;
         }
     }
 
     private void logThroughputInfo() {
         double delta = (System.currentTimeMillis() - throughputTimestamp) / 1000.0;
-        if (throughputCount == 0) {
+        long throughput = throughputCount.sumThenReset();
+        if (throughput == 0) {
             logger.debug("wrote nothing");
             return;
         }
 
-        long throughput = throughputCount;
-        throughputCount = 0;
         throughputTimestamp = System.currentTimeMillis();
         double rate = throughput / delta;
-        logger.info("wrote {} {} messages in {}s, ({}/s) ", throughput, shortType.getSimpleName(), delta / 1000, rate);
+        logger.info("wrote {} {} messages in {}s, ({}/s) with {} writers, average commit {} msec, {} already in db",
+                throughput, shortType.getSimpleName(), delta, rate, targetWriters,
+                String.format("%.1f", averageCommitMsec), duplicateCount.sumThenReset());
     }
 }
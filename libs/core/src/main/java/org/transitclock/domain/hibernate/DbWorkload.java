@@ -0,0 +1,17 @@
+/* (C)2023 */
+package org.transitclock.domain.hibernate;
+
+/**
+ * The kinds of db work that each get their own connection pool when transitclock.core.dbPools is
+ * enabled, so that one kind of work using up its connections doesn't hold up the others.
+ */
+public enum DbWorkload {
+    /** Writing the generated data, such as by the DbQueue writers */
+    INGEST,
+    /** Warming up the caches and scheduled jobs such as partitioning and archiving */
+    BATCH,
+    /** Interactive reads by the API */
+    API,
+    /** Reports that can read a lot of history */
+    REPORTS
+}
@@ -0,0 +1,47 @@
+/* (C)2023 */
+package org.transitclock.domain.hibernate;
+
+import java.util.List;
+
+/**
+ * Names of the Hibernate second level cache regions of the GTFS configuration entities. The rows
+ * of these entities don't change within a config revision and their ids include the config
+ * revision, so the entries of different revisions never mix. The regions are still evicted as a
+ * whole when a different revision is read, see {@link HibernateUtils#startConfigRev(int)}, so that
+ * the entries of the old revision don't take up the heap. Each region has a single entity type or
+ * collection, so the cache keys are just the ids and are shared by the sessions of all workloads.
+ *
+ * <p>The regions are configured in ehcache-hibernate.xml.
+ */
+public final class GtfsCacheRegions {
+    public static final String PREFIX = "gtfs.";
+
+    public static final String STOPS = PREFIX + "stops";
+    public static final String ROUTES = PREFIX + "routes";
+    public static final String STOP_PATHS = PREFIX + "stopPaths";
+    public static final String STOP_PATH_LOCATIONS = PREFIX + "stopPaths.locations";
+    public static final String TRIP_PATTERNS = PREFIX + "tripPatterns";
+    public static final String TRIP_PATTERN_STOP_PATHS = PREFIX + "tripPatterns.stopPaths";
+    public static final String TRIPS = PREFIX + "trips";
+    public static final String TRIP_SCHEDULED_TIMES = PREFIX + "trips.scheduledTimes";
+    public static final String BLOCKS = PREFIX + "blocks";
+    public static final String BLOCK_TRIPS = PREFIX + "blocks.trips";
+
+    /** For the results of the queries that read the GTFS entities of a config revision */
+    public static final String QUERIES = PREFIX + "queries";
+
+    public static final List<String> ALL = List.of(
+            STOPS,
+            ROUTES,
+            STOP_PATHS,
+            STOP_PATH_LOCATIONS,
+            TRIP_PATTERNS,
+            TRIP_PATTERN_STOP_PATHS,
+            TRIPS,
+            TRIP_SCHEDULED_TIMES,
+            BLOCKS,
+            BLOCK_TRIPS,
+            QUERIES);
+
+    private GtfsCacheRegions() {}
+}
@@ -1,6 +1,9 @@
 /* (C)2023 */
 package org.transitclock.domain.hibernate;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
@@ -40,16 +43,24 @@ import org.transitclock.domain.structs.VehicleEvent;
 import org.transitclock.domain.structs.VehicleState;
 import org.transitclock.domain.structs.VehicleToBlockConfig;
 import org.transitclock.domain.webstructs.WebAgency;
+import org.transitclock.properties.CoreProperties;
 
 import com.querydsl.jpa.impl.JPAQuery;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.experimental.Delegate;
 import lombok.extern.slf4j.Slf4j;
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
 import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cache.internal.SimpleCacheKeysFactory;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.jcache.internal.JCacheRegionFactory;
 import org.hibernate.cfg.AvailableSettings;
 import org.hibernate.cfg.Configuration;
+import org.hibernate.context.spi.CurrentTenantIdentifierResolver;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
 import org.hibernate.procedure.ProcedureCall;
 import org.hibernate.query.NativeQuery;
 import org.hibernate.service.ServiceRegistry;
@@ -106,6 +117,84 @@ public class HibernateUtils {
         dataSourceProperties = props;
     }
 
+    // Set when the connections come from a separate pool per workload
+    private static CoreProperties.DbPools dbPoolsProperties;
+    private static MeterRegistry meterRegistry;
+    private static WorkloadConnectionProvider workloadConnectionProvider;
+    // The workload of the sessions a thread opens without asking for a specific one
+    private static final ThreadLocal<DbWorkload> threadWorkload = ThreadLocal.withInitial(() -> DbWorkload.API);
+
+    /**
+     * Has the sessions get their connections from a separate pool per {@link DbWorkload} if that
+     * is enabled by transitclock.core.dbPools.enabled. Needs to be called before the first session
+     * is opened.
+     *
+     * @param props the pool configuration
+     * @param registry for the metrics of the pools, can be null
+     */
+    public static void registerDbPools(CoreProperties.DbPools props, MeterRegistry registry) {
+        if (!props.isEnabled()) return;
+
+        dbPoolsProperties = props;
+        meterRegistry = registry;
+    }
+
+    /**
+     * Sets the workload of the sessions that the current thread opens with getSession() and
+     * getStatelessSession(), so that code that doesn't know what it is used for, such as the lazy
+     * loading of blocks and trips, gets the connections of the right pool. Threads start with
+     * {@link DbWorkload#API}.
+     *
+     * @param workload the workload of the thread
+     * @return the previous workload of the thread, for restoring it
+     */
+    public static DbWorkload setThreadWorkload(DbWorkload workload) {
+        DbWorkload previous = threadWorkload.get();
+        threadWorkload.set(workload);
+        return previous;
+    }
+
+    public static DbWorkload getThreadWorkload() {
+        return threadWorkload.get();
+    }
+
+    // Whether the GTFS configuration entities are kept in the second level cache
+    private static boolean secondLevelCacheEnabled;
+    // The config revision the second level cache has entries of
+    private static int cachedConfigRev = -1;
+
+    /**
+     * Has the GTFS configuration entities, see {@link GtfsCacheRegions}, be kept in the second
+     * level cache if enabled by transitclock.core.cache.secondLevelCacheEnabled. Needs to be
+     * called before the first session is opened.
+     */
+    public static void registerSecondLevelCache(boolean enabled) {
+        secondLevelCacheEnabled = enabled;
+    }
+
+    /**
+     * Evicts the GTFS entities from the second level cache if the config revision differs from the
+     * one that was read before, so that the cache only has the entities of the current revision.
+     *
+     * @param configRev the config revision that is being read
+     */
+    public static void startConfigRev(int configRev) {
+        startConfigRev(configRev, sessionFactoryCache.values());
+    }
+
+    static synchronized void startConfigRev(int configRev, Collection<SessionFactory> sessionFactories) {
+        if (cachedConfigRev != -1 && cachedConfigRev != configRev) {
+            logger.info("Config revision changed from {} to {} so evicting the GTFS entities from the second level cache",
+                    cachedConfigRev, configRev);
+            sessionFactories.forEach(sessionFactory -> {
+                if (sessionFactory.isOpen()) {
+                    GtfsCacheRegions.ALL.forEach(region -> sessionFactory.getCache().evictRegion(region));
+                }
+            });
+        }
+        cachedConfigRev = configRev;
+    }
+
     private static SessionFactory createSessionFactory() throws HibernateException {
         Configuration config = new Configuration();
 
@@ -138,9 +227,34 @@ public class HibernateUtils {
                 dbUrl,
                 dbUserName);
 
+        // The GTFS entities don't change within a config revision so they can be cached. The
+        // regions are configured in ehcache-hibernate.xml.
+        config.setProperty(AvailableSettings.USE_SECOND_LEVEL_CACHE, Boolean.toString(secondLevelCacheEnabled));
+        config.setProperty(AvailableSettings.USE_QUERY_CACHE, Boolean.toString(secondLevelCacheEnabled));
+        if (secondLevelCacheEnabled) {
+            config.setProperty(ConfigSettings.PROVIDER, "org.ehcache.jsr107.EhcacheCachingProvider");
+            config.setProperty(ConfigSettings.CONFIG_URI, "ehcache-hibernate.xml");
+            config.setProperty(ConfigSettings.MISSING_CACHE_STRATEGY, "create");
+        }
+
         // Get the session factory for persistence
         Properties properties = config.getProperties();
-        ServiceRegistry serviceRegistry = new StandardServiceRegistryBuilder().applySettings(properties).build();
+        StandardServiceRegistryBuilder registryBuilder = new StandardServiceRegistryBuilder().applySettings(properties);
+        if (dbPoolsProperties != null) {
+            // Each workload is a tenant so that it gets the connections of its own pool. Sessions
+            // that are not opened for a specific workload use the API pool.
+            workloadConnectionProvider = new WorkloadConnectionProvider(dataSourceProperties, dbPoolsProperties, meterRegistry);
+            registryBuilder.applySetting(AvailableSettings.MULTI_TENANT_CONNECTION_PROVIDER, workloadConnectionProvider);
+            registryBuilder.applySetting(AvailableSettings.MULTI_TENANT_IDENTIFIER_RESOLVER, new WorkloadIdentifierResolver());
+        }
+        if (secondLevelCacheEnabled) {
+            // The default keys include the tenant, which would make each workload cache its own
+            // copy of the entities. Each region only has one entity type or collection so the id
+            // alone is a unique key.
+            registryBuilder.applySetting(AvailableSettings.CACHE_REGION_FACTORY,
+                    new JCacheRegionFactory(SimpleCacheKeysFactory.INSTANCE));
+        }
+        ServiceRegistry serviceRegistry = registryBuilder.build();
 
         // Return the factory
         return config.buildSessionFactory(serviceRegistry);
@@ -194,6 +308,10 @@ public class HibernateUtils {
             }
         });
         sessionFactoryCache.clear();
+        if (workloadConnectionProvider != null) {
+            workloadConnectionProvider.close();
+            workloadConnectionProvider = null;
+        }
     }
 
     /**
@@ -214,6 +332,23 @@ public class HibernateUtils {
     }
 
 
+    /**
+     * Returns a new session that gets its connection from the pool of the workload, if there is a
+     * pool per workload. Unlike getSession() it is not shared by the thread.
+     *
+     * <p>NOTE: Make sure you close the session when done.
+     *
+     * @param workload the kind of work the session is used for
+     * @return The Session
+     */
+    public static Session getSession(DbWorkload workload) {
+        SessionFactory sessionFactory = getSessionFactory("psql");
+        if (workloadConnectionProvider == null) {
+            return sessionFactory.openSession();
+        }
+        return sessionFactory.withOptions().tenantIdentifier(workload.name()).openSession();
+    }
+
     public static <T> JPAQuery<T> getJPAQuery() {
         return new JPAQuery<>(getSession());
     }
@@ -239,9 +374,15 @@ public class HibernateUtils {
                     return sessionThreadLocal;
                 }
 
-                Session session = s.get();
+                ContextAwareSession session = (ContextAwareSession) s.get();
                 if (!session.isOpen()) {
                     s.set(ContextAwareSession.create(getSessionFactory(dbName)));
+                } else if (workloadConnectionProvider != null && session.getWorkload() != threadWorkload.get()) {
+                    // The thread now does another kind of work so it needs a session of that pool.
+                    // Blocks and trips that were loaded with the old session switch to the new one
+                    // when they lazy load.
+                    session.session.close();
+                    s.set(ContextAwareSession.create(getSessionFactory(dbName)));
                 }
 
                 return s;
@@ -249,24 +390,93 @@ public class HibernateUtils {
             .get();
     }
 
+    /**
+     * Returns a new StatelessSession for the database, for inserting rows without a persistence
+     * context. Unlike getSession() it is not shared by the thread.
+     *
+     * <p>NOTE: Make sure you close the session when done.
+     *
+     * @return The StatelessSession
+     */
+    public static StatelessSession getStatelessSession() {
+        return getStatelessSession(threadWorkload.get());
+    }
+
+    /**
+     * Returns a new StatelessSession that gets its connection from the pool of the workload, if
+     * there is a pool per workload.
+     *
+     * <p>NOTE: Make sure you close the session when done.
+     *
+     * @param workload the kind of work the session is used for
+     * @return The StatelessSession
+     */
+    public static StatelessSession getStatelessSession(DbWorkload workload) {
+        SessionFactory sessionFactory = getSessionFactory("psql");
+        if (workloadConnectionProvider == null) {
+            return sessionFactory.openStatelessSession();
+        }
+        return sessionFactory.withStatelessOptions().tenantIdentifier(workload.name()).openStatelessSession();
+    }
+
+    /**
+     * Returns a plain JDBC connection from the pool of the workload, if there is a pool per
+     * workload, otherwise from the pool of Hibernate.
+     *
+     * <p>NOTE: Make sure you close the connection when done.
+     *
+     * @param workload the kind of work the connection is used for
+     * @return The Connection
+     */
+    public static Connection getConnection(DbWorkload workload) throws SQLException {
+        SessionFactory sessionFactory = getSessionFactory("psql");
+        if (workloadConnectionProvider != null) {
+            return workloadConnectionProvider.getConnection(workload);
+        }
+        return sessionFactory
+                .getSessionFactoryOptions()
+                .getServiceRegistry()
+                .getService(ConnectionProvider.class)
+                .getConnection();
+    }
+
+    /** Sessions that are not opened for a specific workload are for the workload of the thread */
+    private static class WorkloadIdentifierResolver implements CurrentTenantIdentifierResolver<String> {
+        @Override
+        public String resolveCurrentTenantIdentifier() {
+            return threadWorkload.get().name();
+        }
+
+        @Override
+        public boolean validateExistingCurrentSessions() {
+            return false;
+        }
+    }
+
     private static class ContextAwareSession implements Session {
         @Delegate
         private final Session session;
         private final Thread thread;
+        private final DbWorkload workload;
 
         public static ContextAwareSession create(SessionFactory sessionFactory) {
-            return new ContextAwareSession(sessionFactory.openSession(), Thread.currentThread());
+            return new ContextAwareSession(sessionFactory.openSession(), Thread.currentThread(), threadWorkload.get());
         }
 
-        public ContextAwareSession(Session session, Thread thread) {
+        public ContextAwareSession(Session session, Thread thread, DbWorkload workload) {
             this.session = session;
             this.thread = thread;
+            this.workload = workload;
         }
 
         public Thread getContext() {
             return thread;
         }
 
+        public DbWorkload getWorkload() {
+            return workload;
+        }
+
         @Override
         public void close() throws HibernateException {
             session.close();
@@ -0,0 +1,379 @@
+/* (C)2023 */
+package org.transitclock.domain.hibernate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.transitclock.properties.CoreProperties;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Range partitions the history tables on their time column. Queries with a time range then only
+ * read the partitions for that range, which PostgreSQL works out by itself, and old data is
+ * removed by dropping whole partitions instead of deleting rows. Only supported for PostgreSQL.
+ *
+ * <p>A table that isn't partitioned yet is only converted if convertExistingTables is set, since
+ * converting locks the table. Otherwise an error is logged and the table is left alone. The table is
+ * renamed to {@code <table>_legacy} and becomes the partition for everything before the start of the next
+ * day or month, so no rows are copied. Attaching it scans the table, and the table is locked until
+ * the conversion is committed. Each table also gets a default partition for rows that are newer
+ * than the partitions created so far, such as from a vehicle with a bad clock. When a partition is
+ * created its rows are moved out of the default partition.
+ *
+ * <p>Every maintenanceIntervalMins partitions are created for the next createAheadDays, and
+ * partitions whose rows are all older than the retention of their table are dropped.
+ */
+@Slf4j
+@Component
+public class PartitionManager {
+    private static final DateTimeFormatter BOUND_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    // For parsing bounds such as FOR VALUES FROM ('2024-05-01 00:00:00') TO ('2024-06-01 00:00:00')
+    private static final Pattern RANGE_BOUND =
+            Pattern.compile("FROM \\((MINVALUE|'[^']*')\\) TO \\((MAXVALUE|'[^']*')\\)");
+
+    enum Interval {
+        DAILY,
+        MONTHLY;
+
+        LocalDateTime start(LocalDateTime time) {
+            return this == DAILY
+                    ? time.toLocalDate().atStartOfDay()
+                    : time.toLocalDate().withDayOfMonth(1).atStartOfDay();
+        }
+
+        /** End of the partition that starts at the time */
+        LocalDateTime end(LocalDateTime from) {
+            return this == DAILY ? start(from).plusDays(1) : start(from).plusMonths(1);
+        }
+    }
+
+    /**
+     * The partitioned tables. The primary key and indexes are those of the initial migration, with
+     * the time column added to the primary key where it wasn't part of it since the primary key of
+     * a partitioned table has to contain the partition column.
+     */
+    enum PartitionedTable {
+        ARRIVALS_DEPARTURES("arrivals_departures", "time",
+                "vehicle_id, time, stop_id, gtfs_stop_seq, is_arrival, trip_id",
+                "route_short_name, time", "time"),
+        AVL_REPORTS("avl_reports", "time", "vehicle_id, time", "time"),
+        MATCHES("matches", "avl_time", "vehicle_id, avl_time, config_rev", "avl_time"),
+        PREDICTION_ACCURACY("prediction_accuracy", "arrival_departure_time",
+                "id, arrival_departure_time", "arrival_departure_time"),
+        PREDICTIONS("predictions", "creation_time", "id, creation_time", "creation_time"),
+        VEHICLE_STATES("vehicle_states", "avl_time", "vehicle_id, avl_time", "avl_time");
+
+        private final String table;
+        private final String timeColumn;
+        private final String primaryKey;
+        private final String[] indexes;
+
+        PartitionedTable(String table, String timeColumn, String primaryKey, String... indexes) {
+            this.table = table;
+            this.timeColumn = timeColumn;
+            this.primaryKey = primaryKey;
+            this.indexes = indexes;
+        }
+    }
+
+    /** A partition of a table. from is null for MINVALUE, and both are null for the default one. */
+    record Partition(String name, LocalDateTime from, LocalDateTime to, boolean isDefault) {}
+
+    private final CoreProperties.Partitioning properties;
+
+    // Set if the database doesn't support partitioning so that it is only logged once
+    private volatile boolean unsupported = false;
+
+    public PartitionManager(CoreProperties coreProperties) {
+        this.properties = coreProperties.getPartitioning();
+    }
+
+    @Scheduled(fixedRateString = "${transitclock.core.partitioning.maintenanceIntervalMins:60}",
+            timeUnit = TimeUnit.MINUTES)
+    public void run() {
+        if (!properties.isEnabled() || unsupported) return;
+
+        try (Session session = HibernateUtils.getSession(DbWorkload.BATCH)) {
+            session.doWork(this::maintainTables);
+        } catch (Exception e) {
+            logger.error("Could not maintain partitions.", e);
+        }
+    }
+
+    private void maintainTables(Connection connection) throws SQLException {
+        String product = connection.getMetaData().getDatabaseProductName();
+        if (!"PostgreSQL".equals(product)) {
+            logger.error("Partitioning of the history tables is only supported for PostgreSQL, not {}.", product);
+            unsupported = true;
+            return;
+        }
+
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            // Each table in its own transaction so that a problem with one doesn't affect the others
+            for (PartitionedTable table : PartitionedTable.values()) {
+                try {
+                    maintainTable(connection, table);
+                    connection.commit();
+                } catch (SQLException | RuntimeException e) {
+                    connection.rollback();
+                    logger.error("Could not maintain partitions of {}.", table.table, e);
+                }
+            }
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private void maintainTable(Connection connection, PartitionedTable table) throws SQLException {
+        String relkind = relkind(connection, table.table);
+        if (relkind == null) {
+            logger.warn("Table {} doesn't exist so it can't be partitioned.", table.table);
+            return;
+        }
+
+        Interval interval = interval(table);
+        LocalDateTime now = LocalDateTime.now();
+        if (!"p".equals(relkind)) {
+            if (!properties.isConvertExistingTables()) {
+                logger.error("Table {} isn't partitioned and transitclock.core.partitioning.convertExistingTables "
+                        + "isn't set, so not maintaining partitions for it.", table.table);
+                return;
+            }
+            convert(connection, table, interval, now);
+        }
+
+        List<Partition> partitions = partitions(connection, table.table);
+        for (Partition partition : partitionsToCreate(table, interval, partitions, now)) {
+            createPartition(connection, table, partition);
+        }
+        try (Statement stmt = connection.createStatement()) {
+            for (Partition partition : partitionsToDrop(table, partitions, now)) {
+                stmt.execute("DROP TABLE " + partition.name());
+                logger.info("Dropped partition {} of {} since its data is older than {} days.",
+                        partition.name(), table.table, retentionDays(table));
+            }
+        }
+    }
+
+    /**
+     * Converts the table to a partitioned table, keeping the existing rows in a partition for
+     * everything before the end of the current interval.
+     */
+    private void convert(Connection connection, PartitionedTable table, Interval interval, LocalDateTime now)
+            throws SQLException {
+        String legacy = table.table + "_legacy";
+        LocalDateTime bound = interval.end(now);
+        logger.info("Converting {} to a table partitioned on {}. The existing rows stay in {}. This can take a while.",
+                table.table, table.timeColumn, legacy);
+        long startMillis = System.currentTimeMillis();
+
+        // The primary key is renamed so that the partitioned table can have one with the same name
+        String primaryKey = primaryKeyName(connection, table.table);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("ALTER TABLE " + table.table + " RENAME TO " + legacy);
+            if (primaryKey != null) {
+                stmt.execute("ALTER TABLE " + legacy + " RENAME CONSTRAINT " + primaryKey + " TO pk_" + legacy);
+            }
+            // The partition column has to be part of the primary key, so can't be null
+            stmt.execute("ALTER TABLE " + legacy + " ALTER COLUMN " + table.timeColumn + " SET NOT NULL");
+
+            stmt.execute("CREATE TABLE " + table.table + " (LIKE " + legacy + " INCLUDING DEFAULTS INCLUDING STORAGE)"
+                    + " PARTITION BY RANGE (" + table.timeColumn + ")");
+            stmt.execute("ALTER TABLE " + table.table + " ADD CONSTRAINT pk_" + table.table
+                    + " PRIMARY KEY (" + table.primaryKey + ")");
+            for (String index : table.indexes) {
+                stmt.execute("CREATE INDEX ON " + table.table + " (" + index + ")");
+            }
+            stmt.execute("CREATE TABLE " + table.table + "_default PARTITION OF " + table.table + " DEFAULT");
+
+            // Rows with times in the future don't belong in the legacy partition
+            stmt.execute("WITH moved AS (DELETE FROM " + legacy + " WHERE " + table.timeColumn + " >= " + literal(bound)
+                    + " RETURNING *) INSERT INTO " + table.table + " SELECT * FROM moved");
+            // Matching indexes of the legacy table are used instead of creating new ones
+            stmt.execute("ALTER TABLE " + table.table + " ATTACH PARTITION " + legacy
+                    + " FOR VALUES FROM (MINVALUE) TO (" + literal(bound) + ")");
+        }
+
+        logger.info("Converted {} to a partitioned table in {} msec.",
+                table.table, System.currentTimeMillis() - startMillis);
+    }
+
+    /**
+     * Returns the partitions to create, from the end of the last partition until createAheadDays
+     * from now.
+     */
+    List<Partition> partitionsToCreate(PartitionedTable table,
+                                       Interval interval,
+                                       List<Partition> partitions,
+                                       LocalDateTime now) {
+        LocalDateTime from = null;
+        for (Partition partition : partitions) {
+            if (partition.to() != null && (from == null || partition.to().isAfter(from))) from = partition.to();
+        }
+        if (from == null) from = interval.start(now);
+
+        List<Partition> toCreate = new ArrayList<>();
+        LocalDateTime until = now.plusDays(properties.getCreateAheadDays());
+        while (from.isBefore(until)) {
+            LocalDateTime to = interval.end(from);
+            toCreate.add(new Partition(table.table + "_p" + NAME_FORMAT.format(from), from, to, false));
+            from = to;
+        }
+        return toCreate;
+    }
+
+    /**
+     * Creates a partition, moving any of its rows that are in the default partition into it.
+     * Creating the partition with PARTITION OF would fail if the default partition had such rows.
+     */
+    private void createPartition(Connection connection, PartitionedTable table, Partition toCreate)
+            throws SQLException {
+        String partition = toCreate.name();
+        LocalDateTime from = toCreate.from();
+        LocalDateTime to = toCreate.to();
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE " + partition + " (LIKE " + table.table + " INCLUDING DEFAULTS INCLUDING STORAGE)");
+            int moved = stmt.executeUpdate("WITH moved AS (DELETE FROM " + table.table + "_default WHERE "
+                    + table.timeColumn + " >= " + literal(from) + " AND " + table.timeColumn + " < " + literal(to)
+                    + " RETURNING *) INSERT INTO " + partition + " SELECT * FROM moved");
+            stmt.execute("ALTER TABLE " + table.table + " ATTACH PARTITION " + partition
+                    + " FOR VALUES FROM (" + literal(from) + ") TO (" + literal(to) + ")");
+            logger.info("Created partition {} of {} for {} to {}. Moved {} rows from the default partition.",
+                    partition, table.table, from, to, moved);
+        }
+    }
+
+    /** Returns the partitions whose rows are all older than the retention of the table. */
+    List<Partition> partitionsToDrop(PartitionedTable table, List<Partition> partitions, LocalDateTime now) {
+        List<Partition> toDrop = new ArrayList<>();
+        int retentionDays = retentionDays(table);
+        if (retentionDays <= 0) return toDrop;
+
+        LocalDateTime cutoff = now.toLocalDate().minusDays(retentionDays).atStartOfDay();
+        for (Partition partition : partitions) {
+            if (partition.isDefault() || partition.to() == null || partition.to().isAfter(cutoff)) continue;
+            toDrop.add(partition);
+        }
+        return toDrop;
+    }
+
+    /**
+     * @return the kind of the table, "p" if partitioned and "r" if an ordinary table, or null if
+     *     there is no such table
+     */
+    private static String relkind(Connection connection, String table) throws SQLException {
+        try (PreparedStatement stmt =
+                connection.prepareStatement("SELECT relkind FROM pg_class WHERE oid = to_regclass(?)")) {
+            stmt.setString(1, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    private static String primaryKeyName(Connection connection, String table) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT conname FROM pg_constraint WHERE conrelid = to_regclass(?) AND contype = 'p'")) {
+            stmt.setString(1, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    private static List<Partition> partitions(Connection connection, String table) throws SQLException {
+        List<Partition> partitions = new ArrayList<>();
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) FROM pg_inherits i"
+                        + " JOIN pg_class c ON c.oid = i.inhrelid WHERE i.inhparent = to_regclass(?)")) {
+            stmt.setString(1, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String name = rs.getString(1);
+                    String bound = rs.getString(2);
+                    Partition partition = parsePartition(name, bound);
+                    if (partition != null) {
+                        partitions.add(partition);
+                    } else {
+                        logger.warn("Ignoring partition {} of {} with unexpected bound {}", name, table, bound);
+                    }
+                }
+            }
+        }
+        return partitions;
+    }
+
+    /**
+     * Parses a partition bound as returned by pg_get_expr().
+     *
+     * @return the partition, or null if the bound isn't a range or DEFAULT
+     */
+    static Partition parsePartition(String name, String bound) {
+        Matcher matcher = RANGE_BOUND.matcher(bound);
+        if (matcher.find()) {
+            return new Partition(name, parseBound(matcher.group(1)), parseBound(matcher.group(2)), false);
+        }
+        if ("DEFAULT".equals(bound)) {
+            return new Partition(name, null, null, true);
+        }
+        return null;
+    }
+
+    /** Returns the time of a quoted bound, or null for MINVALUE and MAXVALUE */
+    private static LocalDateTime parseBound(String bound) {
+        if (!bound.startsWith("'")) return null;
+        return Timestamp.valueOf(bound.substring(1, bound.length() - 1)).toLocalDateTime();
+    }
+
+    private static String literal(LocalDateTime time) {
+        return "'" + BOUND_FORMAT.format(time) + "'";
+    }
+
+    Interval interval(PartitionedTable table) {
+        String interval = switch (table) {
+            case ARRIVALS_DEPARTURES -> properties.getArrivalsDeparturesInterval();
+            case AVL_REPORTS -> properties.getAvlReportsInterval();
+            case MATCHES -> properties.getMatchesInterval();
+            case PREDICTION_ACCURACY -> properties.getPredictionAccuracyInterval();
+            case PREDICTIONS -> properties.getPredictionsInterval();
+            case VEHICLE_STATES -> properties.getVehicleStatesInterval();
+        };
+        try {
+            return Interval.valueOf(interval.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(
+                    "Invalid partition interval \"" + interval + "\" for " + table.table + ". Must be daily or monthly.");
+        }
+    }
+
+    private int retentionDays(PartitionedTable table) {
+        return switch (table) {
+            case ARRIVALS_DEPARTURES -> properties.getArrivalsDeparturesRetentionDays();
+            case AVL_REPORTS -> properties.getAvlReportsRetentionDays();
+            case MATCHES -> properties.getMatchesRetentionDays();
+            case PREDICTION_ACCURACY -> properties.getPredictionAccuracyRetentionDays();
+            case PREDICTIONS -> properties.getPredictionsRetentionDays();
+            case VEHICLE_STATES -> properties.getVehicleStatesRetentionDays();
+        };
+    }
+}
@@ -0,0 +1,122 @@
+/* (C)2023 */
+package org.transitclock.domain.hibernate;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.transitclock.properties.CoreProperties;
+import org.transitclock.utils.Time;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.jdbc.connections.spi.MultiTenantConnectionProvider;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+
+/**
+ * Provides the connections of a separate Hikari pool for each {@link DbWorkload}. Hibernate sees
+ * the workloads as tenants so that a session gets its connections from the pool of the workload it
+ * was opened for, while all the sessions still share the one SessionFactory.
+ *
+ * <p>Each pool has its own size and statement timeout, and is named transitclock-&lt;workload&gt; so
+ * that its hikaricp metrics can be told apart.
+ */
+@Slf4j
+public class WorkloadConnectionProvider implements MultiTenantConnectionProvider<String> {
+    private final Map<DbWorkload, HikariDataSource> dataSources = new EnumMap<>(DbWorkload.class);
+
+    public WorkloadConnectionProvider(
+            DataSourceProperties dataSourceProperties, CoreProperties.DbPools properties, MeterRegistry meterRegistry) {
+        dataSources.put(DbWorkload.INGEST, createDataSource(dataSourceProperties, properties, meterRegistry,
+                DbWorkload.INGEST, properties.getIngestPoolSize(), properties.getIngestStatementTimeoutSecs()));
+        dataSources.put(DbWorkload.BATCH, createDataSource(dataSourceProperties, properties, meterRegistry,
+                DbWorkload.BATCH, properties.getBatchPoolSize(), properties.getBatchStatementTimeoutSecs()));
+        dataSources.put(DbWorkload.API, createDataSource(dataSourceProperties, properties, meterRegistry,
+                DbWorkload.API, properties.getApiPoolSize(), properties.getApiStatementTimeoutSecs()));
+        dataSources.put(DbWorkload.REPORTS, createDataSource(dataSourceProperties, properties, meterRegistry,
+                DbWorkload.REPORTS, properties.getReportsPoolSize(), properties.getReportsStatementTimeoutSecs()));
+    }
+
+    private static HikariDataSource createDataSource(
+            DataSourceProperties dataSourceProperties,
+            CoreProperties.DbPools properties,
+            MeterRegistry meterRegistry,
+            DbWorkload workload,
+            int poolSize,
+            int statementTimeoutSecs) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("transitclock-" + workload.name().toLowerCase());
+        config.setJdbcUrl(dataSourceProperties.getUrl());
+        config.setUsername(dataSourceProperties.getUsername());
+        config.setPassword(dataSourceProperties.getPassword());
+        config.setMaximumPoolSize(poolSize);
+        config.setConnectionTimeout(properties.getConnectionTimeoutMsec());
+        // Hibernate manages the transactions
+        config.setAutoCommit(false);
+
+        // The statement timeout is set on the connections by the server so that it also covers
+        // queries that don't set a timeout themselves, such as the ones of QueryDSL
+        if (statementTimeoutSecs > 0 && dataSourceProperties.getUrl().startsWith("jdbc:postgresql:")) {
+            config.addDataSourceProperty("options", "-c statement_timeout=" + statementTimeoutSecs * Time.MS_PER_SEC);
+        }
+        if (meterRegistry != null) {
+            config.setMetricRegistry(meterRegistry);
+        }
+
+        logger.info("Creating connection pool {} with maximumPoolSize={} and statementTimeoutSecs={}",
+                config.getPoolName(), poolSize, statementTimeoutSecs);
+        return new HikariDataSource(config);
+    }
+
+    /** Returns a connection of the pool of the workload. Make sure to close it when done. */
+    public Connection getConnection(DbWorkload workload) throws SQLException {
+        return dataSources.get(workload).getConnection();
+    }
+
+    @Override
+    public Connection getAnyConnection() throws SQLException {
+        return getConnection(DbWorkload.API);
+    }
+
+    @Override
+    public void releaseAnyConnection(Connection connection) throws SQLException {
+        connection.close();
+    }
+
+    @Override
+    public Connection getConnection(String tenantIdentifier) throws SQLException {
+        return getConnection(DbWorkload.valueOf(tenantIdentifier));
+    }
+
+    @Override
+    public void releaseConnection(String tenantIdentifier, Connection connection) throws SQLException {
+        connection.close();
+    }
+
+    @Override
+    public boolean supportsAggressiveRelease() {
+        return false;
+    }
+
+    @Override
+    public boolean isUnwrappableAs(Class<?> unwrapType) {
+        return unwrapType.isInstance(this);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> unwrapType) {
+        if (unwrapType.isInstance(this)) {
+            return (T) this;
+        }
+        throw new IllegalArgumentException("Cannot unwrap to " + unwrapType);
+    }
+
+    /** Closes all the pools */
+    public void close() {
+        dataSources.values().forEach(HikariDataSource::close);
+    }
+}
@@ -5,7 +5,9 @@ import lombok.extern.slf4j.Slf4j;
 
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
+import org.hibernate.StatelessSession;
 
+import org.transitclock.domain.hibernate.DbWorkload;
 import org.transitclock.domain.hibernate.HibernateUtils;
 import org.transitclock.domain.structs.ArrivalDeparture;
 import org.transitclock.domain.structs.ArrivalDeparture.ArrivalsOrDepartures;
@@ -16,6 +18,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
 
 @Slf4j
 public class ArrivalDepartureRepository extends BaseRepository<ArrivalDeparture> {
@@ -25,7 +28,7 @@ public class ArrivalDepartureRepository extends BaseRepository<ArrivalDeparture>
      * this can be slow because when using iterate() an initial query is done to get all of Id
      * column data and then a separate query is done when iterating over each row. Doing an
      * individual query per row is of course quite time consuming. Better to use
-     * getArrivalsDeparturesFromDb() with a fairly large batch size of ~50000.
+     * streamArrivalsDeparturesFromDb().
      *
      * <p>Note that the session needs to be closed externally once done with the Iterator.
      */
@@ -118,8 +121,7 @@ public class ArrivalDepartureRepository extends BaseRepository<ArrivalDeparture>
     /**
      * Reads the arrivals/departures for the timespan specified. All of the data is read in at once
      * so could present memory issue if reading in a very large amount of data. For that case
-     * probably best to instead use getArrivalsDeparturesDb() where one specifies the firstResult
-     * and maxResult parameters.
+     * use streamArrivalsDeparturesFromDb() instead.
      */
     public static List<ArrivalDeparture> getArrivalsDeparturesFromDb(String projectId, Date beginTime, Date endTime) {
         IntervalTimer timer = new IntervalTimer();
@@ -145,8 +147,9 @@ public class ArrivalDepartureRepository extends BaseRepository<ArrivalDeparture>
     }
 
     /**
-     * Allows batch retrieval of data. This is likely the best way to read in large amounts of data.
-     * Using getArrivalsDeparturesDbIterator() reads in only data as needed so good with respect to
+     * Allows batch retrieval of data. For reading in large amounts of data
+     * streamArrivalsDeparturesFromDb() is better since it doesn't make the db skip over firstResult
+     * rows for each batch. Using getArrivalsDeparturesDbIterator() reads in only data as needed so good with respect to
      * memory usage but it does a separate query for each row. Reading in list of all data is quick
      * but can cause memory problems if reading in a very large amount of data. This method is a
      * good compromise because it only reads in a batch of data at a time so is not as memory
@@ -206,6 +209,67 @@ public class ArrivalDepartureRepository extends BaseRepository<ArrivalDeparture>
         return new ArrayList<>();
     }
 
+    /**
+     * Streams the arrivals/departures for the timespan to the consumer, fetching them from the db a
+     * batch at a time as they are consumed. Unlike getArrivalsDeparturesFromDb() the
+     * arrivals/departures are never all in memory at once and there is only a single query, so
+     * this is the way to read in hours to days of data. The arrivals/departures are read in by a
+     * stateless session so are detached.
+     *
+     * @param session the stateless session to read with
+     * @param beginTime inclusive
+     * @param endTime exclusive
+     * @param arrivalOrDeparture which to read, or null for both
+     * @param clause Optional. If not null then the clause, such as "ORDER BY time" will be added to
+     *     the hql statement.
+     * @param consumer gets each of the arrivals/departures
+     * @return number of arrivals/departures read
+     * @throws HibernateException if reading fails, possibly after some arrivals/departures were
+     *     already consumed
+     */
+    public static long streamArrivalsDeparturesFromDb(
+            StatelessSession session,
+            Date beginTime,
+            Date endTime,
+            ArrivalsOrDepartures arrivalOrDeparture,
+            String clause,
+            Consumer<ArrivalDeparture> consumer) throws HibernateException {
+        String hql = "FROM ArrivalDeparture WHERE time >= :beginDate AND time < :endDate";
+        if (arrivalOrDeparture != null) {
+            if (arrivalOrDeparture == ArrivalsOrDepartures.ARRIVALS) {
+                hql += " AND isArrival = true";
+            } else {
+                hql += " AND isArrival = false";
+            }
+        }
+        if (clause != null) {
+            hql += " " + clause;
+        }
+        var query = session.createQuery(hql, ArrivalDeparture.class)
+                .setParameter("beginDate", beginTime)
+                .setParameter("endDate", endTime);
+
+        return stream(session, query, arrDep -> {
+            arrDep.internStrings();
+            consumer.accept(arrDep);
+        });
+    }
+
+    /**
+     * Same as streamArrivalsDeparturesFromDb() with a session, but uses a stateless session of the
+     * batch connection pool.
+     */
+    public static long streamArrivalsDeparturesFromDb(
+            Date beginTime,
+            Date endTime,
+            ArrivalsOrDepartures arrivalOrDeparture,
+            String clause,
+            Consumer<ArrivalDeparture> consumer) throws HibernateException {
+        try (StatelessSession session = HibernateUtils.getStatelessSession(DbWorkload.BATCH)) {
+            return streamArrivalsDeparturesFromDb(session, beginTime, endTime, arrivalOrDeparture, clause, consumer);
+        }
+    }
+
     public static long getArrivalsDeparturesCountFromDb(
             String dbName, Date beginTime, Date endTime, ArrivalsOrDepartures arrivalOrDeparture) {
 
@@ -3,18 +3,22 @@ package org.transitclock.domain.repository;
 import lombok.extern.slf4j.Slf4j;
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
+import org.hibernate.StatelessSession;
 
+import org.transitclock.domain.hibernate.DbWorkload;
 import org.transitclock.domain.hibernate.HibernateUtils;
 import org.transitclock.domain.structs.AvlReport;
 
 import java.util.Date;
 import java.util.List;
+import java.util.function.Consumer;
 
 @Slf4j
 public class AvlReportRepository extends BaseRepository<AvlReport> {
 
     /**
-     * Gets list of AvlReports from database for the time span specified.
+     * Gets list of AvlReports from database for the time span specified. All of them are read in at
+     * once, so for a long time span use streamAvlReportsFromDb() instead.
      *
      * @param beginTime
      * @param endTime
@@ -46,4 +50,55 @@ public class AvlReportRepository extends BaseRepository<AvlReport> {
         }
         return null;
     }
+
+    /**
+     * Streams the AvlReports for the time span specified to the consumer, fetching them from the db
+     * a batch at a time as they are consumed, so they are never all in memory at once. The
+     * AvlReports are read in by a stateless session so are detached.
+     *
+     * @param session the stateless session to read with
+     * @param beginTime inclusive
+     * @param endTime exclusive
+     * @param vehicleId Optional. If not null then will only return results for that vehicle
+     * @param clause Optional. If not null then the clause, such as "ORDER BY time" will be added to
+     *     the hql statement.
+     * @param consumer gets each of the AvlReports
+     * @return number of AvlReports read
+     * @throws HibernateException if reading fails, possibly after some AvlReports were already
+     *     consumed
+     */
+    public static long streamAvlReportsFromDb(
+            StatelessSession session,
+            Date beginTime,
+            Date endTime,
+            String vehicleId,
+            String clause,
+            Consumer<AvlReport> consumer) throws HibernateException {
+        String hql = "FROM AvlReport WHERE time >= :beginDate AND time < :endDate";
+        if (vehicleId != null && !vehicleId.isEmpty())
+            hql += " AND vehicleId=:vehicleId";
+        if (clause != null)
+            hql += " " + clause;
+
+        var query = session.createQuery(hql, AvlReport.class)
+                .setParameter("beginDate", beginTime)
+                .setParameter("endDate", endTime);
+        if (vehicleId != null && !vehicleId.isEmpty()) {
+            query.setParameter("vehicleId", vehicleId);
+        }
+
+        return stream(session, query, consumer);
+    }
+
+    /**
+     * Same as streamAvlReportsFromDb() with a session, but uses a stateless session of the batch
+     * connection pool.
+     */
+    public static long streamAvlReportsFromDb(
+            Date beginTime, Date endTime, String vehicleId, String clause, Consumer<AvlReport> consumer)
+            throws HibernateException {
+        try (StatelessSession session = HibernateUtils.getStatelessSession(DbWorkload.BATCH)) {
+            return streamAvlReportsFromDb(session, beginTime, endTime, vehicleId, clause, consumer);
+        }
+    }
 }
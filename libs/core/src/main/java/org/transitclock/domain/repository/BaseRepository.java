@@ -1,3 +1,55 @@
 package org.transitclock.domain.repository;
 
-abstract class BaseRepository<T> {}
\ No newline at end of file
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.query.SelectionQuery;
+
+abstract class BaseRepository<T> {
+    /** Number of rows fetched from the db at a time when streaming */
+    static final int STREAM_FETCH_SIZE = 10000;
+
+    /**
+     * Streams the results of the query to the consumer instead of reading them all in first. The
+     * rows are fetched STREAM_FETCH_SIZE at a time with a forward only cursor and, since the session
+     * is stateless, the results are detached and not held on to by the session. So the memory used
+     * doesn't depend on the number of results and the consumer gets the first ones right away.
+     *
+     * <p>PostgreSQL only uses a cursor within a transaction, so a transaction is begun if the
+     * session doesn't have one yet.
+     *
+     * @return number of results
+     */
+    static <R> long stream(StatelessSession session, SelectionQuery<R> query, Consumer<? super R> consumer) {
+        Transaction transaction = session.getTransaction();
+        boolean ownTransaction = !transaction.isActive();
+        if (ownTransaction) {
+            transaction.begin();
+        }
+        try {
+            query.setFetchSize(STREAM_FETCH_SIZE);
+            query.setReadOnly(true);
+
+            long count = 0;
+            try (Stream<R> results = query.stream()) {
+                Iterator<R> iterator = results.iterator();
+                while (iterator.hasNext()) {
+                    consumer.accept(iterator.next());
+                    ++count;
+                }
+            }
+
+            if (ownTransaction) {
+                transaction.commit();
+            }
+            return count;
+        } finally {
+            if (ownTransaction && transaction.isActive()) {
+                transaction.rollback();
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.transitclock.domain.repository;
 
 import java.util.List;
 
+import org.transitclock.domain.hibernate.GtfsCacheRegions;
 import org.transitclock.domain.structs.Block;
 import org.transitclock.domain.structs.Trip;
 import org.transitclock.gtfs.DbConfig;
@@ -50,7 +51,9 @@ public class BlockRepository extends BaseRepository<Block> {
     private static List<Block> getBlocksPassive(Session session, int configRev) throws HibernateException {
         var query = session
                 .createQuery("FROM Block b WHERE b.configRev = :configRev", Block.class)
-                .setParameter("configRev", configRev);
+                .setParameter("configRev", configRev)
+                .setCacheable(true)
+                .setCacheRegion(GtfsCacheRegions.QUERIES);
         return query.list();
     }
 
@@ -17,8 +17,9 @@ public class ExportTableRepository extends BaseRepository<ExportTable> {
      * @throws HibernateException
      */
     public static List<ExportTable> getExportTable(Session session) throws HibernateException {
-        // String hql = "FROM ExportTable";
-        var query = session.createQuery("FROM ExportTable ORDER BY exportDate DESC", ExportTable.class);
+        // Without the files so that listing the exports doesn't read the ones that are in the rows
+        var query = session.createQuery("SELECT new ExportTable(e.id, e.dataDate, e.exportDate, e.exportType, e.exportStatus, e.fileName) "
+                + "FROM ExportTable e ORDER BY e.exportDate DESC", ExportTable.class);
         return query.list();
     }
 
@@ -3,6 +3,7 @@ package org.transitclock.domain.repository;
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
 
+import org.transitclock.domain.hibernate.GtfsCacheRegions;
 import org.transitclock.domain.structs.Route;
 import org.transitclock.utils.StringUtils;
 
@@ -99,6 +100,8 @@ public class RouteRepository extends BaseRepository<Route> {
         // Get list of routes from database
         List<Route> routesList = session.createQuery("FROM Route WHERE configRev = :configRev ORDER BY routeOrder, shortName", Route.class)
                 .setParameter("configRev", configRev)
+                .setCacheable(true)
+                .setCacheRegion(GtfsCacheRegions.QUERIES)
                 .list();
 
         // Need to set the route order for each route so that can sort
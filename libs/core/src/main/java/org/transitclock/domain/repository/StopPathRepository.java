@@ -3,6 +3,7 @@ package org.transitclock.domain.repository;
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
 
+import org.transitclock.domain.hibernate.GtfsCacheRegions;
 import org.transitclock.domain.structs.StopPath;
 
 import java.util.List;
@@ -11,6 +12,8 @@ public class StopPathRepository extends BaseRepository<StopPath> {
     public static List<StopPath> getPaths(Session session, int configRev) throws HibernateException {
         return session.createQuery("FROM StopPath WHERE configRev = :configRev", StopPath.class)
                 .setParameter("configRev", configRev)
+                .setCacheable(true)
+                .setCacheRegion(GtfsCacheRegions.QUERIES)
                 .list();
     }
 }
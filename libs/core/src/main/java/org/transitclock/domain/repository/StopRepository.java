@@ -3,6 +3,7 @@ package org.transitclock.domain.repository;
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
 
+import org.transitclock.domain.hibernate.GtfsCacheRegions;
 import org.transitclock.domain.structs.Stop;
 
 import java.util.List;
@@ -17,6 +18,8 @@ public class StopRepository extends BaseRepository<Stop>  {
     public static List<Stop> getStops(Session session, int configRev) throws HibernateException {
         return session.createQuery("FROM Stop WHERE configRev = :configRev", Stop.class)
                 .setParameter("configRev", configRev)
+                .setCacheable(true)
+                .setCacheRegion(GtfsCacheRegions.QUERIES)
                 .list();
     }
 }
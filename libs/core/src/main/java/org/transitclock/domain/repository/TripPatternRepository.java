@@ -4,6 +4,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
 
+import org.transitclock.domain.hibernate.GtfsCacheRegions;
 import org.transitclock.domain.structs.TripPattern;
 import org.transitclock.gtfs.GtfsData;
 import org.transitclock.gtfs.model.GtfsRoute;
@@ -120,7 +121,9 @@ public class TripPatternRepository extends BaseRepository<TripPattern> {
     public static List<TripPattern> getTripPatterns(Session session, int configRev) throws HibernateException {
         var query = session
                 .createQuery("FROM TripPattern WHERE configRev = :configRev", TripPattern.class)
-                .setParameter("configRev", configRev);
+                .setParameter("configRev", configRev)
+                .setCacheable(true)
+                .setCacheRegion(GtfsCacheRegions.QUERIES);
         return query.list();
     }
 }
@@ -4,6 +4,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
 
+import org.transitclock.domain.hibernate.GtfsCacheRegions;
 import org.transitclock.domain.structs.Trip;
 
 import java.math.BigInteger;
@@ -24,6 +25,8 @@ public class TripRepository extends BaseRepository<Trip> {
     public static Map<String, Trip> getTrips(Session session, int configRev) throws HibernateException {
         List<Trip> tripsList = session.createQuery("FROM Trip WHERE configRev = :configRev", Trip.class)
                 .setParameter("configRev", configRev)
+                .setCacheable(true)
+                .setCacheRegion(GtfsCacheRegions.QUERIES)
                 .list();
 
         Map<String, Trip> tripsMap = new HashMap<>();
@@ -47,6 +50,8 @@ public class TripRepository extends BaseRepository<Trip> {
                 .createQuery("FROM Trip t LEFT JOIN fetch t.scheduledTimesList LEFT JOIN FETCH t.travelTimes WHERE t.configRev = :configRev AND t.tripId = :tripId", Trip.class)
                 .setParameter("configRev", configRev)
                 .setParameter("tripId", tripId)
+                .setCacheable(true)
+                .setCacheRegion(GtfsCacheRegions.QUERIES)
                 .uniqueResult();
     }
 
@@ -66,6 +71,8 @@ public class TripRepository extends BaseRepository<Trip> {
                 .createQuery("FROM Trip t left join fetch t.scheduledTimesList left join fetch t.travelTimes WHERE t.configRev = :configRev AND t.tripShortName = :tripShortName", Trip.class)
                 .setParameter("configRev", configRev)
                 .setParameter("tripShortName", tripShortName)
+                .setCacheable(true)
+                .setCacheRegion(GtfsCacheRegions.QUERIES)
                 .list();
     }
 
@@ -30,6 +30,30 @@ public class Arrival extends ArrivalDeparture {
         super(configRev, vehicleId, time, avlTime, block, tripIndex, pathIndex, true, freqStartTime, dbConfig); // isArrival
     }
 
+    /** For ArrivalDeparture.create() */
+    Arrival(
+            String vehicleId,
+            Date time,
+            String stopId,
+            int gtfsStopSeq,
+            String tripId,
+            int configRev,
+            Date avlTime,
+            Date scheduledTime,
+            String blockId,
+            String routeId,
+            String routeShortName,
+            String serviceId,
+            String directionId,
+            int tripIndex,
+            Date freqStartTime,
+            int stopPathIndex,
+            Integer stopOrder,
+            float stopPathLength) {
+        super(true, vehicleId, time, stopId, gtfsStopSeq, tripId, configRev, avlTime, scheduledTime, blockId, routeId,
+                routeShortName, serviceId, directionId, tripIndex, freqStartTime, stopPathIndex, stopOrder, stopPathLength);
+    }
+
     /**
      * Hibernate always wants a no-arg constructor. Made private since it shouldn't normally be
      * used.
@@ -26,6 +26,7 @@ import org.hibernate.annotations.DiscriminatorOptions;
 import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.classic.Lifecycle;
 import org.transitclock.core.TemporalDifference;
+import org.transitclock.domain.hibernate.AppendOnly;
 import org.transitclock.gtfs.DbConfig;
 import org.transitclock.properties.CoreProperties;
 import org.transitclock.utils.Geo;
@@ -45,6 +46,7 @@ import java.util.Date;
  *
  * @author SkiBu Smith
  */
+@AppendOnly
 @Entity
 @Getter @Setter
 @RequiredArgsConstructor
@@ -268,6 +270,83 @@ public abstract class ArrivalDeparture implements Lifecycle, Serializable {
         }
     }
 
+    /**
+     * For creating an arrival/departure from the values that are stored for it, such as when reading
+     * it from the history archive. As when read from the db there is no block.
+     */
+    protected ArrivalDeparture(
+            boolean isArrival,
+            String vehicleId,
+            Date time,
+            String stopId,
+            int gtfsStopSeq,
+            String tripId,
+            int configRev,
+            Date avlTime,
+            Date scheduledTime,
+            String blockId,
+            String routeId,
+            String routeShortName,
+            String serviceId,
+            String directionId,
+            int tripIndex,
+            Date freqStartTime,
+            int stopPathIndex,
+            Integer stopOrder,
+            float stopPathLength) {
+        this.vehicleId = vehicleId;
+        this.time = time;
+        this.stopId = stopId;
+        this.gtfsStopSeq = gtfsStopSeq;
+        this.isArrival = isArrival;
+        this.tripId = tripId;
+        this.configRev = configRev;
+        this.avlTime = avlTime;
+        this.scheduledTime = scheduledTime;
+        this.blockId = blockId;
+        this.routeId = routeId;
+        this.routeShortName = routeShortName;
+        this.serviceId = serviceId;
+        this.directionId = directionId;
+        this.tripIndex = tripIndex;
+        this.freqStartTime = freqStartTime;
+        this.stopPathIndex = stopPathIndex;
+        this.stopOrder = stopOrder;
+        this.stopPathLength = stopPathLength;
+        this.block = null;
+    }
+
+    /**
+     * Creates an Arrival or a Departure from the values that are stored for it, such as when reading
+     * it from the history archive.
+     */
+    public static ArrivalDeparture create(
+            boolean isArrival,
+            String vehicleId,
+            Date time,
+            String stopId,
+            int gtfsStopSeq,
+            String tripId,
+            int configRev,
+            Date avlTime,
+            Date scheduledTime,
+            String blockId,
+            String routeId,
+            String routeShortName,
+            String serviceId,
+            String directionId,
+            int tripIndex,
+            Date freqStartTime,
+            int stopPathIndex,
+            Integer stopOrder,
+            float stopPathLength) {
+        return isArrival
+                ? new Arrival(vehicleId, time, stopId, gtfsStopSeq, tripId, configRev, avlTime, scheduledTime, blockId, routeId,
+                        routeShortName, serviceId, directionId, tripIndex, freqStartTime, stopPathIndex, stopOrder, stopPathLength)
+                : new Departure(vehicleId, time, stopId, gtfsStopSeq, tripId, configRev, avlTime, scheduledTime, blockId, routeId,
+                        routeShortName, serviceId, directionId, tripIndex, freqStartTime, stopPathIndex, stopOrder, stopPathLength);
+    }
+
     protected ArrivalDeparture() {
         this.vehicleId = null;
         this.time = null;
@@ -297,6 +376,14 @@ public abstract class ArrivalDeparture implements Lifecycle, Serializable {
      */
     @Override
     public void onLoad(Session s, Object id) throws CallbackException {
+        internStrings();
+    }
+
+    /**
+     * Compacts the string members by interning them. Called when read in by a stateless session
+     * since that doesn't call onLoad().
+     */
+    public void internStrings() {
         if (vehicleId != null) vehicleId = vehicleId.intern();
         if (stopId != null) stopId = stopId.intern();
         if (tripId != null) tripId = tripId.intern();
@@ -17,14 +17,15 @@ import java.util.Date;
 import java.util.List;
 import java.util.Objects;
 
+import org.transitclock.domain.hibernate.AppendOnly;
 import org.transitclock.domain.hibernate.HibernateUtils;
 import org.transitclock.properties.AvlProperties;
 import org.transitclock.service.dto.IpcAvl;
 import org.transitclock.utils.Geo;
+import org.transitclock.utils.IdInterner;
 import org.transitclock.utils.SystemTime;
 import org.transitclock.utils.Time;
 
-import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.Setter;
@@ -42,6 +43,7 @@ import org.hibernate.annotations.Immutable;
  * @author SkiBu Smith
  */
 @Immutable
+@AppendOnly
 @Entity
 @DynamicUpdate
 @Getter @Setter
@@ -51,8 +53,6 @@ import org.hibernate.annotations.Immutable;
         @Index(name = "AvlReportsTimeIndex", columnList = "time")
     })
 @Slf4j
-@Builder(setterPrefix = "with", toBuilder = true)
-@AllArgsConstructor
 public class AvlReport implements Serializable {
     // How long the AvlReport source field can be in db
     private static final int SOURCE_LENGTH = 10;
@@ -116,7 +116,6 @@ public class AvlReport implements Serializable {
 
     @Column(name = "assignment_type", length = 40)
     @Enumerated(EnumType.STRING)
-    @Builder.Default
     private AssignmentType assignmentType = AssignmentType.UNSET;
 
     /**
@@ -188,17 +187,60 @@ public class AvlReport implements Serializable {
         vehicleName = null;
     }
 
+    /**
+     * Constructor used by the builder. The IDs are interned since AVL reports are kept in the
+     * vehicle histories and caches and most of them repeat the same few vehicle and assignment IDs.
+     * An unset assignmentType means AssignmentType.UNSET.
+     */
+    @Builder(setterPrefix = "with", toBuilder = true)
+    public AvlReport(
+            String vehicleId,
+            Date time,
+            Date timeProcessed,
+            Location location,
+            Float speed,
+            Float heading,
+            String source,
+            String assignmentId,
+            AssignmentType assignmentType,
+            String leadVehicleId,
+            String driverId,
+            String licensePlate,
+            Integer passengerCount,
+            Float passengerFullness,
+            String field1Name,
+            String field1Value,
+            String vehicleName) {
+        this.vehicleId = IdInterner.intern(vehicleId);
+        this.time = time;
+        this.timeProcessed = timeProcessed;
+        this.location = location;
+        this.speed = speed;
+        this.heading = heading;
+        this.source = IdInterner.intern(sized(source));
+        this.assignmentId = IdInterner.intern(assignmentId);
+        this.assignmentType = assignmentType != null ? assignmentType : AssignmentType.UNSET;
+        this.leadVehicleId = IdInterner.intern(leadVehicleId);
+        this.driverId = IdInterner.intern(driverId);
+        this.licensePlate = licensePlate;
+        this.passengerCount = passengerCount;
+        this.passengerFullness = passengerFullness;
+        this.field1Name = field1Name;
+        this.field1Value = field1Value;
+        this.vehicleName = vehicleName;
+    }
+
     /**
      * For converting a RMI IpcAvl object to a regular AvlReport.
      */
     public AvlReport(IpcAvl ipcAvl) {
-        this.vehicleId = ipcAvl.getVehicleId();
+        this.vehicleId = IdInterner.intern(ipcAvl.getVehicleId());
         this.time = new Date(ipcAvl.getTime());
         this.location = new Location(ipcAvl.getLatitude(), ipcAvl.getLongitude());
         this.speed = Float.isNaN(ipcAvl.getSpeed()) ? null : ipcAvl.getSpeed();
         this.heading = Float.isNaN(ipcAvl.getHeading()) ? null : ipcAvl.getHeading();
-        this.source = sized(ipcAvl.getSource());
-        this.assignmentId = ipcAvl.getAssignmentId();
+        this.source = IdInterner.intern(sized(ipcAvl.getSource()));
+        this.assignmentId = IdInterner.intern(ipcAvl.getAssignmentId());
         this.assignmentType = ipcAvl.getAssignmentType();
         this.leadVehicleId = null;
         this.driverId = null;
@@ -339,7 +381,7 @@ public class AvlReport implements Serializable {
     }
 
     public void setSource(String source) {
-        this.source = sized(source);
+        this.source = IdInterner.intern(sized(source));
     }
 
     /**
@@ -421,7 +463,7 @@ public class AvlReport implements Serializable {
             return;
         }
 
-        this.assignmentId = assignmentId;
+        this.assignmentId = IdInterner.intern(assignmentId);
         this.assignmentType = assignmentType;
     }
 
@@ -10,6 +10,8 @@ import org.hibernate.Hibernate;
 import org.hibernate.HibernateException;
 import org.hibernate.JDBCException;
 import org.hibernate.Session;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Cascade;
 import org.hibernate.annotations.CascadeType;
 import org.hibernate.annotations.DynamicUpdate;
@@ -17,6 +19,7 @@ import org.hibernate.annotations.Type;
 import org.hibernate.collection.spi.PersistentList;
 import org.hibernate.internal.SessionImpl;
 import org.transitclock.core.avl.space.SpatialMatch;
+import org.transitclock.domain.hibernate.GtfsCacheRegions;
 import org.transitclock.domain.hibernate.HibernateUtils;
 import org.transitclock.domain.repository.BlockRepository;
 import org.transitclock.gtfs.DbConfig;
@@ -39,9 +42,14 @@ import java.util.stream.Collectors;
  * for each trip need different times and such. Therefore decided to use full list of Trips. This
  * will make the data in the database unfortunately quite large.
  *
+ * <p>Cached in the second level cache. Not read only since blocks are merged into the lazy
+ * loading session.
+ *
  * @author SkiBu Smith
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE, region = GtfsCacheRegions.BLOCKS)
 @Getter
 @Setter
 @DynamicUpdate
@@ -101,6 +109,7 @@ public class Block implements Serializable {
     })
     @OrderColumn(name = "list_index")
     @Cascade({CascadeType.SAVE_UPDATE})
+    @Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE, region = GtfsCacheRegions.BLOCK_TRIPS)
     private final List<Trip> trips;
 
     // Sometimes will get vehicle assignment by routeId. This means that need
@@ -29,6 +29,30 @@ public class Departure extends ArrivalDeparture {
         super(configRev, vehicleId, time, avlTime, block, tripIndex, stopPathIndex, false, freqStartTime, dbConfig); // isArrival
     }
 
+    /** For ArrivalDeparture.create() */
+    Departure(
+            String vehicleId,
+            Date time,
+            String stopId,
+            int gtfsStopSeq,
+            String tripId,
+            int configRev,
+            Date avlTime,
+            Date scheduledTime,
+            String blockId,
+            String routeId,
+            String routeShortName,
+            String serviceId,
+            String directionId,
+            int tripIndex,
+            Date freqStartTime,
+            int stopPathIndex,
+            Integer stopOrder,
+            float stopPathLength) {
+        super(false, vehicleId, time, stopId, gtfsStopSeq, tripId, configRev, avlTime, scheduledTime, blockId, routeId,
+                routeShortName, serviceId, directionId, tripIndex, freqStartTime, stopPathIndex, stopOrder, stopPathLength);
+    }
+
     /**
      * Hibernate always wants a no-arg constructor. Made private since it shouldn't normally be
      * used.
@@ -13,6 +13,10 @@ import java.util.Objects;
 /**
  * For storing static configuration for vehicle in block.
  *
+ * <p>The file of an export is generated by org.transitclock.domain.export.ExportGenerator and
+ * stored gzipped in chunks in the export_chunks table, see ExportChunkStore, so that it never has
+ * to be in memory as a whole. Exports generated before that have the file in the row instead.
+ *
  * @author Hubert GoEuropa
  */
 @Entity
@@ -20,6 +24,13 @@ import java.util.Objects;
 @ToString
 @Table(name = "export_table")
 public class ExportTable implements Serializable {
+    // Values of exportType
+    public static final int TYPE_AVL = 1;
+
+    // Values of exportStatus
+    public static final int STATUS_REQUESTED = 1;
+    public static final int STATUS_READY = 2;
+    public static final int STATUS_FAILED = 3;
 
     // ID of vehicle
     @Id
@@ -47,12 +58,20 @@ public class ExportTable implements Serializable {
     @Column(name = "file")
     private byte[] file;
 
+    // Size of the file in the export_chunks table, null if the file is in the row
+    @Column(name = "file_size")
+    private Long fileSize;
+
+    // Size of the chunks the file is stored in
+    @Column(name = "chunk_size")
+    private Integer chunkSize;
+
     public ExportTable(Date dataDate, int exportType, String fileName) {
         this.dataDate = dataDate;
         this.exportType = exportType;
         this.fileName = fileName;
         this.exportDate = new Date();
-        this.exportStatus = 1;
+        this.exportStatus = STATUS_REQUESTED;
     }
 
     public ExportTable(long id, Date dataDate, Date exportDate, int exportType, int exportStatus, String fileName) {
@@ -122,6 +141,27 @@ public class ExportTable implements Serializable {
         this.file = file;
     }
 
+    public Long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(Long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public Integer getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(Integer chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /** Whether the file is stored in the export_chunks table instead of in the row */
+    public boolean isChunked() {
+        return fileSize != null && chunkSize != null;
+    }
+
     public int getExportStatus() {
         return exportStatus;
     }
@@ -134,11 +174,11 @@ public class ExportTable implements Serializable {
     public boolean equals(Object o) {
         if (this == o) return true;
         if (!(o instanceof ExportTable that)) return false;
-        return id == that.id && exportType == that.exportType && exportStatus == that.exportStatus && Objects.equals(dataDate, that.dataDate) && Objects.equals(exportDate, that.exportDate) && Objects.equals(fileName, that.fileName) && Objects.deepEquals(file, that.file);
+        return id == that.id && exportType == that.exportType && exportStatus == that.exportStatus && Objects.equals(dataDate, that.dataDate) && Objects.equals(exportDate, that.exportDate) && Objects.equals(fileName, that.fileName) && Objects.deepEquals(file, that.file) && Objects.equals(fileSize, that.fileSize) && Objects.equals(chunkSize, that.chunkSize);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, dataDate, exportDate, exportType, exportStatus, fileName, Arrays.hashCode(file));
+        return Objects.hash(id, dataDate, exportDate, exportType, exportStatus, fileName, Arrays.hashCode(file), fileSize, chunkSize);
     }
 }
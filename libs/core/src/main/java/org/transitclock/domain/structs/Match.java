@@ -17,6 +17,7 @@ import org.hibernate.annotations.Immutable;
 import org.hibernate.classic.Lifecycle;
 import org.transitclock.core.avl.time.TemporalMatch;
 import org.transitclock.core.VehicleStatus;
+import org.transitclock.domain.hibernate.AppendOnly;
 
 /**
  * For persisting the match for the vehicle. This data is later used for determining expected travel
@@ -32,6 +33,7 @@ import org.transitclock.core.VehicleStatus;
  * @author SkiBu Smith
  */
 @Immutable
+@AppendOnly
 @Entity
 @DynamicUpdate
 @Getter @Setter @ToString
@@ -116,6 +118,31 @@ public class Match implements Lifecycle, Serializable {
         this.atStop = vehicleStatus.getMatch().isAtStop();
     }
 
+    public Match(
+            String vehicleId,
+            Date avlTime,
+            int configRev,
+            String serviceId,
+            String blockId,
+            String tripId,
+            int stopPathIndex,
+            int segmentIndex,
+            float distanceAlongSegment,
+            float distanceAlongStopPath,
+            boolean atStop) {
+        this.vehicleId = vehicleId;
+        this.avlTime = avlTime;
+        this.configRev = configRev;
+        this.serviceId = serviceId;
+        this.blockId = blockId;
+        this.tripId = tripId;
+        this.stopPathIndex = stopPathIndex;
+        this.segmentIndex = segmentIndex;
+        this.distanceAlongSegment = distanceAlongSegment;
+        this.distanceAlongStopPath = distanceAlongStopPath;
+        this.atStop = atStop;
+    }
+
     /**
      * Hibernate requires a no-args constructor for reading data. So this is an experiment to see
      * what can be done to satisfy Hibernate but still have an object be immutable. Since this
@@ -5,6 +5,7 @@ import jakarta.persistence.*;
 import lombok.extern.slf4j.Slf4j;
 import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.annotations.Immutable;
+import org.transitclock.domain.hibernate.AppendOnly;
 
 import java.io.Serializable;
 import java.util.Date;
@@ -17,6 +18,7 @@ import java.util.Date;
  */
 @Immutable
 @Slf4j
+@AppendOnly
 @Entity
 @DynamicUpdate
 @Table(
@@ -11,6 +11,7 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
 import org.hibernate.annotations.DynamicUpdate;
+import org.transitclock.domain.hibernate.AppendOnly;
 import org.transitclock.service.dto.IpcPrediction;
 
 /**
@@ -18,6 +19,7 @@ import org.transitclock.service.dto.IpcPrediction;
  *
  * @author SkiBu Smith
  */
+@AppendOnly
 @Entity
 @DynamicUpdate
 @Setter @Getter @ToString
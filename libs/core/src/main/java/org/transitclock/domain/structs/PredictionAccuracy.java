@@ -14,6 +14,7 @@ import org.hibernate.CallbackException;
 import org.hibernate.Session;
 import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.classic.Lifecycle;
+import org.transitclock.domain.hibernate.AppendOnly;
 
 /**
  * A database object for persisting information on how accurate a prediction was compared to the
@@ -27,6 +28,7 @@ import org.hibernate.classic.Lifecycle;
  *
  * @author SkiBu Smith
  */
+@AppendOnly
 @Entity
 @DynamicUpdate
 @Getter @Setter @ToString
@@ -7,7 +7,10 @@ import java.util.*;
 
 import lombok.*;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.DynamicUpdate;
+import org.transitclock.domain.hibernate.GtfsCacheRegions;
 import org.transitclock.gtfs.DbConfig;
 import org.transitclock.gtfs.TitleFormatter;
 import org.transitclock.gtfs.model.GtfsRoute;
@@ -17,9 +20,14 @@ import org.transitclock.utils.OrderedCollection;
  * For storing in db information for a route. Based on GTFS information from routes.txt and other
  * files.
  *
+ * <p>Cached in the second level cache. Not read only since the route order is set on the routes
+ * that are read when it isn't configured.
+ *
  * @author SkiBu Smith
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE, region = GtfsCacheRegions.ROUTES)
 @DynamicUpdate
 @Getter @Setter
 @Table(name = "routes")
@@ -9,7 +9,10 @@ import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.DynamicUpdate;
+import org.transitclock.domain.hibernate.GtfsCacheRegions;
 import org.transitclock.gtfs.TitleFormatter;
 import org.transitclock.gtfs.model.GtfsStop;
 
@@ -19,6 +22,8 @@ import org.transitclock.gtfs.model.GtfsStop;
  * @author SkiBu Smith
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_ONLY, region = GtfsCacheRegions.STOPS)
 @DynamicUpdate
 @Getter @Setter @ToString
 @Table(name = "stops")
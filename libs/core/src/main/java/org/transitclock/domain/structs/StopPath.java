@@ -1,6 +1,7 @@
 /* (C)2023 */
 package org.transitclock.domain.structs;
 
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.CollectionTable;
 import jakarta.persistence.Column;
 import jakarta.persistence.ElementCollection;
@@ -22,8 +23,11 @@ import lombok.Setter;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 import org.hibernate.Session;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.classic.Lifecycle;
+import org.transitclock.domain.hibernate.GtfsCacheRegions;
 
 /**
  * A StopPath is a set of points that defines how a vehicle gets from one stop to another. The stops
@@ -34,6 +38,8 @@ import org.hibernate.classic.Lifecycle;
  */
 @Slf4j
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_ONLY, region = GtfsCacheRegions.STOP_PATHS)
 @Getter @Setter @ToString
 @DynamicUpdate
 @Table(name = "stop_paths")
@@ -92,6 +98,7 @@ public class StopPath implements Serializable, Lifecycle {
 
     // sacrifice performance for reportability -- use a child table instead of java serialization
     @ElementCollection
+    @Cache(usage = CacheConcurrencyStrategy.READ_ONLY, region = GtfsCacheRegions.STOP_PATH_LOCATIONS)
     @CollectionTable(name="stoppath_locations",joinColumns= {
             @JoinColumn(name = "stoppath_trip_pattern_id", referencedColumnName = "trip_pattern_id"),
             @JoinColumn(name = "stoppath_stop_path_id", referencedColumnName = "stop_path_id"),
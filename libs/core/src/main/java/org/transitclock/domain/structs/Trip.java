@@ -12,11 +12,14 @@ import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 import org.hibernate.CallbackException;
 import org.hibernate.Session;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Cascade;
 import org.hibernate.annotations.CascadeType;
 import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.classic.Lifecycle;
 import org.hibernate.collection.spi.PersistentList;
+import org.transitclock.domain.hibernate.GtfsCacheRegions;
 import org.transitclock.domain.hibernate.HibernateUtils;
 import org.transitclock.gtfs.DbConfig;
 import org.transitclock.gtfs.TitleFormatter;
@@ -32,10 +35,15 @@ import org.transitclock.utils.Time;
  * that can intern() member strings. In order to do this the String members could not be declared as
  * final since they are updated after the constructor is called.
  *
+ * <p>Cached in the second level cache. Not read only since the travel times of the trips of a
+ * config revision are updated when new travel times are determined.
+ *
  * @author SkiBu Smith
  */
 @Slf4j
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE, region = GtfsCacheRegions.TRIPS)
 @Getter @Setter @ToString
 @DynamicUpdate
 @Table(name = "trips")
@@ -108,6 +116,7 @@ public class Trip implements Lifecycle, Serializable {
     // stop_times.txt file. Useful for determining schedule adherence.
     @OrderColumn(name = "list_index")
     @ElementCollection
+    @Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE, region = GtfsCacheRegions.TRIP_SCHEDULED_TIMES)
     @CollectionTable(name = "trip_scheduled_times_list", joinColumns = {
         @JoinColumn(name = "trip_config_rev", referencedColumnName = "config_rev"),
         @JoinColumn(name = "trip_trip_id", referencedColumnName = "trip_id"),
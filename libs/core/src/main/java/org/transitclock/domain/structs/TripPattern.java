@@ -4,11 +4,14 @@ package org.transitclock.domain.structs;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.hibernate.Session;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Cascade;
 import org.hibernate.annotations.CascadeType;
 import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.classic.Lifecycle;
 
+import org.transitclock.domain.hibernate.GtfsCacheRegions;
 import org.transitclock.domain.repository.TripPatternRepository;
 import org.transitclock.gtfs.GtfsData;
 
@@ -26,6 +29,8 @@ import java.util.stream.Collectors;
  */
 @Slf4j
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_ONLY, region = GtfsCacheRegions.TRIP_PATTERNS)
 @Getter
 @DynamicUpdate
 @Table(name = "trip_patterns")
@@ -55,6 +60,7 @@ public class TripPattern implements Serializable, Lifecycle {
     // Paths are automatically stored.
     @OneToMany(fetch = FetchType.EAGER)
     @Cascade({CascadeType.SAVE_UPDATE})
+    @Cache(usage = CacheConcurrencyStrategy.READ_ONLY, region = GtfsCacheRegions.TRIP_PATTERN_STOP_PATHS)
     @JoinTable(name="trip_pattern_to_path",
             joinColumns= {
                     @JoinColumn(name="trip_pattern_id", referencedColumnName="id"),
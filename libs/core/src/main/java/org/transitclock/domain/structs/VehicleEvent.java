@@ -11,6 +11,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.annotations.Immutable;
 import org.transitclock.core.avl.time.TemporalMatch;
+import org.transitclock.domain.hibernate.AppendOnly;
 import org.transitclock.utils.SystemTime;
 
 /**
@@ -21,6 +22,7 @@ import org.transitclock.utils.SystemTime;
  * @author SkiBu Smith
  */
 @Immutable
+@AppendOnly
 @Entity
 @Slf4j
 @DynamicUpdate
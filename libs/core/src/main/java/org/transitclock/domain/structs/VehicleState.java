@@ -10,6 +10,7 @@ import lombok.*;
 import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.annotations.Immutable;
 import org.transitclock.core.VehicleStatus;
+import org.transitclock.domain.hibernate.AppendOnly;
 import org.transitclock.gtfs.DbConfig;
 import org.transitclock.utils.StringUtils;
 
@@ -20,6 +21,7 @@ import org.transitclock.utils.StringUtils;
  * @author SkiBu Smith
  */
 @Immutable
+@AppendOnly
 @Entity
 @DynamicUpdate
 @Getter @Setter @ToString
@@ -9,6 +9,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.transitclock.core.ServiceUtils;
 import org.transitclock.domain.hibernate.HibernateUtils;
@@ -37,6 +38,8 @@ import org.transitclock.domain.structs.Transfer;
 import org.transitclock.domain.structs.Trip;
 import org.transitclock.domain.structs.TripPattern;
 import org.transitclock.properties.ServiceProperties;
+import org.transitclock.utils.BoundedCache;
+import org.transitclock.utils.IdInterner;
 import org.transitclock.utils.IntervalTimer;
 import org.transitclock.utils.MapKey;
 import org.transitclock.utils.SystemTime;
@@ -90,10 +93,9 @@ public class DbConfig {
     // For when reading in all trips from db. Keyed on tripId
     private Map<String, Trip> tripsMap;
     // For trips that have been read in individually. Keyed on tripId.
-    private final Map<String, Trip> individualTripsMap = new HashMap<>();
+    private final BoundedCache<String, Trip> individualTripsCache;
     // For trips that have been read in individually. Keyed on trip short name.
-    // Contains
-    private final Map<String, List<Trip>> individualTripsByShortNameMap = new HashMap<>();
+    private final BoundedCache<String, List<Trip>> individualTripsByShortNameCache;
 
     private List<Agency> agencies;
     private List<Calendar> calendars;
@@ -129,6 +131,17 @@ public class DbConfig {
 
         // Remember which revision of data is being used
         this.configRev = configRev;
+        IdInterner.startConfigRev(configRev);
+        HibernateUtils.startConfigRev(configRev);
+
+        this.individualTripsCache = new BoundedCache<>("individualTrips",
+                serviceProperties.getTripCacheMaxSize(),
+                serviceProperties.getLookupCacheExpiryMins(),
+                TimeUnit.MINUTES);
+        this.individualTripsByShortNameCache = new BoundedCache<>("individualTripsByShortName",
+                serviceProperties.getTripCacheMaxSize(),
+                serviceProperties.getLookupCacheExpiryMins(),
+                TimeUnit.MINUTES);
 
         // Do the low-level processing
         try {
@@ -424,6 +437,25 @@ public class DbConfig {
         return tripsMap;
     }
 
+    /**
+     * Reads the trip and detaches it from the session. Otherwise the long lived global session
+     * would keep a reference to every trip that was ever looked up, so trips evicted from
+     * individualTripsCache would never be freed. The scheduled times and travel times are fetched
+     * with the trip, and its trip pattern stays attached to the session for lazy loading.
+     */
+    static Trip readDetachedTrip(Session session, int configRev, String tripId) {
+        Trip trip = TripRepository.getTrip(session, configRev, tripId);
+        if (trip != null) session.evict(trip);
+        return trip;
+    }
+
+    /** Like readDetachedTrip() but for the trips with the trip short name */
+    static List<Trip> readDetachedTrips(Session session, int configRev, String tripShortName) {
+        List<Trip> trips = TripRepository.getTripByShortName(session, configRev, tripShortName);
+        trips.forEach(session::evict);
+        return trips;
+    }
+
     /**
      * For more quickly getting a trip. If trip not already read in yet it only reads in the
      * specific trip from the db, not all trips like getTrips(). If trip ID not found then sees if
@@ -433,25 +465,18 @@ public class DbConfig {
      * @return The trip, or null if no such trip
      */
     public Trip getTrip(String tripIdOrShortName) {
-        Trip trip = individualTripsMap.get(tripIdOrShortName);
-
         // If trip not read in yet, do so now
-        if (trip == null) {
-            logger.debug(
-                    "Trip for tripIdOrShortName={} not read from db yet " + "so reading it now.", tripIdOrShortName);
+        Trip trip = individualTripsCache.get(tripIdOrShortName, tripId -> {
+            logger.debug("Trip for tripIdOrShortName={} not read from db yet " + "so reading it now.", tripId);
 
             // Need to sync such that block data, which includes trip
             // pattern data, is only read serially (not read simultaneously
             // by multiple threads). Otherwise get a "force initialize loading
             // collection" error.
             synchronized (BlockRepository.getLazyLoadingSyncObject()) {
-                trip = TripRepository.getTrip(globalSession, configRev, tripIdOrShortName);
-            }
-
-            if (trip != null) {
-                individualTripsMap.put(tripIdOrShortName, trip);
+                return readDetachedTrip(globalSession, configRev, tripId);
             }
-        }
+        });
 
         // If couldn't get trip by tripId then see if using the trip short name.
         if (trip == null) {
@@ -461,11 +486,11 @@ public class DbConfig {
             trip = getTripUsingTripShortName(tripIdOrShortName);
 
             // If the trip successfully read in it also needs to be added to
-            // individualTripsMap so that it doesn't need to be read in next
+            // individualTripsCache so that it doesn't need to be read in next
             // time getTrip() is called.
             if (trip != null) {
                 logger.debug("Read tripIdOrShortName={} from db", tripIdOrShortName);
-                individualTripsMap.put(trip.getId(), trip);
+                individualTripsCache.put(trip.getId(), trip);
             }
         }
 
@@ -503,39 +528,40 @@ public class DbConfig {
      * @return
      */
     public Trip getTripUsingTripShortName(String tripShortName) {
-        // Find trip with the tripShortName with a currently active service ID
-        // from the map. If found, return it.
-        List<Trip> trips = individualTripsByShortNameMap.get(tripShortName);
-        if (trips != null) {
-            Trip trip = getTripForCurrentService(trips);
-            if (trip != null) {
-                logger.debug("Read in trip using tripShortName={}", tripShortName);
-
-                return trip;
-            } else {
-                // Trips for the tripShortName already read in but none valid
-                // for the current service IDs so return null
-                logger.debug(
-                        "When reading tripShortName={} found trips " + "but not for current service.", tripShortName);
-                return null;
-            }
-        }
+        List<Trip> trips = individualTripsByShortNameCache.get(tripShortName, shortName -> {
+            logger.info("FIXME tripShortName={} not yet read from db so reading it in now", shortName);
 
-        logger.info("FIXME tripShortName={} not yet read from db so reading it in now", tripShortName);
+            // Trips for the short name not read in yet, do so now
+            // Need to sync such that block data, which includes trip
+            // pattern data, is only read serially (not read simultaneously
+            // by multiple threads). Otherwise get a "force initialize loading
+            // collection" error.
+            synchronized (BlockRepository.getLazyLoadingSyncObject()) {
+                return readDetachedTrips(globalSession, configRev, shortName);
+            }
+        });
+        if (trips == null) return null;
 
-        // Trips for the short name not read in yet, do so now
-        // Need to sync such that block data, which includes trip
-        // pattern data, is only read serially (not read simultaneously
-        // by multiple threads). Otherwise get a "force initialize loading
-        // collection" error.
-        synchronized (BlockRepository.getLazyLoadingSyncObject()) {
-            trips = TripRepository.getTripByShortName(globalSession, configRev, tripShortName);
+        // Find trip with the tripShortName with a currently active service ID
+        Trip trip = getTripForCurrentService(trips);
+        if (trip != null) {
+            logger.debug("Read in trip using tripShortName={}", tripShortName);
+        } else {
+            // Trips for the tripShortName read in but none valid
+            // for the current service IDs so return null
+            logger.debug("When reading tripShortName={} found trips " + "but not for current service.", tripShortName);
         }
+        return trip;
+    }
 
-        // Add the newly read trips to the map
-        individualTripsByShortNameMap.put(tripShortName, trips);
-
-        return getTripForCurrentService(trips);
+    /**
+     * @return statistics of the caches of lazily read trips and of service IDs
+     */
+    public List<BoundedCache.Stats> getLookupCacheStats() {
+        return List.of(
+                individualTripsCache.stats(),
+                individualTripsByShortNameCache.stats(),
+                serviceUtils.getServiceIdsCacheStats());
     }
 
     /**
@@ -0,0 +1,195 @@
+/* (C)2023 */
+package org.transitclock.gtfs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.extern.slf4j.Slf4j;
+import org.transitclock.domain.structs.Extent;
+import org.transitclock.domain.structs.Location;
+import org.transitclock.domain.structs.Route;
+import org.transitclock.domain.structs.StopPath;
+import org.transitclock.domain.structs.TripPattern;
+import org.transitclock.utils.Geo;
+import org.transitclock.utils.IntervalTimer;
+
+/**
+ * A uniform grid over the stops of a configuration revision. Each stop path of every trip pattern
+ * is put into the cell that contains its stop, along with its route, direction, trip pattern and
+ * position within the trip pattern. This way finding the stops near a location only requires
+ * looking at the few cells that overlap the search radius instead of every stop path of every
+ * route.
+ *
+ * <p>The index is immutable once built so it can be shared by multiple threads. It needs to be
+ * rebuilt when the config revision changes.
+ *
+ * @author SkiBu Smith
+ */
+@Slf4j
+public class StopLocationIndex {
+
+    // Size of the sides of a grid cell. Small enough so that a typical
+    // search radius only covers a handful of cells but large enough that
+    // there aren't a huge number of nearly empty cells.
+    private static final double CELL_SIZE_METERS = 250.0;
+
+    private static final double METERS_PER_DEGREE_LATITUDE = Geo.RADIUS_OF_EARTH_IN_METERS * Math.PI / 180.0;
+
+    private final int configRev;
+
+    private final double latCellDegrees;
+    private final double lonCellDegrees;
+
+    // Keyed on the cell key created by cellKey()
+    private final Map<Long, List<StopPathEntry>> cells;
+
+    /**
+     * A stop path of a trip pattern along with where it is in the config. The ordinals are
+     * indices into the ordered routes of the config, the direction IDs of the route, and the trip
+     * patterns of the direction so that results can be put back into config order.
+     */
+    public record StopPathEntry(
+            int routeOrdinal,
+            Route route,
+            int directionOrdinal,
+            String directionId,
+            int tripPatternOrdinal,
+            TripPattern tripPattern,
+            int stopPathIndex,
+            StopPath stopPath,
+            Location location) {}
+
+    /** A stop path that is near the location that was searched for. */
+    public record NearbyStopPath(StopPathEntry entry, double distance) {}
+
+    private StopLocationIndex(
+            int configRev, double latCellDegrees, double lonCellDegrees, Map<Long, List<StopPathEntry>> cells) {
+        this.configRev = configRev;
+        this.latCellDegrees = latCellDegrees;
+        this.lonCellDegrees = lonCellDegrees;
+        this.cells = cells;
+    }
+
+    /**
+     * Builds the index for all of the stop paths of all of the routes of the specified config.
+     *
+     * @param dbConfig the config to build the index for
+     * @return the new index
+     */
+    public static StopLocationIndex build(DbConfig dbConfig) {
+        IntervalTimer timer = new IntervalTimer();
+
+        // Collect the entries first so that the size of the longitude cells
+        // can be based on the latitude of the area covered
+        List<StopPathEntry> entries = new ArrayList<>();
+        Extent extent = new Extent();
+        List<Route> routes = dbConfig.getRoutes();
+        for (int routeOrdinal = 0; routeOrdinal < routes.size(); ++routeOrdinal) {
+            Route route = routes.get(routeOrdinal);
+            List<String> directionIds = route.getDirectionIds(dbConfig);
+            for (int directionOrdinal = 0; directionOrdinal < directionIds.size(); ++directionOrdinal) {
+                String directionId = directionIds.get(directionOrdinal);
+                List<TripPattern> tripPatterns = route.getTripPatterns(dbConfig, directionId);
+                for (int tripPatternOrdinal = 0; tripPatternOrdinal < tripPatterns.size(); ++tripPatternOrdinal) {
+                    TripPattern tripPattern = tripPatterns.get(tripPatternOrdinal);
+                    List<StopPath> stopPaths = tripPattern.getStopPaths();
+                    for (int i = 0; i < stopPaths.size(); ++i) {
+                        StopPath stopPath = stopPaths.get(i);
+                        Location location = stopPath.getStopLocation();
+                        if (location == null) continue;
+
+                        extent.add(location);
+                        entries.add(new StopPathEntry(
+                                routeOrdinal,
+                                route,
+                                directionOrdinal,
+                                directionId,
+                                tripPatternOrdinal,
+                                tripPattern,
+                                i,
+                                stopPath,
+                                location));
+                    }
+                }
+            }
+        }
+
+        double latCellDegrees = CELL_SIZE_METERS / METERS_PER_DEGREE_LATITUDE;
+        double referenceLat = entries.isEmpty() ? 0.0 : (extent.getMinLat() + extent.getMaxLat()) / 2;
+        double lonCellDegrees = latCellDegrees / Math.max(Math.cos(Math.toRadians(referenceLat)), 0.01);
+
+        Map<Long, List<StopPathEntry>> cells = new HashMap<>();
+        for (StopPathEntry entry : entries) {
+            long key = cellKey(
+                    cellIndex(entry.location().getLat(), latCellDegrees),
+                    cellIndex(entry.location().getLon(), lonCellDegrees));
+            cells.computeIfAbsent(key, k -> new ArrayList<>()).add(entry);
+        }
+
+        logger.info(
+                "Built stop location index for configRev={} with {} stop paths in {} cells. Took {} msec.",
+                dbConfig.getConfigRev(),
+                entries.size(),
+                cells.size(),
+                timer.elapsedMsec());
+
+        return new StopLocationIndex(dbConfig.getConfigRev(), latCellDegrees, lonCellDegrees, cells);
+    }
+
+    /**
+     * Returns the config revision that the index was built for.
+     *
+     * @return the config revision
+     */
+    public int getConfigRev() {
+        return configRev;
+    }
+
+    /**
+     * Returns all of the stop paths whose stop is within maxDistance of the location. Only the
+     * cells that overlap the search radius are examined. The order of the results is not defined.
+     *
+     * @param loc the location to search around
+     * @param maxDistance the search radius in meters
+     * @return the nearby stop paths along with their distance to the location
+     */
+    public List<NearbyStopPath> getStopPathsWithinDistance(Location loc, double maxDistance) {
+        // Determine the range of cells to look at. For longitude use the
+        // latitude furthest from the equator within the search radius so
+        // that the range is never too small.
+        double deltaLat = maxDistance / METERS_PER_DEGREE_LATITUDE;
+        double maxAbsLat = Math.min(Math.abs(loc.getLat()) + deltaLat, 89.0);
+        double deltaLon = deltaLat / Math.cos(Math.toRadians(maxAbsLat));
+
+        int minLatCell = cellIndex(loc.getLat() - deltaLat, latCellDegrees);
+        int maxLatCell = cellIndex(loc.getLat() + deltaLat, latCellDegrees);
+        int minLonCell = cellIndex(loc.getLon() - deltaLon, lonCellDegrees);
+        int maxLonCell = cellIndex(loc.getLon() + deltaLon, lonCellDegrees);
+
+        List<NearbyStopPath> results = new ArrayList<>();
+        for (int latCell = minLatCell; latCell <= maxLatCell; ++latCell) {
+            for (int lonCell = minLonCell; lonCell <= maxLonCell; ++lonCell) {
+                List<StopPathEntry> entries = cells.getOrDefault(cellKey(latCell, lonCell), Collections.emptyList());
+                for (StopPathEntry entry : entries) {
+                    double distance = entry.location().distance(loc);
+                    if (distance <= maxDistance) {
+                        results.add(new NearbyStopPath(entry, distance));
+                    }
+                }
+            }
+        }
+
+        return results;
+    }
+
+    private static int cellIndex(double degrees, double cellDegrees) {
+        return (int) Math.floor(degrees / cellDegrees);
+    }
+
+    private static long cellKey(int latCell, int lonCell) {
+        return ((long) latCell << 32) | (lonCell & 0xFFFFFFFFL);
+    }
+}
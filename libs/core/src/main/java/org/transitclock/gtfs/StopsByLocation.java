@@ -4,13 +4,14 @@ package org.transitclock.gtfs;
 import org.springframework.stereotype.Component;
 import org.transitclock.core.dataCache.PredictionDataCache;
 import org.transitclock.domain.structs.Location;
-import org.transitclock.domain.structs.Route;
-import org.transitclock.domain.structs.StopPath;
 import org.transitclock.domain.structs.TripPattern;
+import org.transitclock.gtfs.StopLocationIndex.NearbyStopPath;
+import org.transitclock.gtfs.StopLocationIndex.StopPathEntry;
 import org.transitclock.service.dto.IpcPredictionsForRouteStopDest;
 import org.transitclock.utils.Geo;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -30,6 +31,17 @@ public class StopsByLocation {
     // time to get there plus less travel time on the bus.
     private static final double BIAS_TO_NEXT_STOP_OFFSET = 40.0;
 
+    // For ordering the nearby stop paths the same way as the config, so
+    // they can be grouped by route, direction and trip pattern.
+    private static final Comparator<NearbyStopPath> CONFIG_ORDER = Comparator
+            .comparingInt((NearbyStopPath n) -> n.entry().routeOrdinal())
+            .thenComparingInt(n -> n.entry().directionOrdinal())
+            .thenComparingInt(n -> n.entry().tripPatternOrdinal())
+            .thenComparingInt(n -> n.entry().stopPathIndex());
+
+    // Spatial index of the stops. Built lazily for the config revision.
+    private volatile StopLocationIndex stopLocationIndex;
+
     public StopsByLocation(PredictionDataCache predictionDataCache, DbConfig dbConfig) {
         this.predictionDataCache = predictionDataCache;
         this.dbConfig = dbConfig;
@@ -69,23 +81,28 @@ public class StopsByLocation {
      * if the best stop is further away than maxDistance. Will return null if stop is last one for
      * trip pattern, indicating that passengers cannot board there.
      *
+     * <p>Only the stop paths of the trip pattern that are within maxDistance plus
+     * BIAS_TO_NEXT_STOP_OFFSET of the location need to be passed in. Stops further away than that
+     * can never end up being the best stop nor cause the last stop of the trip pattern to be
+     * treated as the best one, so the result is the same as when looking at every stop path.
+     *
      * @param tripPattern
-     * @param loc
+     * @param nearbyStopPaths The nearby stop paths of the trip pattern, ordered by stop path index
      * @param maxDistance
      * @return The closest stop for the trip pattern that is not the last stop of the trip pattern
      *     and is within maxDistance of the loc.
      */
-    private StopInfo determineClosestStop(TripPattern tripPattern, Location loc, double maxDistance) {
+    private StopInfo determineClosestStop(
+            TripPattern tripPattern, List<NearbyStopPath> nearbyStopPaths, double maxDistance) {
         // Determine the closest stop for the specified trip pattern.
         // Don't look at last stop for the trip pattern because
         // passenger can't board at that stop so not point providing
         // predictions for such a stop.
         double bestDistance = Double.MAX_VALUE;
-        StopPath bestStopPath = null;
-        List<StopPath> stopPaths = tripPattern.getStopPaths();
-        for (int i = 0; i < stopPaths.size(); ++i) {
-            StopPath stopPath = stopPaths.get(i);
-            double distanceToStop = stopPath.getStopLocation().distance(loc);
+        StopPathEntry bestEntry = null;
+        int lastStopPathIndex = tripPattern.getStopPaths().size() - 1;
+        for (NearbyStopPath nearbyStopPath : nearbyStopPaths) {
+            double distanceToStop = nearbyStopPath.distance();
             // If this is the closest stop for the trip pattern remember it
             // as such. Bias to the later stop since then passenger will have
             // more time to get there and a shorter transit ride.
@@ -93,19 +110,20 @@ public class StopsByLocation {
                 // If this stop that is the closest is the last stop of the
                 // trip then simply return null since having arrival info
                 // at terminal is confusing
-                if (i == stopPaths.size() - 1) return null;
+                if (nearbyStopPath.entry().stopPathIndex() == lastStopPathIndex) return null;
 
                 // Not last stop of trip so remember it as best one
                 bestDistance = distanceToStop;
-                bestStopPath = stopPath;
+                bestEntry = nearbyStopPath.entry();
             }
         }
 
         // If too far away then no match
-        if (bestDistance > maxDistance) return null;
+        if (bestEntry == null || bestDistance > maxDistance) return null;
 
         // Found the best stop so return the info
-        return new StopInfo(tripPattern, tripPattern.getRouteShortName(), bestStopPath.getStopId(), bestDistance);
+        return new StopInfo(
+                tripPattern, tripPattern.getRouteShortName(), bestEntry.stopPath().getStopId(), bestDistance);
     }
 
     /**
@@ -154,11 +172,55 @@ public class StopsByLocation {
         return true;
     }
 
+    /**
+     * Returns the spatial index of the stops, building it if it hasn't been built yet for the
+     * current config revision.
+     *
+     * @return the stop location index
+     */
+    private StopLocationIndex getStopLocationIndex() {
+        StopLocationIndex index = stopLocationIndex;
+        if (index == null || index.getConfigRev() != dbConfig.getConfigRev()) {
+            synchronized (this) {
+                index = stopLocationIndex;
+                if (index == null || index.getConfigRev() != dbConfig.getConfigRev()) {
+                    index = StopLocationIndex.build(dbConfig);
+                    stopLocationIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Determines the best stop for a direction of a route from the closest stops of each of its
+     * trip patterns and adds it to the results.
+     *
+     * @param matchesForDirection closest stop for each trip pattern of the direction
+     * @param results where to add the best stop
+     */
+    private void addBestStopForDirection(List<StopInfo> matchesForDirection, List<StopInfo> results) {
+        // Now that have matches for all trip patterns for the direction
+        // need to determine which is the best one.
+        if (!matchesForDirection.isEmpty() && matchesAreForSameStop(matchesForDirection)) {
+            // There is just a single stop so use it
+            results.add(matchesForDirection.get(0));
+        } else if (matchesForDirection.size() > 1) {
+            // Matches are for different stops so determine best stop
+            // based on predictions
+            StopInfo stopInfo = determineBestStopBasedOnPredictions(matchesForDirection);
+
+            if (stopInfo != null) results.add(stopInfo);
+        }
+    }
+
     /**
      * Gets list of stops that are within maxDistance of the specified location. Looks at every trip
      * pattern so can deal with complicated cases such as routes with school service stops just for
      * part of the day.
      *
+     * <p>Uses the stop location index so that only the stop paths near the location are examined.
+     *
      * @param loc
      * @param maxDistance
      * @return
@@ -167,50 +229,47 @@ public class StopsByLocation {
         // For returning the results
         List<StopInfo> results = new ArrayList<StopInfo>();
 
-        // Find closest stops for every route...
-        for (Route route : dbConfig.getRoutes()) {
-            // If the specified location is not within the distance of the route
-            // then can skip this route
-            if (!route.getExtent().isWithinDistance(loc, maxDistance)) continue;
-
-            // Need to look at trip patterns separately since don't just want
-            // to match to a closest stop that happens to not be in service
-            // at the time (such as a special school stop) and then not get
-            // predictions for the route. So for each direction for each
-            // trip pattern find closest stop. Then look at predictions
-            // for those stops. Use the stop that provides the most useful
-            // predictions.
-            for (String directionId : route.getDirectionIds(dbConfig)) {
-                // So can look at matches for all trip patterns for direction
-                // at once.
-                List<StopInfo> matchesForDirection = new ArrayList<StopInfo>();
-
-                List<TripPattern> tripPatternsForDirection = route.getTripPatterns(dbConfig, directionId);
-                for (TripPattern tripPattern : tripPatternsForDirection) {
-                    // Determine the closest stop for the trip pattern
-                    StopInfo stopInfo = determineClosestStop(tripPattern, loc, maxDistance);
-
-                    // If valid stop found then go on to next trip pattern
-                    if (stopInfo == null) continue;
-
-                    // So can look at matches for all trip patterns for direction
-                    // at once.
-                    matchesForDirection.add(stopInfo);
-                }
+        // Get the candidate stop paths and put them into config order so
+        // that they are grouped by route, direction and trip pattern.
+        List<NearbyStopPath> nearbyStopPaths = getStopLocationIndex()
+                .getStopPathsWithinDistance(loc, maxDistance + BIAS_TO_NEXT_STOP_OFFSET);
+        nearbyStopPaths.sort(CONFIG_ORDER);
 
-                // Now that have matches for all trip patterns for the direction
-                // need to determine which is the best one.
-                if (!matchesForDirection.isEmpty() && matchesAreForSameStop(matchesForDirection)) {
-                    // There is just a single stop so use it
-                    results.add(matchesForDirection.get(0));
-                } else if (matchesForDirection.size() > 1) {
-                    // Matches are for different stops so determine best stop
-                    // based on predictions
-                    StopInfo stopInfo = determineBestStopBasedOnPredictions(matchesForDirection);
-
-                    if (stopInfo != null) results.add(stopInfo);
-                }
+        // Need to look at trip patterns separately since don't just want
+        // to match to a closest stop that happens to not be in service
+        // at the time (such as a special school stop) and then not get
+        // predictions for the route. So for each direction for each
+        // trip pattern find closest stop. Then look at predictions
+        // for those stops. Use the stop that provides the most useful
+        // predictions.
+        List<StopInfo> matchesForDirection = new ArrayList<StopInfo>();
+        int i = 0;
+        while (i < nearbyStopPaths.size()) {
+            StopPathEntry first = nearbyStopPaths.get(i).entry();
+
+            // Find the end of the group for the trip pattern
+            int end = i + 1;
+            while (end < nearbyStopPaths.size()
+                    && nearbyStopPaths.get(end).entry().routeOrdinal() == first.routeOrdinal()
+                    && nearbyStopPaths.get(end).entry().directionOrdinal() == first.directionOrdinal()
+                    && nearbyStopPaths.get(end).entry().tripPatternOrdinal() == first.tripPatternOrdinal()) {
+                ++end;
+            }
+
+            // Determine the closest stop for the trip pattern
+            StopInfo stopInfo = determineClosestStop(first.tripPattern(), nearbyStopPaths.subList(i, end), maxDistance);
+            if (stopInfo != null) matchesForDirection.add(stopInfo);
+
+            // If this was the last trip pattern for the direction then
+            // determine the best stop for the direction
+            if (end == nearbyStopPaths.size()
+                    || nearbyStopPaths.get(end).entry().routeOrdinal() != first.routeOrdinal()
+                    || nearbyStopPaths.get(end).entry().directionOrdinal() != first.directionOrdinal()) {
+                addBestStopForDirection(matchesForDirection, results);
+                matchesForDirection = new ArrayList<StopInfo>();
             }
+
+            i = end;
         }
 
         // Ah, done
@@ -0,0 +1,27 @@
+/* (C)2023 */
+package org.transitclock.monitoring.footprint;
+
+/**
+ * Estimated memory use of a cache, database queue or part of the GTFS configuration.
+ *
+ * @param name what the footprint is for, such as "ehcache.arrivalDeparturesByStop"
+ * @param entries number of entries
+ * @param sampledEntries number of entries that the size was estimated from
+ * @param estimatedBytes estimated heap retained by all of the entries
+ * @param entriesPerMinute how fast the number of entries grew since the previous estimate
+ * @param bytesPerMinute how fast the estimated bytes grew since the previous estimate
+ * @param time when the estimate was made, epoch msec
+ */
+public record CacheFootprint(
+        String name,
+        long entries,
+        int sampledEntries,
+        long estimatedBytes,
+        double entriesPerMinute,
+        double bytesPerMinute,
+        long time) {
+
+    public long bytesPerEntry() {
+        return entries > 0 ? estimatedBytes / entries : 0;
+    }
+}
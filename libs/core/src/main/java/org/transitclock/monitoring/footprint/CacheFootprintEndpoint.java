@@ -0,0 +1,34 @@
+/* (C)2023 */
+package org.transitclock.monitoring.footprint;
+
+import java.util.List;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+/**
+ * Actuator endpoint for the memory estimates of CacheFootprintMonitor, at
+ * /actuator/cachefootprint for all of them, largest first, or /actuator/cachefootprint/{name} for
+ * one of them.
+ */
+@Component
+@Endpoint(id = "cachefootprint")
+public class CacheFootprintEndpoint {
+    private final CacheFootprintMonitor monitor;
+
+    public CacheFootprintEndpoint(CacheFootprintMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    @ReadOperation
+    public List<CacheFootprint> footprints() {
+        return monitor.getFootprints();
+    }
+
+    @ReadOperation
+    public CacheFootprint footprint(@Selector String name) {
+        return monitor.getFootprint(name);
+    }
+}
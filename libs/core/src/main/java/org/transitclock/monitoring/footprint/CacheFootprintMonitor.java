@@ -0,0 +1,244 @@
+/* (C)2023 */
+package org.transitclock.monitoring.footprint;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+import org.transitclock.core.dataCache.PredictionDataCache;
+import org.transitclock.core.dataCache.VehicleDataCache;
+import org.transitclock.core.dataCache.VehicleStatusManager;
+import org.transitclock.domain.hibernate.DataDbLogger;
+import org.transitclock.domain.hibernate.DbQueue;
+import org.transitclock.gtfs.DbConfig;
+import org.transitclock.properties.MonitoringProperties;
+import org.transitclock.utils.BoundedCache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.ehcache.Cache;
+import org.ehcache.CacheManager;
+import org.ehcache.config.CacheConfiguration;
+import org.ehcache.config.ResourceType;
+import org.ehcache.core.spi.service.StatisticsService;
+import org.ehcache.core.statistics.TierStatistics;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Periodically estimates how much heap the in memory caches, the Ehcache heap tiers, the database
+ * queues and the GTFS configuration use, so that when memory runs out it can be seen which of them
+ * grew. For each a sample of the entries is sized with ObjectSizeEstimator and the average is
+ * multiplied by the number of entries, so each estimate only walks a few objects. The GTFS
+ * configuration doesn't change so it is sized completely, but only once.
+ *
+ * <p>For an Ehcache only the heap tier is counted. A heap tier sized in bytes reports how many bytes
+ * it occupies, which is used as is. A heap tier sized in entries is only sampled if it is the only
+ * tier, since iterating a cache reads its lower tiers, so for caches with a disk tier and a heap
+ * tier sized in entries only the number of entries is reported.
+ *
+ * <p>The estimates are available from the cachefootprint actuator endpoint and as the gauges
+ * transitclock.cache.entries, transitclock.cache.estimated.bytes and
+ * transitclock.cache.growth.bytes.per.minute tagged with the name of the cache. The hits, misses
+ * and evictions of the bounded lookup caches of DbConfig are the counters transitclock.cache.hits,
+ * transitclock.cache.misses and transitclock.cache.evictions.
+ */
+@Slf4j
+@Component
+public class CacheFootprintMonitor {
+    private static final String ON_HEAP_TIER = "OnHeap";
+
+    private final MonitoringProperties properties;
+    private final DbConfig dbConfig;
+    private final List<FootprintSource> sources = new ArrayList<>();
+
+    // Latest estimate for each source, keyed by name
+    private final Map<String, CacheFootprint> footprints = new ConcurrentHashMap<>();
+
+    // The configuration is only sized once per config revision
+    private int dbConfigRev = -1;
+    private long dbConfigBytes;
+
+    public CacheFootprintMonitor(MonitoringProperties properties,
+                                 VehicleDataCache vehicleDataCache,
+                                 PredictionDataCache predictionDataCache,
+                                 VehicleStatusManager vehicleStatusManager,
+                                 DataDbLogger dataDbLogger,
+                                 DbConfig dbConfig,
+                                 CacheManager cacheManager,
+                                 StatisticsService cacheStatisticsService,
+                                 MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.dbConfig = dbConfig;
+
+        sources.add(new FootprintSource("vehicleDataCache",
+            () -> vehicleDataCache.getVehiclesIncludingSchedBasedOnes().size(),
+            max -> vehicleDataCache.getVehiclesIncludingSchedBasedOnes().stream().limit(max).toList()));
+        sources.add(new FootprintSource("predictionDataCache",
+            predictionDataCache::size,
+            predictionDataCache::sample));
+        sources.add(new FootprintSource("vehicleStatusManager",
+            () -> vehicleStatusManager.getStatuses().size(),
+            max -> vehicleStatusManager.getStatuses().stream().limit(max).toList()));
+        for (DbQueue<?> queue : dataDbLogger.getQueues()) {
+            sources.add(new FootprintSource("dbQueue." + queue.getShortType().getSimpleName(),
+                queue::queueSize,
+                queue::sample));
+        }
+        cacheManager.getRuntimeConfiguration().getCacheConfigurations().forEach((alias, config) ->
+            sources.add(ehcacheSource(alias, config, cacheManager, cacheStatisticsService)));
+
+        List<String> names = new ArrayList<>();
+        sources.forEach(source -> names.add(source.name()));
+        names.add("dbConfig");
+        for (String name : names) {
+            gauge(meterRegistry, "transitclock.cache.entries", name, "entries", CacheFootprint::entries);
+            gauge(meterRegistry, "transitclock.cache.estimated.bytes", name, "bytes", CacheFootprint::estimatedBytes);
+            gauge(meterRegistry, "transitclock.cache.growth.bytes.per.minute", name, "bytes", CacheFootprint::bytesPerMinute);
+        }
+
+        for (BoundedCache.Stats stats : dbConfig.getLookupCacheStats()) {
+            String name = "dbConfig." + stats.name();
+            counter(meterRegistry, "transitclock.cache.hits", name, stats.name(), BoundedCache.Stats::hits);
+            counter(meterRegistry, "transitclock.cache.misses", name, stats.name(), BoundedCache.Stats::misses);
+            counter(meterRegistry, "transitclock.cache.evictions", name, stats.name(), BoundedCache.Stats::evictions);
+        }
+    }
+
+    static <K, V> FootprintSource ehcacheSource(String alias,
+                                                CacheConfiguration<K, V> config,
+                                                CacheManager cacheManager,
+                                                StatisticsService statisticsService) {
+        Cache<K, V> cache = cacheManager.getCache(alias, config.getKeyType(), config.getValueType());
+        // Iterating the cache reads the lower tiers, so only a cache without them is sampled
+        boolean heapOnly = config.getResourcePools().getResourceTypeSet().equals(Set.of(ResourceType.Core.HEAP));
+        if (!heapOnly && onHeapBytes(alias, statisticsService) < 0) {
+            logger.info("Only counting the entries of cache {} since its heap tier is sized in entries and it has "
+                    + "other tiers. Size the heap tier in MB to also get its bytes.", alias);
+        }
+        return new FootprintSource("ehcache." + alias,
+            () -> {
+                TierStatistics onHeap = onHeap(alias, statisticsService);
+                return onHeap != null ? onHeap.getMappings() : 0;
+            },
+            max -> {
+                List<Object> sample = new ArrayList<>(max);
+                if (!heapOnly) return sample;
+                for (Cache.Entry<K, V> entry : cache) {
+                    if (sample.size() >= max) break;
+                    // The pair is about the size of the heap tier's holder for the entry
+                    sample.add(Map.entry(entry.getKey(), entry.getValue()));
+                }
+                return sample;
+            },
+            () -> onHeapBytes(alias, statisticsService));
+    }
+
+    private static TierStatistics onHeap(String alias, StatisticsService statisticsService) {
+        return statisticsService.getCacheStatistics(alias).getTierStatistics().get(ON_HEAP_TIER);
+    }
+
+    // Bytes occupied by the heap tier, or -1 unless it is sized in bytes
+    private static long onHeapBytes(String alias, StatisticsService statisticsService) {
+        TierStatistics onHeap = onHeap(alias, statisticsService);
+        return onHeap != null ? onHeap.getOccupiedByteSize() : -1;
+    }
+
+    private void gauge(MeterRegistry registry, String meter, String name, String unit,
+                       ToDoubleFunction<CacheFootprint> value) {
+        Gauge.builder(meter, footprints, map -> {
+                CacheFootprint footprint = map.get(name);
+                // 0 until the first estimate so that the series starts right away
+                return footprint != null ? value.applyAsDouble(footprint) : 0;
+            })
+            .tag("cache", name)
+            .baseUnit(unit)
+            .register(registry);
+    }
+
+    private void counter(MeterRegistry registry, String meter, String name, String statsName,
+                         ToDoubleFunction<BoundedCache.Stats> value) {
+        FunctionCounter.builder(meter, dbConfig, config -> config.getLookupCacheStats().stream()
+                .filter(stats -> stats.name().equals(statsName))
+                .mapToDouble(value)
+                .findFirst()
+                .orElse(0))
+            .tag("cache", name)
+            .register(registry);
+    }
+
+    @Scheduled(fixedRateString = "${transitclock.monitoring.footprintIntervalSecs:60}",
+        initialDelayString = "${transitclock.monitoring.footprintIntervalSecs:60}",
+        timeUnit = TimeUnit.SECONDS)
+    public void run() {
+        int sampleSize = properties.getFootprintSampleSize();
+        for (FootprintSource source : sources) {
+            try {
+                long entries = source.entries().getAsLong();
+                long measuredBytes = source.measuredBytes().getAsLong();
+                if (measuredBytes >= 0) {
+                    record(source.name(), entries, (int) Math.min(entries, Integer.MAX_VALUE), measuredBytes);
+                    continue;
+                }
+                Collection<?> sample = entries > 0 ? source.sampler().apply(sampleSize) : List.of();
+                long sampleBytes = 0;
+                for (Object entry : sample) {
+                    sampleBytes += ObjectSizeEstimator.estimate(entry);
+                }
+                int sampledEntries = sample.size();
+                long bytes = sampledEntries > 0 ? sampleBytes * entries / sampledEntries : 0;
+                record(source.name(), entries, sampledEntries, bytes);
+            } catch (RuntimeException e) {
+                // Such as a collection being modified while it is sampled. Try again next time.
+                logger.debug("Could not estimate the footprint of {}", source.name(), e);
+            }
+        }
+
+        if (dbConfig.getConfigRev() != dbConfigRev) {
+            dbConfigRev = dbConfig.getConfigRev();
+            dbConfigBytes = ObjectSizeEstimator.estimateConfig(dbConfig);
+        }
+        int blocks = dbConfig.getBlockCount();
+        record("dbConfig", blocks, blocks, dbConfigBytes);
+
+        if (logger.isDebugEnabled()) {
+            footprints.values().forEach(footprint -> logger.debug("{}", footprint));
+        }
+    }
+
+    private void record(String name, long entries, int sampledEntries, long bytes) {
+        long now = System.currentTimeMillis();
+        CacheFootprint previous = footprints.get(name);
+        double entriesPerMinute = 0;
+        double bytesPerMinute = 0;
+        if (previous != null && now > previous.time()) {
+            double minutes = (now - previous.time()) / 60_000.0;
+            entriesPerMinute = (entries - previous.entries()) / minutes;
+            bytesPerMinute = (bytes - previous.estimatedBytes()) / minutes;
+        }
+        footprints.put(name, new CacheFootprint(name, entries, sampledEntries, bytes, entriesPerMinute, bytesPerMinute, now));
+    }
+
+    /**
+     * @return the latest estimates, largest first
+     */
+    public List<CacheFootprint> getFootprints() {
+        List<CacheFootprint> list = new ArrayList<>(footprints.values());
+        list.sort((a, b) -> Long.compare(b.estimatedBytes(), a.estimatedBytes()));
+        return list;
+    }
+
+    /**
+     * @return the latest estimate for the cache, or null if there is none
+     */
+    public CacheFootprint getFootprint(String name) {
+        return footprints.get(name);
+    }
+}
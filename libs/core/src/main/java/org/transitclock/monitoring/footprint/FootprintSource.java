@@ -0,0 +1,25 @@
+/* (C)2023 */
+package org.transitclock.monitoring.footprint;
+
+import java.util.Collection;
+import java.util.function.IntFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * Something whose memory use is estimated by CacheFootprintMonitor.
+ *
+ * @param name what the footprint is reported as
+ * @param entries the number of entries, needs to be cheap
+ * @param sampler returns up to the given number of entries
+ * @param measuredBytes the bytes used if the source knows them itself, otherwise -1 and the
+ *     entries are sampled
+ */
+record FootprintSource(String name,
+                       LongSupplier entries,
+                       IntFunction<Collection<?>> sampler,
+                       LongSupplier measuredBytes) {
+
+    FootprintSource(String name, LongSupplier entries, IntFunction<Collection<?>> sampler) {
+        this(name, entries, sampler, () -> -1);
+    }
+}
@@ -0,0 +1,236 @@
+/* (C)2023 */
+package org.transitclock.monitoring.footprint;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.transitclock.domain.structs.ConfigRevisionAware;
+
+import org.hibernate.Hibernate;
+import org.hibernate.SharedSessionContract;
+import org.hibernate.proxy.HibernateProxy;
+
+/**
+ * Estimates how many bytes of heap an object graph retains by walking its fields. The sizes are
+ * those of a 64 bit JVM with compressed oops: 12 byte object headers, 4 byte references and objects
+ * aligned to 8 bytes.
+ *
+ * <p>Only the objects owned by the root are counted. The walk doesn't enter GTFS configuration
+ * objects other than the root since those are owned by DbConfig, nor properties, classes, threads
+ * or enum constants. Objects reached twice from the same root are counted once, but objects shared
+ * between roots are counted for each, so for caches of interned IDs the estimate is an upper bound.
+ *
+ * <p>The fields of JDK classes can't be read without opening java.base, so collections, maps and
+ * strings are sized from their length and their elements are walked through their public API.
+ * Hibernate proxies and uninitialized lazy collections are not walked so that estimating doesn't
+ * load anything from the database.
+ */
+class ObjectSizeEstimator {
+    private static final int HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+
+    // Don't walk huge graphs, such as when a sampled object unexpectedly references a whole cache
+    private static final int MAX_OBJECTS = 100_000;
+    private static final int MAX_CONFIG_OBJECTS = 5_000_000;
+
+    private static final ClassValue<ClassLayout> layouts = new ClassValue<>() {
+        @Override
+        protected ClassLayout computeValue(Class<?> type) {
+            return ClassLayout.of(type);
+        }
+    };
+
+    private ObjectSizeEstimator() {}
+
+    /**
+     * @param root the object to estimate the size of
+     * @return estimated bytes retained by the root
+     */
+    static long estimate(Object root) {
+        return estimate(root, MAX_OBJECTS, false);
+    }
+
+    /**
+     * Estimates the size of the whole GTFS configuration, including the configuration objects it
+     * owns. This walks millions of objects so is only meant to be done once per config revision.
+     * For very large configurations the walk stops after MAX_CONFIG_OBJECTS objects so the estimate
+     * is then a lower bound.
+     *
+     * @param dbConfig the DbConfig
+     * @return estimated bytes retained
+     */
+    static long estimateConfig(Object dbConfig) {
+        return estimate(dbConfig, MAX_CONFIG_OBJECTS, true);
+    }
+
+    private static long estimate(Object root, int maxObjects, boolean walkConfig) {
+        if (root == null) return 0;
+
+        Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Object> pending = new ArrayDeque<>();
+        visited.add(root);
+        pending.push(root);
+
+        long bytes = 0;
+        while (!pending.isEmpty() && visited.size() < maxObjects) {
+            Object object = pending.pop();
+            bytes += sizeOf(object, child -> {
+                if (child != null
+                        && !(child instanceof ConfigRevisionAware && !walkConfig)
+                        && !isBoundary(child)
+                        && visited.add(child)) {
+                    pending.push(child);
+                }
+            });
+        }
+        return bytes;
+    }
+
+    private static boolean isBoundary(Object object) {
+        return object instanceof Class<?>
+                || object instanceof ClassLoader
+                || object instanceof Thread
+                || object instanceof Enum<?>
+                || object instanceof HibernateProxy
+                || object instanceof SharedSessionContract
+                || object.getClass().getPackageName().startsWith("org.transitclock.properties");
+    }
+
+    private interface Children {
+        void add(Object child);
+    }
+
+    /** Size of the object itself. Its children are passed to children to be walked. */
+    private static long sizeOf(Object object, Children children) {
+        Class<?> type = object.getClass();
+        if (type.isArray()) {
+            Class<?> component = type.getComponentType();
+            int length = Array.getLength(object);
+            if (!component.isPrimitive()) {
+                for (Object element : (Object[]) object) {
+                    children.add(element);
+                }
+                return align(ARRAY_HEADER + (long) length * REFERENCE);
+            }
+            return align(ARRAY_HEADER + (long) length * primitiveSize(component));
+        }
+        if (object instanceof String string) {
+            // Object and a latin-1 byte array
+            return 24 + align(ARRAY_HEADER + string.length());
+        }
+        if (object instanceof Date) {
+            return 24;
+        }
+        if (object instanceof Collection<?> collection && !isOwnClass(type)) {
+            // Don't make Hibernate load a lazy collection
+            if (!Hibernate.isInitialized(collection)) return 32;
+            int size = collection.size();
+            for (Object element : collection) {
+                children.add(element);
+            }
+            if (collection instanceof List<?> && !(collection instanceof LinkedList<?>)) {
+                return 32 + align(ARRAY_HEADER + (long) size * REFERENCE);
+            }
+            // Hash table, plus a node per element
+            return 32 + align(ARRAY_HEADER + (long) tableLength(size) * REFERENCE) + 32L * size;
+        }
+        if (object instanceof Map.Entry<?, ?> entry && !isOwnClass(type)) {
+            children.add(entry.getKey());
+            children.add(entry.getValue());
+            return 24;
+        }
+        if (object instanceof Map<?, ?> map && !isOwnClass(type)) {
+            if (!Hibernate.isInitialized(map)) return 48;
+            int size = map.size();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                children.add(entry.getKey());
+                children.add(entry.getValue());
+            }
+            return 48 + align(ARRAY_HEADER + (long) tableLength(size) * REFERENCE) + 32L * size;
+        }
+
+        ClassLayout layout = layouts.get(type);
+        if (layout.readable) {
+            for (Field field : layout.references) {
+                try {
+                    children.add(field.get(object));
+                } catch (IllegalAccessException e) {
+                    // Leave the child out
+                }
+            }
+        }
+        return layout.shallowSize;
+    }
+
+    private static boolean isOwnClass(Class<?> type) {
+        return type.getName().startsWith("org.transitclock.");
+    }
+
+    // Capacity of the backing array or hash table for a collection of the size
+    private static int tableLength(int size) {
+        if (size == 0) return 0;
+        int length = Integer.highestOneBit(Math.max(1, (int) (size / 0.75f)) - 1) << 1;
+        return Math.max(16, length);
+    }
+
+    private static int primitiveSize(Class<?> type) {
+        if (type == long.class || type == double.class) return 8;
+        if (type == int.class || type == float.class) return 4;
+        if (type == short.class || type == char.class) return 2;
+        return 1;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    /** Shallow size and the reference fields of a class, computed once per class */
+    private static class ClassLayout {
+        private final long shallowSize;
+        private final List<Field> references;
+        private final boolean readable;
+
+        private ClassLayout(long shallowSize, List<Field> references, boolean readable) {
+            this.shallowSize = shallowSize;
+            this.references = references;
+            this.readable = readable;
+        }
+
+        static ClassLayout of(Class<?> type) {
+            long size = HEADER;
+            List<Field> references = new ArrayList<>();
+            boolean readable = true;
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) continue;
+                    Class<?> fieldType = field.getType();
+                    if (fieldType.isPrimitive()) {
+                        size += primitiveSize(fieldType);
+                    } else {
+                        size += REFERENCE;
+                        if (readable && field.trySetAccessible()) {
+                            references.add(field);
+                        } else {
+                            // Such as JDK classes, only their shallow size is counted
+                            readable = false;
+                        }
+                    }
+                }
+            }
+            return new ClassLayout(align(size), references, readable);
+        }
+    }
+}
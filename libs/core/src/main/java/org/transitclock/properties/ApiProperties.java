@@ -12,8 +12,36 @@ public class ApiProperties {
     // Number of seconds in the future to accept predictions before
     private Integer predictionMaxFutureSecs = 3600;
 
+    // config param: transitclock.api.scheduleCacheMaxEntries
+    // Maximum number of serialized responses of the schedule related commands (routes, stops, blocks, trips, schedules, calendars) that are cached for the current config revision.
+    private Integer scheduleCacheMaxEntries = 1000;
+
+    // config param: transitclock.api.scheduleCacheMaxAgeSecs
+    // Max age for the Cache-Control header of the cached schedule related commands. Clients revalidate with the ETag after this.
+    private Integer scheduleCacheMaxAgeSecs = 300;
+
     // config param: transitclock.api.includeTripUpdateDelay
     // Whether to include delay in the TripUpdate message
     private Boolean includeTripUpdateDelay = false;
 
+    // config param: transitclock.api.gtfsRtParallelThreshold
+    // Minimum number of vehicles in the GTFS Realtime vehicle positions feed for the feed entities to be built in parallel.
+    private Integer gtfsRtParallelThreshold = 1000;
+
+    // config param: transitclock.api.streamSenderThreads
+    // Number of threads used for sending server-sent events to streaming clients.
+    private Integer streamSenderThreads = 4;
+
+    // config param: transitclock.api.streamSendTimeoutMsec
+    // How long sending an event to a streaming client may take. A client that doesn't read its events fast enough is disconnected so that it doesn't hold on to a sender thread.
+    private Integer streamSendTimeoutMsec = 10000;
+
+    // config param: transitclock.api.streamMaxPendingUpdates
+    // Maximum number of distinct vehicles or route/stops buffered for a streaming client. If a client is too slow and more updates are waiting then the oldest are dropped.
+    private Integer streamMaxPendingUpdates = 500;
+
+    // config param: transitclock.api.streamTimeoutSecs
+    // How long a streaming connection is kept open before the client needs to reconnect.
+    private Integer streamTimeoutSecs = 1800;
+
 }
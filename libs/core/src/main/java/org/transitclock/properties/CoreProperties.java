@@ -1,5 +1,8 @@
 package org.transitclock.properties;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import lombok.Data;
 
 @Data
@@ -17,10 +20,232 @@ public class CoreProperties {
         // config param: transitclock.core.cache.daysPopulateHistoricalCache
         // How many days data to read in to populate historical cache on start up.
         private Integer daysPopulateHistoricalCache = 0;
+
+        // config param: transitclock.core.cache.modelSnapshotEnabled
+        // Whether the learned prediction models (historical averages, Kalman errors and dwell time models) are periodically written to a snapshot file that is loaded on start up. When a snapshot is loaded only the arrivals/departures after it was taken are replayed into the models.
+        private boolean modelSnapshotEnabled = false;
+
+        // config param: transitclock.core.cache.modelSnapshotFile
+        // File the prediction model snapshot is written to and loaded from.
+        private String modelSnapshotFile = "/tmp/transitclock/cache/modelSnapshot.bin";
+
+        // config param: transitclock.core.cache.modelSnapshotIntervalSecs
+        // How often the prediction model snapshot is written. A snapshot is also written when shutting down.
+        private Integer modelSnapshotIntervalSecs = 900;
+
+        // config param: transitclock.core.cache.secondLevelCacheEnabled
+        // Whether the GTFS configuration entities (stops, routes, stop paths, trip patterns, trips and blocks) and the queries that read them are kept in the Hibernate second level cache so that they are not read from the db again. The cache regions are configured in ehcache-hibernate.xml and evicted when a different config revision is read.
+        private boolean secondLevelCacheEnabled = false;
+
+        // config param: transitclock.core.cache.tripDataHistoryDirectory
+        // Directory for the memory mapped files of org.transitclock.core.dataCache.mapped.MappedTripDataHistoryCache. The files are recreated on start up.
+        private String tripDataHistoryDirectory = "/tmp/transitclock/cache/tripDataHistory";
+
+        // config param: transitclock.core.cache.tripDataHistoryRetentionDays
+        // Number of days of trip start dates that org.transitclock.core.dataCache.mapped.MappedTripDataHistoryCache keeps arrivals/departures for. Older days are dropped.
+        private Integer tripDataHistoryRetentionDays = 7;
     }
 
     private Cache cache = new Cache();
 
+    @Data
+    public static class Partitioning {
+        // config param: transitclock.core.partitioning.enabled
+        // Whether the arrivals_departures, avl_reports, matches, prediction_accuracy, predictions and vehicle_states tables are range partitioned on their time column. Only supported for PostgreSQL. Tables that aren't partitioned yet are only converted if convertExistingTables is set.
+        private boolean enabled = false;
+
+        // config param: transitclock.core.partitioning.convertExistingTables
+        // Whether a history table that isn't partitioned yet is converted to a partitioned table. Converting scans the existing table and locks it until done. Otherwise such a table is left alone and an error is logged.
+        private boolean convertExistingTables = false;
+
+        // config param: transitclock.core.partitioning.createAheadDays
+        // How many days ahead partitions are created.
+        private Integer createAheadDays = 7;
+
+        // config param: transitclock.core.partitioning.maintenanceIntervalMins
+        // How often partitions are created ahead of time and expired partitions are dropped.
+        private Integer maintenanceIntervalMins = 60;
+
+        // config param: transitclock.core.partitioning.arrivalsDeparturesInterval
+        // Whether the arrivals_departures table has a partition per day or per month. Either daily or monthly.
+        private String arrivalsDeparturesInterval = "monthly";
+
+        // config param: transitclock.core.partitioning.arrivalsDeparturesRetentionDays
+        // Number of days the arrivals_departures table keeps data for. Partitions entirely older than this are dropped. 0 keeps data forever.
+        private Integer arrivalsDeparturesRetentionDays = 0;
+
+        // config param: transitclock.core.partitioning.avlReportsInterval
+        // Whether the avl_reports table has a partition per day or per month. Either daily or monthly.
+        private String avlReportsInterval = "daily";
+
+        // config param: transitclock.core.partitioning.avlReportsRetentionDays
+        // Number of days the avl_reports table keeps data for. Partitions entirely older than this are dropped. 0 keeps data forever.
+        private Integer avlReportsRetentionDays = 0;
+
+        // config param: transitclock.core.partitioning.matchesInterval
+        // Whether the matches table has a partition per day or per month. Either daily or monthly.
+        private String matchesInterval = "daily";
+
+        // config param: transitclock.core.partitioning.matchesRetentionDays
+        // Number of days the matches table keeps data for. Partitions entirely older than this are dropped. 0 keeps data forever.
+        private Integer matchesRetentionDays = 0;
+
+        // config param: transitclock.core.partitioning.predictionAccuracyInterval
+        // Whether the prediction_accuracy table has a partition per day or per month. Either daily or monthly.
+        private String predictionAccuracyInterval = "monthly";
+
+        // config param: transitclock.core.partitioning.predictionAccuracyRetentionDays
+        // Number of days the prediction_accuracy table keeps data for. Partitions entirely older than this are dropped. 0 keeps data forever.
+        private Integer predictionAccuracyRetentionDays = 0;
+
+        // config param: transitclock.core.partitioning.predictionsInterval
+        // Whether the predictions table has a partition per day or per month. Either daily or monthly.
+        private String predictionsInterval = "daily";
+
+        // config param: transitclock.core.partitioning.predictionsRetentionDays
+        // Number of days the predictions table keeps data for. Partitions entirely older than this are dropped. 0 keeps data forever.
+        private Integer predictionsRetentionDays = 0;
+
+        // config param: transitclock.core.partitioning.vehicleStatesInterval
+        // Whether the vehicle_states table has a partition per day or per month. Either daily or monthly.
+        private String vehicleStatesInterval = "daily";
+
+        // config param: transitclock.core.partitioning.vehicleStatesRetentionDays
+        // Number of days the vehicle_states table keeps data for. Partitions entirely older than this are dropped. 0 keeps data forever.
+        private Integer vehicleStatesRetentionDays = 0;
+    }
+
+    private Partitioning partitioning = new Partitioning();
+
+    @Data
+    public static class Archive {
+        // config param: transitclock.core.archive.enabled
+        // Whether closed days of the arrivals_departures and avl_reports tables are written to compressed columnar archive files, one per day and table, that the travel times and schedule processors can read instead of the db.
+        private boolean enabled = false;
+
+        // config param: transitclock.core.archive.directory
+        // Directory the archive files are written to. A subdirectory is used per table.
+        private String directory = "/tmp/transitclock/archive";
+
+        // config param: transitclock.core.archive.backfillDays
+        // How many closed days back are archived if they haven't been yet. Should be less than the retention days of the tables if they are partitioned.
+        private Integer backfillDays = 7;
+
+        // config param: transitclock.core.archive.closedDayDelayHours
+        // How many hours after the end of a day it is archived, so that late data such as arrivals/departures determined afterwards is included.
+        private Integer closedDayDelayHours = 6;
+
+        // config param: transitclock.core.archive.recheckDays
+        // How many of the most recent archived days are compared with the db on every run and rewritten if the number of rows differs, so that rows written after a day was archived, such as late arrivals/departures, still end up in the archive. Rows written to older days after they were archived are only in the db.
+        private Integer recheckDays = 3;
+
+        // config param: transitclock.core.archive.intervalMins
+        // How often to check for closed days that need to be archived.
+        private Integer intervalMins = 60;
+    }
+
+    private Archive archive = new Archive();
+
+    @Data
+    public static class StatePersistence {
+        // config param: transitclock.core.statePersistence.coalesce
+        // Whether vehicle states and matches are only stored when they carry new information instead of for every AVL report. A vehicle state is stored when the assignment, predictability, layover or delay bucket changes, at the heartbeat, or when the vehicle has moved minDistanceMeters. A match is only stored if it is needed for determining travel times, which is when it is next to a travel time segment vertex, or at the heartbeat.
+        private boolean coalesce = false;
+
+        // config param: transitclock.core.statePersistence.heartbeatSecs
+        // When coalescing, the longest time between stored vehicle states, and between stored matches, of a vehicle.
+        private Integer heartbeatSecs = 60;
+
+        // config param: transitclock.core.statePersistence.delayBucketSecs
+        // When coalescing, a vehicle state is stored when its schedule adherence moves into another bucket of this many seconds.
+        private Integer delayBucketSecs = 60;
+
+        // config param: transitclock.core.statePersistence.minDistanceMeters
+        // When coalescing, a vehicle state is stored when the vehicle has moved this far from where the last stored state was.
+        private Double minDistanceMeters = 500.0;
+    }
+
+    private StatePersistence statePersistence = new StatePersistence();
+
+    @Data
+    public static class DbPools {
+        // config param: transitclock.core.dbPools.enabled
+        // Whether the db work is split over separate connection pools for ingest writes, batch jobs such as cache warm-up, interactive API reads and reports, so that one kind of work using up its connections doesn't hold up the others. Otherwise all of it shares the one Hibernate pool.
+        private boolean enabled = false;
+
+        // config param: transitclock.core.dbPools.connectionTimeoutMsec
+        // How long to wait for a connection from a pool before failing.
+        private Integer connectionTimeoutMsec = 30000;
+
+        // config param: transitclock.core.dbPools.ingestPoolSize
+        // Maximum number of connections for writing the generated data. Should be at least transitclock.core.dbQueueMaxWriters.
+        private Integer ingestPoolSize = 8;
+
+        // config param: transitclock.core.dbPools.ingestStatementTimeoutSecs
+        // Statement timeout of the ingest connections. 0 means no timeout.
+        private Integer ingestStatementTimeoutSecs = 60;
+
+        // config param: transitclock.core.dbPools.batchPoolSize
+        // Maximum number of connections for cache warm-up and scheduled jobs such as partitioning and archiving.
+        private Integer batchPoolSize = 4;
+
+        // config param: transitclock.core.dbPools.batchStatementTimeoutSecs
+        // Statement timeout of the batch connections. 0 means no timeout.
+        private Integer batchStatementTimeoutSecs = 0;
+
+        // config param: transitclock.core.dbPools.apiPoolSize
+        // Maximum number of connections for interactive reads by the API and everything else.
+        private Integer apiPoolSize = 10;
+
+        // config param: transitclock.core.dbPools.apiStatementTimeoutSecs
+        // Statement timeout of the API connections. 0 means no timeout.
+        private Integer apiStatementTimeoutSecs = 30;
+
+        // config param: transitclock.core.dbPools.reportsPoolSize
+        // Maximum number of connections for reports.
+        private Integer reportsPoolSize = 4;
+
+        // config param: transitclock.core.dbPools.reportsStatementTimeoutSecs
+        // Statement timeout of the report connections. 0 means no timeout.
+        private Integer reportsStatementTimeoutSecs = 300;
+    }
+
+    private DbPools dbPools = new DbPools();
+
+    @Data
+    public static class DbDurability {
+        // config param: transitclock.core.dbDurability.groupCommitTypes
+        // Simple class names of the DataDbLogger types, such as ArrivalDeparture, whose producers are told when their objects are committed instead of fire and forget. Writers of those types commit right away, coalescing the objects of concurrent producers into shared commits.
+        private List<String> groupCommitTypes = new ArrayList<>();
+
+        // config param: transitclock.core.dbDurability.groupCommitWindowMsec
+        // How long a writer of a group committed type waits for more objects before committing a batch that isn't full. Longer means fewer commits but producers waiting longer.
+        private Integer groupCommitWindowMsec = 10;
+
+        // config param: transitclock.core.dbDurability.slowCommitMsec
+        // How long a group committed object may take to be committed before that is logged as slow. Producers don't wait for the commit, they are called back when it is done.
+        private Integer slowCommitMsec = 5000;
+    }
+
+    private DbDurability dbDurability = new DbDurability();
+
+    @Data
+    public static class Exports {
+        // config param: transitclock.core.exports.enabled
+        // Whether requested exports, such as of a day of AVL reports, are generated. The rows are streamed from the db into a gzipped file that is stored in chunks in the db, so an export is never in memory as a whole.
+        private boolean enabled = false;
+
+        // config param: transitclock.core.exports.intervalSecs
+        // How often to check for requested exports.
+        private Integer intervalSecs = 30;
+
+        // config param: transitclock.core.exports.chunkSizeKb
+        // Size of the chunks the export files are stored in. A chunk is the most of an export that is in memory when generating or downloading it.
+        private Integer chunkSizeKb = 1024;
+    }
+
+    private Exports exports = new Exports();
+
     // config param: transitclock.core.storeDataInDatabase
     // When in playback mode or some other situations don't want to store generated data such as arrivals/departures, events, and such to the database because only debugging.
     private boolean storeDataInDatabase = true;
@@ -33,6 +258,18 @@ public class CoreProperties {
     // When in batch mode can flood db with lots of objects. Iftransitclock.core.pauseIfDbQueueFilling is set to true then when objects are put into the DataDbLogger queue the calling thread will be temporarily suspended so that the separate thread can run to write to the db and thereby empty out the queue.
     private boolean pauseIfDbQueueFilling = false;
 
+    // config param: transitclock.core.dbWriterThreads
+    // Number of threads writing the DataDbLogger queues to the db, shared by all the queues. Each uses a db connection while writing so should be less than the size of the connection pool.
+    private int dbWriterThreads = 8;
+
+    // config param: transitclock.core.dbQueueMaxWriters
+    // Maximum number of concurrent writers for each DataDbLogger queue whose objects don't need to be written in order, such as arrivals/departures and predictions. Writers are added while the queue falls behind.
+    private int dbQueueMaxWriters = 4;
+
+    // config param: transitclock.core.dbQueueTargetCommitMsec
+    // Writers are only added to a DataDbLogger queue while writing a batch takes less than this many msec on average. If it takes more than twice as long writers are removed, since then the db is the bottleneck.
+    private long dbQueueTargetCommitMsec = 2000;
+
     // config param: transitclock.core.maxDistanceFromSegment
     // How far a location can be from a path segment and still be considered a match. Can be overridden on a per route basis via max_distance supplemental column of route GTFS data. When auto assigning, the parameter transitclock.core.maxDistanceFromSegmentForAutoAssigning is used instead.
     private double maxDistanceFromSegment = 60.0;
@@ -165,6 +402,10 @@ public class CoreProperties {
     // How many AVL reports are kept in history for vehicle so that can can do things such as look back at history to determine if vehicle has broken down. Should be large enough so can store all AVL reports received over timeForDeterminingNoProgress. If GPS rate is high then this value will need to be high as well.
     private int avlHistoryMaxSize = 20;
 
+    // config param: transitclock.core.tripStartTimeHistoryMaxSize
+    // How many trip start times are kept for a vehicle for frequency based trips. The start time of a trip is used for the trip descriptor of its predictions and arrivals/departures so only the current and recent trips are needed.
+    private int tripStartTimeHistoryMaxSize = 10;
+
     // config param: transitclock.core.eventHistoryMaxSize
     // How many arrival depature event reports are kept in history for vehicle so that can can do things such as look back at history
     private int eventHistoryMaxSize = 20;
@@ -68,4 +68,12 @@ public class MonitoringProperties {
     // When transitioning from triggered to untriggered don't want to send out an e-mail right away if actually dithering. Therefore will only send out OK e-mail if the value is now above availableFreePhysicalMemoryThreshold + availableFreePhysicalMemoryThresholdGap
     private Long availableFreePhysicalMemoryThresholdGap = 157286400L;
 
+    // config param: transitclock.monitoring.footprintIntervalSecs
+    // How frequently in seconds the memory used by the caches, the database queues and the GTFS configuration is estimated.
+    private Integer footprintIntervalSecs = 60;
+
+    // config param: transitclock.monitoring.footprintSampleSize
+    // How many entries of each cache are sampled to estimate how much memory the cache uses. The estimate for the cache is the average size of the sampled entries times the number of entries.
+    private Integer footprintSampleSize = 32;
+
 }
@@ -8,4 +8,16 @@ public class ServiceProperties {
     // Early in the morning also want to include at service IDs for previous day since a block might have started on that day. But don't want to always include previous day service IDs since that confuses things. Therefore just include them if before this time of the day, in minutes.
     private Integer minutesIntoMorningToIncludePreviousServiceIds = 240;
 
+    // config param: transitclock.service.lookupCacheExpiryMins
+    // How long in minutes the service IDs for a day and the trips read individually from the db are cached before they are determined again.
+    private Integer lookupCacheExpiryMins = 1440;
+
+    // config param: transitclock.service.serviceIdsCacheMaxDays
+    // Maximum number of days that the service IDs are cached for by ServiceUtils.getServiceIdsForDay().
+    private Integer serviceIdsCacheMaxDays = 31;
+
+    // config param: transitclock.service.tripCacheMaxSize
+    // Maximum number of trips that DbConfig.getTrip() keeps after reading them individually from the db. The least recently used ones are dropped and read again when needed.
+    private Integer tripCacheMaxSize = 20000;
+
 }
@@ -12,4 +12,8 @@ public class UpdatesProperties {
     // Number of records to read in at a time
     private Integer pageSize = 50000;
 
+    // config param: transitclock.updates.archiveDirectory
+    // Directory of the history archive written by the core, see transitclock.core.archive.directory. If set, arrivals/departures of archived days are read from there instead of the db.
+    private String archiveDirectory = null;
+
 }
@@ -8,12 +8,10 @@ import org.transitclock.core.dataCache.*;
 import org.transitclock.core.dataCache.scheduled.ScheduleBasedHistoricalAverageCache;
 import org.transitclock.service.contract.CacheQueryService;
 import org.transitclock.service.dto.*;
+import org.transitclock.utils.Time;
 
 import java.time.LocalDate;
-import java.time.ZoneId;
 import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Date;
 import java.util.List;
 
 /**
@@ -38,7 +36,7 @@ public class CacheQueryServiceImpl implements CacheQueryService {
 
         try {
             StopArrivalDepartureCacheKey nextStopKey = new StopArrivalDepartureCacheKey(
-                    stopId, Calendar.getInstance().getTime());
+                    stopId, Time.getEpochDay(System.currentTimeMillis()));
 
             return stopArrivalDepartureCacheInterface.getStopHistory(nextStopKey);
 
@@ -69,16 +67,13 @@ public class CacheQueryServiceImpl implements CacheQueryService {
 
             if (tripId != null && localDate != null && starttime != null) {
 
-                Date date =
-                        Date.from(localDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
-                TripKey tripKey = new TripKey(tripId, date, starttime);
+                TripKey tripKey = new TripKey(tripId, (int) localDate.toEpochDay(), starttime);
 
                 result = tripDataHistoryCacheInterface.getTripHistory(tripKey);
             } else if (tripId != null && localDate != null && starttime == null) {
-                Date date =
-                        Date.from(localDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
+                int serviceDay = (int) localDate.toEpochDay();
                 for (TripKey key : tripDataHistoryCacheInterface.getKeys()) {
-                    if (key.getTripId().equals(tripId) && date.compareTo(key.getTripStartDate()) == 0) {
+                    if (key.getTripId().equals(tripId) && key.getServiceDay() == serviceDay) {
                         result.addAll(tripDataHistoryCacheInterface.getTripHistory(key));
                     }
                 }
@@ -89,10 +84,9 @@ public class CacheQueryServiceImpl implements CacheQueryService {
                     }
                 }
             } else if (tripId == null && localDate != null && starttime == null) {
-                Date date =
-                        Date.from(localDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
+                int serviceDay = (int) localDate.toEpochDay();
                 for (TripKey key : tripDataHistoryCacheInterface.getKeys()) {
-                    if (date.compareTo(key.getTripStartDate()) == 0) {
+                    if (key.getServiceDay() == serviceDay) {
                         result.addAll(tripDataHistoryCacheInterface.getTripHistory(key));
                     }
                 }
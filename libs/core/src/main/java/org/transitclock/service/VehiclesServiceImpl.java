@@ -38,6 +38,12 @@ public class VehiclesServiceImpl implements VehiclesService {
     private final DbConfig dbConfig;
     private final BlockComparator blockComparator;
 
+    // Vehicle configs keyed by vehicle ID, along with the VehicleDataCache
+    // config revision they were built from. Rebuilt only when revision changes.
+    private volatile VehicleConfigsByRevision vehicleConfigsByRevision;
+
+    private record VehicleConfigsByRevision(int revision, Map<String, IpcVehicleConfig> configsById) {}
+
     public VehiclesServiceImpl(VehicleDataCache vehicleDataCache, BlockInfoProvider blockInfoProvider, DbConfig dbConfig) {
         this.vehicleDataCache = vehicleDataCache;
         this.blockInfoProvider = blockInfoProvider;
@@ -358,6 +364,30 @@ public class VehiclesServiceImpl implements VehiclesService {
         return result;
     }
 
+    /* (non-Javadoc)
+     * @see org.transitclock.service.contract.VehiclesService#getVehicleConfigsById()
+     */
+    @Override
+    public Map<String, IpcVehicleConfig> getVehicleConfigsById() {
+        int revision = vehicleDataCache.getVehicleConfigsRevision();
+        VehicleConfigsByRevision cached = vehicleConfigsByRevision;
+        if (cached != null && cached.revision() == revision) {
+            return cached.configsById();
+        }
+
+        Map<String, VehicleConfig> vehicleConfigs = vehicleDataCache.getVehicleConfigsById();
+        Map<String, IpcVehicleConfig> configsById = new HashMap<>(vehicleConfigs.size() * 4 / 3 + 1);
+        for (VehicleConfig vehicleConfig : vehicleConfigs.values()) {
+            configsById.put(vehicleConfig.getId(), new IpcVehicleConfig(vehicleConfig));
+        }
+
+        // Associated with the revision read before building the map so that a
+        // concurrent change only causes an extra rebuild, never a stale map.
+        cached = new VehicleConfigsByRevision(revision, Collections.unmodifiableMap(configsById));
+        vehicleConfigsByRevision = cached;
+        return cached.configsById();
+    }
+
     /* (non-Javadoc)
      * @see org.transitclock.ipc.interfaces.VehiclesInterface#getVehiclesForBlocks()
      */
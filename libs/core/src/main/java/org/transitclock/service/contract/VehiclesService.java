@@ -10,6 +10,7 @@ import org.transitclock.service.dto.IpcVehicleToBlockConfig;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Defines the RMI interface used for obtaining vehicle information.
@@ -61,6 +62,15 @@ public interface VehiclesService {
      */
     Collection<IpcVehicleConfig> getVehicleConfigs();
 
+    /**
+     * For getting configuration information for all vehicles keyed by vehicle ID. The map is only
+     * rebuilt when the underlying vehicle configs change so it is cheap to call for every feed
+     * that needs to join vehicles with their configs.
+     *
+     * @return Unmodifiable map of IpcVehicleConfig objects keyed by vehicle ID
+     */
+    Map<String, IpcVehicleConfig> getVehicleConfigsById();
+
     /**
      * Gets from server IpcVehicle info for all vehicles.
      *
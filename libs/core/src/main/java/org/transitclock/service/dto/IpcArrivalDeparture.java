@@ -7,18 +7,26 @@ import java.util.Date;
 import jakarta.xml.bind.annotation.XmlAttribute;
 import org.transitclock.core.TemporalDifference;
 import org.transitclock.domain.structs.ArrivalDeparture;
+import org.transitclock.utils.IdInterner;
 
 /**
  * For IPC for obtaining arrival and departure events for a stop that are in the cache.
  *
+ * <p>Millions of these are held by the arrival/departure caches so they are kept compact. Times
+ * are stored as epoch msec instead of Date objects and the IDs are interned with IdInterner so
+ * that all of the events share one instance of each ID string.
+ *
  * @author Sean Og Crudden
  */
 public class IpcArrivalDeparture implements Serializable {
+    // For times that are not set
+    private static final long NO_TIME = Long.MIN_VALUE;
+
     @XmlAttribute
     private String vehicleId;
 
     @XmlAttribute
-    private Date time;
+    private long time = NO_TIME;
 
     @XmlAttribute
     private String stopId;
@@ -33,7 +41,7 @@ public class IpcArrivalDeparture implements Serializable {
     private String tripId;
 
     @XmlAttribute
-    private transient Date avlTime;
+    private transient long avlTime = NO_TIME;
 
     @XmlAttribute
     private transient TemporalDifference scheduledAdherence;
@@ -63,24 +71,24 @@ public class IpcArrivalDeparture implements Serializable {
     private transient float stopPathLength;
 
     @XmlAttribute
-    private Date freqStartTime;
+    private long freqStartTime = NO_TIME;
 
     public IpcArrivalDeparture(ArrivalDeparture arrivalDepature) throws Exception {
 
-        this.vehicleId = arrivalDepature.getVehicleId();
-        this.time = new Date(arrivalDepature.getTime());
-        this.avlTime = arrivalDepature.getAvlTime();
-        this.routeId = arrivalDepature.getRouteId();
-        this.tripId = arrivalDepature.getTripId();
+        this.vehicleId = IdInterner.intern(arrivalDepature.getVehicleId());
+        this.time = arrivalDepature.getTime();
+        this.avlTime = toMillis(arrivalDepature.getAvlTime());
+        this.routeId = IdInterner.intern(arrivalDepature.getRouteId());
+        this.tripId = IdInterner.intern(arrivalDepature.getTripId());
         this.isArrival = arrivalDepature.isArrival();
-        this.stopId = arrivalDepature.getStopId();
+        this.stopId = IdInterner.intern(arrivalDepature.getStopId());
         this.stopPathIndex = arrivalDepature.getStopPathIndex();
 
         this.scheduledAdherence = arrivalDepature.getScheduleAdherence();
-        this.freqStartTime = arrivalDepature.getFreqStartTime();
-        this.directionId = arrivalDepature.getDirectionId();
-        this.blockId = arrivalDepature.getBlockId();
-        this.serviceId = arrivalDepature.getServiceId();
+        this.freqStartTime = toMillis(arrivalDepature.getFreqStartTime());
+        this.directionId = IdInterner.intern(arrivalDepature.getDirectionId());
+        this.blockId = IdInterner.intern(arrivalDepature.getBlockId());
+        this.serviceId = IdInterner.intern(arrivalDepature.getServiceId());
     }
 
     /* needed for kyro serializer */
@@ -93,14 +101,23 @@ public class IpcArrivalDeparture implements Serializable {
     }
 
     public void setVehicleId(String vehicleId) {
-        this.vehicleId = vehicleId;
+        this.vehicleId = IdInterner.intern(vehicleId);
     }
 
     public Date getTime() {
+        return toDate(time);
+    }
+
+    /** The time as epoch msec, for when a Date doesn't need to be created */
+    public long getTimeMillis() {
         return time;
     }
 
     public void setTime(Date time) {
+        this.time = toMillis(time);
+    }
+
+    public void setTimeMillis(long time) {
         this.time = time;
     }
 
@@ -109,7 +126,7 @@ public class IpcArrivalDeparture implements Serializable {
     }
 
     public void setStopId(String stopId) {
-        this.stopId = stopId;
+        this.stopId = IdInterner.intern(stopId);
     }
 
     public int getGtfsStopSeq() {
@@ -133,15 +150,15 @@ public class IpcArrivalDeparture implements Serializable {
     }
 
     public void setTripId(String tripId) {
-        this.tripId = tripId;
+        this.tripId = IdInterner.intern(tripId);
     }
 
     public Date getAvlTime() {
-        return avlTime;
+        return toDate(avlTime);
     }
 
     public void setAvlTime(Date avlTime) {
-        this.avlTime = avlTime;
+        this.avlTime = toMillis(avlTime);
     }
 
     public String getBlockId() {
@@ -149,7 +166,7 @@ public class IpcArrivalDeparture implements Serializable {
     }
 
     public void setBlockId(String blockId) {
-        this.blockId = blockId;
+        this.blockId = IdInterner.intern(blockId);
     }
 
     public String getRouteId() {
@@ -157,7 +174,7 @@ public class IpcArrivalDeparture implements Serializable {
     }
 
     public void setRouteId(String routeId) {
-        this.routeId = routeId;
+        this.routeId = IdInterner.intern(routeId);
     }
 
     public String getRouteShortName() {
@@ -165,7 +182,7 @@ public class IpcArrivalDeparture implements Serializable {
     }
 
     public void setRouteShortName(String routeShortName) {
-        this.routeShortName = routeShortName;
+        this.routeShortName = IdInterner.intern(routeShortName);
     }
 
     public String getServiceId() {
@@ -173,7 +190,7 @@ public class IpcArrivalDeparture implements Serializable {
     }
 
     public void setServiceId(String serviceId) {
-        this.serviceId = serviceId;
+        this.serviceId = IdInterner.intern(serviceId);
     }
 
     public String getDirectionId() {
@@ -181,7 +198,7 @@ public class IpcArrivalDeparture implements Serializable {
     }
 
     public void setDirectionId(String directionId) {
-        this.directionId = directionId;
+        this.directionId = IdInterner.intern(directionId);
     }
 
     public int getTripIndex() {
@@ -213,11 +230,11 @@ public class IpcArrivalDeparture implements Serializable {
     }
 
     public Date getFreqStartTime() {
-        return freqStartTime;
+        return toDate(freqStartTime);
     }
 
     public void setFreqStartTime(Date freqStartTime) {
-        this.freqStartTime = freqStartTime;
+        this.freqStartTime = toMillis(freqStartTime);
     }
 
     public TemporalDifference getScheduledAdherence() {
@@ -232,10 +249,10 @@ public class IpcArrivalDeparture implements Serializable {
     public int hashCode() {
         final int prime = 31;
         int result = 1;
-        result = prime * result + ((avlTime == null) ? 0 : avlTime.hashCode());
+        result = prime * result + Long.hashCode(avlTime);
         result = prime * result + ((blockId == null) ? 0 : blockId.hashCode());
         result = prime * result + ((directionId == null) ? 0 : directionId.hashCode());
-        result = prime * result + ((freqStartTime == null) ? 0 : freqStartTime.hashCode());
+        result = prime * result + Long.hashCode(freqStartTime);
         result = prime * result + gtfsStopSeq;
         result = prime * result + (isArrival ? 1231 : 1237);
         result = prime * result + ((routeId == null) ? 0 : routeId.hashCode());
@@ -244,7 +261,7 @@ public class IpcArrivalDeparture implements Serializable {
         result = prime * result + ((stopId == null) ? 0 : stopId.hashCode());
         result = prime * result + stopPathIndex;
         result = prime * result + Float.floatToIntBits(stopPathLength);
-        result = prime * result + ((time == null) ? 0 : time.hashCode());
+        result = prime * result + Long.hashCode(time);
         result = prime * result + ((tripId == null) ? 0 : tripId.hashCode());
         result = prime * result + tripIndex;
         result = prime * result + ((vehicleId == null) ? 0 : vehicleId.hashCode());
@@ -257,18 +274,14 @@ public class IpcArrivalDeparture implements Serializable {
         if (obj == null) return false;
         if (getClass() != obj.getClass()) return false;
         IpcArrivalDeparture other = (IpcArrivalDeparture) obj;
-        if (avlTime == null) {
-            if (other.avlTime != null) return false;
-        } else if (!avlTime.equals(other.avlTime)) return false;
+        if (avlTime != other.avlTime) return false;
         if (blockId == null) {
             if (other.blockId != null) return false;
         } else if (!blockId.equals(other.blockId)) return false;
         if (directionId == null) {
             if (other.directionId != null) return false;
         } else if (!directionId.equals(other.directionId)) return false;
-        if (freqStartTime == null) {
-            if (other.freqStartTime != null) return false;
-        } else if (!freqStartTime.equals(other.freqStartTime)) return false;
+        if (freqStartTime != other.freqStartTime) return false;
         if (gtfsStopSeq != other.gtfsStopSeq) return false;
         if (isArrival != other.isArrival) return false;
         if (routeId == null) {
@@ -285,9 +298,7 @@ public class IpcArrivalDeparture implements Serializable {
         } else if (!stopId.equals(other.stopId)) return false;
         if (stopPathIndex != other.stopPathIndex) return false;
         if (Float.floatToIntBits(stopPathLength) != Float.floatToIntBits(other.stopPathLength)) return false;
-        if (time == null) {
-            if (other.time != null) return false;
-        } else if (!time.equals(other.time)) return false;
+        if (time != other.time) return false;
         if (tripId == null) {
             if (other.tripId != null) return false;
         } else if (!tripId.equals(other.tripId)) return false;
@@ -302,7 +313,7 @@ public class IpcArrivalDeparture implements Serializable {
         return "IpcArrivalDeparture [vehicleId="
                 + vehicleId
                 + ", time="
-                + time
+                + getTime()
                 + ", stopId="
                 + stopId
                 + ", gtfsStopSeq="
@@ -312,7 +323,7 @@ public class IpcArrivalDeparture implements Serializable {
                 + ", tripId="
                 + tripId
                 + ", avlTime="
-                + avlTime
+                + getAvlTime()
                 + ", scheduledAdherence="
                 + scheduledAdherence
                 + ", blockId="
@@ -332,7 +343,15 @@ public class IpcArrivalDeparture implements Serializable {
                 + ", stopPathLength="
                 + stopPathLength
                 + ", freqStartTime="
-                + freqStartTime
+                + getFreqStartTime()
                 + "]";
     }
+
+    private static long toMillis(Date date) {
+        return date != null ? date.getTime() : NO_TIME;
+    }
+
+    private static Date toDate(long time) {
+        return time != NO_TIME ? new Date(time) : null;
+    }
 }
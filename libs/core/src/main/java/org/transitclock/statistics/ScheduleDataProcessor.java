@@ -503,51 +503,15 @@ public class ScheduleDataProcessor {
         // Go through all the arrival/departure data and put it into a map
         // that just keeps track of arrival/departure times for trip/stops.
         try {
-            // Use two levels of batching to be efficient. At the low level
-            // only read in 50k rows at a time so that never read in too much
-            // at once. This way won't run out of memory. But this type of
-            // batching where we specify a firstResult and a batchSize can be
-            // inefficient when firstResult becomes large because the database
-            // still has to process a huge amount of data in order to return
-            // the proper batch. So also just dealing with a day at a time by
-            // dividing the beginTime and endTime into 1 day chunks.
-            long batchBeginTime = beginTime.getTime();
-            long batchEndTime = beginTime.getTime() + Time.MS_PER_DAY;
-            while (batchBeginTime < endTime.getTime()) {
-                logger.info(
-                        "Reading in a days worth of {} data " + "for between {} and {}",
-                        arrivalOrDeparture,
-                        new Date(batchBeginTime),
-                        new Date(batchEndTime));
-
-                // For keeping track of which rows should be returned by the
-                // batch.
-                int firstResult = 0;
-                // Batch size of 50k found to be significantly faster than 10k,
-                // by about a factor of 2. So want to use as large a value as
-                // possible without running out of memory. Found that with
-                // 500,000
-                // can still read in all data with default heap size of 1G.
-                // Batch size of 650,000 seems to complete halt the process with
-                // only 1G of heap.
-                int batchSize = 500000; // Also known as maxResults
-                // The temporary list for the loop that contains a batch of
-                // results
-                List<ArrivalDeparture> arrDepBatchList;
-                // Read in batch of 50k rows of data and process it
-                do {
-                    // Note: I tried adding a "ORDER BY time" clause to see
-                    // if that would speed things up when doing multiple batches
-                    // but it only served to slow things down.
-                    arrDepBatchList = ArrivalDepartureRepository.getArrivalsDeparturesFromDb(
-                            new Date(batchBeginTime),
-                            new Date(batchEndTime),
-                            null, // SQL clause
-                            firstResult,
-                            batchSize,
-                            arrivalOrDeparture);
-
-                    for (ArrivalDeparture arrDep : arrDepBatchList) {
+            // Streamed from the db so that only the map, and never all the
+            // arrivals/departures, is in memory
+            logger.info("Reading in {} data for between {} and {}", arrivalOrDeparture, beginTime, endTime);
+            long count = ArrivalDepartureRepository.streamArrivalsDeparturesFromDb(
+                    beginTime,
+                    endTime,
+                    arrivalOrDeparture,
+                    null, // SQL clause
+                    arrDep -> {
                         // If handling departures and this trip is defined as a
                         // frequency then need store the departure time of the
                         // first stop in the trip in a map so can use it for
@@ -557,19 +521,8 @@ public class ScheduleDataProcessor {
 
                         // Add arrival/departure time to appropriate map
                         addArrivalDepartureToMap(arrivalDeparatureTimesFromDbByRouteByTripStopMap, arrDep);
-                    }
-
-                    logger.info("Read in total of {} {}", firstResult + arrDepBatchList.size(), arrivalOrDeparture);
-
-                    // Update firstResult for reading next batch of data
-                    firstResult += batchSize;
-                } while (arrDepBatchList.size() == batchSize);
-
-                // Get ready to read in chunk of data for the next day
-                batchBeginTime += Time.MS_PER_DAY;
-                batchEndTime += Time.MS_PER_DAY;
-                if (batchEndTime > endTime.getTime()) batchEndTime = endTime.getTime();
-            }
+                    });
+            logger.info("Read in total of {} {}", count, arrivalOrDeparture);
         } catch (Exception e) {
             logger.error("Exception occurred when reading arrivals/departure " + "from db", e);
         }
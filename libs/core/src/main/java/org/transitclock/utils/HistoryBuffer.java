@@ -0,0 +1,143 @@
+/* (C)2023 */
+package org.transitclock.utils;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Fixed capacity history of items with a time for each, such as the recent AVL reports of a
+ * vehicle. The most recent item is index 0. When the history is full adding an item overwrites the
+ * oldest one, so adding doesn't allocate anything and getting an item by index is O(1).
+ *
+ * <p>The times are kept in a long array next to the items so that looking up an item by time scans
+ * the times without touching the items. An item can be null, such as a null match when a vehicle
+ * becomes unpredictable, with its time then being NO_TIME.
+ *
+ * <p>Not thread safe. Each vehicle's history is only changed while its VehicleStatus is locked.
+ *
+ * @param <T> type of the items
+ */
+public class HistoryBuffer<T> {
+    /** Time of an item that doesn't have one */
+    public static final long NO_TIME = Long.MIN_VALUE;
+
+    private final Object[] items;
+    private final long[] times;
+    // Index into the arrays of the most recent item
+    private int newest = -1;
+    private int size = 0;
+
+    /**
+     * @param capacity how many items are kept
+     */
+    public HistoryBuffer(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Invalid capacity " + capacity);
+        this.items = new Object[capacity];
+        this.times = new long[capacity];
+    }
+
+    /**
+     * Adds the item as the most recent one. If the history is full the oldest item is dropped.
+     *
+     * @param item the item, can be null
+     * @param time time of the item in epoch msec, or NO_TIME
+     */
+    public void add(T item, long time) {
+        newest = newest + 1 == items.length ? 0 : newest + 1;
+        items[newest] = item;
+        times[newest] = time;
+        if (size < items.length) ++size;
+    }
+
+    /**
+     * @param index 0 for the most recent item
+     * @return the item
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        return (T) items[slot(index)];
+    }
+
+    /**
+     * @param index 0 for the most recent item
+     * @return time of the item, or NO_TIME if it doesn't have one
+     */
+    public long getTime(int index) {
+        return times[slot(index)];
+    }
+
+    /**
+     * @return the most recent item, or null if there isn't one
+     */
+    public T newest() {
+        return size > 0 ? get(0) : null;
+    }
+
+    /**
+     * Returns the index of the most recent item that is older than the time. Items without a time
+     * are skipped.
+     *
+     * @param time epoch msec
+     * @return index of the item, or -1 if there isn't one that old
+     */
+    public int indexOlderThan(long time) {
+        for (int i = 0; i < size; ++i) {
+            long itemTime = times[slot(i)];
+            if (itemTime != NO_TIME && itemTime < time) return i;
+        }
+        return -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return items.length;
+    }
+
+    public boolean isFull() {
+        return size == items.length;
+    }
+
+    public void clear() {
+        Arrays.fill(items, null);
+        newest = -1;
+        size = 0;
+    }
+
+    /**
+     * @return unmodifiable view of the items, most recent first. Adding an item changes the view.
+     */
+    public List<T> asList() {
+        return new View();
+    }
+
+    /** Lists the items, most recent first, like the lists the histories used to be */
+    @Override
+    public String toString() {
+        return asList().toString();
+    }
+
+    private int slot(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        int slot = newest - index;
+        return slot < 0 ? slot + items.length : slot;
+    }
+
+    private class View extends AbstractList<T> implements RandomAccess {
+        @Override
+        public T get(int index) {
+            return HistoryBuffer.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/* (C)2023 */
+package org.transitclock.utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Canonical String instances for route, stop, trip, block, service, direction and vehicle IDs.
+ * Each arrival/departure read from the database or AVL report received has its own copy of these
+ * strings, so holding millions of them in the caches means millions of copies of the same few
+ * thousand strings. Interning them means the in memory objects share one instance of each.
+ *
+ * <p>The dictionary is scoped to the config revision. When a new revision is read the old
+ * dictionary is dropped so that IDs from old GTFS data don't accumulate. Objects that were interned
+ * with the old dictionary keep their strings so nothing needs to be re-interned.
+ */
+@UtilityClass
+public class IdInterner {
+    private record Dictionary(int configRev, Map<String, String> strings) {}
+
+    private static volatile Dictionary dictionary = new Dictionary(-1, new ConcurrentHashMap<>());
+
+    /**
+     * Returns the canonical instance of the ID.
+     *
+     * @param id the ID, can be null
+     * @return the canonical instance, or null if the ID is null
+     */
+    public String intern(String id) {
+        if (id == null) return null;
+        Map<String, String> strings = dictionary.strings();
+        String canonical = strings.get(id);
+        if (canonical != null) return canonical;
+        canonical = strings.putIfAbsent(id, id);
+        return canonical != null ? canonical : id;
+    }
+
+    /**
+     * Starts a new dictionary if the config revision differs from the one the current dictionary
+     * is for.
+     *
+     * @param configRev the config revision that has been read
+     */
+    public synchronized void startConfigRev(int configRev) {
+        if (dictionary.configRev() != configRev) {
+            dictionary = new Dictionary(configRev, new ConcurrentHashMap<>());
+        }
+    }
+
+    public int size() {
+        return dictionary.strings().size();
+    }
+}
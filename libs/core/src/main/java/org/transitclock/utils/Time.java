@@ -9,6 +9,9 @@ import java.text.DateFormat;
 import java.text.DecimalFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
@@ -228,6 +231,36 @@ public class Time {
         return calendar.getTimeInMillis();
     }
 
+    /**
+     * Returns the day of the epoch time for the default timezone as the number of days since
+     * 1970-01-01, the same as LocalDate.toEpochDay(). Unlike getStartOfDay() this doesn't create a
+     * Calendar so it is cheap enough for building cache keys. Consecutive days differ by 1, so
+     * walking back through days is just decrementing.
+     *
+     * @param epochTime the time that the day is needed for
+     * @return the epoch day
+     */
+    public static int getEpochDay(long epochTime) {
+        int offsetSecs = ZoneId.systemDefault()
+                .getRules()
+                .getOffset(Instant.ofEpochMilli(epochTime))
+                .getTotalSeconds();
+        return (int) Math.floorDiv(epochTime + offsetSecs * (long) MS_PER_SEC, MS_PER_DAY);
+    }
+
+    /**
+     * Returns the epoch time of the start of the epoch day for the default timezone.
+     *
+     * @param epochDay days since 1970-01-01, as returned by getEpochDay()
+     * @return start of the day
+     */
+    public static long getStartOfEpochDay(int epochDay) {
+        return LocalDate.ofEpochDay(epochDay)
+                .atStartOfDay(ZoneId.systemDefault())
+                .toInstant()
+                .toEpochMilli();
+    }
+
     /**
      * Converts secondsIntoDay into an epoch time.
      *
@@ -0,0 +1,132 @@
+package org.transitclock.core;
+
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+import java.util.LinkedList;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.transitclock.domain.structs.AvlReport;
+import org.transitclock.domain.structs.Location;
+import org.transitclock.properties.CoreProperties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Microbenchmark of the allocation rate of updating the AVL history of 5,000 vehicles, the way
+ * AvlProcessor.lowLevelProcessAvlReport() does for each AVL report: the report is added to the
+ * history and an older report is looked up. Compares the ring buffer of VehicleStatus with the
+ * LinkedList that was used before.
+ */
+class VehicleStatusHistoryAllocationTest {
+    private static final Logger logger = LoggerFactory.getLogger(VehicleStatusHistoryAllocationTest.class);
+
+    private static final int VEHICLES = 5_000;
+    private static final int ROUNDS = 100;
+    private static final long AVL_INTERVAL = 10_000;
+    private static final int MINIMUM_AGE = 60_000;
+
+    @Test
+    void ringBufferDoesNotAllocatePerReport() {
+        com.sun.management.ThreadMXBean threads = threadMXBean();
+        assumeTrue(threads != null && threads.isThreadAllocatedMemorySupported());
+
+        CoreProperties properties = new CoreProperties();
+        AvlReport[] reports = reports();
+        VehicleStatus[] statuses = new VehicleStatus[VEHICLES];
+        LinkedList<AvlReport>[] lists = linkedLists();
+        for (int v = 0; v < VEHICLES; ++v) {
+            statuses[v] = new VehicleStatus("vehicle" + v, properties);
+        }
+
+        // Warm up both so that the JIT has compiled them. The measured rounds carry on with later
+        // reports, as going back in time would make the lookups miss and log errors.
+        updateRingBuffers(statuses, reports, 0);
+        updateLinkedLists(lists, reports, 0, properties.getAvlHistoryMaxSize());
+
+        long before = allocated(threads);
+        updateLinkedLists(lists, reports, ROUNDS, properties.getAvlHistoryMaxSize());
+        double linkedListBytes = (double) (allocated(threads) - before) / (VEHICLES * ROUNDS);
+
+        before = allocated(threads);
+        updateRingBuffers(statuses, reports, ROUNDS);
+        double ringBufferBytes = (double) (allocated(threads) - before) / (VEHICLES * ROUNDS);
+
+        logger.info(
+                "Bytes allocated per AVL report for {} vehicles: LinkedList {}, ring buffer {}",
+                VEHICLES,
+                String.format("%.1f", linkedListBytes),
+                String.format("%.1f", ringBufferBytes));
+
+        // A LinkedList node is 24 bytes. Whether the ring buffer allocates nothing at all depends on
+        // the JIT, so only check that it allocates a lot less.
+        assertThat(linkedListBytes).isGreaterThanOrEqualTo(24);
+        assertThat(ringBufferBytes).isLessThan(linkedListBytes / 4);
+    }
+
+    private static void updateRingBuffers(VehicleStatus[] statuses, AvlReport[] reports, int firstRound) {
+        int found = 0;
+        for (int round = firstRound; round < firstRound + ROUNDS; ++round) {
+            AvlReport report = reports[round];
+            for (VehicleStatus status : statuses) {
+                status.setAvlReport(report);
+                if (status.getPreviousAvlReport(MINIMUM_AGE) != null) ++found;
+            }
+        }
+        assertThat(found).isPositive();
+    }
+
+    // What VehicleStatus did before
+    private static void updateLinkedLists(LinkedList<AvlReport>[] lists, AvlReport[] reports, int firstRound, int maxSize) {
+        int found = 0;
+        for (int round = firstRound; round < firstRound + ROUNDS; ++round) {
+            AvlReport report = reports[round];
+            for (LinkedList<AvlReport> list : lists) {
+                list.addFirst(report);
+                while (list.size() > maxSize) {
+                    list.removeLast();
+                }
+                for (AvlReport previous : list) {
+                    if (previous.getTime() < list.getFirst().getTime() - MINIMUM_AGE) {
+                        ++found;
+                        break;
+                    }
+                }
+            }
+        }
+        assertThat(found).isPositive();
+    }
+
+    // Reports every AVL_INTERVAL for the warm up and the measured rounds, reused for all vehicles so
+    // that only the history allocates
+    private static AvlReport[] reports() {
+        AvlReport[] reports = new AvlReport[2 * ROUNDS];
+        for (int i = 0; i < reports.length; ++i) {
+            reports[i] = AvlReport.builder()
+                    .withVehicleId("vehicle")
+                    .withTime(new Date(1_700_000_000_000L + i * AVL_INTERVAL))
+                    .withLocation(new Location(38.0, -122.0))
+                    .build();
+        }
+        return reports;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static LinkedList<AvlReport>[] linkedLists() {
+        LinkedList<AvlReport>[] lists = new LinkedList[VEHICLES];
+        for (int v = 0; v < VEHICLES; ++v) {
+            lists[v] = new LinkedList<>();
+        }
+        return lists;
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        return ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads ? threads : null;
+    }
+
+    private static long allocated(com.sun.management.ThreadMXBean threads) {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
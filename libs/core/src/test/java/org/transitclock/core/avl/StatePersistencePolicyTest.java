@@ -0,0 +1,191 @@
+package org.transitclock.core.avl;
+
+import java.util.Date;
+
+import org.transitclock.domain.structs.Location;
+import org.transitclock.domain.structs.VehicleState;
+import org.transitclock.properties.CoreProperties;
+import org.transitclock.properties.TravelTimesProperties;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** With the default heartbeat and delay bucket of 60 seconds and minimum distance of 500 meters. */
+class StatePersistencePolicyTest {
+    private static final Location LOCATION = new Location(37.7749, -122.4194);
+
+    private final CoreProperties coreProperties = new CoreProperties();
+    private final StatePersistencePolicy policy =
+            new StatePersistencePolicy(coreProperties, new TravelTimesProperties());
+
+    @BeforeEach
+    void setUp() {
+        coreProperties.getStatePersistence().setCoalesce(true);
+    }
+
+    @Test
+    void everyStateIsStoredWhenNotCoalescing() {
+        coreProperties.getStatePersistence().setCoalesce(false);
+
+        assertThat(policy.shouldStore(new TestState(0), LOCATION)).isTrue();
+        assertThat(policy.shouldStore(new TestState(1), LOCATION)).isTrue();
+    }
+
+    @Test
+    void unchangedStateIsOnlyStoredOnce() {
+        assertThat(policy.shouldStore(new TestState(0), LOCATION)).isTrue();
+        assertThat(policy.shouldStore(new TestState(10), LOCATION)).isFalse();
+        assertThat(policy.shouldStore(new TestState(20), null)).isFalse();
+    }
+
+    @Test
+    void assignmentChangeIsStored() {
+        policy.shouldStore(new TestState(0), LOCATION);
+
+        TestState newTrip = new TestState(10);
+        newTrip.setTripId("trip2");
+        assertThat(policy.shouldStore(newTrip, LOCATION)).isTrue();
+
+        TestState newBlock = new TestState(20);
+        newBlock.setTripId("trip2");
+        newBlock.setBlockId("block2");
+        assertThat(policy.shouldStore(newBlock, LOCATION)).isTrue();
+
+        TestState unassigned = new TestState(30);
+        unassigned.setTripId(null);
+        unassigned.setBlockId(null);
+        assertThat(policy.shouldStore(unassigned, LOCATION)).isTrue();
+    }
+
+    @Test
+    void predictableLayoverAndDelayedChangesAreStored() {
+        policy.shouldStore(new TestState(0), LOCATION);
+
+        TestState notPredictable = new TestState(10);
+        notPredictable.predictable = false;
+        assertThat(policy.shouldStore(notPredictable, LOCATION)).isTrue();
+
+        TestState layover = new TestState(20);
+        layover.predictable = false;
+        layover.layover = true;
+        assertThat(policy.shouldStore(layover, LOCATION)).isTrue();
+
+        TestState delayed = new TestState(30);
+        delayed.predictable = false;
+        delayed.layover = true;
+        delayed.delayed = true;
+        assertThat(policy.shouldStore(delayed, LOCATION)).isTrue();
+    }
+
+    @Test
+    void onlyDelayBucketChangesAreStored() {
+        policy.shouldStore(new TestState(0, 5), LOCATION);
+
+        // Still between 0 and 60 seconds late
+        assertThat(policy.shouldStore(new TestState(10, 55), LOCATION)).isFalse();
+        assertThat(policy.shouldStore(new TestState(20, 65), LOCATION)).isTrue();
+        assertThat(policy.shouldStore(new TestState(30, 119), LOCATION)).isFalse();
+        // Early is a bucket of its own, not the same as up to 60 seconds late
+        assertThat(policy.shouldStore(new TestState(40, -5), LOCATION)).isTrue();
+        // Without a schedule adherence
+        assertThat(policy.shouldStore(new TestState(50, null), LOCATION)).isTrue();
+        assertThat(policy.shouldStore(new TestState(55, null), LOCATION)).isFalse();
+    }
+
+    @Test
+    void heartbeatIsFromTheLastStoredState() {
+        policy.shouldStore(new TestState(0), LOCATION);
+
+        assertThat(policy.shouldStore(new TestState(30), LOCATION)).isFalse();
+        assertThat(policy.shouldStore(new TestState(59), LOCATION)).isFalse();
+        assertThat(policy.shouldStore(new TestState(60), LOCATION)).isTrue();
+        assertThat(policy.shouldStore(new TestState(100), LOCATION)).isFalse();
+        assertThat(policy.shouldStore(new TestState(120), LOCATION)).isTrue();
+    }
+
+    @Test
+    void movingMinDistanceIsStored() {
+        policy.shouldStore(new TestState(0), LOCATION);
+
+        // About 110 meters north, and then about 560 meters from the stored location
+        assertThat(policy.shouldStore(new TestState(10), new Location(37.7759, -122.4194)))
+                .isFalse();
+        assertThat(policy.shouldStore(new TestState(20), new Location(37.7799, -122.4194)))
+                .isTrue();
+        // Distance is from the last stored location
+        assertThat(policy.shouldStore(new TestState(30), new Location(37.7809, -122.4194)))
+                .isFalse();
+    }
+
+    @Test
+    void removedVehicleIsStoredAgain() {
+        policy.shouldStore(new TestState(0), LOCATION);
+
+        policy.removeVehicle("vehicle1");
+
+        assertThat(policy.shouldStore(new TestState(10), LOCATION)).isTrue();
+    }
+
+    @Test
+    void vehiclesAreIndependent() {
+        policy.shouldStore(new TestState(0), LOCATION);
+
+        TestState otherVehicle = new TestState(10);
+        otherVehicle.vehicleId = "vehicle2";
+        assertThat(policy.shouldStore(otherVehicle, LOCATION)).isTrue();
+        assertThat(policy.shouldStore(new TestState(10), LOCATION)).isFalse();
+    }
+
+    /** VehicleState is normally created from a VehicleStatus, which needs the db config. */
+    private static class TestState extends VehicleState {
+        private String vehicleId = "vehicle1";
+        private final Date avlTime;
+        private final Integer schedAdhMsec;
+        private Boolean predictable = true;
+        private Boolean layover = false;
+        private Boolean delayed = false;
+
+        TestState(long avlTimeSecs) {
+            this(avlTimeSecs, 0);
+        }
+
+        TestState(long avlTimeSecs, Integer schedAdhSecs) {
+            this.avlTime = new Date(1_717_000_000_000L + avlTimeSecs * 1000);
+            this.schedAdhMsec = schedAdhSecs != null ? schedAdhSecs * 1000 : null;
+            setBlockId("block1");
+            setTripId("trip1");
+        }
+
+        @Override
+        public String getVehicleId() {
+            return vehicleId;
+        }
+
+        @Override
+        public Date getAvlTime() {
+            return avlTime;
+        }
+
+        @Override
+        public Integer getSchedAdhMsec() {
+            return schedAdhMsec;
+        }
+
+        @Override
+        public Boolean getIsPredictable() {
+            return predictable;
+        }
+
+        @Override
+        public Boolean getIsLayover() {
+            return layover;
+        }
+
+        @Override
+        public Boolean getIsDelayed() {
+            return delayed;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.transitclock.core.dataCache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs updates of a cache from several threads that all start at the same time, the way AVL
+ * threads update the caches, and logs the throughput.
+ */
+public final class Contention {
+    private static final Logger logger = LoggerFactory.getLogger(Contention.class);
+
+    @FunctionalInterface
+    public interface Update {
+        void run(int thread, int i) throws Exception;
+    }
+
+    private Contention() {}
+
+    /**
+     * Calls update for each thread and each i in [0, updatesPerThread) and waits for all of them
+     * to finish. Rethrows the first failure of an update.
+     */
+    public static void run(String name, int threads, int updatesPerThread, Update update) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; ++t) {
+                final int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < updatesPerThread; ++i) {
+                        update.run(thread, i);
+                    }
+                    return null;
+                }));
+            }
+
+            long startNanos = System.nanoTime();
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+            long elapsedNanos = System.nanoTime() - startNanos;
+
+            logger.info("{} with {} threads: {} updates/sec",
+                    name, threads, Math.round(threads * (double) updatesPerThread * TimeUnit.SECONDS.toNanos(1) / elapsedNanos));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.transitclock.core.dataCache;
+
+import java.util.Date;
+import java.util.List;
+
+import org.ehcache.CacheManager;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.CacheManagerBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.transitclock.domain.structs.PredictionForStopPath;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Has many AVL-like threads add predictions to the same and to different stop paths at the same
+ * time. With the striped locks no prediction may be lost and reading a list while it is being
+ * added to must not fail. The throughput for each number of threads is logged.
+ */
+class StopPathPredictionCacheContentionTest {
+    private static final int STOP_PATHS = 50;
+    private static final int PUTS_PER_THREAD = 2_000;
+
+    private CacheManager cacheManager;
+    private StopPathPredictionCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cacheManager = CacheManagerBuilder.newCacheManagerBuilder()
+                .withCache("StopPathPredictionCache", CacheConfigurationBuilder.newCacheConfigurationBuilder(
+                        StopPathCacheKey.class, StopPredictions.class, ResourcePoolsBuilder.heap(STOP_PATHS * 2)))
+                .build(true);
+        cache = new StopPathPredictionCache(cacheManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cacheManager.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4, 16, 32})
+    void noPredictionsLostUnderContention(int threads) throws Exception {
+        Contention.run("StopPathPredictionCache", threads, PUTS_PER_THREAD, (thread, i) -> {
+            int stopPathIndex = (thread * 7 + i) % STOP_PATHS;
+            cache.putPrediction(new PredictionForStopPath(
+                    "v" + thread, new Date(), 1000.0, "trip", stopPathIndex, "test", true, null));
+            // Iterate over a list while other threads are adding to it
+            List<PredictionForStopPath> predictions = cache.getPredictions(new StopPathCacheKey("trip", stopPathIndex));
+            assertThat(predictions).isNotEmpty().doesNotContainNull();
+        });
+
+        int total = 0;
+        for (int stopPathIndex = 0; stopPathIndex < STOP_PATHS; ++stopPathIndex) {
+            List<PredictionForStopPath> predictions = cache.getPredictions(new StopPathCacheKey("trip", stopPathIndex));
+            total += predictions == null ? 0 : predictions.size();
+        }
+        assertThat(total).isEqualTo(threads * PUTS_PER_THREAD);
+    }
+}
@@ -0,0 +1,52 @@
+package org.transitclock.core.dataCache.ehcache;
+
+import org.ehcache.CacheManager;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.CacheManagerBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.transitclock.core.dataCache.Contention;
+import org.transitclock.core.dataCache.KalmanError;
+import org.transitclock.core.dataCache.KalmanErrorCacheKey;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KalmanErrorCacheTest {
+    private static final int STOP_PATHS = 5;
+    private static final int UPDATES_PER_THREAD = 2_000;
+
+    private CacheManager cacheManager;
+    private KalmanErrorCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cacheManager = CacheManagerBuilder.newCacheManagerBuilder()
+                .withCache("KalmanErrorCache", CacheConfigurationBuilder.newCacheConfigurationBuilder(
+                        KalmanErrorCacheKey.class, KalmanError.class, ResourcePoolsBuilder.heap(100)))
+                .build(true);
+        cache = new KalmanErrorCache(cacheManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cacheManager.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4, 16, 32})
+    void noUpdatesLostUnderContention(int threads) throws Exception {
+        // Every error is different so that each put counts as an update
+        Contention.run("KalmanErrorCache", threads, UPDATES_PER_THREAD, (thread, i) -> cache.putErrorValue(
+                new KalmanErrorCacheKey("trip", i % STOP_PATHS), (double) thread * UPDATES_PER_THREAD + i + 1));
+
+        int puts = 0;
+        for (int stopPathIndex = 0; stopPathIndex < STOP_PATHS; ++stopPathIndex) {
+            // The first put creates the error with 0 updates
+            puts += cache.getErrorValue(new KalmanErrorCacheKey("trip", stopPathIndex)).getUpdates() + 1;
+        }
+        assertThat(puts).isEqualTo(threads * UPDATES_PER_THREAD);
+    }
+}
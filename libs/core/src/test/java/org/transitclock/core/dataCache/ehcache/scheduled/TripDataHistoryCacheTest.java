@@ -0,0 +1,77 @@
+package org.transitclock.core.dataCache.ehcache.scheduled;
+
+import java.util.Date;
+import java.util.List;
+
+import org.ehcache.CacheManager;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.CacheManagerBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.transitclock.core.dataCache.Contention;
+import org.transitclock.core.dataCache.TripEvents;
+import org.transitclock.core.dataCache.TripKey;
+import org.transitclock.service.dto.IpcArrivalDeparture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TripDataHistoryCacheTest {
+    private static final int TRIPS = 5;
+    private static final int UPDATES_PER_THREAD = 500;
+    private static final long START = 1_702_080_000_000L;
+
+    private CacheManager cacheManager;
+    private TripDataHistoryCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cacheManager = CacheManagerBuilder.newCacheManagerBuilder()
+                .withCache("arrivalDeparturesByTrip", CacheConfigurationBuilder.newCacheConfigurationBuilder(
+                        TripKey.class, TripEvents.class, ResourcePoolsBuilder.heap(100)))
+                .build(true);
+        // Only putArrivalDeparture() and populateCacheFromDb() use the GTFS filter and configuration
+        cache = new TripDataHistoryCache(cacheManager, null, null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cacheManager.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4, 16, 32})
+    void noEventsLostUnderContention(int threads) throws Exception {
+        Contention.run("scheduled TripDataHistoryCache", threads, UPDATES_PER_THREAD, (thread, i) -> {
+            TripKey tripKey = tripKey(i % TRIPS);
+            cache.put(tripKey, event(tripKey.getTripId(), thread, i));
+            // Read a trip while other threads are adding to it
+            List<IpcArrivalDeparture> events = cache.getTripHistory(tripKey);
+            assertThat(events).isNotEmpty().doesNotContainNull();
+        });
+
+        int events = 0;
+        for (int trip = 0; trip < TRIPS; ++trip) {
+            events += cache.getTripHistory(tripKey(trip)).size();
+        }
+        assertThat(events).isEqualTo(threads * UPDATES_PER_THREAD);
+    }
+
+    private static TripKey tripKey(int trip) {
+        return new TripKey("trip" + trip, 19_700, 28_800);
+    }
+
+    private static IpcArrivalDeparture event(String tripId, int thread, int i) {
+        IpcArrivalDeparture event = new IpcArrivalDeparture();
+        event.setVehicleId("v" + thread);
+        event.setTripId(tripId);
+        event.setStopId("stop" + i);
+        event.setTimeMillis(START + i * 1_000L);
+        event.setFreqStartTime(new Date(START));
+        event.setStopPathIndex(i);
+        event.setArrival(i % 2 == 0);
+        return event;
+    }
+}
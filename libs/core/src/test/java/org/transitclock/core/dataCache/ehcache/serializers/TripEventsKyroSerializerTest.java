@@ -0,0 +1,49 @@
+package org.transitclock.core.dataCache.ehcache.serializers;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.transitclock.core.dataCache.TripEvents;
+import org.transitclock.service.dto.IpcArrivalDeparture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TripEventsKyroSerializerTest {
+    private final TripEventsKyroSerializer serializer = new TripEventsKyroSerializer(getClass().getClassLoader());
+
+    @Test
+    void roundTrip() throws Exception {
+        List<IpcArrivalDeparture> events = new ArrayList<>();
+        for (int i = 0; i < 20; ++i) {
+            IpcArrivalDeparture event = new IpcArrivalDeparture();
+            event.setVehicleId("1234");
+            event.setTripId("trip1");
+            event.setStopId("stop" + i / 2);
+            event.setBlockId(i == 0 ? null : "block1");
+            event.setDirectionId("0");
+            event.setTimeMillis(1_700_000_000_000L + i * 60_000L);
+            event.setFreqStartTime(i == 5 ? new Date(1_699_990_000_000L) : null);
+            event.setGtfsStopSeq(i / 2 + 1);
+            event.setStopPathIndex(i / 2);
+            event.setArrival(i % 2 == 0);
+            events.add(event);
+        }
+        TripEvents tripEvents = new TripEvents(events);
+
+        TripEvents copy = serializer.read(serializer.serialize(tripEvents));
+
+        assertThat(copy).isEqualTo(tripEvents);
+        // The IDs are shared by the events that were read
+        assertThat(copy.getEvents().get(0).getTripId()).isSameAs(copy.getEvents().get(1).getTripId());
+    }
+
+    @Test
+    void valueInOldFormatIsEmpty() throws Exception {
+        TripEvents copy = serializer.read(ByteBuffer.wrap(new byte[] {1, 0, 3}));
+
+        assertThat(copy.getEvents()).isEmpty();
+    }
+}
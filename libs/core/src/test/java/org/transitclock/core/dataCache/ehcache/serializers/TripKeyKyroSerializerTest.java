@@ -0,0 +1,48 @@
+package org.transitclock.core.dataCache.ehcache.serializers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+import org.junit.jupiter.api.Test;
+import org.transitclock.core.dataCache.TripKey;
+import org.transitclock.utils.Time;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TripKeyKyroSerializerTest {
+    private final TripKeyKyroSerializer serializer = new TripKeyKyroSerializer(getClass().getClassLoader());
+
+    @Test
+    void roundTrip() throws Exception {
+        long time = 1_700_000_000_000L;
+        TripKey key = new TripKey("trip1", new Date(time), 3600);
+
+        ByteBuffer binary = serializer.serialize(key);
+        TripKey copy = serializer.read(binary.duplicate());
+
+        assertThat(copy).isEqualTo(key).hasSameHashCodeAs(key);
+        assertThat(copy.getServiceDay()).isEqualTo(Time.getEpochDay(time));
+        assertThat(serializer.equals(key, binary)).isTrue();
+        assertThat(binary.remaining()).isLessThan(16);
+    }
+
+    @Test
+    void roundTripWithoutStartTime() throws Exception {
+        TripKey key = new TripKey("trip1", 19_000, null);
+
+        assertThat(serializer.read(serializer.serialize(key)).getStartTime()).isNull();
+    }
+
+    @Test
+    void javaSerializedKeyMatchesNothing() throws Exception {
+        TripKey key = new TripKey("trip1", 19_000, 3600);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(key);
+        }
+
+        assertThat(serializer.equals(key, ByteBuffer.wrap(bytes.toByteArray()))).isFalse();
+    }
+}
@@ -0,0 +1,134 @@
+package org.transitclock.core.dataCache.frequency;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.transitclock.core.dataCache.Contention;
+import org.transitclock.core.dataCache.HistoricalAverage;
+import org.transitclock.core.dataCache.StopPathCacheKey;
+import org.transitclock.properties.CoreProperties;
+import org.transitclock.properties.GtfsProperties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the averages of the bucket arrays with those of the sorted maps of HistoricalAverage
+ * objects that the cache used to use, for the same sequence of samples, and checks that no samples
+ * are lost when several threads add them.
+ */
+class FrequencyBasedHistoricalAverageCacheTest {
+    private static final String[] TRIPS = {"trip1", "trip2", "trip3"};
+    private static final int STOP_PATHS = 10;
+    private static final int SAMPLES = 20_000;
+
+    @ParameterizedTest
+    @ValueSource(ints = {300, 900, 3600, 10800})
+    void averagesMatchSortedMapImplementation(int increment) {
+        CoreProperties coreProperties = new CoreProperties();
+        coreProperties.getFrequency().setCacheIncrementsForFrequencyService(increment);
+        FrequencyBasedHistoricalAverageCache cache =
+                new FrequencyBasedHistoricalAverageCache(null, new GtfsProperties(), coreProperties, null);
+        ReferenceCache reference = new ReferenceCache(increment);
+
+        Random random = new Random(increment);
+        for (int i = 0; i < SAMPLES; ++i) {
+            // Same range as secondsFromMidnight() with a start hour of 2, including DST days
+            int time = FrequencyBasedHistoricalAverageCache.round(
+                    -3 * 3600 + random.nextInt(24 * 3600 + 2 * 3600), increment);
+            StopPathCacheKey key = new StopPathCacheKey(
+                    TRIPS[random.nextInt(TRIPS.length)], random.nextInt(STOP_PATHS), random.nextBoolean(), (long) time);
+            double duration = 1000 + random.nextInt(600_000);
+
+            cache.updateAverage(key, duration);
+            reference.update(key, duration);
+        }
+
+        // Look up every bucket start, times within buckets and times without any data
+        for (String trip : TRIPS) {
+            for (int stopPathIndex = 0; stopPathIndex < STOP_PATHS + 1; ++stopPathIndex) {
+                for (boolean travelTime : new boolean[] {true, false}) {
+                    for (long time = -26 * 3600; time < 26 * 3600; time += increment / 3) {
+                        StopPathCacheKey key = new StopPathCacheKey(trip, stopPathIndex, travelTime, time);
+                        HistoricalAverage expected = reference.getAverage(key);
+                        HistoricalAverage actual = cache.getAverage(key);
+                        if (expected == null) {
+                            assertThat(actual).as("%s", key).isNull();
+                        } else {
+                            assertThat(actual).as("%s", key).isNotNull();
+                            assertThat(actual.getCount()).as("%s", key).isEqualTo(expected.getCount());
+                            assertThat(actual.getAverage()).as("%s", key).isEqualTo(expected.getAverage());
+                        }
+                    }
+                }
+            }
+        }
+
+        List<StopPathCacheKey> keys = cache.getKeys();
+        assertThat(new HashSet<>(keys)).hasSameSizeAs(keys).isEqualTo(reference.getKeys());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4, 16, 32})
+    void noSamplesLostUnderContention(int threads) throws Exception {
+        CoreProperties coreProperties = new CoreProperties();
+        int increment = coreProperties.getFrequency().getCacheIncrementsForFrequencyService();
+        FrequencyBasedHistoricalAverageCache cache =
+                new FrequencyBasedHistoricalAverageCache(null, new GtfsProperties(), coreProperties, null);
+        int updatesPerThread = 2_000;
+
+        Contention.run("FrequencyBasedHistoricalAverageCache", threads, updatesPerThread, (thread, i) ->
+                cache.updateAverage(new StopPathCacheKey("trip1", i % 5, true, (long) (i % 3) * increment), 60_000));
+
+        int samples = 0;
+        for (StopPathCacheKey key : cache.getKeys()) {
+            HistoricalAverage average = cache.getAverage(key);
+            assertThat(average.getAverage()).isEqualTo(60_000);
+            samples += average.getCount();
+        }
+        assertThat(samples).isEqualTo(threads * updatesPerThread);
+    }
+
+    /** The sorted map based lookups of the cache before it used bucket arrays. */
+    private static class ReferenceCache {
+        private final int increment;
+        private final Map<StopPathCacheKey, TreeMap<Long, HistoricalAverage>> m = new HashMap<>();
+
+        ReferenceCache(int increment) {
+            this.increment = increment;
+        }
+
+        void update(StopPathCacheKey key, double value) {
+            HistoricalAverage average = getAverage(key);
+            if (average == null) average = new HistoricalAverage();
+            average.update(value);
+            m.computeIfAbsent(stopPathKey(key), k -> new TreeMap<>()).put(key.getStartTime(), average);
+        }
+
+        HistoricalAverage getAverage(StopPathCacheKey key) {
+            TreeMap<Long, HistoricalAverage> result = m.get(stopPathKey(key));
+            if (result == null) return null;
+            SortedMap<Long, HistoricalAverage> subresult =
+                    result.subMap(key.getStartTime(), key.getStartTime() + increment);
+            return subresult.size() == 1 ? subresult.get(subresult.lastKey()) : null;
+        }
+
+        Set<StopPathCacheKey> getKeys() {
+            Set<StopPathCacheKey> keys = new HashSet<>();
+            m.forEach((key, buckets) -> buckets.keySet().forEach(startTime -> keys.add(
+                    new StopPathCacheKey(key.getTripId(), key.getStopPathIndex(), key.isTravelTime(), startTime))));
+            return keys;
+        }
+
+        private static StopPathCacheKey stopPathKey(StopPathCacheKey key) {
+            return new StopPathCacheKey(key.getTripId(), key.getStopPathIndex(), key.isTravelTime());
+        }
+    }
+}
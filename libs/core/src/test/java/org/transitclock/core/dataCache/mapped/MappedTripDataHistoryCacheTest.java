@@ -0,0 +1,155 @@
+package org.transitclock.core.dataCache.mapped;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.transitclock.core.dataCache.Contention;
+import org.transitclock.core.dataCache.TripKey;
+import org.transitclock.properties.CoreProperties;
+import org.transitclock.service.dto.IpcArrivalDeparture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.transitclock.core.dataCache.mapped.TripEventSegmentTest.event;
+
+class MappedTripDataHistoryCacheTest {
+    private static final int DAY = 19_700;
+
+    @TempDir
+    Path directory;
+
+    private MappedTripDataHistoryCache cache;
+
+    @BeforeEach
+    void open() {
+        cache = cache();
+    }
+
+    @AfterEach
+    void close() {
+        cache.close();
+    }
+
+    @Test
+    void eventsAreKeptPerTripAndDay() throws Exception {
+        TripKey today = new TripKey("trip1", DAY, 28_800);
+        TripKey yesterday = new TripKey("trip1", DAY - 1, 28_800);
+        cache.put(today, event("trip1", 0));
+        cache.put(today, event("trip1", 1));
+        cache.put(yesterday, event("trip1", 2));
+
+        assertThat(cache.getTripHistory(today)).containsExactly(event("trip1", 1), event("trip1", 0));
+        assertThat(cache.getTripHistory(yesterday)).containsExactly(event("trip1", 2));
+        assertThat(cache.getTripHistory(new TripKey("trip1", DAY - 2, 28_800))).isNull();
+        assertThat(cache.getKeys()).containsExactlyInAnyOrder(today, yesterday);
+        assertThat(segmentFile(DAY)).exists();
+        assertThat(segmentFile(DAY - 1)).exists();
+    }
+
+    @Test
+    void newDayDropsDaysOutsideOfRetention() throws Exception {
+        // Retention is 2 days
+        TripKey first = new TripKey("trip1", DAY, 28_800);
+        TripKey second = new TripKey("trip1", DAY + 1, 28_800);
+        cache.put(first, event("trip1", 0));
+        cache.put(second, event("trip1", 0));
+        assertThat(cache.getTripHistory(first)).isNotNull();
+
+        TripKey third = new TripKey("trip1", DAY + 2, 28_800);
+        cache.put(third, event("trip1", 0));
+
+        assertThat(cache.getTripHistory(first)).isNull();
+        assertThat(segmentFile(DAY)).doesNotExist();
+        assertThat(cache.getTripHistory(second)).hasSize(1);
+        assertThat(cache.getTripHistory(third)).hasSize(1);
+        assertThat(cache.getKeys()).containsExactlyInAnyOrder(second, third);
+    }
+
+    @Test
+    void eventsOlderThanRetentionAreDropped() throws Exception {
+        cache.put(new TripKey("trip1", DAY, 28_800), event("trip1", 0));
+
+        TripKey old = new TripKey("trip1", DAY - 2, 28_800);
+        cache.put(old, event("trip1", 0));
+
+        assertThat(cache.getTripHistory(old)).isNull();
+        assertThat(segmentFile(DAY - 2)).doesNotExist();
+    }
+
+    @Test
+    void existingSegmentFilesAreDeletedOnStartup() throws Exception {
+        cache.put(new TripKey("trip1", DAY, 28_800), event("trip1", 0));
+        Path other = Files.writeString(directory.resolve("other.txt"), "not a segment");
+
+        // As after a restart without a clean shutdown
+        MappedTripDataHistoryCache reopened = cache();
+        try {
+            assertThat(segmentFile(DAY)).doesNotExist();
+            assertThat(other).exists();
+            assertThat(reopened.getKeys()).isEmpty();
+
+            TripKey trip = new TripKey("trip2", DAY, 28_800);
+            reopened.put(trip, event("trip2", 0));
+            assertThat(reopened.getTripHistory(trip)).containsExactly(event("trip2", 0));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void closeDeletesSegmentFiles() throws Exception {
+        cache.put(new TripKey("trip1", DAY, 28_800), event("trip1", 0));
+
+        cache.close();
+
+        assertThat(segmentFile(DAY)).doesNotExist();
+        assertThat(cache.getKeys()).isEmpty();
+    }
+
+    @Test
+    void readListsCanBeModified() throws Exception {
+        TripKey trip = new TripKey("trip1", DAY, 28_800);
+        cache.put(trip, event("trip1", 0));
+
+        List<IpcArrivalDeparture> events = cache.getTripHistory(trip);
+        events.clear();
+
+        assertThat(cache.getTripHistory(trip)).hasSize(1);
+    }
+
+    @Test
+    void noEventsLostUnderContention() throws Exception {
+        int threads = 16;
+        int updatesPerThread = 500;
+        Contention.run("MappedTripDataHistoryCache", threads, updatesPerThread, (thread, i) -> {
+            // Also on two days so that threads race to create the segments
+            TripKey trip = new TripKey("trip" + i % 5, DAY + i % 2, 28_800);
+            cache.put(trip, event(trip.getTripId(), i));
+            assertThat(cache.getTripHistory(trip)).isNotEmpty().doesNotContainNull();
+        });
+
+        int events = 0;
+        for (TripKey trip : cache.getKeys()) {
+            events += cache.getTripHistory(trip).size();
+        }
+        assertThat(cache.getKeys()).hasSize(10);
+        assertThat(events).isEqualTo(threads * updatesPerThread);
+    }
+
+    private MappedTripDataHistoryCache cache() {
+        CoreProperties properties = new CoreProperties();
+        properties.getCache().setTripDataHistoryDirectory(directory.toString());
+        properties.getCache().setTripDataHistoryRetentionDays(2);
+        // Only putArrivalDeparture() and populateCacheFromDb() use the GTFS configuration
+        return new MappedTripDataHistoryCache(null, null, properties);
+    }
+
+    private Path segmentFile(long epochDay) {
+        return directory.resolve("tripHistory-" + LocalDate.ofEpochDay(epochDay) + ".dat");
+    }
+}
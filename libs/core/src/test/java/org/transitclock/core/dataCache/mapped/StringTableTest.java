@@ -0,0 +1,74 @@
+package org.transitclock.core.dataCache.mapped;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StringTableTest {
+    private final StringTable strings = new StringTable();
+
+    @Test
+    void sameStringGetsSameId() {
+        int id = strings.id("stop1");
+
+        assertThat(strings.id(new String("stop1"))).isEqualTo(id);
+        assertThat(strings.id("stop2")).isNotEqualTo(id);
+        assertThat(strings.get(id)).isEqualTo("stop1");
+        assertThat(strings.size()).isEqualTo(2);
+    }
+
+    @Test
+    void nullHasItsOwnId() {
+        assertThat(strings.id(null)).isEqualTo(StringTable.NULL_ID);
+        assertThat(strings.get(StringTable.NULL_ID)).isNull();
+        assertThat(strings.size()).isZero();
+    }
+
+    @Test
+    void growsPastInitialCapacity() {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 5_000; ++i) {
+            ids.add(strings.id("vehicle" + i));
+        }
+
+        for (int i = 0; i < 5_000; ++i) {
+            assertThat(strings.get(ids.get(i))).isEqualTo("vehicle" + i);
+        }
+        assertThat(strings.size()).isEqualTo(5_000);
+    }
+
+    @Test
+    void concurrentAddsAgreeOnIds() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<CompletableFuture<int[]>> results = new ArrayList<>();
+            for (int t = 0; t < 8; ++t) {
+                results.add(CompletableFuture.supplyAsync(() -> {
+                    int[] ids = new int[2_000];
+                    for (int i = 0; i < ids.length; ++i) {
+                        ids[i] = strings.id("trip" + i);
+                    }
+                    return ids;
+                }, executor));
+            }
+
+            int[] first = results.get(0).get(10, TimeUnit.SECONDS);
+            for (CompletableFuture<int[]> result : results) {
+                assertThat(result.get(10, TimeUnit.SECONDS)).containsExactly(first);
+            }
+            for (int i = 0; i < first.length; ++i) {
+                assertThat(strings.get(first[i])).isEqualTo("trip" + i);
+            }
+            assertThat(strings.size()).isEqualTo(2_000);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
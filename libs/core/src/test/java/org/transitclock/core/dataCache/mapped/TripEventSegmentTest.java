@@ -0,0 +1,169 @@
+package org.transitclock.core.dataCache.mapped;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.transitclock.core.dataCache.TripKey;
+import org.transitclock.service.dto.IpcArrivalDeparture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TripEventSegmentTest {
+    private static final int DAY = 19_700;
+    private static final long START = 1_702_080_000_000L;
+
+    @TempDir
+    Path directory;
+
+    private final StringTable strings = new StringTable();
+    private Path file;
+    private TripEventSegment segment;
+
+    @BeforeEach
+    void open() throws Exception {
+        file = directory.resolve("segment.dat");
+        segment = new TripEventSegment(file, strings);
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        segment.close();
+    }
+
+    @Test
+    void eventsRoundTrip() throws Exception {
+        TripKey trip1 = new TripKey("trip1", DAY, 28_800);
+        TripKey trip2 = new TripKey("trip2", DAY, 29_400);
+        List<IpcArrivalDeparture> events1 = new ArrayList<>();
+        List<IpcArrivalDeparture> events2 = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            events1.add(event("trip1", i));
+            events2.add(event("trip2", i));
+        }
+        // Interleaved and out of order, as events of different trips arrive
+        for (int i = 9; i >= 0; --i) {
+            segment.append(trip1, events1.get(i));
+            segment.append(trip2, events2.get(i));
+        }
+
+        assertThat(segment.read(trip1)).containsExactlyElementsOf(newestFirst(events1));
+        assertThat(segment.read(trip2)).containsExactlyElementsOf(newestFirst(events2));
+        assertThat(segment.getKeys()).containsExactlyInAnyOrder(trip1, trip2);
+        assertThat(segment.getRecordCount()).isEqualTo(20);
+    }
+
+    @Test
+    void nullFieldsRoundTrip() throws Exception {
+        TripKey trip = new TripKey("trip1", DAY, 28_800);
+        IpcArrivalDeparture event = event("trip1", 0);
+        event.setBlockId(null);
+        event.setServiceId(null);
+        event.setFreqStartTime(null);
+        segment.append(trip, event);
+
+        IpcArrivalDeparture read = segment.read(trip).get(0);
+        assertThat(read).isEqualTo(event);
+        assertThat(read.getBlockId()).isNull();
+        assertThat(read.getFreqStartTime()).isNull();
+    }
+
+    @Test
+    void unknownTripHasNoEvents() {
+        assertThat(segment.read(new TripKey("trip1", DAY, 28_800))).isNull();
+    }
+
+    @Test
+    void tripSpansChunks() throws Exception {
+        TripKey trip = new TripKey("trip1", DAY, 28_800);
+        TripKey other = new TripKey("trip2", DAY, 28_800);
+        // A chunk is 64K records, so the events of the trip are in the first and second chunk
+        segment.append(trip, event("trip1", 0));
+        for (int i = 0; i < 70_000; ++i) {
+            segment.append(other, event("trip2", i));
+        }
+        segment.append(trip, event("trip1", 1));
+
+        assertThat(segment.read(trip)).containsExactly(event("trip1", 1), event("trip1", 0));
+        assertThat(segment.read(other)).hasSize(70_000);
+        assertThat(segment.getRecordCount()).isEqualTo(70_002);
+    }
+
+    @Test
+    void readsAreNewestFirst() throws Exception {
+        TripKey trip = new TripKey("trip1", DAY, 28_800);
+        List<IpcArrivalDeparture> events = new ArrayList<>();
+        for (int i = 0; i < 6; ++i) {
+            events.add(event("trip1", i));
+        }
+        List<IpcArrivalDeparture> shuffled = new ArrayList<>(events);
+        Collections.shuffle(shuffled, new Random(1));
+        for (IpcArrivalDeparture event : shuffled) {
+            segment.append(trip, event);
+        }
+
+        assertThat(segment.read(trip)).containsExactlyElementsOf(newestFirst(events));
+    }
+
+    @Test
+    void existingFileIsTruncatedWhenReopened() throws Exception {
+        segment.append(new TripKey("trip1", DAY, 28_800), event("trip1", 0));
+        segment.close();
+        Files.write(file, new byte[TripEventSegment.RECORD_SIZE * 10]);
+
+        segment = new TripEventSegment(file, strings);
+
+        assertThat(Files.size(file)).isZero();
+        assertThat(segment.getKeys()).isEmpty();
+        assertThat(segment.getRecordCount()).isZero();
+
+        TripKey trip = new TripKey("trip2", DAY, 28_800);
+        segment.append(trip, event("trip2", 0));
+        assertThat(segment.read(trip)).containsExactly(event("trip2", 0));
+    }
+
+    @Test
+    void closeDeletesFileAndIgnoresLaterAppends() throws Exception {
+        TripKey trip = new TripKey("trip1", DAY, 28_800);
+        segment.append(trip, event("trip1", 0));
+
+        segment.close();
+        segment.append(trip, event("trip1", 1));
+
+        assertThat(file).doesNotExist();
+        assertThat(segment.read(trip)).isNull();
+        assertThat(segment.getRecordCount()).isEqualTo(1);
+    }
+
+    private static List<IpcArrivalDeparture> newestFirst(List<IpcArrivalDeparture> events) {
+        List<IpcArrivalDeparture> reversed = new ArrayList<>(events);
+        Collections.reverse(reversed);
+        return reversed;
+    }
+
+    // Arrival for even and departure for odd i, a minute apart
+    static IpcArrivalDeparture event(String tripId, int i) {
+        IpcArrivalDeparture event = new IpcArrivalDeparture();
+        event.setVehicleId("1234");
+        event.setTripId(tripId);
+        event.setStopId("stop" + i / 2);
+        event.setBlockId("block1");
+        event.setDirectionId("0");
+        event.setRouteId("route1");
+        event.setServiceId("weekday");
+        event.setTimeMillis(START + i * 60_000L);
+        event.setFreqStartTime(new Date(START - 600_000L));
+        event.setGtfsStopSeq(i / 2 + 1);
+        event.setStopPathIndex(i / 2);
+        event.setArrival(i % 2 == 0);
+        return event;
+    }
+}
@@ -0,0 +1,54 @@
+package org.transitclock.core.dataCache.scheduled;
+
+import org.ehcache.CacheManager;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.CacheManagerBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.transitclock.core.dataCache.Contention;
+import org.transitclock.core.dataCache.HistoricalAverage;
+import org.transitclock.core.dataCache.StopPathCacheKey;
+import org.transitclock.properties.CoreProperties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScheduleBasedHistoricalAverageCacheTest {
+    private static final int STOP_PATHS = 5;
+    private static final int UPDATES_PER_THREAD = 2_000;
+
+    private CacheManager cacheManager;
+    private ScheduleBasedHistoricalAverageCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cacheManager = CacheManagerBuilder.newCacheManagerBuilder()
+                .withCache("HistoricalAverageCache", CacheConfigurationBuilder.newCacheConfigurationBuilder(
+                        StopPathCacheKey.class, HistoricalAverage.class, ResourcePoolsBuilder.heap(100)))
+                .build(true);
+        // Only putArrivalDeparture() uses the trip data history, GTFS and filter
+        cache = new ScheduleBasedHistoricalAverageCache(cacheManager, null, null, null, new CoreProperties());
+    }
+
+    @AfterEach
+    void tearDown() {
+        cacheManager.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4, 16, 32})
+    void noSamplesLostUnderContention(int threads) throws Exception {
+        Contention.run("ScheduleBasedHistoricalAverageCache", threads, UPDATES_PER_THREAD, (thread, i) ->
+                cache.updateAverage(new StopPathCacheKey("trip", i % STOP_PATHS, i % 2 == 0), 60_000));
+
+        int samples = 0;
+        for (StopPathCacheKey key : cache.getKeys()) {
+            HistoricalAverage average = cache.getAverage(key);
+            assertThat(average.getAverage()).isEqualTo(60_000);
+            samples += average.getCount();
+        }
+        assertThat(samples).isEqualTo(threads * UPDATES_PER_THREAD);
+    }
+}
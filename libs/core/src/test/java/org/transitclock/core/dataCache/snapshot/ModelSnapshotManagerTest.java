@@ -0,0 +1,281 @@
+package org.transitclock.core.dataCache.snapshot;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.ehcache.CacheManager;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.CacheManagerBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.hibernate.StatelessSession;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.transitclock.core.dataCache.DwellTimeModelCacheInterface;
+import org.transitclock.core.dataCache.HistoricalAverage;
+import org.transitclock.core.dataCache.KalmanError;
+import org.transitclock.core.dataCache.KalmanErrorCacheKey;
+import org.transitclock.core.dataCache.StopPathCacheKey;
+import org.transitclock.core.dataCache.ehcache.KalmanErrorCache;
+import org.transitclock.core.dataCache.frequency.FrequencyBasedHistoricalAverageCache;
+import org.transitclock.core.dataCache.scheduled.ScheduleBasedHistoricalAverageCache;
+import org.transitclock.core.prediction.scheduled.dwell.DwellModel;
+import org.transitclock.core.prediction.scheduled.dwell.DwellRLS;
+import org.transitclock.domain.structs.ArrivalDeparture;
+import org.transitclock.domain.structs.Headway;
+import org.transitclock.properties.CoreProperties;
+import org.transitclock.properties.GtfsProperties;
+import org.transitclock.properties.PredictionProperties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ModelSnapshotManagerTest {
+    private static final StopPathCacheKey SCHEDULE_KEY = new StopPathCacheKey("trip1", 3, true);
+    // Start of the second bucket with the default increment of 3 hours
+    private static final StopPathCacheKey FREQUENCY_KEY = new StopPathCacheKey("trip2", 4, false, 10_800L);
+    private static final KalmanErrorCacheKey KALMAN_KEY = new KalmanErrorCacheKey("trip1", 3);
+    private static final StopPathCacheKey DWELL_KEY = new StopPathCacheKey("trip1", 5, false);
+
+    @TempDir
+    Path directory;
+
+    private Path file;
+    private CoreProperties coreProperties;
+    private final List<Models> models = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        file = directory.resolve("modelSnapshot.bin");
+        coreProperties = new CoreProperties();
+        coreProperties.getCache().setModelSnapshotEnabled(true);
+        coreProperties.getCache().setModelSnapshotFile(file.toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (Models m : models) {
+            m.cacheManager.close();
+        }
+    }
+
+    @Test
+    void snapshotIsRestoredIntoCaches() throws Exception {
+        Models written = populatedModels();
+        long before = System.currentTimeMillis();
+        written.manager.cachesPopulated();
+        written.manager.writeSnapshot();
+        long after = System.currentTimeMillis();
+
+        Models restored = new Models();
+        Date watermark = restored.manager.loadSnapshot(new Date(0));
+
+        assertThat(watermark).isNotNull();
+        assertThat(watermark.getTime()).isBetween(before, after);
+
+        HistoricalAverage schedule = restored.scheduleCache.getAverage(SCHEDULE_KEY);
+        assertThat(schedule.getCount()).isEqualTo(2);
+        assertThat(schedule.getAverage()).isEqualTo(90_000);
+        HistoricalAverage frequency = restored.frequencyCache.getAverage(FREQUENCY_KEY);
+        assertThat(frequency.getCount()).isEqualTo(1);
+        assertThat(frequency.getAverage()).isEqualTo(30_000);
+        assertThat(restored.scheduleCache.getKeys()).containsExactly(SCHEDULE_KEY);
+        assertThat(restored.frequencyCache.getKeys()).containsExactly(FREQUENCY_KEY);
+
+        KalmanError error = restored.errorCache.getErrorValue(KALMAN_KEY);
+        assertThat(error.getError()).isEqualTo(12.5);
+        assertThat(error.getUpdates()).isEqualTo(written.errorCache.getErrorValue(KALMAN_KEY).getUpdates());
+
+        DwellModel dwell = restored.dwellCache.getModel(DWELL_KEY);
+        assertThat(dwell).isInstanceOf(DwellRLS.class);
+        assertThat(dwell.predict(300_000, null))
+                .isEqualTo(written.dwellCache.getModel(DWELL_KEY).predict(300_000, null))
+                .isNotNull();
+    }
+
+    @Test
+    void nothingIsWrittenBeforeCachesArePopulated() {
+        populatedModels().manager.writeSnapshot();
+
+        assertThat(file).doesNotExist();
+    }
+
+    @Test
+    void nothingIsWrittenWhenDisabled() {
+        coreProperties.getCache().setModelSnapshotEnabled(false);
+        Models written = populatedModels();
+        written.manager.cachesPopulated();
+        written.manager.writeSnapshot();
+
+        assertThat(file).doesNotExist();
+        assertThat(new Models().manager.loadSnapshot(new Date(0))).isNull();
+    }
+
+    @Test
+    void missingSnapshotIsIgnored() {
+        assertIgnored();
+    }
+
+    @Test
+    void snapshotOlderThanOldestWatermarkIsIgnored() throws Exception {
+        writeSnapshot();
+
+        Models restored = new Models();
+        assertThat(restored.manager.loadSnapshot(new Date(System.currentTimeMillis() + 60_000))).isNull();
+        assertThat(restored.isEmpty()).isTrue();
+    }
+
+    @Test
+    void truncatedSnapshotIsIgnored() throws Exception {
+        byte[] bytes = writeSnapshot();
+        Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+        assertIgnored();
+
+        Files.write(file, new byte[4]);
+        assertIgnored();
+    }
+
+    @Test
+    void snapshotWithBadChecksumIsIgnored() throws Exception {
+        byte[] bytes = writeSnapshot();
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file, bytes);
+
+        assertIgnored();
+    }
+
+    @Test
+    void snapshotWithBadMagicIsIgnored() throws Exception {
+        byte[] bytes = writeSnapshot();
+        ByteBuffer.wrap(bytes).putInt(0, 0x12345678);
+        Files.write(file, withChecksum(bytes));
+
+        assertIgnored();
+    }
+
+    @Test
+    void snapshotWithUnsupportedVersionIsIgnored() throws Exception {
+        byte[] bytes = writeSnapshot();
+        ByteBuffer.wrap(bytes).putInt(4, 2);
+        Files.write(file, withChecksum(bytes));
+
+        assertIgnored();
+    }
+
+    private byte[] writeSnapshot() throws Exception {
+        Models written = populatedModels();
+        written.manager.cachesPopulated();
+        written.manager.writeSnapshot();
+        return Files.readAllBytes(file);
+    }
+
+    // Recomputes the trailing CRC32 so that only the changed field makes the snapshot unusable
+    private static byte[] withChecksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - Long.BYTES);
+        ByteBuffer.wrap(bytes).putLong(bytes.length - Long.BYTES, crc.getValue());
+        return bytes;
+    }
+
+    private void assertIgnored() {
+        Models restored = new Models();
+        assertThat(restored.manager.loadSnapshot(new Date(0))).isNull();
+        assertThat(restored.isEmpty()).isTrue();
+    }
+
+    private Models populatedModels() {
+        Models m = new Models();
+        HistoricalAverage schedule = new HistoricalAverage();
+        schedule.update(60_000);
+        schedule.update(120_000);
+        m.scheduleCache.putAverage(SCHEDULE_KEY, schedule);
+        HistoricalAverage frequency = new HistoricalAverage();
+        frequency.update(30_000);
+        m.frequencyCache.putAverage(FREQUENCY_KEY, frequency);
+        m.errorCache.putErrorValue(KALMAN_KEY, 10.0);
+        m.errorCache.putErrorValue(KALMAN_KEY, 12.5);
+
+        DwellModel dwell = new DwellRLS(new PredictionProperties.Rls());
+        dwell.putSample(20_000, 240_000, null);
+        dwell.putSample(30_000, 360_000, null);
+        dwell.putSample(25_000, 300_000, null);
+        m.dwellCache.putModel(DWELL_KEY, dwell);
+        return m;
+    }
+
+    private class Models {
+        private final CacheManager cacheManager = CacheManagerBuilder.newCacheManagerBuilder()
+                .withCache("HistoricalAverageCache", CacheConfigurationBuilder.newCacheConfigurationBuilder(
+                        StopPathCacheKey.class, HistoricalAverage.class, ResourcePoolsBuilder.heap(100)))
+                .withCache("KalmanErrorCache", CacheConfigurationBuilder.newCacheConfigurationBuilder(
+                        KalmanErrorCacheKey.class, KalmanError.class, ResourcePoolsBuilder.heap(100)))
+                .build(true);
+        // Only populating the caches from the db uses the trip data history, GTFS and filter
+        private final ScheduleBasedHistoricalAverageCache scheduleCache =
+                new ScheduleBasedHistoricalAverageCache(cacheManager, null, null, null, coreProperties);
+        private final FrequencyBasedHistoricalAverageCache frequencyCache =
+                new FrequencyBasedHistoricalAverageCache(null, new GtfsProperties(), coreProperties, null);
+        private final KalmanErrorCache errorCache = new KalmanErrorCache(cacheManager);
+        private final MapDwellTimeModelCache dwellCache = new MapDwellTimeModelCache();
+        private final ModelSnapshotManager manager =
+                new ModelSnapshotManager(scheduleCache, frequencyCache, errorCache, dwellCache, coreProperties);
+
+        private Models() {
+            models.add(this);
+        }
+
+        private boolean isEmpty() {
+            return scheduleCache.getKeys().isEmpty()
+                    && frequencyCache.getKeys().isEmpty()
+                    && errorCache.getKeys().isEmpty()
+                    && dwellCache.getKeys().isEmpty();
+        }
+    }
+
+    private static class MapDwellTimeModelCache implements DwellTimeModelCacheInterface {
+        private final Map<StopPathCacheKey, DwellModel> models = new HashMap<>();
+
+        @Override
+        public void addSample(ArrivalDeparture event, Headway headway, long dwellTime) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void addSample(ArrivalDeparture departure) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Long predictDwellTime(StopPathCacheKey cacheKey, Headway headway) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void populateCacheFromDb(StatelessSession session, Date startDate, Date endDate) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<StopPathCacheKey> getKeys() {
+            return new ArrayList<>(models.keySet());
+        }
+
+        @Override
+        public DwellModel getModel(StopPathCacheKey key) {
+            return models.get(key);
+        }
+
+        @Override
+        public void putModel(StopPathCacheKey key, DwellModel model) {
+            models.put(key, model);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package org.transitclock.core.prediction.scheduled.dwell.rls;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import smile.regression.RLS;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Checks that RecursiveLeastSquares gives the same predictions as smile's RLS, which the dwell
+ * time model used before, for headway and log10 dwell time samples like those of the dwell time
+ * model.
+ */
+class RecursiveLeastSquaresTest {
+    private static final int SAMPLES = 500;
+    // Predictions of the dwell time model are log10 of a dwell time in msec so around 4. smile fits with an SVD and this
+    // with the normal equations. With a forgetting factor below 1 the update doesn't keep V
+    // bounded, so that last bit of difference grows to around 1e-4 over the samples.
+    private static final double TOLERANCE = 1e-3;
+
+    @ParameterizedTest
+    @ValueSource(doubles = {0.5, 0.75, 0.95, 1.0})
+    void agreesWithSmile(double lambda) {
+        Random random = new Random(42);
+        double[][] x = {{headway(random)}, {headway(random)}};
+        double[] y = {dwell(random), dwell(random)};
+
+        RLS smile = new RLS(x, y, lambda);
+        RecursiveLeastSquares rls = new RecursiveLeastSquares(1, lambda);
+        assertThat(rls.fit(x, y)).isTrue();
+        assertSamePredictions(smile, rls);
+
+        for (int i = 0; i < SAMPLES; ++i) {
+            double headway = headway(random);
+            double dwell = dwell(random);
+            smile.learn(new double[][] {{headway}}, new double[] {dwell});
+            rls.learn(headway, dwell);
+            assertSamePredictions(smile, rls);
+        }
+    }
+
+    @Test
+    void agreesWithSmileForSeveralFeatures() {
+        Random random = new Random(7);
+        double[][] x = new double[4][3];
+        double[] y = new double[4];
+        for (int i = 0; i < x.length; ++i) {
+            x[i] = features(random);
+            y[i] = random.nextGaussian();
+        }
+
+        RLS smile = new RLS(x, y, 1.0);
+        RecursiveLeastSquares rls = new RecursiveLeastSquares(3, 1.0);
+        assertThat(rls.fit(x, y)).isTrue();
+
+        for (int i = 0; i < SAMPLES; ++i) {
+            double[] sample = features(random);
+            double response = sample[0] - 2 * sample[1] + 0.5 * sample[2] + random.nextGaussian();
+            smile.learn(new double[][] {sample}, new double[] {response});
+            rls.learn(sample, response);
+
+            double[] query = features(random);
+            assertClose(rls.predict(query), smile.predict(query));
+        }
+    }
+
+    @Test
+    void sameHeadwaysCannotBeFitted() {
+        RecursiveLeastSquares rls = new RecursiveLeastSquares(1, 0.75);
+        assertThat(rls.fit(new double[][] {{300_000}, {300_000}}, new double[] {4, 4.2})).isFalse();
+        assertThat(rls.isFitted()).isFalse();
+    }
+
+    @Test
+    void transitClockRlsWaitsForDifferentHeadways() {
+        TransitClockRLS model = new TransitClockRLS(0.75);
+        model.addSample(300_000, 4.0);
+        model.addSample(300_000, 4.2);
+        // smile's RLS couldn't be created from these so there was no model
+        assertThat(model.getRls()).isNull();
+
+        model.addSample(600_000, 4.5);
+        RLS smile = new RLS(new double[][] {{300_000}, {600_000}}, new double[] {4.0, 4.5}, 0.75);
+        assertSamePredictions(smile, model.getRls());
+        assertThat(model.numSamples()).isEqualTo(3);
+    }
+
+    @Test
+    void serializedFormIsFixedSize() throws Exception {
+        Random random = new Random(3);
+        RecursiveLeastSquares rls = new RecursiveLeastSquares(1, 0.75);
+        rls.fit(new double[][] {{headway(random)}, {headway(random)}}, new double[] {dwell(random), dwell(random)});
+
+        for (int i = 0; i < 10; ++i) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            rls.writeTo(new DataOutputStream(bytes));
+            assertThat(bytes.size()).isEqualTo(RecursiveLeastSquares.serializedSize(1));
+            rls.learn(headway(random), dwell(random));
+        }
+    }
+
+    @Test
+    void serializationRoundTrip() throws Exception {
+        Random random = new Random(5);
+        TransitClockRLS model = new TransitClockRLS(0.75);
+        for (int i = 0; i < 50; ++i) {
+            model.addSample(headway(random), dwell(random));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(model);
+        }
+        TransitClockRLS copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (TransitClockRLS) in.readObject();
+        }
+
+        assertThat(copy.numSamples()).isEqualTo(model.numSamples());
+        for (int headway = 60_000; headway < 1_800_000; headway += 60_000) {
+            assertThat(copy.getRls().predict(headway)).isEqualTo(model.getRls().predict(headway));
+        }
+
+        // Both carry on learning the same way
+        copy.addSample(400_000, 4.1);
+        model.addSample(400_000, 4.1);
+        assertThat(copy.getRls().predict(500_000)).isEqualTo(model.getRls().predict(500_000));
+    }
+
+    private static void assertSamePredictions(RLS smile, RecursiveLeastSquares rls) {
+        for (int headway = 60_000; headway < 1_800_000; headway += 60_000) {
+            assertClose(rls.predict(headway), smile.predict(new double[] {headway}));
+        }
+    }
+
+    // Relative to the prediction once it is larger than 1
+    private static void assertClose(double actual, double expected) {
+        assertThat(actual).isCloseTo(expected, within(TOLERANCE * Math.max(1, Math.abs(expected))));
+    }
+
+    private static double headway(Random random) {
+        return 60_000 + random.nextInt(1_740_000);
+    }
+
+    private static double dwell(Random random) {
+        return Math.log10(5_000 + random.nextInt(115_000));
+    }
+
+    private static double[] features(Random random) {
+        return new double[] {random.nextGaussian(), random.nextGaussian() * 10, random.nextDouble()};
+    }
+}
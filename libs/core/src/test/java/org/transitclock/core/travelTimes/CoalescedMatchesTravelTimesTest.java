@@ -0,0 +1,112 @@
+package org.transitclock.core.travelTimes;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.transitclock.core.avl.StatePersistencePolicy;
+import org.transitclock.domain.structs.Match;
+import org.transitclock.properties.CoreProperties;
+import org.transitclock.properties.TravelTimesProperties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CoalescedMatchesTravelTimesTest {
+    private static final long START = 1_700_000_000_000L;
+    private static final double[] STOP_PATH_LENGTHS = {180.0, 1100.0, 640.0, 2000.0};
+
+    private final TravelTimesProperties travelTimesProperties = new TravelTimesProperties();
+
+    @Test
+    void travelTimesAreUnchanged() {
+        CoreProperties coreProperties = new CoreProperties();
+        coreProperties.getStatePersistence().setCoalesce(true);
+        StatePersistencePolicy policy = new StatePersistencePolicy(coreProperties, travelTimesProperties);
+
+        // A vehicle reporting every 5 seconds at varying speeds, sometimes stopped
+        Random random = new Random(42);
+        List<List<Match>> allMatches = new ArrayList<>();
+        List<List<Match>> storedMatches = new ArrayList<>();
+        List<long[]> departuresAndArrivals = new ArrayList<>();
+        long time = START;
+        for (int stopPathIndex = 0; stopPathIndex < STOP_PATH_LENGTHS.length; ++stopPathIndex) {
+            double length = STOP_PATH_LENGTHS[stopPathIndex];
+            List<Match> all = new ArrayList<>();
+            List<Match> stored = new ArrayList<>();
+            long departureTime = time;
+            double distance = 0.0;
+            while (true) {
+                time += 5000;
+                distance += random.nextInt(4) == 0 ? 0.0 : random.nextDouble() * 80.0;
+                if (distance >= length) {
+                    // Arrived, so matched at the stop
+                    stored.addAll(policy.matchesToStore(match(time, stopPathIndex, (float) length, true), length));
+                    break;
+                }
+                Match match = match(time, stopPathIndex, (float) distance, false);
+                all.add(match);
+                stored.addAll(policy.matchesToStore(match, length));
+            }
+            departuresAndArrivals.add(new long[] {departureTime, time});
+            allMatches.add(all);
+            storedMatches.add(stored);
+            time += 30000;
+        }
+
+        int numAll = 0;
+        int numStored = 0;
+        for (int stopPathIndex = 0; stopPathIndex < STOP_PATH_LENGTHS.length; ++stopPathIndex) {
+            List<Match> stored = new ArrayList<>();
+            for (List<Match> matches : storedMatches) {
+                for (Match match : matches) {
+                    if (match.getStopPathIndex() == stopPathIndex) stored.add(match);
+                }
+            }
+            List<Match> all = allMatches.get(stopPathIndex);
+            long[] departureAndArrival = departuresAndArrivals.get(stopPathIndex);
+            double length = STOP_PATH_LENGTHS[stopPathIndex];
+
+            assertThat(vertexTimes(departureAndArrival, stored, length))
+                    .isEqualTo(vertexTimes(departureAndArrival, all, length));
+            numAll += all.size();
+            numStored += stored.size();
+        }
+        assertThat(numStored).isLessThan(numAll / 2);
+    }
+
+    @Test
+    void allMatchesStoredWhenNotCoalescing() {
+        StatePersistencePolicy policy = new StatePersistencePolicy(new CoreProperties(), travelTimesProperties);
+
+        Match match1 = match(START, 1, 10.0f, false);
+        Match match2 = match(START + 5000, 1, 20.0f, false);
+        Match atStop = match(START + 10000, 1, 1000.0f, true);
+
+        assertThat(policy.matchesToStore(match1, 1000.0)).containsExactly(match1);
+        assertThat(policy.matchesToStore(match2, 1000.0)).containsExactly(match2);
+        assertThat(policy.matchesToStore(atStop, 1000.0)).isEmpty();
+    }
+
+    private List<Long> vertexTimes(long[] departureAndArrival, List<Match> matches, double stopPathLength) {
+        List<TravelTimesProcessor.MatchPoint> matchPoints = new ArrayList<>();
+        matchPoints.add(new TravelTimesProcessor.MatchPoint(
+                new Date(departureAndArrival[0]), 0.0f, TravelTimesProcessor.MatchPoint.MatchPointReason.DEPARTURE));
+        for (Match match : matches) {
+            matchPoints.add(new TravelTimesProcessor.MatchPoint(
+                    match.getDate(), match.getDistanceAlongStopPath(), TravelTimesProcessor.MatchPoint.MatchPointReason.MATCH));
+        }
+        matchPoints.add(new TravelTimesProcessor.MatchPoint(
+                new Date(departureAndArrival[1]), (float) stopPathLength, TravelTimesProcessor.MatchPoint.MatchPointReason.ARRIVAL));
+
+        int numberTravelTimeSegments = (int) (stopPathLength / travelTimesProperties.getMaxTravelTimeSegmentLength() + 1.0);
+        return TravelTimesProcessor.determineVertexTimes(
+                departureAndArrival[0], matchPoints, stopPathLength / numberTravelTimeSegments);
+    }
+
+    private static Match match(long time, int stopPathIndex, float distanceAlongStopPath, boolean atStop) {
+        return new Match("vehicle1", new Date(time), 1, "weekday", "block1", "trip1", stopPathIndex, 0, 0.0f,
+                distanceAlongStopPath, atStop);
+    }
+}
@@ -0,0 +1,97 @@
+package org.transitclock.domain.archive;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.transitclock.domain.structs.AvlReport;
+import org.transitclock.utils.Time;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DayArchiveTest {
+    private static final long START = 1_700_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTrip() throws Exception {
+        DayArchiveWriter writer = new DayArchiveWriter(ArchiveTable.ARRIVALS_DEPARTURES, 19675);
+        for (int i = 0; i < 1000; ++i) {
+            writer.addRow(
+                    "vehicle" + i % 7,
+                    new Date(START + i * 15_000L),
+                    "stop" + i % 40,
+                    i % 40 + 1,
+                    i % 2 == 0,
+                    "trip" + i / 40,
+                    -3,
+                    new Date(START + i * 15_000L - 2_000L),
+                    i % 3 == 0 ? null : new Date(START + i * 14_000L),
+                    "block1",
+                    "route1",
+                    null,
+                    "weekday",
+                    "0",
+                    i / 40,
+                    null,
+                    i % 40,
+                    i % 5 == 0 ? null : i,
+                    123.5f + i);
+        }
+        Path file = directory.resolve("arrivals_departures/2023-11-14.tca");
+        writer.write(file);
+
+        DayArchive archive = DayArchive.open(file);
+
+        assertThat(archive.getTableName()).isEqualTo("arrivals_departures");
+        assertThat(archive.getEpochDay()).isEqualTo(19675);
+        assertThat(archive.getRowCount()).isEqualTo(1000);
+        assertThat(archive.getMinTime()).isEqualTo(START);
+        assertThat(archive.getMaxTime()).isEqualTo(START + 999 * 15_000L);
+        for (int i = 0; i < 1000; ++i) {
+            assertThat(archive.getColumn("vehicle_id").getString(i)).isEqualTo("vehicle" + i % 7);
+            assertThat(archive.getColumn("time").getTime(i)).isEqualTo(START + i * 15_000L);
+            assertThat(archive.getColumn("is_arrival").getBoolean(i)).isEqualTo(i % 2 == 0);
+            assertThat(archive.getColumn("config_rev").getInt(i)).isEqualTo(-3);
+            assertThat(archive.getColumn("scheduled_time").getDate(i))
+                    .isEqualTo(i % 3 == 0 ? null : new Date(START + i * 14_000L));
+            assertThat(archive.getColumn("route_short_name").isNull(i)).isTrue();
+            assertThat(archive.getColumn("freq_start_time").getDate(i)).isNull();
+            assertThat(archive.getColumn("stop_order").getInteger(i)).isEqualTo(i % 5 == 0 ? null : i);
+            assertThat(archive.getColumn("stop_path_length").getFloat(i)).isEqualTo(123.5f + i);
+        }
+        // Values from the dictionary are shared by the rows
+        assertThat(archive.getColumn("vehicle_id").getString(7)).isSameAs(archive.getColumn("vehicle_id").getString(0));
+    }
+
+    @Test
+    void notAnArchiveFile() throws Exception {
+        Path file = directory.resolve("garbage.tca");
+        Files.write(file, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12});
+
+        assertThatThrownBy(() -> DayArchive.open(file)).hasMessageContaining("not an archive file");
+    }
+
+    @Test
+    void readStopsAtFirstDayNotArchived() throws Exception {
+        HistoryArchive historyArchive = new HistoryArchive(directory);
+        int epochDay = Time.getEpochDay(START);
+        new DayArchiveWriter(ArchiveTable.AVL_REPORTS, epochDay)
+                .write(historyArchive.getFile(ArchiveTable.AVL_REPORTS, epochDay));
+
+        List<AvlReport> avlReports = new ArrayList<>();
+        Date dbBeginTime = historyArchive.readAvlReports(
+                new Date(START), new Date(START + 2 * Time.MS_PER_DAY), avlReports::add);
+
+        assertThat(avlReports).isEmpty();
+        assertThat(dbBeginTime).isEqualTo(new Date(Time.getStartOfEpochDay(epochDay + 1)));
+        assertThat(historyArchive.contains(ArchiveTable.AVL_REPORTS, epochDay + 1)).isFalse();
+    }
+}
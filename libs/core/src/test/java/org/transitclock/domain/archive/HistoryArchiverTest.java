@@ -0,0 +1,146 @@
+package org.transitclock.domain.archive;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.transitclock.properties.CoreProperties;
+import org.transitclock.utils.Time;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HistoryArchiverTest {
+    private static final int DAY = 19_700;
+    // Noon, so with a closed day delay of 6 hours the last closed day is DAY - 1
+    private static final long NOW = Time.getStartOfEpochDay(DAY) + 12 * Time.MS_PER_HOUR;
+
+    @TempDir
+    Path directory;
+
+    private HistoryArchive archive;
+    private FakeArchiver archiver;
+
+    @BeforeEach
+    void setUp() {
+        archive = new HistoryArchive(directory);
+        CoreProperties properties = new CoreProperties();
+        properties.getArchive().setBackfillDays(5);
+        properties.getArchive().setClosedDayDelayHours(6);
+        properties.getArchive().setRecheckDays(2);
+        archiver = new FakeArchiver(properties);
+    }
+
+    @Test
+    void missingClosedDaysAreArchived() throws Exception {
+        archiver.write(DAY - 3, 10);
+
+        archiver.run(archive, NOW);
+
+        assertThat(archiver.archived(ArchiveTable.ARRIVALS_DEPARTURES))
+                .containsExactly(DAY - 5, DAY - 4, DAY - 2, DAY - 1);
+        assertThat(archive.contains(ArchiveTable.ARRIVALS_DEPARTURES, DAY)).isFalse();
+    }
+
+    @Test
+    void recentDayWithLateRowsIsArchivedAgain() throws Exception {
+        archiveAll();
+        archiver.write(DAY - 1, 10);
+
+        // Late arrivals/departures were written to the day after it was archived
+        archiver.dbRows.put(DAY - 1, 12);
+        archiver.run(archive, NOW);
+
+        assertThat(archiver.archived(ArchiveTable.ARRIVALS_DEPARTURES)).containsExactly(DAY - 1);
+        assertThat(archive.open(ArchiveTable.ARRIVALS_DEPARTURES, DAY - 1).getRowCount()).isEqualTo(12);
+    }
+
+    @Test
+    void recentDayWithSameRowsIsKept() throws Exception {
+        archiveAll();
+        archiver.write(DAY - 2, 10);
+        archiver.dbRows.put(DAY - 2, 10);
+
+        archiver.run(archive, NOW);
+
+        assertThat(archiver.archived(ArchiveTable.ARRIVALS_DEPARTURES)).isEmpty();
+        assertThat(archiver.counted).contains(DAY - 1, DAY - 2);
+    }
+
+    @Test
+    void olderDaysAreNotRechecked() throws Exception {
+        archiveAll();
+        archiver.dbRows.put(DAY - 3, 5);
+
+        archiver.run(archive, NOW);
+
+        assertThat(archiver.archived(ArchiveTable.ARRIVALS_DEPARTURES)).isEmpty();
+        assertThat(archiver.counted).doesNotContain(DAY - 3, DAY - 4, DAY - 5);
+    }
+
+    @Test
+    void unreadableRecentDayIsArchivedAgain() throws Exception {
+        archiveAll();
+        Files.write(archive.getFile(ArchiveTable.AVL_REPORTS, DAY - 1), new byte[] {1, 2, 3});
+
+        archiver.run(archive, NOW);
+
+        assertThat(archiver.archived(ArchiveTable.AVL_REPORTS)).containsExactly(DAY - 1);
+        assertThat(archiver.archived(ArchiveTable.ARRIVALS_DEPARTURES)).isEmpty();
+    }
+
+    private void archiveAll() {
+        archiver.run(archive, NOW);
+        archiver.archived.clear();
+        archiver.counted.clear();
+    }
+
+    /** Takes the number of rows of a day from dbRows instead of the db and writes empty rows */
+    private class FakeArchiver extends HistoryArchiver {
+        private final Map<Integer, Integer> dbRows = new HashMap<>();
+        private final List<String> archived = new ArrayList<>();
+        private final List<Integer> counted = new ArrayList<>();
+
+        private FakeArchiver(CoreProperties properties) {
+            super(properties);
+        }
+
+        @Override
+        long countRows(ArchiveTable table, int epochDay) {
+            counted.add(epochDay);
+            return dbRows.getOrDefault(epochDay, 0);
+        }
+
+        @Override
+        void archiveDay(HistoryArchive archive, ArchiveTable table, int epochDay) throws IOException {
+            archived.add(table.name() + ":" + epochDay);
+            writeFile(table, epochDay, dbRows.getOrDefault(epochDay, 0));
+        }
+
+        private void write(int epochDay, int rows) throws IOException {
+            dbRows.put(epochDay, rows);
+            writeFile(ArchiveTable.ARRIVALS_DEPARTURES, epochDay, rows);
+        }
+
+        private void writeFile(ArchiveTable table, int epochDay, int rows) throws IOException {
+            DayArchiveWriter writer = new DayArchiveWriter(table, epochDay);
+            for (int i = 0; i < rows; ++i) {
+                writer.addRow(new Object[table.getColumns().size()]);
+            }
+            writer.write(archive.getFile(table, epochDay));
+        }
+
+        private List<Integer> archived(ArchiveTable table) {
+            return archived.stream()
+                    .filter(entry -> entry.startsWith(table.name() + ":"))
+                    .map(entry -> Integer.parseInt(entry.substring(table.name().length() + 1)))
+                    .toList();
+        }
+    }
+}
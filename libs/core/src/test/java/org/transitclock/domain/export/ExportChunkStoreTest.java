@@ -0,0 +1,183 @@
+package org.transitclock.domain.export;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.transitclock.domain.export.ExportChunkStore.ChunkInputStream;
+import org.transitclock.domain.export.ExportChunkStore.ChunkOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** A file of 10 bytes in chunks of 4 bytes, so the last chunk is 2 bytes. */
+class ExportChunkStoreTest {
+    private static final byte[] FILE = {0, 1, 2, 3, 4, 5, 6, 7, (byte) 200, (byte) 255};
+    private static final int CHUNK_SIZE = 4;
+
+    @Test
+    void readsSingleBytesAcrossChunks() throws IOException {
+        MemoryChunkInputStream in = new MemoryChunkInputStream(chunks(FILE));
+
+        for (byte b : FILE) {
+            assertThat(in.read()).isEqualTo(b & 0xFF);
+        }
+        assertThat(in.read()).isEqualTo(-1);
+        assertThat(in.read()).isEqualTo(-1);
+        // Each chunk is read once
+        assertThat(in.chunkReads).containsExactly(0, 1, 2);
+    }
+
+    @Test
+    void readsOfArraysStopAtChunkBoundaries() throws IOException {
+        MemoryChunkInputStream in = new MemoryChunkInputStream(chunks(FILE));
+        byte[] buffer = new byte[100];
+
+        assertThat(in.read(buffer, 0, 3)).isEqualTo(3);
+        assertThat(in.read(buffer, 3, 100)).isEqualTo(1);
+        assertThat(in.read(buffer, 4, 100)).isEqualTo(4);
+        // Only what is left of the short last chunk
+        assertThat(in.read(buffer, 8, 100)).isEqualTo(2);
+        assertThat(in.read(buffer, 10, 100)).isEqualTo(-1);
+        assertThat(in.read(buffer, 10, 0)).isZero();
+
+        assertThat(Arrays.copyOf(buffer, 10)).isEqualTo(FILE);
+        assertThat(in.chunkReads).containsExactly(0, 1, 2);
+    }
+
+    @Test
+    void readAllBytesReturnsTheFile() throws IOException {
+        assertThat(new MemoryChunkInputStream(chunks(FILE)).readAllBytes()).isEqualTo(FILE);
+    }
+
+    @Test
+    void skippedChunksAreNotRead() throws IOException {
+        MemoryChunkInputStream in = new MemoryChunkInputStream(chunks(FILE));
+
+        assertThat(in.skip(5)).isEqualTo(5);
+        assertThat(in.read()).isEqualTo(5);
+        assertThat(in.skip(3)).isEqualTo(3);
+        assertThat(in.read()).isEqualTo(255);
+        // Not past the end of the file
+        assertThat(in.skip(10)).isZero();
+        assertThat(in.skip(-1)).isZero();
+
+        assertThat(in.chunkReads).containsExactly(1, 2);
+    }
+
+    @Test
+    void skipIsLimitedToTheEndOfTheFile() throws IOException {
+        MemoryChunkInputStream in = new MemoryChunkInputStream(chunks(FILE));
+
+        assertThat(in.skip(100)).isEqualTo(10);
+        assertThat(in.read()).isEqualTo(-1);
+        assertThat(in.chunkReads).isEmpty();
+    }
+
+    @Test
+    void availableIsWhatIsLeftOfTheLoadedChunk() throws IOException {
+        MemoryChunkInputStream in = new MemoryChunkInputStream(chunks(FILE));
+
+        // Nothing is loaded yet
+        assertThat(in.available()).isZero();
+        in.read();
+        assertThat(in.available()).isEqualTo(3);
+        in.skip(3);
+        // At the start of the next chunk, which isn't loaded
+        assertThat(in.available()).isZero();
+        in.skip(4);
+        in.read();
+        assertThat(in.available()).isEqualTo(1);
+        in.read();
+        assertThat(in.available()).isZero();
+        assertThat(in.chunkReads).containsExactly(0, 2);
+    }
+
+    @Test
+    void fileOfWholeChunksHasNoEmptyLastChunk() throws Exception {
+        byte[] file = Arrays.copyOf(FILE, 8);
+        List<byte[]> chunks = write(file);
+
+        assertThat(chunks).hasSize(2);
+        assertThat(new MemoryChunkInputStream(chunks).readAllBytes()).isEqualTo(file);
+    }
+
+    @Test
+    void writtenChunksAreReadBack() throws Exception {
+        List<byte[]> chunks = write(FILE);
+
+        assertThat(chunks).extracting(chunk -> chunk.length).containsExactly(4, 4, 2);
+        assertThat(new MemoryChunkInputStream(chunks).readAllBytes()).isEqualTo(FILE);
+    }
+
+    /** Writes the file with single bytes and arrays that don't line up with the chunks */
+    private static List<byte[]> write(byte[] file) throws IOException, SQLException {
+        List<byte[]> chunks = new ArrayList<>();
+        ChunkOutputStream out = new ChunkOutputStream(connection(chunks), 1, CHUNK_SIZE);
+        out.write(file[0]);
+        out.write(file, 1, 5);
+        out.write(file, 6, file.length - 6);
+        assertThat(out.getSize()).isEqualTo(file.length);
+        // Closing again doesn't write the last chunk again
+        out.close();
+        out.close();
+        assertThat(out.getSize()).isEqualTo(file.length);
+        return chunks;
+    }
+
+    private static List<byte[]> chunks(byte[] file) {
+        List<byte[]> chunks = new ArrayList<>();
+        for (int from = 0; from < file.length; from += CHUNK_SIZE) {
+            chunks.add(Arrays.copyOfRange(file, from, Math.min(from + CHUNK_SIZE, file.length)));
+        }
+        return chunks;
+    }
+
+    // Stores the data of the inserted chunks, in the order they are inserted
+    private static Connection connection(List<byte[]> chunks) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+                (connection, connectionMethod, connectionArgs) -> {
+                    if (!connectionMethod.getName().equals("prepareStatement")) {
+                        throw new UnsupportedOperationException(connectionMethod.getName());
+                    }
+                    String sql = (String) connectionArgs[0];
+                    byte[][] data = new byte[1][];
+                    return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                            new Class<?>[] {PreparedStatement.class},
+                            (statement, method, args) -> switch (method.getName()) {
+                                case "setLong", "setInt", "close" -> null;
+                                case "setBytes" -> {
+                                    data[0] = ((byte[]) args[1]).clone();
+                                    yield null;
+                                }
+                                case "executeUpdate" -> {
+                                    if (sql.startsWith("INSERT")) chunks.add(data[0]);
+                                    yield 1;
+                                }
+                                default -> throw new UnsupportedOperationException(method.getName());
+                            });
+                });
+    }
+
+    private static class MemoryChunkInputStream extends ChunkInputStream {
+        private final List<byte[]> chunks;
+        private final List<Integer> chunkReads = new ArrayList<>();
+
+        MemoryChunkInputStream(List<byte[]> chunks) {
+            super(1, chunks.stream().mapToLong(chunk -> chunk.length).sum(), CHUNK_SIZE);
+            this.chunks = chunks;
+        }
+
+        @Override
+        byte[] readChunk(int chunkIndex) {
+            chunkReads.add(chunkIndex);
+            return chunks.get(chunkIndex);
+        }
+    }
+}
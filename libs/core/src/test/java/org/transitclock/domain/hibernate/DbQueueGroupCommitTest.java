@@ -0,0 +1,131 @@
+package org.transitclock.domain.hibernate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Group commit of DbQueue against a simulated database whose commits take a fixed time, so that
+ * producers adding while a commit is in progress are committed together by the next one.
+ */
+class DbQueueGroupCommitTest {
+    private static final int BATCH_SIZE = 500;
+    private static final long COMMIT_MSEC = 20;
+    private static final long WINDOW_MSEC = 10;
+
+    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
+    private final ExecutorService writerExecutor = Executors.newFixedThreadPool(4);
+    private final ExecutorService producers = Executors.newFixedThreadPool(16);
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+        writerExecutor.shutdownNow();
+        producers.shutdownNow();
+    }
+
+    @Test
+    void futureCompletesOnceBatchIsCommitted() throws Exception {
+        List<Integer> committed = Collections.synchronizedList(new ArrayList<>());
+        DbQueue<Integer> queue = queue(batch -> {
+            sleep(COMMIT_MSEC);
+            committed.addAll(batch);
+            return List.of();
+        });
+
+        CompletableFuture<Void> future = queue.addDurably(1);
+        assertThat(future).isNotDone();
+
+        future.get(5, TimeUnit.SECONDS);
+        assertThat(committed).containsExactly(1);
+    }
+
+    @Test
+    void concurrentProducersShareCommits() throws Exception {
+        AtomicInteger commits = new AtomicInteger();
+        AtomicInteger written = new AtomicInteger();
+        DbQueue<Integer> queue = queue(batch -> {
+            sleep(COMMIT_MSEC);
+            commits.incrementAndGet();
+            written.addAndGet(batch.size());
+            return List.of();
+        });
+
+        // 16 producers that each wait for their object to be committed before adding the next
+        List<CompletableFuture<Void>> done = new ArrayList<>();
+        for (int p = 0; p < 16; ++p) {
+            int producer = p;
+            done.add(CompletableFuture.runAsync(() -> {
+                for (int i = 0; i < 20; ++i) {
+                    queue.addDurably(producer * 100 + i).join();
+                }
+            }, producers));
+        }
+        CompletableFuture.allOf(done.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+
+        assertThat(written.get()).isEqualTo(16 * 20);
+        // A commit per object would be 320 commits
+        assertThat(commits.get()).isLessThan(16 * 20 / 4);
+    }
+
+    @Test
+    void futureFailsWhenObjectCouldNotBeWritten() {
+        DbQueue<Integer> queue = queue(batch -> batch.contains(2) ? List.of(2) : List.of());
+
+        CompletableFuture<Void> good = queue.addDurably(1);
+        CompletableFuture<Void> bad = queue.addDurably(2);
+
+        assertThat(good).succeedsWithin(5, TimeUnit.SECONDS);
+        assertThatThrownBy(() -> bad.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+    }
+
+    @Test
+    void asyncFutureCompletesWhenQueued() {
+        DbQueue<Integer> queue = new DbQueue<>(executor, writerExecutor, "test", true, false, Integer.class,
+                BATCH_SIZE, 1, 1_000, DbDurability.ASYNC, WINDOW_MSEC, batch -> {
+                    sleep(COMMIT_MSEC);
+                    return List.of();
+                });
+
+        assertThat(queue.addDurably(1)).isDone();
+    }
+
+    @Test
+    void failedBatchWriterFailsFutures() {
+        DbQueue<Integer> queue = queue(batch -> {
+            throw new IllegalStateException("db is down");
+        });
+
+        CompletableFuture<Void> future = queue.addDurably(1);
+
+        assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(queue.queueSize()).isZero();
+    }
+
+    private DbQueue<Integer> queue(Function<List<Integer>, List<Integer>> database) {
+        return new DbQueue<>(executor, writerExecutor, "test", true, false, Integer.class, BATCH_SIZE, 1, 1_000,
+                DbDurability.GROUP_COMMIT, WINDOW_MSEC, database);
+    }
+
+    private static void sleep(long msec) {
+        try {
+            Thread.sleep(msec);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package org.transitclock.domain.hibernate;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.hibernate.exception.ConstraintViolationException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Inserting batches of append only objects against a simulated database, where a batch containing
+ * an object that is already in the db fails with a duplicate key violation.
+ */
+class DbQueueInsertTest {
+    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void batchWithoutDuplicatesIsInsertedOnce() {
+        SimulatedDbQueue queue = new SimulatedDbQueue(duplicateKey());
+
+        assertThat(queue.insertBatchOfData(range(0, 8))).isEmpty();
+
+        assertThat(queue.inserts).containsExactly(range(0, 8));
+        assertThat(queue.inDb).containsExactlyInAnyOrderElementsOf(range(0, 8));
+        assertThat(queue.merged).isEmpty();
+    }
+
+    @Test
+    void batchWithDuplicateIsSplitInHalfUntilDuplicateIsFound() {
+        SimulatedDbQueue queue = new SimulatedDbQueue(duplicateKey());
+        queue.inDb.add(5);
+
+        assertThat(queue.insertBatchOfData(range(0, 8))).isEmpty();
+
+        // Halves without the duplicate are inserted, the duplicate is skipped
+        assertThat(queue.inserts).containsExactly(
+                range(0, 8), range(0, 4), range(4, 8), range(4, 6), List.of(4), List.of(5), range(6, 8));
+        assertThat(queue.inDb).containsExactlyInAnyOrderElementsOf(range(0, 8));
+        assertThat(queue.merged).isEmpty();
+    }
+
+    @Test
+    void everyDuplicateIsSkipped() {
+        SimulatedDbQueue queue = new SimulatedDbQueue(duplicateKey());
+        queue.inDb.addAll(List.of(0, 3, 6));
+
+        assertThat(queue.insertBatchOfData(range(0, 7))).isEmpty();
+
+        assertThat(queue.inDb).containsExactlyInAnyOrderElementsOf(range(0, 7));
+        assertThat(queue.merged).isEmpty();
+    }
+
+    @Test
+    void otherConstraintViolationIsWrittenWithMerge() {
+        // Such as a not null violation
+        SimulatedDbQueue queue = new SimulatedDbQueue(
+                new ConstraintViolationException("null value", new SQLException("null value", "23502"), "not_null"));
+        queue.inDb.add(5);
+
+        assertThat(queue.insertBatchOfData(range(0, 8))).isEmpty();
+
+        assertThat(queue.inserts).containsExactly(range(0, 8));
+        assertThat(queue.merged).containsExactly(range(0, 8));
+    }
+
+    @Test
+    void duplicateKeyIsRecognizedForPostgresAndMySql() {
+        assertThat(DbQueue.isDuplicateKey(duplicateKey())).isTrue();
+        assertThat(DbQueue.isDuplicateKey(new ConstraintViolationException(
+                "Duplicate entry", new SQLException("Duplicate entry '1' for key 'PRIMARY'", "23000", 1062), "PRIMARY")))
+                .isTrue();
+
+        // Integrity violations that aren't duplicate keys
+        assertThat(DbQueue.isDuplicateKey(new ConstraintViolationException(
+                "foreign key", new SQLException("foreign key", "23503"), "fk"))).isFalse();
+        assertThat(DbQueue.isDuplicateKey(new ConstraintViolationException(
+                "foreign key", new SQLException("Cannot add or update a child row", "23000", 1452), "fk"))).isFalse();
+    }
+
+    private static ConstraintViolationException duplicateKey() {
+        return new ConstraintViolationException(
+                "duplicate key", new SQLException("duplicate key value violates unique constraint", "23505"), "pk");
+    }
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> range = new ArrayList<>();
+        for (int i = from; i < to; ++i) {
+            range.add(i);
+        }
+        return range;
+    }
+
+    private class SimulatedDbQueue extends DbQueue<Integer> {
+        private final ConstraintViolationException violation;
+        private final Set<Integer> inDb = new HashSet<>();
+        private final List<List<Integer>> inserts = new ArrayList<>();
+        private final List<List<Integer>> merged = new ArrayList<>();
+
+        /** @param violation thrown by an insert of a batch with an object that is already in the db */
+        SimulatedDbQueue(ConstraintViolationException violation) {
+            super(executor, Runnable::run, "test", true, false, Integer.class, 100, 1, 1000,
+                    DbDurability.ASYNC, 0, batch -> List.of());
+            this.violation = violation;
+        }
+
+        @Override
+        void insertObjects(List<Integer> objectsToBeStored) {
+            inserts.add(List.copyOf(objectsToBeStored));
+            for (Integer object : objectsToBeStored) {
+                if (inDb.contains(object)) throw violation;
+            }
+            inDb.addAll(objectsToBeStored);
+        }
+
+        @Override
+        List<Integer> processBatchOfData(List<Integer> objectsToBeStored) {
+            merged.add(List.copyOf(objectsToBeStored));
+            inDb.addAll(objectsToBeStored);
+            return List.of();
+        }
+    }
+}
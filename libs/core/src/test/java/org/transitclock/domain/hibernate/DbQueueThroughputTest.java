@@ -0,0 +1,162 @@
+package org.transitclock.domain.hibernate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Throughput of DbQueue against a simulated database whose commits take a fixed time plus a time
+ * per object, so that a single writer can't keep up with 5x the peak load. There is no in process
+ * database on the test classpath so the commits are simulated by sleeping. Most of a commit is the
+ * fixed time so that a slow machine oversleeping doesn't change much how fast the writers are.
+ */
+class DbQueueThroughputTest {
+    private static final int BATCH_SIZE = 500;
+    // A batch takes 20 + 500 * 0.1 = 70 msec, so one writer writes about 7,000 objects/sec
+    private static final long COMMIT_MSEC = 20;
+    private static final double MSEC_PER_OBJECT = 0.1;
+    // 5x a peak of 3,000 objects/sec
+    private static final int OBJECTS_PER_SEC = 15_000;
+    private static final long LOAD_MSEC = 3_000;
+    private static final int BACKLOG = 40 * BATCH_SIZE;
+    private static final int MAX_WRITERS = 4;
+
+    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
+    private final ExecutorService writerExecutor = Executors.newFixedThreadPool(8);
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+        writerExecutor.shutdownNow();
+    }
+
+    @Test
+    void queueStaysFlatUnderFiveTimesPeakLoad() {
+        AtomicInteger written = new AtomicInteger();
+        DbQueue<Integer> queue = queue(MAX_WRITERS, batch -> written.addAndGet(batch.size()));
+
+        int maxQueueSize = produce(queue);
+        awaitWritten(written::get, OBJECTS_PER_SEC * LOAD_MSEC / 1000);
+
+        // A single writer would fall behind by about 8,000 objects/sec, so 24,000 by the end.
+        // Four writers can write about twice the load, so the queue only grows while they are
+        // being added.
+        assertThat(maxQueueSize).isLessThan(20 * BATCH_SIZE);
+        assertThat(written.get()).isEqualTo(OBJECTS_PER_SEC * LOAD_MSEC / 1000);
+    }
+
+    @Test
+    void writersAreAddedForBacklogAndWriteFullBatches() {
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger written = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        AtomicInteger concurrent = new AtomicInteger();
+        // The writers are only adjusted by the test, not periodically
+        ScheduledExecutorService manualExecutor = new ScheduledThreadPoolExecutor(1) {
+            @Override
+            public ScheduledFuture<?> scheduleAtFixedRate(
+                    Runnable command, long initialDelay, long period, TimeUnit unit) {
+                return null;
+            }
+        };
+        DbQueue<Integer> queue = new DbQueue<>(manualExecutor, writerExecutor, "test", true, false, Integer.class,
+                BATCH_SIZE, MAX_WRITERS, 1_000, batch -> {
+                    maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                    sleep(COMMIT_MSEC + (long) (batch.size() * MSEC_PER_OBJECT));
+                    batchSizes.add(batch.size());
+                    written.addAndGet(batch.size());
+                    concurrent.decrementAndGet();
+                });
+
+        for (int i = 0; i < BACKLOG; ++i) {
+            queue.add(i);
+        }
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (written.get() < BACKLOG && System.currentTimeMillis() < deadline) {
+            queue.adjustWriters();
+            sleep(10);
+        }
+        manualExecutor.shutdownNow();
+
+        assertThat(written.get()).isEqualTo(BACKLOG);
+        assertThat(batchSizes).hasSize(BACKLOG / BATCH_SIZE).containsOnly(BATCH_SIZE);
+        assertThat(maxConcurrent.get()).isBetween(2, MAX_WRITERS);
+    }
+
+    @Test
+    void orderedQueueUsesOneWriter() throws Exception {
+        List<Integer> written = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        AtomicInteger concurrent = new AtomicInteger();
+        DbQueue<Integer> queue = queue(1, batch -> {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            written.addAll(batch);
+            concurrent.decrementAndGet();
+        });
+
+        for (int i = 0; i < 20_000; ++i) {
+            queue.add(i);
+        }
+        awaitWritten(written::size, 20_000);
+
+        assertThat(maxConcurrent.get()).isEqualTo(1);
+        assertThat(written).isSorted();
+    }
+
+    private DbQueue<Integer> queue(int maxWriters, Consumer<List<Integer>> database) {
+        return new DbQueue<>(executor, writerExecutor, "test", true, false, Integer.class, BATCH_SIZE,
+                maxWriters, 1_000, batch -> {
+                    sleep(COMMIT_MSEC + (long) (batch.size() * MSEC_PER_OBJECT));
+                    database.accept(batch);
+                });
+    }
+
+    /** Adds OBJECTS_PER_SEC for LOAD_MSEC and returns the largest the queue got */
+    private static int produce(DbQueue<Integer> queue) {
+        long start = System.nanoTime();
+        int added = 0;
+        int maxQueueSize = 0;
+        long elapsedMsec;
+        while ((elapsedMsec = (System.nanoTime() - start) / 1_000_000) < LOAD_MSEC) {
+            long due = OBJECTS_PER_SEC * elapsedMsec / 1000;
+            while (added < due) {
+                queue.add(added++);
+            }
+            maxQueueSize = Math.max(maxQueueSize, queue.queueSize());
+            sleep(1);
+        }
+        while (added < OBJECTS_PER_SEC * LOAD_MSEC / 1000) {
+            queue.add(added++);
+        }
+        return maxQueueSize;
+    }
+
+    private static void awaitWritten(IntSupplier written, long expected) {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (written.getAsInt() < expected && System.currentTimeMillis() < deadline) {
+            sleep(10);
+        }
+    }
+
+    private static void sleep(long msec) {
+        try {
+            Thread.sleep(msec);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.transitclock.domain.hibernate;
+
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GtfsCacheRegionsTest {
+
+    @Test
+    void configurationHasEveryRegion() throws Exception {
+        URI uri = getClass().getResource("/ehcache-hibernate.xml").toURI();
+        CachingProvider provider = Caching.getCachingProvider("org.ehcache.jsr107.EhcacheCachingProvider");
+        try (CacheManager cacheManager = provider.getCacheManager(uri, getClass().getClassLoader())) {
+            List<String> names = new ArrayList<>();
+            cacheManager.getCacheNames().forEach(names::add);
+
+            assertThat(names).containsAll(GtfsCacheRegions.ALL);
+            assertThat(names).contains("default-query-results-region", "default-update-timestamps-region");
+            // Entities are cached by reference, not copied
+            javax.cache.Cache<Object, Object> stops = cacheManager.getCache(GtfsCacheRegions.STOPS);
+            Object stop = new Object();
+            stops.put("stop1", stop);
+            assertThat(stops.get("stop1")).isSameAs(stop);
+        } finally {
+            provider.close();
+        }
+    }
+
+    @Test
+    void gtfsRegionsAreEvictedWhenConfigRevChanges() {
+        List<String> evicted = new ArrayList<>();
+        List<SessionFactory> sessionFactories = List.of(sessionFactory(true, evicted));
+        HibernateUtils.startConfigRev(100, sessionFactories);
+        evicted.clear();
+
+        HibernateUtils.startConfigRev(100, sessionFactories);
+        assertThat(evicted).isEmpty();
+
+        HibernateUtils.startConfigRev(101, sessionFactories);
+        assertThat(evicted).containsExactlyElementsOf(GtfsCacheRegions.ALL);
+    }
+
+    @Test
+    void closedSessionFactoryIsNotEvicted() {
+        List<String> evicted = new ArrayList<>();
+        List<SessionFactory> sessionFactories = List.of(sessionFactory(false, evicted));
+        HibernateUtils.startConfigRev(200, sessionFactories);
+
+        HibernateUtils.startConfigRev(201, sessionFactories);
+
+        assertThat(evicted).isEmpty();
+    }
+
+    // Only isOpen() and getCache().evictRegion() are used when evicting
+    private static SessionFactory sessionFactory(boolean open, List<String> evicted) {
+        Cache cache = (Cache) Proxy.newProxyInstance(Cache.class.getClassLoader(), new Class<?>[] {Cache.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("evictRegion")) {
+                        evicted.add((String) args[0]);
+                        return null;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        return (SessionFactory) Proxy.newProxyInstance(SessionFactory.class.getClassLoader(),
+                new Class<?>[] {SessionFactory.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "isOpen" -> open;
+                    case "getCache" -> cache;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
@@ -0,0 +1,149 @@
+package org.transitclock.domain.hibernate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.transitclock.domain.hibernate.PartitionManager.Interval;
+import org.transitclock.domain.hibernate.PartitionManager.Partition;
+import org.transitclock.domain.hibernate.PartitionManager.PartitionedTable;
+import org.transitclock.properties.CoreProperties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PartitionManagerTest {
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 5, 30, 14, 25, 10);
+
+    private final CoreProperties coreProperties = new CoreProperties();
+    private final PartitionManager manager = new PartitionManager(coreProperties);
+
+    @Test
+    void rangeBoundIsParsed() {
+        Partition partition = PartitionManager.parsePartition("avl_reports_p20240501",
+                "FOR VALUES FROM ('2024-05-01 00:00:00') TO ('2024-05-02 00:00:00')");
+
+        assertThat(partition).isEqualTo(new Partition("avl_reports_p20240501",
+                LocalDateTime.of(2024, 5, 1, 0, 0), LocalDateTime.of(2024, 5, 2, 0, 0), false));
+    }
+
+    @Test
+    void minAndMaxValueBoundsHaveNoTime() {
+        Partition legacy = PartitionManager.parsePartition("avl_reports_legacy",
+                "FOR VALUES FROM (MINVALUE) TO ('2024-05-31 00:00:00')");
+        Partition open = PartitionManager.parsePartition("avl_reports_open",
+                "FOR VALUES FROM ('2024-05-31 00:00:00') TO (MAXVALUE)");
+
+        assertThat(legacy.from()).isNull();
+        assertThat(legacy.to()).isEqualTo(LocalDateTime.of(2024, 5, 31, 0, 0));
+        assertThat(open.from()).isEqualTo(LocalDateTime.of(2024, 5, 31, 0, 0));
+        assertThat(open.to()).isNull();
+    }
+
+    @Test
+    void defaultAndUnexpectedBounds() {
+        assertThat(PartitionManager.parsePartition("avl_reports_default", "DEFAULT"))
+                .isEqualTo(new Partition("avl_reports_default", null, null, true));
+        assertThat(PartitionManager.parsePartition("avl_reports_list", "FOR VALUES IN ('a')")).isNull();
+    }
+
+    @Test
+    void intervalStartAndEnd() {
+        assertThat(Interval.DAILY.start(NOW)).isEqualTo(LocalDateTime.of(2024, 5, 30, 0, 0));
+        assertThat(Interval.DAILY.end(NOW)).isEqualTo(LocalDateTime.of(2024, 5, 31, 0, 0));
+        assertThat(Interval.MONTHLY.start(NOW)).isEqualTo(LocalDateTime.of(2024, 5, 1, 0, 0));
+        assertThat(Interval.MONTHLY.end(NOW)).isEqualTo(LocalDateTime.of(2024, 6, 1, 0, 0));
+        // Across the end of a year
+        assertThat(Interval.DAILY.end(LocalDateTime.of(2024, 12, 31, 23, 59))).isEqualTo(LocalDateTime.of(2025, 1, 1, 0, 0));
+        assertThat(Interval.MONTHLY.end(LocalDateTime.of(2024, 12, 15, 0, 0))).isEqualTo(LocalDateTime.of(2025, 1, 1, 0, 0));
+    }
+
+    @Test
+    void intervalIsConfiguredPerTable() {
+        coreProperties.getPartitioning().setAvlReportsInterval(" Monthly ");
+
+        assertThat(manager.interval(PartitionedTable.AVL_REPORTS)).isEqualTo(Interval.MONTHLY);
+        assertThat(manager.interval(PartitionedTable.ARRIVALS_DEPARTURES)).isEqualTo(Interval.MONTHLY);
+        assertThat(manager.interval(PartitionedTable.MATCHES)).isEqualTo(Interval.DAILY);
+
+        coreProperties.getPartitioning().setMatchesInterval("weekly");
+        assertThatThrownBy(() -> manager.interval(PartitionedTable.MATCHES))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("weekly");
+    }
+
+    @Test
+    void dailyPartitionsAreCreatedAheadFromTheLastPartition() {
+        coreProperties.getPartitioning().setCreateAheadDays(3);
+        List<Partition> partitions = List.of(
+                new Partition("avl_reports_default", null, null, true),
+                new Partition("avl_reports_legacy", null, LocalDateTime.of(2024, 5, 30, 0, 0), false),
+                new Partition("avl_reports_p20240530", LocalDateTime.of(2024, 5, 30, 0, 0),
+                        LocalDateTime.of(2024, 5, 31, 0, 0), false));
+
+        List<Partition> toCreate =
+                manager.partitionsToCreate(PartitionedTable.AVL_REPORTS, Interval.DAILY, partitions, NOW);
+
+        // Until 2024-06-02 14:25:10, so the partition for June 2nd is the last one
+        assertThat(toCreate).containsExactly(
+                new Partition("avl_reports_p20240531", LocalDateTime.of(2024, 5, 31, 0, 0),
+                        LocalDateTime.of(2024, 6, 1, 0, 0), false),
+                new Partition("avl_reports_p20240601", LocalDateTime.of(2024, 6, 1, 0, 0),
+                        LocalDateTime.of(2024, 6, 2, 0, 0), false),
+                new Partition("avl_reports_p20240602", LocalDateTime.of(2024, 6, 2, 0, 0),
+                        LocalDateTime.of(2024, 6, 3, 0, 0), false));
+    }
+
+    @Test
+    void monthlyPartitionsStartAtTheCurrentMonthWithoutPartitions() {
+        coreProperties.getPartitioning().setCreateAheadDays(7);
+        List<Partition> partitions = List.of(new Partition("arrivals_departures_default", null, null, true));
+
+        List<Partition> toCreate = manager.partitionsToCreate(
+                PartitionedTable.ARRIVALS_DEPARTURES, Interval.MONTHLY, partitions, NOW);
+
+        assertThat(toCreate).containsExactly(
+                new Partition("arrivals_departures_p20240501", LocalDateTime.of(2024, 5, 1, 0, 0),
+                        LocalDateTime.of(2024, 6, 1, 0, 0), false),
+                new Partition("arrivals_departures_p20240601", LocalDateTime.of(2024, 6, 1, 0, 0),
+                        LocalDateTime.of(2024, 7, 1, 0, 0), false));
+    }
+
+    @Test
+    void nothingIsCreatedWhenAlreadyFarEnoughAhead() {
+        coreProperties.getPartitioning().setCreateAheadDays(1);
+        List<Partition> partitions = List.of(new Partition("matches_p20240531",
+                LocalDateTime.of(2024, 5, 31, 0, 0), LocalDateTime.of(2024, 6, 1, 0, 0), false));
+
+        assertThat(manager.partitionsToCreate(PartitionedTable.MATCHES, Interval.DAILY, partitions, NOW)).isEmpty();
+    }
+
+    @Test
+    void partitionsOlderThanRetentionAreDropped() {
+        coreProperties.getPartitioning().setPredictionsRetentionDays(2);
+        Partition defaultPartition = new Partition("predictions_default", null, null, true);
+        Partition legacy = new Partition("predictions_legacy", null, LocalDateTime.of(2024, 5, 20, 0, 0), false);
+        Partition expired = new Partition("predictions_p20240527",
+                LocalDateTime.of(2024, 5, 27, 0, 0), LocalDateTime.of(2024, 5, 28, 0, 0), false);
+        // Ends at the cutoff of 2024-05-28 00:00 so all of its rows are older than the retention
+        Partition atCutoff = new Partition("predictions_p20240527b",
+                LocalDateTime.of(2024, 5, 27, 12, 0), LocalDateTime.of(2024, 5, 28, 0, 0), false);
+        Partition kept = new Partition("predictions_p20240528",
+                LocalDateTime.of(2024, 5, 28, 0, 0), LocalDateTime.of(2024, 5, 29, 0, 0), false);
+        Partition open = new Partition("predictions_open", LocalDateTime.of(2024, 5, 1, 0, 0), null, false);
+
+        List<Partition> toDrop = manager.partitionsToDrop(PartitionedTable.PREDICTIONS,
+                List.of(defaultPartition, legacy, expired, atCutoff, kept, open), NOW);
+
+        assertThat(toDrop).containsExactly(legacy, expired, atCutoff);
+    }
+
+    @Test
+    void nothingIsDroppedWithoutRetention() {
+        coreProperties.getPartitioning().setPredictionsRetentionDays(0);
+        Partition old = new Partition("predictions_p20200101",
+                LocalDateTime.of(2020, 1, 1, 0, 0), LocalDateTime.of(2020, 1, 2, 0, 0), false);
+
+        assertThat(manager.partitionsToDrop(PartitionedTable.PREDICTIONS, List.of(old), NOW)).isEmpty();
+    }
+}
@@ -0,0 +1,166 @@
+package org.transitclock.domain.hibernate;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.transitclock.properties.CoreProperties;
+
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Uses pools of a single connection so that a tenant that has used up its pool shows whether the
+ * other tenants get connections of their own pools.
+ */
+class WorkloadConnectionProviderTest {
+    private static final String URL = "jdbc:workloadtest:transitclock";
+    private static final FakeDriver driver = new FakeDriver();
+
+    private WorkloadConnectionProvider provider;
+
+    @BeforeAll
+    static void registerDriver() throws SQLException {
+        DriverManager.registerDriver(driver);
+    }
+
+    @AfterAll
+    static void deregisterDriver() throws SQLException {
+        DriverManager.deregisterDriver(driver);
+    }
+
+    @BeforeEach
+    void setUp() {
+        DataSourceProperties dataSourceProperties = new DataSourceProperties();
+        dataSourceProperties.setUrl(URL);
+        CoreProperties.DbPools properties = new CoreProperties.DbPools();
+        properties.setIngestPoolSize(1);
+        properties.setBatchPoolSize(1);
+        properties.setApiPoolSize(1);
+        properties.setReportsPoolSize(1);
+        // The shortest Hikari allows
+        properties.setConnectionTimeoutMsec(250);
+        provider = new WorkloadConnectionProvider(dataSourceProperties, properties, null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        provider.close();
+    }
+
+    @Test
+    void eachTenantHasItsOwnPool() throws Exception {
+        for (DbWorkload workload : DbWorkload.values()) {
+            try (Connection connection = provider.getConnection(workload.name())) {
+                assertThat(connection.isValid(1)).isTrue();
+
+                // The pool of the tenant is used up
+                assertThatThrownBy(() -> provider.getConnection(workload.name()))
+                        .isInstanceOf(SQLException.class);
+
+                // But the other tenants still get connections
+                for (DbWorkload other : DbWorkload.values()) {
+                    if (other == workload) continue;
+                    Connection otherConnection = provider.getConnection(other.name());
+                    provider.releaseConnection(other.name(), otherConnection);
+                }
+            }
+        }
+    }
+
+    @Test
+    void connectionsWithoutTenantAreFromApiPool() throws Exception {
+        try (Connection connection = provider.getConnection(DbWorkload.API)) {
+            assertThatThrownBy(() -> provider.getAnyConnection()).isInstanceOf(SQLException.class);
+
+            Connection ingestConnection = provider.getConnection(DbWorkload.INGEST.name());
+            provider.releaseConnection(DbWorkload.INGEST.name(), ingestConnection);
+        }
+
+        Connection connection = provider.getAnyConnection();
+        provider.releaseAnyConnection(connection);
+    }
+
+    @Test
+    void unknownTenantIsRejected() {
+        assertThatThrownBy(() -> provider.getConnection("OTHER")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /** Hands out connections that do nothing, for URLs of the workloadtest subprotocol */
+    private static class FakeDriver implements Driver {
+        @Override
+        public Connection connect(String url, Properties info) {
+            if (!acceptsURL(url)) return null;
+            boolean[] closed = {false};
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(), new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "close":
+                                closed[0] = true;
+                                return null;
+                            case "isClosed":
+                                return closed[0];
+                            case "isValid":
+                                return !closed[0];
+                            case "getTransactionIsolation":
+                                return Connection.TRANSACTION_READ_COMMITTED;
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "equals":
+                                return proxy == args[0];
+                            case "toString":
+                                return "FakeConnection";
+                            default:
+                                Class<?> type = method.getReturnType();
+                                if (type == boolean.class) return false;
+                                if (type == int.class) return 0;
+                                if (type == long.class) return 0L;
+                                return null;
+                        }
+                    });
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith("jdbc:workloadtest:");
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+    }
+}
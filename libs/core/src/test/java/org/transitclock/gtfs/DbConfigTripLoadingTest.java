@@ -0,0 +1,81 @@
+package org.transitclock.gtfs;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.hibernate.Session;
+import org.hibernate.query.Query;
+import org.junit.jupiter.api.Test;
+import org.transitclock.domain.structs.Trip;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The trips read in individually must not stay in the global session, otherwise the session keeps
+ * growing with every trip looked up no matter how small individualTripsCache is. There is no in
+ * process database on the test classpath so the session is a fake that keeps track of which
+ * entities it has in its persistence context.
+ */
+class DbConfigTripLoadingTest {
+    private final Set<Object> persistenceContext = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    @Test
+    void sessionDoesNotKeepTripsReadById() {
+        Session session = session();
+
+        List<Trip> trips = new ArrayList<>();
+        for (int i = 0; i < 1_000; ++i) {
+            trips.add(DbConfig.readDetachedTrip(session, 0, "trip" + i));
+        }
+
+        assertThat(trips).doesNotContainNull();
+        assertThat(persistenceContext).isEmpty();
+    }
+
+    @Test
+    void sessionDoesNotKeepTripsReadByShortName() {
+        Session session = session();
+
+        for (int i = 0; i < 1_000; ++i) {
+            assertThat(DbConfig.readDetachedTrips(session, 0, "short" + i)).hasSize(2);
+        }
+
+        assertThat(persistenceContext).isEmpty();
+    }
+
+    private Session session() {
+        return (Session) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Session.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "createQuery" -> query();
+                    case "evict" -> {
+                        persistenceContext.remove(args[0]);
+                        yield null;
+                    }
+                    case "contains" -> persistenceContext.contains(args[0]);
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private Query<?> query() {
+        return (Query<?>) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Query.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "uniqueResult" -> load();
+                    case "list", "getResultList" -> List.of(load(), load());
+                    default -> method.getReturnType().isInstance(proxy) ? proxy : null;
+                });
+    }
+
+    // A trip as read from the db, which the session then holds on to
+    private Trip load() throws ReflectiveOperationException {
+        Constructor<Trip> constructor = Trip.class.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        Trip trip = constructor.newInstance();
+        persistenceContext.add(trip);
+        return trip;
+    }
+}
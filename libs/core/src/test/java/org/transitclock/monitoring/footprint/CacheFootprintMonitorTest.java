@@ -0,0 +1,105 @@
+package org.transitclock.monitoring.footprint;
+
+import java.nio.file.Path;
+
+import org.ehcache.Cache;
+import org.ehcache.CacheManager;
+import org.ehcache.config.CacheConfiguration;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.CacheManagerBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.config.units.MemoryUnit;
+import org.ehcache.core.internal.statistics.DefaultStatisticsService;
+import org.ehcache.core.spi.service.StatisticsService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Only the heap tier of an Ehcache is counted, without reading the disk tier. */
+class CacheFootprintMonitorTest {
+    @TempDir
+    Path directory;
+
+    private final StatisticsService statisticsService = new DefaultStatisticsService();
+    private CacheManager cacheManager;
+
+    @BeforeEach
+    void setUp() {
+        cacheManager = CacheManagerBuilder.newCacheManagerBuilder()
+                .using(statisticsService)
+                .with(CacheManagerBuilder.persistence(directory.toFile()))
+                .withCache("heapOnly", CacheConfigurationBuilder.newCacheConfigurationBuilder(
+                        Integer.class, String.class, ResourcePoolsBuilder.heap(100)))
+                .withCache("heapInBytes", CacheConfigurationBuilder.newCacheConfigurationBuilder(
+                        Integer.class, String.class,
+                        ResourcePoolsBuilder.newResourcePoolsBuilder().heap(1, MemoryUnit.MB).disk(10, MemoryUnit.MB)))
+                .withCache("withDisk", CacheConfigurationBuilder.newCacheConfigurationBuilder(
+                        Integer.class, String.class,
+                        ResourcePoolsBuilder.newResourcePoolsBuilder().heap(10).disk(10, MemoryUnit.MB)))
+                .build(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cacheManager.close();
+    }
+
+    @Test
+    void heapOnlyCacheIsSampled() {
+        fill("heapOnly", 50);
+
+        FootprintSource source = source("heapOnly");
+
+        assertThat(source.entries().getAsLong()).isEqualTo(50);
+        assertThat(source.sampler().apply(20)).hasSize(20);
+        assertThat(source.measuredBytes().getAsLong()).isEqualTo(-1);
+    }
+
+    @Test
+    void heapSizedInBytesIsMeasured() {
+        fill("heapInBytes", 50);
+        Cache<Integer, String> cache = cacheManager.getCache("heapInBytes", Integer.class, String.class);
+        // Reading brings entries into the heap tier
+        for (int i = 0; i < 50; ++i) {
+            cache.get(i);
+        }
+
+        FootprintSource source = source("heapInBytes");
+
+        assertThat(source.entries().getAsLong()).isEqualTo(50);
+        assertThat(source.measuredBytes().getAsLong()).isPositive();
+        assertThat(source.sampler().apply(20)).isEmpty();
+    }
+
+    @Test
+    void cacheWithDiskTierIsNotIterated() {
+        fill("withDisk", 50);
+        long diskReads = diskHits("withDisk");
+
+        FootprintSource source = source("withDisk");
+
+        assertThat(source.entries().getAsLong()).isLessThanOrEqualTo(10);
+        assertThat(source.sampler().apply(20)).isEmpty();
+        assertThat(source.measuredBytes().getAsLong()).isEqualTo(-1);
+        assertThat(diskHits("withDisk")).isEqualTo(diskReads);
+    }
+
+    private void fill(String alias, int entries) {
+        Cache<Integer, String> cache = cacheManager.getCache(alias, Integer.class, String.class);
+        for (int i = 0; i < entries; ++i) {
+            cache.put(i, "value" + i);
+        }
+    }
+
+    private long diskHits(String alias) {
+        return statisticsService.getCacheStatistics(alias).getTierStatistics().get("Disk").getHits();
+    }
+
+    private FootprintSource source(String alias) {
+        CacheConfiguration<?, ?> config = cacheManager.getRuntimeConfiguration().getCacheConfigurations().get(alias);
+        return CacheFootprintMonitor.ehcacheSource(alias, config, cacheManager, statisticsService);
+    }
+}
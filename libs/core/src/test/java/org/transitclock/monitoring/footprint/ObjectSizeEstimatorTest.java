@@ -0,0 +1,112 @@
+package org.transitclock.monitoring.footprint;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The sizes are those of a 64 bit JVM with compressed oops, 12 byte object headers, 16 byte array
+ * headers, 4 byte references and 8 byte alignment.
+ */
+class ObjectSizeEstimatorTest {
+
+    @Test
+    void primitiveArrays() {
+        assertThat(ObjectSizeEstimator.estimate(new byte[0])).isEqualTo(16);
+        // 16 + 10 * 4 = 56
+        assertThat(ObjectSizeEstimator.estimate(new int[10])).isEqualTo(56);
+        // 16 + 3 * 8 = 40
+        assertThat(ObjectSizeEstimator.estimate(new long[3])).isEqualTo(40);
+        // 16 + 5 = 21, aligned to 24
+        assertThat(ObjectSizeEstimator.estimate(new boolean[5])).isEqualTo(24);
+    }
+
+    @Test
+    void referenceArraysIncludeTheirElements() {
+        // 16 + 3 * 4 = 28, aligned to 32
+        assertThat(ObjectSizeEstimator.estimate(new Object[3])).isEqualTo(32);
+        assertThat(ObjectSizeEstimator.estimate(new Object[] {new int[10], null, new long[3]})).isEqualTo(32 + 56 + 40);
+    }
+
+    @Test
+    void strings() {
+        // The String object and a byte array of 16 + 3, aligned to 24
+        assertThat(ObjectSizeEstimator.estimate("abc")).isEqualTo(24 + 24);
+        assertThat(ObjectSizeEstimator.estimate("")).isEqualTo(24 + 16);
+        // 16 + 9 = 25, aligned to 32
+        assertThat(ObjectSizeEstimator.estimate("block1234")).isEqualTo(24 + 32);
+    }
+
+    @Test
+    void objectsIncludeFieldsAndWhatTheyReference() {
+        // Header and two references is 20, aligned to 24
+        assertThat(ObjectSizeEstimator.estimate(new Pair(null, null))).isEqualTo(24);
+        assertThat(ObjectSizeEstimator.estimate(new Pair("abc", new int[10]))).isEqualTo(24 + 48 + 56);
+        // Header, a long and an int is 24
+        assertThat(ObjectSizeEstimator.estimate(new Primitives())).isEqualTo(24);
+    }
+
+    @Test
+    void sharedReferencesAreCountedOnce() {
+        String shared = "abc";
+
+        assertThat(ObjectSizeEstimator.estimate(new Pair(shared, shared))).isEqualTo(24 + 48);
+        assertThat(ObjectSizeEstimator.estimate(new Object[] {shared, shared, shared})).isEqualTo(32 + 48);
+        // But for each root, so each of two pairs sharing a string includes it
+        assertThat(ObjectSizeEstimator.estimate(new Pair(shared, null))
+                + ObjectSizeEstimator.estimate(new Pair(null, shared))).isEqualTo(2 * (24 + 48));
+    }
+
+    @Test
+    void cyclesAreOnlyWalkedOnce() {
+        Node self = new Node();
+        self.next = self;
+        // Header and a reference is 16
+        assertThat(ObjectSizeEstimator.estimate(self)).isEqualTo(16);
+
+        Node first = new Node();
+        Node second = new Node();
+        first.next = second;
+        second.next = first;
+        assertThat(ObjectSizeEstimator.estimate(first)).isEqualTo(32);
+
+        Pair pair = new Pair(null, null);
+        Object[] array = {pair};
+        pair.first = array;
+        assertThat(ObjectSizeEstimator.estimate(pair)).isEqualTo(24 + 24);
+    }
+
+    @Test
+    void listsIncludeTheirElements() {
+        String shared = "abc";
+
+        // The list and its backing array of 16 + 3 * 4 = 28, aligned to 32, and the string once
+        assertThat(ObjectSizeEstimator.estimate(List.of(shared, shared, shared))).isEqualTo(32 + 32 + 48);
+    }
+
+    @Test
+    void nullIsEmpty() {
+        assertThat(ObjectSizeEstimator.estimate(null)).isZero();
+    }
+
+    private static class Pair {
+        private Object first;
+        private final Object second;
+
+        Pair(Object first, Object second) {
+            this.first = first;
+            this.second = second;
+        }
+    }
+
+    private static class Node {
+        private Node next;
+    }
+
+    private static class Primitives {
+        private long time;
+        private int count;
+    }
+}
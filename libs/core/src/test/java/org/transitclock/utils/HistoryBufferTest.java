@@ -0,0 +1,49 @@
+package org.transitclock.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HistoryBufferTest {
+
+    @Test
+    void mostRecentIsFirst() {
+        HistoryBuffer<String> history = new HistoryBuffer<>(3);
+        assertThat(history.newest()).isNull();
+
+        history.add("a", 1000);
+        history.add("b", 2000);
+
+        assertThat(history.size()).isEqualTo(2);
+        assertThat(history.newest()).isEqualTo("b");
+        assertThat(history.get(1)).isEqualTo("a");
+        assertThat(history.getTime(1)).isEqualTo(1000);
+        assertThat(history.isFull()).isFalse();
+    }
+
+    @Test
+    void oldestIsOverwrittenWhenFull() {
+        HistoryBuffer<String> history = new HistoryBuffer<>(3);
+        for (int i = 0; i < 10; ++i) {
+            history.add("item" + i, i * 1000L);
+        }
+
+        assertThat(history.isFull()).isTrue();
+        assertThat(history.asList()).containsExactly("item9", "item8", "item7");
+        assertThat(history).hasToString("[item9, item8, item7]");
+        assertThatThrownBy(() -> history.get(3)).isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    void indexOlderThanSkipsItemsWithoutTime() {
+        HistoryBuffer<String> history = new HistoryBuffer<>(5);
+        history.add("old", 1000);
+        history.add(null, HistoryBuffer.NO_TIME);
+        history.add("recent", 5000);
+
+        assertThat(history.indexOlderThan(6000)).isEqualTo(0);
+        assertThat(history.indexOlderThan(5000)).isEqualTo(2);
+        assertThat(history.indexOlderThan(1000)).isEqualTo(-1);
+    }
+}
@@ -5,4 +5,7 @@ plugins {
 dependencies {
     api("org.slf4j:slf4j-api")
     api("jakarta.annotation:jakarta.annotation-api")
+
+    testImplementation("org.assertj:assertj-core")
+    testImplementation("org.junit.jupiter:junit-jupiter")
 }
@@ -0,0 +1,196 @@
+/* (C)2023 */
+package org.transitclock.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Concurrent memoization cache that is bounded both in size and in time, for lazily computed
+ * lookups that would otherwise grow for as long as the application runs. Entries expire a fixed
+ * time after they were loaded. When there are more than maxSize entries the least recently used
+ * ones are evicted, a tenth of maxSize at a time so that the cost of finding them is spread over
+ * many loads.
+ *
+ * <p>get() doesn't lock while loading so a slow loader, such as one reading from the database,
+ * doesn't block lookups of other keys. If two threads miss on the same key at the same time both
+ * load it and the value loaded last is kept. Null values are not cached.
+ *
+ * <p>Hits, misses, evictions and expirations are counted so that the bounds can be tuned.
+ *
+ * @param <K> type of the keys, which need a proper hashCode() and equals()
+ * @param <V> type of the values
+ */
+public class BoundedCache<K, V> {
+    private final String name;
+    private final int maxSize;
+    private final long expiryNanos;
+    private final LongSupplier nanoTime;
+
+    private final Map<K, Entry<V>> map = new ConcurrentHashMap<>();
+    // Incremented on each access so that entries can be ordered by when they were last used
+    private final AtomicLong accessClock = new AtomicLong();
+    private final Object evictionLock = new Object();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long loadedNanos;
+        private volatile long lastAccess;
+
+        private Entry(V value, long loadedNanos, long lastAccess) {
+            this.value = value;
+            this.loadedNanos = loadedNanos;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private record Candidate<K, V>(K key, Entry<V> entry, long lastAccess) {}
+
+    /**
+     * Snapshot of the statistics of a cache.
+     *
+     * @param name name of the cache
+     * @param size current number of entries
+     * @param hits lookups that found an entry
+     * @param misses lookups that had to load the value
+     * @param evictions entries removed because the cache was full
+     * @param expirations entries removed because they were too old
+     */
+    public record Stats(String name, int size, long hits, long misses, long evictions, long expirations) {
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups > 0 ? (double) hits / lookups : 0.0;
+        }
+    }
+
+    /**
+     * @param name name of the cache, for logging and statistics
+     * @param maxSize maximum number of entries
+     * @param expiry how long an entry is kept after it was loaded
+     * @param unit unit of expiry
+     */
+    public BoundedCache(String name, int maxSize, long expiry, TimeUnit unit) {
+        this(name, maxSize, expiry, unit, System::nanoTime);
+    }
+
+    // For tests, so that time can be advanced
+    BoundedCache(String name, int maxSize, long expiry, TimeUnit unit, LongSupplier nanoTime) {
+        if (maxSize < 1) throw new IllegalArgumentException("Invalid maxSize " + maxSize);
+        this.name = name;
+        this.maxSize = maxSize;
+        this.expiryNanos = unit.toNanos(expiry);
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Returns the value for the key, loading it if it isn't cached or has expired.
+     *
+     * @param key the key
+     * @param loader for loading the value when it is not cached. Can return null, in which case
+     *     nothing is cached.
+     * @return the value, or null if the loader returned null
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V value = getIfPresent(key);
+        if (value != null) return value;
+
+        misses.increment();
+        value = loader.apply(key);
+        if (value != null) put(key, value);
+        return value;
+    }
+
+    /**
+     * Returns the cached value for the key without loading it. Doesn't count as a hit or miss if
+     * there is no value.
+     *
+     * @param key the key
+     * @return the value, or null if not cached or expired
+     */
+    public V getIfPresent(K key) {
+        Entry<V> entry = map.get(key);
+        if (entry == null) return null;
+        if (nanoTime.getAsLong() - entry.loadedNanos > expiryNanos) {
+            if (map.remove(key, entry)) expirations.increment();
+            return null;
+        }
+        entry.lastAccess = accessClock.incrementAndGet();
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * Adds the value to the cache, replacing any value for the key.
+     *
+     * @param key the key
+     * @param value the value, not null
+     */
+    public void put(K key, V value) {
+        map.put(key, new Entry<>(value, nanoTime.getAsLong(), accessClock.incrementAndGet()));
+        if (map.size() > maxSize) evict();
+    }
+
+    public void invalidate(K key) {
+        map.remove(key);
+    }
+
+    public void invalidateAll() {
+        map.clear();
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public Stats stats() {
+        return new Stats(name, map.size(), hits.sum(), misses.sum(), evictions.sum(), expirations.sum());
+    }
+
+    /** Removes the expired entries, and then least recently used ones until well under maxSize. */
+    private void evict() {
+        synchronized (evictionLock) {
+            if (map.size() <= maxSize) return;
+
+            long now = nanoTime.getAsLong();
+            List<Candidate<K, V>> candidates = new ArrayList<>(map.size());
+            for (Map.Entry<K, Entry<V>> mapEntry : map.entrySet()) {
+                Entry<V> entry = mapEntry.getValue();
+                if (now - entry.loadedNanos > expiryNanos) {
+                    if (map.remove(mapEntry.getKey(), entry)) expirations.increment();
+                } else {
+                    // lastAccess is copied since it can change while sorting
+                    candidates.add(new Candidate<>(mapEntry.getKey(), entry, entry.lastAccess));
+                }
+            }
+
+            int target = maxSize - maxSize / 10;
+            int excess = map.size() - target;
+            if (excess <= 0) return;
+
+            candidates.sort((a, b) -> Long.compare(a.lastAccess(), b.lastAccess()));
+            for (int i = 0; i < candidates.size() && excess > 0; ++i) {
+                Candidate<K, V> candidate = candidates.get(i);
+                if (map.remove(candidate.key(), candidate.entry())) {
+                    evictions.increment();
+                    --excess;
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return stats().toString();
+    }
+}
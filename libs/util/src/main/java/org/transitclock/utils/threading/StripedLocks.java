@@ -0,0 +1,51 @@
+/* (C)2023 */
+package org.transitclock.utils.threading;
+
+/**
+ * A fixed set of lock objects where each key maps to one of them. Used instead of synchronizing a
+ * whole cache so that threads updating unrelated keys don't wait for each other, while updates of
+ * the same key are still serialized. Two different keys can share a stripe, which only means they
+ * sometimes wait for each other unnecessarily.
+ *
+ * <p>Use as {@code synchronized (locks.lockFor(key)) {...}}.
+ */
+public class StripedLocks {
+    // Plenty for the number of AVL processing threads that can be configured
+    public static final int DEFAULT_STRIPES = 64;
+
+    private final Object[] locks;
+    private final int mask;
+
+    public StripedLocks() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param minStripes minimum number of stripes. Rounded up to a power of two.
+     */
+    public StripedLocks(int minStripes) {
+        int stripes = Integer.highestOneBit(Math.max(minStripes - 1, 1)) << 1;
+        locks = new Object[stripes];
+        for (int i = 0; i < stripes; ++i) {
+            locks[i] = new Object();
+        }
+        mask = stripes - 1;
+    }
+
+    /**
+     * Returns the lock object for the key.
+     *
+     * @param key the key, which needs a proper hashCode()
+     * @return the lock to synchronize on
+     */
+    public Object lockFor(Object key) {
+        int hash = key.hashCode();
+        // Spread the high bits since only the low bits select the stripe
+        hash ^= (hash >>> 16);
+        return locks[hash & mask];
+    }
+
+    public int getStripes() {
+        return locks.length;
+    }
+}
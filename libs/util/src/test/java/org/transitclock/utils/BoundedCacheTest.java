@@ -0,0 +1,94 @@
+package org.transitclock.utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BoundedCacheTest {
+    private final AtomicLong nanoTime = new AtomicLong();
+
+    @Test
+    void loadsOnceAndCountsHitsAndMisses() {
+        BoundedCache<String, String> cache = new BoundedCache<>("test", 10, 1, TimeUnit.HOURS, nanoTime::get);
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int i = 0; i < 5; ++i) {
+            assertThat(cache.get("a", key -> key + loads.incrementAndGet())).isEqualTo("a1");
+        }
+
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(cache.stats().hits()).isEqualTo(4);
+        assertThat(cache.stats().misses()).isEqualTo(1);
+        assertThat(cache.stats().hitRate()).isEqualTo(0.8);
+    }
+
+    @Test
+    void nullIsNotCached() {
+        BoundedCache<String, String> cache = new BoundedCache<>("test", 10, 1, TimeUnit.HOURS, nanoTime::get);
+
+        assertThat(cache.get("a", key -> null)).isNull();
+        assertThat(cache.size()).isZero();
+        assertThat(cache.get("a", key -> "b")).isEqualTo("b");
+    }
+
+    @Test
+    void entriesExpire() {
+        BoundedCache<String, String> cache = new BoundedCache<>("test", 10, 1, TimeUnit.HOURS, nanoTime::get);
+        cache.put("a", "old");
+
+        nanoTime.addAndGet(TimeUnit.MINUTES.toNanos(59));
+        assertThat(cache.getIfPresent("a")).isEqualTo("old");
+
+        nanoTime.addAndGet(TimeUnit.MINUTES.toNanos(2));
+        assertThat(cache.get("a", key -> "new")).isEqualTo("new");
+        assertThat(cache.stats().expirations()).isEqualTo(1);
+    }
+
+    @Test
+    void leastRecentlyUsedAreEvicted() {
+        BoundedCache<Integer, String> cache = new BoundedCache<>("test", 100, 1, TimeUnit.HOURS, nanoTime::get);
+        for (int i = 0; i < 100; ++i) {
+            cache.put(i, "value" + i);
+        }
+        // Use the first ones so that they are the most recently used
+        for (int i = 0; i < 10; ++i) {
+            cache.getIfPresent(i);
+        }
+
+        cache.put(100, "value100");
+
+        assertThat(cache.size()).isLessThanOrEqualTo(100);
+        assertThat(cache.stats().evictions()).isPositive();
+        for (int i = 0; i < 10; ++i) {
+            assertThat(cache.getIfPresent(i)).isEqualTo("value" + i);
+        }
+        assertThat(cache.getIfPresent(10)).isNull();
+        assertThat(cache.getIfPresent(100)).isEqualTo("value100");
+    }
+
+    @Test
+    void staysBoundedUnderConcurrentLoads() throws Exception {
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>("test", 1000, 1, TimeUnit.HOURS);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int thread = 0; thread < 8; ++thread) {
+            int offset = thread;
+            executor.execute(() -> {
+                for (int i = 0; i < 50_000; ++i) {
+                    int key = (i * 31 + offset) % 5000;
+                    assertThat(cache.get(key, k -> k * 2)).isEqualTo(key * 2);
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+        assertThat(cache.size()).isLessThanOrEqualTo(1000);
+        assertThat(cache.stats().hits() + cache.stats().misses()).isEqualTo(8 * 50_000L);
+    }
+}